@@ -0,0 +1,128 @@
+/*
+ * Reads images published by the vision program on a FrameBus, in place.
+ *
+ * The layout and the protocol are described in FrameBus.java. This example
+ * maps the bus, waits for each new image, sums its pixels as a stand-in for
+ * real work, and reports how old the images were when picked up and how
+ * many were overwritten while being read.
+ *
+ * Build: gcc -O2 -o frame_bus_reader frame_bus_reader.c
+ * Usage: ./frame_bus_reader /dev/shm/vision-frames [seconds]
+ */
+#include <fcntl.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+#include <time.h>
+#include <unistd.h>
+
+#define MAGIC 0x454d415246565344ULL /* "DSVFRAME" */
+#define VERSION 1
+#define HEADER_SIZE 64
+#define SLOT_HEADER_SIZE 64
+
+/* header, little endian like everything else */
+struct bus_header {
+    uint64_t magic;
+    uint32_t version;
+    uint32_t slots;
+    uint32_t slot_size;
+    uint32_t reserved;
+    uint64_t latest; /* sequence of the newest complete image, 0 before the first */
+};
+
+/* start of every slot, the pixels follow at SLOT_HEADER_SIZE */
+struct slot_header {
+    uint64_t sequence; /* 0 while being written */
+    uint64_t time_nanos; /* CLOCK_MONOTONIC when the frame was grabbed */
+    uint64_t frame;
+    uint32_t width;
+    uint32_t height;
+    uint32_t stride;
+    uint32_t format; /* 1 BGR, 2 gray */
+    uint32_t length;
+};
+
+static uint64_t now_nanos(void) {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (uint64_t) ts.tv_sec * 1000000000ULL + ts.tv_nsec;
+}
+
+int main(int argc, char **argv) {
+    if (argc < 2) {
+        fprintf(stderr, "usage: %s <bus file> [seconds]\n", argv[0]);
+        return 1;
+    }
+    int seconds = argc > 2 ? atoi(argv[2]) : 10;
+
+    int fd = open(argv[1], O_RDONLY);
+    if (fd < 0) {
+        perror(argv[1]);
+        return 1;
+    }
+    struct stat st;
+    if (fstat(fd, &st) < 0 || st.st_size < HEADER_SIZE) {
+        fprintf(stderr, "%s: not a frame bus\n", argv[1]);
+        return 1;
+    }
+    const uint8_t *base = mmap(NULL, st.st_size, PROT_READ, MAP_SHARED, fd, 0);
+    close(fd);
+    if (base == MAP_FAILED) {
+        perror("mmap");
+        return 1;
+    }
+    const struct bus_header *header = (const struct bus_header *) base;
+    if (__atomic_load_n(&header->magic, __ATOMIC_ACQUIRE) != MAGIC || header->version != VERSION
+            || HEADER_SIZE + (uint64_t) header->slots * header->slot_size > (uint64_t) st.st_size) {
+        fprintf(stderr, "%s: not a version %d frame bus\n", argv[1], VERSION);
+        return 1;
+    }
+
+    uint64_t end = now_nanos() + (uint64_t) seconds * 1000000000ULL;
+    uint64_t last = 0, read = 0, torn = 0, age_total = 0, checksum = 0;
+    uint32_t width = 0, height = 0;
+    while (now_nanos() < end) {
+        uint64_t sequence = __atomic_load_n(&header->latest, __ATOMIC_ACQUIRE);
+        if (sequence == 0 || sequence == last) {
+            usleep(1000);
+            continue;
+        }
+        last = sequence;
+        const uint8_t *slot = base + HEADER_SIZE + ((sequence - 1) % header->slots) * header->slot_size;
+        const struct slot_header *image = (const struct slot_header *) slot;
+        if (__atomic_load_n(&image->sequence, __ATOMIC_ACQUIRE) != sequence) {
+            continue;
+        }
+        uint64_t age = now_nanos() - image->time_nanos;
+        width = image->width;
+        height = image->height;
+
+        /* the pixels, read where they are */
+        const uint8_t *pixels = slot + SLOT_HEADER_SIZE;
+        uint32_t length = image->length;
+        if (length > header->slot_size - SLOT_HEADER_SIZE) {
+            continue;
+        }
+        for (uint32_t i = 0; i < length; i++) {
+            checksum += pixels[i];
+        }
+
+        /* if the writer lapped us, what was read is a mix of two images */
+        __atomic_thread_fence(__ATOMIC_ACQUIRE);
+        if (__atomic_load_n(&image->sequence, __ATOMIC_RELAXED) != sequence) {
+            torn++;
+            continue;
+        }
+        read++;
+        age_total += age;
+    }
+    printf("%s: %ux%u, read %llu images (%.1f/s), %llu overwritten while reading, %.2f ms old on average"
+           " (checksum %llu)\n", argv[1], width, height, (unsigned long long) read, (double) read / seconds,
+           (unsigned long long) torn, read == 0 ? 0 : age_total / 1e6 / read, (unsigned long long) checksum);
+    munmap((void *) base, st.st_size);
+    return 0;
+}
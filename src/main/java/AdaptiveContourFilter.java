@@ -0,0 +1,234 @@
+import java.util.List;
+
+import org.opencv.core.CvType;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * GRIP's filterContours step as a cascade that reorders its own checks.
+ *
+ * <p>A contour is kept only if it passes every check, so the order of the
+ * checks doesn't change which contours are kept, only how much is spent
+ * rejecting the others. GRIP's order runs arcLength and the convex hull
+ * before the vertex and ratio checks, whatever the scene. Here every check
+ * is timed and counted as it runs, and every {@link #REORDER_INTERVAL}
+ * contours the checks are sorted by time per rejection, their average cost
+ * over the fraction of contours they reject, which is the order with the
+ * lowest expected cost when the checks are independent. The statistics are
+ * then halved so the order follows the scene as it changes.
+ *
+ * <p>Values shared by several checks, the bounding box and the area, are
+ * worked out once per contour by whichever check needs them first and
+ * charged to it. Each check computes its value exactly as GRIP does, so
+ * borderline contours get the same answer.
+ */
+public class AdaptiveContourFilter {
+    static final int REORDER_INTERVAL = 256;
+
+    static final int WIDTH = 0;
+    static final int HEIGHT = 1;
+    static final int AREA = 2;
+    static final int PERIMETER = 3;
+    static final int SOLIDITY = 4;
+    static final int VERTICES = 5;
+    static final int RATIO = 6;
+    static final String[] NAMES = {"width", "height", "area", "perimeter", "solidity", "vertices", "ratio"};
+
+    // GRIP's order to start with
+    private final int[] order = {WIDTH, HEIGHT, AREA, PERIMETER, SOLIDITY, VERTICES, RATIO};
+    private final long[] nanos = new long[NAMES.length];
+    private final long[] evaluated = new long[NAMES.length];
+    private final long[] rejected = new long[NAMES.length];
+    private final double[] rank = new double[NAMES.length];
+    private int sinceReorder;
+    private volatile long reorders;
+
+    private final MatOfInt hull = new MatOfInt();
+    private final MatOfPoint mopHull = new MatOfPoint();
+    private final MatOfPoint2f curve = new MatOfPoint2f();
+    private int[] points = new int[64];
+    private int[] hullIndices = new int[32];
+    private int[] hullPoints = new int[64];
+
+    // the contour being checked
+    private Rect bb;
+    private double area;
+    private boolean hasArea;
+
+    // the bounds of the current call
+    private double minArea;
+    private double minPerimeter;
+    private double minWidth;
+    private double maxWidth;
+    private double minHeight;
+    private double maxHeight;
+    private double[] solidity;
+    private double maxVertexCount;
+    private double minVertexCount;
+    private double minRatio;
+    private double maxRatio;
+
+    /**
+     * Filters out contours that do not meet certain criteria, with the same
+     * parameters as GRIP's filterContours.
+     */
+    public void filter(List<MatOfPoint> inputContours, double minArea, double minPerimeter, double minWidth,
+            double maxWidth, double minHeight, double maxHeight, double[] solidity, double maxVertexCount,
+            double minVertexCount, double minRatio, double maxRatio, List<MatOfPoint> output) {
+        this.minArea = minArea;
+        this.minPerimeter = minPerimeter;
+        this.minWidth = minWidth;
+        this.maxWidth = maxWidth;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.solidity = solidity;
+        this.maxVertexCount = maxVertexCount;
+        this.minVertexCount = minVertexCount;
+        this.minRatio = minRatio;
+        this.maxRatio = maxRatio;
+        output.clear();
+        for (int i = 0; i < inputContours.size(); i++) {
+            MatOfPoint contour = inputContours.get(i);
+            bb = null;
+            hasArea = false;
+            boolean kept = true;
+            for (int check : order) {
+                long start = System.nanoTime();
+                boolean passed = passes(check, contour);
+                nanos[check] += System.nanoTime() - start;
+                evaluated[check]++;
+                if (!passed) {
+                    rejected[check]++;
+                    kept = false;
+                    break;
+                }
+            }
+            if (kept) {
+                output.add(contour);
+            }
+            if (++sinceReorder >= REORDER_INTERVAL) {
+                reorder();
+            }
+        }
+    }
+
+    private boolean passes(int check, MatOfPoint contour) {
+        switch (check) {
+            case WIDTH:
+                Rect box = box(contour);
+                return !(box.width < minWidth || box.width > maxWidth);
+            case HEIGHT:
+                box = box(contour);
+                return !(box.height < minHeight || box.height > maxHeight);
+            case AREA:
+                return !(area(contour) < minArea);
+            case PERIMETER:
+                if (minPerimeter <= 0) {
+                    // a length is never negative
+                    return true;
+                }
+                contour.convertTo(curve, CvType.CV_32F);
+                return !(Imgproc.arcLength(curve, true) < minPerimeter);
+            case SOLIDITY:
+                double solid = 100 * area(contour) / hullArea(contour);
+                return !(solid < solidity[0] || solid > solidity[1]);
+            case VERTICES:
+                return !(contour.rows() < minVertexCount || contour.rows() > maxVertexCount);
+            case RATIO:
+            default:
+                box = box(contour);
+                double ratio = box.width / (double) box.height;
+                return !(ratio < minRatio || ratio > maxRatio);
+        }
+    }
+
+    private Rect box(MatOfPoint contour) {
+        if (bb == null) {
+            bb = Imgproc.boundingRect(contour);
+        }
+        return bb;
+    }
+
+    private double area(MatOfPoint contour) {
+        if (!hasArea) {
+            area = Imgproc.contourArea(contour);
+            hasArea = true;
+        }
+        return area;
+    }
+
+    /**
+     * Area of the convex hull, built from the contour's own points in hull
+     * order as GRIP builds it.
+     */
+    private double hullArea(MatOfPoint contour) {
+        Imgproc.convexHull(contour, hull);
+        int size = contour.rows() * 2;
+        if (points.length < size) {
+            points = new int[Math.max(size, points.length * 2)];
+        }
+        contour.get(0, 0, points);
+        int count = hull.rows();
+        if (hullIndices.length < count) {
+            hullIndices = new int[Math.max(count, hullIndices.length * 2)];
+            hullPoints = new int[hullIndices.length * 2];
+        }
+        hull.get(0, 0, hullIndices);
+        for (int j = 0; j < count; j++) {
+            hullPoints[j * 2] = points[hullIndices[j] * 2];
+            hullPoints[j * 2 + 1] = points[hullIndices[j] * 2 + 1];
+        }
+        mopHull.create(count, 1, CvType.CV_32SC2);
+        mopHull.put(0, 0, hullPoints);
+        return Imgproc.contourArea(mopHull);
+    }
+
+    /**
+     * Sorts the checks by time per rejection and halves the statistics.
+     * Checks that haven't run since the last reorder keep their rank, and
+     * those that never ran go first so they get measured.
+     */
+    private void reorder() {
+        sinceReorder = 0;
+        for (int check = 0; check < NAMES.length; check++) {
+            if (evaluated[check] > 0) {
+                double cost = (double) nanos[check] / evaluated[check];
+                double rejection = (double) rejected[check] / evaluated[check];
+                rank[check] = cost / Math.max(rejection, 1e-3);
+            }
+            nanos[check] /= 2;
+            evaluated[check] /= 2;
+            rejected[check] /= 2;
+        }
+        // seven entries, insertion sort; ties keep their place
+        for (int i = 1; i < order.length; i++) {
+            int check = order[i];
+            int j = i - 1;
+            while (j >= 0 && rank[order[j]] > rank[check]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = check;
+        }
+        reorders++;
+    }
+
+    /** How many times the checks have been reordered. */
+    public long reorders() {
+        return reorders;
+    }
+
+    /**
+     * The current order of the checks, for logging.
+     */
+    public String order() {
+        StringBuilder text = new StringBuilder();
+        for (int check : order) {
+            text.append(text.length() == 0 ? "" : ",").append(NAMES[check]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.opencv.core.Mat;
+
+/**
+ * Checks how much a pipeline allocates per frame against a budget, and
+ * fails if it's over.
+ *
+ * <p>Synthetic frames from {@link SyntheticTargetGenerator}, at distances
+ * from 2 to 18 feet, are run through the pipeline and through the work the
+ * listener in {@link Main} does on a frame, {@link Main#selectTarget}:
+ * pairing the tapes, estimating the target and ranking, without the
+ * NetworkTables writes. After a warm up
+ * that lets every buffer reach its size and every stage be seen,
+ * {@link AllocationMeter} counts the bytes allocated by each process()
+ * call, each listener call and each stage marked by {@link VisionEvents}. The mean and worst frame of each are
+ * printed, and the exit status is 1 if the worst frame of the process()
+ * call, the listener or any stage given with {@code --stage} is over its
+ * budget, so a build can run this as a check.
+ *
+ * <p>Usage: {@code java -cp <jar> AllocationBudget <pipeline> [--detection d]
+ * [--frames n] [--warmup n] [--decoys n] [--noise sigma] [--seed n]
+ * [--process bytes] [--listener bytes] [--stage name=bytes]...}. A budget
+ * left out isn't checked.
+ */
+public final class AllocationBudget {
+    private static final int MIN_DISTANCE = 24;
+    private static final int MAX_DISTANCE = 216;
+    private static final double MAX_YAW = Math.toRadians(30);
+    private static final String PROCESS = "process";
+    private static final String LISTENER = "listener";
+
+    private AllocationBudget() {
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) {
+        if (args.length < 1) {
+            System.err.println("usage: AllocationBudget <pipeline> [--detection d] [--frames n] [--warmup n]"
+                    + " [--decoys n] [--noise sigma] [--seed n] [--process bytes] [--listener bytes]"
+                    + " [--stage name=bytes]...");
+            System.exit(2);
+        }
+        TargetPipeline pipeline = PipelineSelector.create(args[0]);
+        if (pipeline == null) {
+            System.err.println("unknown pipeline '" + args[0] + "'");
+            System.exit(2);
+        }
+        int frames = 200;
+        int warmup = 50;
+        int decoys = 2;
+        double noise = 0;
+        long seed = 2019;
+        Map<String, Long> budgets = new LinkedHashMap<>();
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--detection":
+                    DetectionBackend detection = DetectionBackend.get(args[i + 1]);
+                    if (detection == null) {
+                        System.err.println("unknown detection '" + args[i + 1] + "'");
+                        System.exit(2);
+                    }
+                    pipeline.setDetection(detection);
+                    break;
+                case "--frames": frames = Integer.parseInt(args[i + 1]); break;
+                case "--warmup": warmup = Integer.parseInt(args[i + 1]); break;
+                case "--decoys": decoys = Integer.parseInt(args[i + 1]); break;
+                case "--noise": noise = Double.parseDouble(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                case "--process": budgets.put(PROCESS, Long.parseLong(args[i + 1])); break;
+                case "--listener": budgets.put(LISTENER, Long.parseLong(args[i + 1])); break;
+                case "--stage":
+                    int equals = args[i + 1].lastIndexOf('=');
+                    if (equals < 1) {
+                        System.err.println("--stage needs name=bytes, not '" + args[i + 1] + "'");
+                        System.exit(2);
+                    }
+                    budgets.put(args[i + 1].substring(0, equals), Long.parseLong(args[i + 1].substring(equals + 1)));
+                    break;
+                default:
+                    System.err.println("unknown option '" + args[i] + "'");
+                    System.exit(2);
+            }
+        }
+
+        // render up front so rendering isn't counted
+        SyntheticTargetGenerator generator = new SyntheticTargetGenerator(pipeline.params(), seed);
+        generator.setNoise(noise);
+        generator.setDecoys(decoys);
+        Random random = new Random(seed);
+        Mat[] scenes = new Mat[16];
+        SyntheticTargetGenerator.Scene scene = new SyntheticTargetGenerator.Scene();
+        for (int i = 0; i < scenes.length; i++) {
+            double distance = MIN_DISTANCE + (MAX_DISTANCE - MIN_DISTANCE) * i / (scenes.length - 1.0);
+            double halfView = distance * Math.tan(Main.CAMERA_VIEW_ANGLE_HORIZONTAL / 2);
+            double reach = Main.distanceBetweenTapeCentersInches / 2 + Main.BB_WIDTH;
+            scene.distanceInches = distance;
+            scene.offsetInches = (random.nextDouble() * 2 - 1) * Math.max(0, halfView - reach) * 0.8;
+            scene.heightInches = (random.nextDouble() * 2 - 1) * distance * 0.15;
+            scene.yawRadians = (random.nextDouble() * 2 - 1) * MAX_YAW;
+            scenes[i] = new Mat();
+            generator.render(scene, scenes[i]);
+        }
+
+        TargetRanker ranker = new TargetRanker();
+        TargetCandidate selected = new TargetCandidate();
+        AllocationMeter.start();
+        for (int i = 0; i < warmup; i++) {
+            frame(pipeline, scenes[i % scenes.length], ranker, selected);
+        }
+        AllocationMeter.reset();
+        for (int i = 0; i < frames; i++) {
+            frame(pipeline, scenes[i % scenes.length], ranker, selected);
+            AllocationMeter.endFrame();
+        }
+        AllocationMeter.stop();
+
+        boolean over = false;
+        System.out.println("stage,per frame,bytes mean,bytes max,budget");
+        for (int i = 0; i < AllocationMeter.stageCount(); i++) {
+            String name = AllocationMeter.stageName(i);
+            Long budget = budgets.get(name);
+            long max = AllocationMeter.maxBytes(i);
+            boolean stageOver = budget != null && max > budget;
+            over |= stageOver;
+            System.out.printf("%s,%.1f,%.0f,%d,%s%s%n", name, AllocationMeter.meanSpans(i),
+                    AllocationMeter.meanBytes(i), max, budget == null ? "" : budget, stageOver ? ",OVER" : "");
+        }
+        for (String name : budgets.keySet()) {
+            if (AllocationMeter.indexOf(name) < 0) {
+                System.err.println("no stage '" + name + "' ran, check the budget's name");
+                over = true;
+            }
+        }
+        if (over) {
+            System.err.println("allocation budget exceeded");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * One frame through the pipeline and the listener's work on it.
+     */
+    private static void frame(TargetPipeline pipeline, Mat source, TargetRanker ranker, TargetCandidate selected) {
+        VisionEvents.nextFrame();
+        AllocationMeter.begin(PROCESS);
+        pipeline.process(source);
+        AllocationMeter.end();
+
+        AllocationMeter.begin(LISTENER);
+        VisionEvents.Publish publishEvent = VisionEvents.publish();
+        Main.selectTarget(pipeline, ranker, selected);
+        ranker.packed();
+        VisionEvents.end(publishEvent, ranker.count());
+        AllocationMeter.end();
+    }
+}
@@ -0,0 +1,186 @@
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts the bytes the vision loop allocates, per stage and per frame.
+ *
+ * <p>A test mode for {@link AllocationBudget}: once started on a thread,
+ * every {@link VisionEvents} stage that thread runs, and every span the
+ * caller marks with {@link #begin(String)} and {@link #end()}, is charged
+ * the bytes the thread allocated in between, read from the JVM's per
+ * thread allocation counter. Spans may nest; an outer span includes its
+ * inner ones. What reading the counter allocates itself is measured when
+ * starting and taken off every span. Work handed to other threads isn't
+ * counted.
+ *
+ * <p>Nothing is read while the meter is stopped, and once every stage has
+ * been seen the meter allocates nothing itself.
+ */
+public final class AllocationMeter {
+    static final int MAX_STAGES = 64;
+    static final int MAX_DEPTH = 16;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static volatile Thread owner;
+    private static long ownerId;
+    private static long overhead;
+    private static long reads;
+
+    private static final Map<String, Integer> stages = new HashMap<>();
+    private static final String[] names = new String[MAX_STAGES];
+    private static final long[] frameBytes = new long[MAX_STAGES];
+    private static final long[] totalBytes = new long[MAX_STAGES];
+    private static final long[] maxBytes = new long[MAX_STAGES];
+    private static final long[] spans = new long[MAX_STAGES];
+    private static final int[] stack = new int[MAX_DEPTH];
+    private static final long[] startBytes = new long[MAX_DEPTH];
+    private static final long[] startReads = new long[MAX_DEPTH];
+    private static int depth;
+    private static int frames;
+
+    private AllocationMeter() {
+    }
+
+    /**
+     * Starts counting on the calling thread, from scratch.
+     */
+    public static void start() {
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        ownerId = Thread.currentThread().getId();
+        stages.clear();
+        depth = 0;
+        frames = 0;
+        // the counter may allocate when read; keep the smallest of several tries
+        overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 100; i++) {
+            long first = THREADS.getThreadAllocatedBytes(ownerId);
+            long second = THREADS.getThreadAllocatedBytes(ownerId);
+            overhead = Math.min(overhead, second - first);
+        }
+        owner = Thread.currentThread();
+    }
+
+    /**
+     * Zeroes the counts but keeps the stages seen so far, so a warm up can
+     * register them without what registering allocates being counted.
+     */
+    public static void reset() {
+        frames = 0;
+        for (int i = 0; i < stages.size(); i++) {
+            frameBytes[i] = 0;
+            totalBytes[i] = 0;
+            maxBytes[i] = 0;
+            spans[i] = 0;
+        }
+    }
+
+    public static void stop() {
+        owner = null;
+    }
+
+    /** Whether the calling thread is being counted. */
+    public static boolean isActive() {
+        return owner == Thread.currentThread();
+    }
+
+    private static long read() {
+        reads++;
+        return THREADS.getThreadAllocatedBytes(ownerId);
+    }
+
+    /**
+     * Starts charging the calling thread's allocations to stage.
+     */
+    public static void begin(String stage) {
+        if (owner != Thread.currentThread() || depth == MAX_DEPTH) {
+            return;
+        }
+        Integer index = stages.get(stage);
+        if (index == null) {
+            if (stages.size() == MAX_STAGES) {
+                return;
+            }
+            index = stages.size();
+            stages.put(stage, index);
+            names[index] = stage;
+            totalBytes[index] = 0;
+            maxBytes[index] = 0;
+            spans[index] = 0;
+            frameBytes[index] = 0;
+        }
+        stack[depth] = index;
+        startReads[depth] = reads;
+        startBytes[depth] = read();
+        depth++;
+    }
+
+    /**
+     * Ends the innermost span started with {@link #begin(String)}.
+     */
+    public static void end() {
+        if (owner != Thread.currentThread() || depth == 0) {
+            return;
+        }
+        long now = read();
+        depth--;
+        int index = stack[depth];
+        // every read since begin, this one included, may have allocated
+        long bytes = now - startBytes[depth] - overhead * (reads - startReads[depth]);
+        frameBytes[index] += Math.max(0, bytes);
+        spans[index]++;
+    }
+
+    /**
+     * Closes a frame: the bytes each stage allocated in it count towards its
+     * maximum and mean.
+     */
+    public static void endFrame() {
+        if (owner != Thread.currentThread()) {
+            return;
+        }
+        frames++;
+        for (int i = 0; i < stages.size(); i++) {
+            totalBytes[i] += frameBytes[i];
+            maxBytes[i] = Math.max(maxBytes[i], frameBytes[i]);
+            frameBytes[i] = 0;
+        }
+    }
+
+    /** Frames closed since start. */
+    public static int frames() {
+        return frames;
+    }
+
+    /** Stages seen since start, in the order they were first seen. */
+    public static int stageCount() {
+        return stages.size();
+    }
+
+    public static String stageName(int index) {
+        return names[index];
+    }
+
+    /** The most one frame allocated in the stage. */
+    public static long maxBytes(int index) {
+        return maxBytes[index];
+    }
+
+    public static double meanBytes(int index) {
+        return frames == 0 ? 0 : (double) totalBytes[index] / frames;
+    }
+
+    /** Spans of the stage per frame, on average. */
+    public static double meanSpans(int index) {
+        return frames == 0 ? 0 : (double) spans[index] / frames;
+    }
+
+    /**
+     * The index of stage, or -1 if it hasn't been seen.
+     */
+    public static int indexOf(String stage) {
+        Integer index = stages.get(stage);
+        return index == null ? -1 : index;
+    }
+}
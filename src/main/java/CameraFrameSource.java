@@ -0,0 +1,40 @@
+import edu.wpi.cscore.CvSink;
+import edu.wpi.cscore.VideoSource;
+import edu.wpi.first.cameraserver.CameraServer;
+
+import org.opencv.core.Mat;
+
+/**
+ * Frames of a cscore camera, through the {@link CvSink} CameraServer keeps
+ * for it. That sink is shared by everything that asks CameraServer for the
+ * camera's video, so only one thread should grab from a camera at a time.
+ */
+public class CameraFrameSource implements FrameSource {
+    private final VideoSource camera;
+    private final CvSink sink;
+
+    public CameraFrameSource(VideoSource camera) {
+        this.camera = camera;
+        sink = CameraServer.getInstance().getVideo(camera);
+    }
+
+    @Override
+    public long grabFrame(Mat image, double timeoutSeconds) {
+        return sink.grabFrame(image, timeoutSeconds);
+    }
+
+    /**
+     * Forces cscore to close the device and open it again, which is what
+     * unplugging and replugging it would do.
+     */
+    @Override
+    public void reconnect() {
+        camera.setConnectionStrategy(VideoSource.ConnectionStrategy.kForceClose);
+        camera.setConnectionStrategy(VideoSource.ConnectionStrategy.kKeepOpen);
+    }
+
+    @Override
+    public String getName() {
+        return camera.getName();
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.opencv.core.Mat;
+
+/**
+ * Unplugs a simulated camera a few times under a {@link CameraSupervisor}
+ * and reports how quickly each outage was noticed and recovered from.
+ *
+ * <p>The camera delivers a synthetic target frame at 30 fps through the
+ * given pipeline. For each outage the report shows how long after the
+ * unplug the stall callback ran, which is how long stale results would
+ * have stayed up, how long vision was blind in total, and how long the
+ * reconnect that worked took.
+ *
+ * <p>Usage: {@code java -cp <jar> CameraOutageSimulation [pipeline] [--timeout ms]}
+ */
+public final class CameraOutageSimulation {
+    private static final long[][] OUTAGES = {{2000, 300}, {5000, 1500}, {9000, 4000}};
+    private static final long TAIL_MILLIS = 3000;
+
+    private CameraOutageSimulation() {
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) throws InterruptedException {
+        String name = PipelineSelector.DEFAULT_PIPELINE;
+        long timeout = 500;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--timeout") && i + 1 < args.length) {
+                timeout = Long.parseLong(args[++i]);
+            } else {
+                name = args[i];
+            }
+        }
+        TargetPipeline pipeline = PipelineSelector.create(name);
+        if (pipeline == null) {
+            System.err.println("unknown pipeline '" + name + "'");
+            return;
+        }
+
+        Mat image = new Mat();
+        new SyntheticTargetGenerator(pipeline.params(), 2019)
+                .render(new SyntheticTargetGenerator.Scene(72, 6, 0, 0), image);
+        SimulatedFrameSource source = new SimulatedFrameSource(image, 30);
+        for (long[] outage : OUTAGES) {
+            source.addOutage(outage[0], outage[1]);
+        }
+
+        List<Long> stalls = Collections.synchronizedList(new ArrayList<>());
+        List<long[]> recoveries = Collections.synchronizedList(new ArrayList<>());
+        int[] frames = new int[1];
+        CameraSupervisor<TargetPipeline> supervisor = new CameraSupervisor<>(source, pipeline, p -> frames[0]++);
+        supervisor.setTimeout(timeout);
+        supervisor.setOnStall(() -> stalls.add(source.millis()));
+        supervisor.setOnRecover(() -> recoveries.add(new long[] {source.millis(),
+                supervisor.lastOutageMillis(), supervisor.lastReconnectMillis(),
+                supervisor.lastReconnectAttempts()}));
+        supervisor.start();
+
+        long[] last = OUTAGES[OUTAGES.length - 1];
+        Thread.sleep(last[0] + last[1] + TAIL_MILLIS);
+        supervisor.interrupt();
+        supervisor.join(2000);
+
+        System.out.printf("timeout %d ms, %d frames processed%n", timeout, frames[0]);
+        System.out.println("outage at ms,length ms,noticed after ms,blind ms,reconnect ms,attempts");
+        for (int i = 0; i < OUTAGES.length; i++) {
+            long[] outage = OUTAGES[i];
+            long until = i + 1 < OUTAGES.length ? OUTAGES[i + 1][0] : Long.MAX_VALUE;
+            String noticed = "never";
+            for (long stall : stalls) {
+                if (stall >= outage[0] && stall < until) {
+                    noticed = Long.toString(stall - outage[0]);
+                    break;
+                }
+            }
+            long[] recovery = null;
+            for (long[] each : recoveries) {
+                if (each[0] >= outage[0] && each[0] < until) {
+                    recovery = each;
+                    break;
+                }
+            }
+            if (recovery != null) {
+                System.out.printf("%d,%d,%s,%d,%d,%d%n", outage[0], outage[1], noticed,
+                        recovery[1], recovery[2], recovery[3]);
+            } else {
+                System.out.printf("%d,%d,%s,not recovered,,%n", outage[0], outage[1], noticed);
+            }
+        }
+        System.out.printf("%d outages, %d ms blind in total, longest %d ms%n", supervisor.outages(),
+                supervisor.totalOutageMillis(), supervisor.maxOutageMillis());
+    }
+}
@@ -0,0 +1,288 @@
+import java.util.concurrent.locks.LockSupport;
+
+import edu.wpi.first.vision.VisionPipeline;
+import edu.wpi.first.vision.VisionRunner;
+
+import org.opencv.core.Mat;
+
+/**
+ * Runs the vision loop on a frame source and watches it for stalls.
+ *
+ * <p>This takes the place of {@link edu.wpi.first.vision.VisionThread}. When
+ * no frame has arrived for the timeout the camera counts as lost: the stall
+ * callback runs right away so stale results can be withdrawn, and the
+ * source is reconnected with a backoff starting at {@link #MIN_BACKOFF_MILLIS}
+ * and doubling up to {@link #MAX_BACKOFF_MILLIS}. The frame buffer and the
+ * pipeline are kept across outages, so the first frame after a reconnect is
+ * processed without allocating anything new.
+ *
+ * <p>Each outage is measured from the last good frame to the first good frame
+ * after it, and the reconnect time from the reconnect attempt that worked to
+ * that frame.
+ *
+ * <p>While the robot doesn't need vision the supervisor can be put into idle:
+ * after {@link #IDLE_DELAY_MILLIS}, so a short disable doesn't count, it
+ * parks between heartbeat frames instead of grabbing and processing every
+ * frame, which leaves the camera streaming but the CPU mostly asleep.
+ * Leaving idle unparks the thread, so the next frame the camera delivers is
+ * processed, and the time from {@link #setIdle(boolean) setIdle(false)} to
+ * the end of that frame is kept as the wake time.
+ */
+public class CameraSupervisor<P extends VisionPipeline> extends Thread {
+    static final long MIN_BACKOFF_MILLIS = 100;
+    static final long MAX_BACKOFF_MILLIS = 2000;
+    static final long IDLE_DELAY_MILLIS = 2000;
+
+    private final FrameSource source;
+    private final P pipeline;
+    private final VisionRunner.Listener<? super P> listener;
+    private final Mat frame = new Mat();
+    private volatile long timeoutMillis = 500;
+    private volatile Runnable onStall = () -> { };
+    private volatile Runnable onRecover = () -> { };
+    private volatile long heartbeatNanos;
+    private volatile boolean idleRequested;
+    private volatile long idleRequestedNanos;
+    private volatile long wakeNanos;
+
+    private volatile boolean connected;
+    private volatile long frames;
+    private volatile long frameNanos;
+    private volatile int outages;
+    private volatile long totalOutageMillis;
+    private volatile long maxOutageMillis;
+    private volatile long lastOutageMillis;
+    private volatile long lastReconnectMillis;
+    private volatile int lastReconnectAttempts;
+    private volatile boolean idle;
+    private volatile int wakes;
+    private volatile long lastWakeMicros;
+    private volatile long maxWakeMicros;
+
+    public CameraSupervisor(FrameSource source, P pipeline, VisionRunner.Listener<? super P> listener) {
+        this.source = source;
+        this.pipeline = pipeline;
+        this.listener = listener;
+        setName("CameraSupervisor");
+        setDaemon(true);
+    }
+
+    /**
+     * Sets how long without a frame counts as the camera being lost.
+     */
+    public void setTimeout(long millis) {
+        timeoutMillis = millis;
+    }
+
+    /**
+     * Sets what runs on the vision thread when the camera is lost.
+     */
+    public void setOnStall(Runnable onStall) {
+        this.onStall = onStall;
+    }
+
+    /**
+     * Sets what runs on the vision thread when the first frame after an outage
+     * arrives, before it is processed.
+     */
+    public void setOnRecover(Runnable onRecover) {
+        this.onRecover = onRecover;
+    }
+
+    /**
+     * Sets how many frames a second are processed while idle, 0 to never
+     * go idle.
+     */
+    public void setIdleRate(double fps) {
+        heartbeatNanos = fps <= 0 ? 0 : (long) (1e9 / fps);
+    }
+
+    /**
+     * Asks for idle, or full rate, which takes effect from the next frame.
+     * Safe to call from any thread.
+     */
+    public void setIdle(boolean idle) {
+        if (idle == idleRequested) {
+            return;
+        }
+        if (idle) {
+            idleRequestedNanos = System.nanoTime();
+        } else {
+            wakeNanos = System.nanoTime();
+        }
+        idleRequested = idle;
+        LockSupport.unpark(this);
+    }
+
+    /** Whether only heartbeat frames are being processed. */
+    public boolean isIdle() {
+        return idle;
+    }
+
+    /** Times the supervisor came back from idle. */
+    public int wakes() {
+        return wakes;
+    }
+
+    /**
+     * From {@link #setIdle(boolean) setIdle(false)} to the end of the first
+     * frame processed at full rate, for the last wake.
+     */
+    public long lastWakeMicros() {
+        return lastWakeMicros;
+    }
+
+    public long maxWakeMicros() {
+        return maxWakeMicros;
+    }
+
+    /** Whether frames are arriving. */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Frames handed to the pipeline so far.
+     */
+    public long frames() {
+        return frames;
+    }
+
+    /**
+     * The frame being processed. Only valid in the listener, and not to be
+     * written to.
+     */
+    public Mat frame() {
+        return frame;
+    }
+
+    /**
+     * {@link System#nanoTime()} when the frame being processed was grabbed,
+     * so the listener can tell how long the frame took end to end.
+     */
+    public long frameNanos() {
+        return frameNanos;
+    }
+
+    /** Outages since start. */
+    public int outages() {
+        return outages;
+    }
+
+    public long totalOutageMillis() {
+        return totalOutageMillis;
+    }
+
+    public long maxOutageMillis() {
+        return maxOutageMillis;
+    }
+
+    public long lastOutageMillis() {
+        return lastOutageMillis;
+    }
+
+    /** Time from the reconnect that worked to the first frame, for the last outage. */
+    public long lastReconnectMillis() {
+        return lastReconnectMillis;
+    }
+
+    public int lastReconnectAttempts() {
+        return lastReconnectAttempts;
+    }
+
+    @Override
+    public void run() {
+        long lastFrameNanos = System.nanoTime();
+        long lastAttemptNanos = 0;
+        long nextAttemptNanos = 0;
+        long backoffMillis = MIN_BACKOFF_MILLIS;
+        int attempts = 0;
+        boolean lost = false;
+        long lastProcessedNanos = 0;
+        while (!Thread.interrupted()) {
+            long heartbeat = heartbeatNanos;
+            boolean idleNow = idleRequested && heartbeat > 0
+                    && System.nanoTime() - idleRequestedNanos >= IDLE_DELAY_MILLIS * 1_000_000;
+            if (idleNow && !lost) {
+                if (!idle) {
+                    idle = true;
+                    System.out.println("camera '" + source.getName() + "': idle, "
+                            + heartbeat / 1_000_000 + " ms between frames");
+                }
+                long sleep = lastProcessedNanos + heartbeat - System.nanoTime();
+                if (sleep > 0) {
+                    // setIdle(false) unparks straight away
+                    LockSupport.parkNanos(this, sleep);
+                    continue;
+                }
+            }
+            long timeout = timeoutMillis;
+            // wake up in time to notice a stall, and for the next reconnect attempt
+            long wait = lost ? Math.min(timeout, backoffMillis) : timeout;
+            long start = System.nanoTime();
+            long frameTime = source.grabFrame(frame, wait / 1000.0);
+            long now = System.nanoTime();
+            if (frameTime == 0 && now - start < wait * 1_000_000) {
+                // a closed device fails straight away; don't spin on it
+                try {
+                    Thread.sleep(wait - (now - start) / 1_000_000);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                now = System.nanoTime();
+            }
+
+            if (frameTime != 0) {
+                if (lost) {
+                    long outage = (now - lastFrameNanos) / 1_000_000;
+                    lastOutageMillis = outage;
+                    totalOutageMillis += outage;
+                    maxOutageMillis = Math.max(maxOutageMillis, outage);
+                    lastReconnectMillis = attempts == 0 ? 0 : (now - lastAttemptNanos) / 1_000_000;
+                    lastReconnectAttempts = attempts;
+                    System.out.println("camera '" + source.getName() + "': back after " + outage
+                            + " ms, " + attempts + " reconnect attempts, last took " + lastReconnectMillis
+                            + " ms; " + outages + " outages, " + totalOutageMillis + " ms blind in total");
+                    lost = false;
+                    onRecover.run();
+                }
+                connected = true;
+                lastFrameNanos = now;
+                frames++;
+                frameNanos = now;
+                VisionEvents.nextFrame();
+                pipeline.process(frame);
+                listener.copyPipelineOutputs(pipeline);
+                lastProcessedNanos = now;
+                if (idle && !idleNow) {
+                    long wake = (System.nanoTime() - wakeNanos) / 1000;
+                    lastWakeMicros = wake;
+                    maxWakeMicros = Math.max(maxWakeMicros, wake);
+                    wakes++;
+                    idle = false;
+                    System.out.printf("camera '%s': full rate %.1f ms after wake, %.1f ms at most%n",
+                            source.getName(), wake / 1000.0, maxWakeMicros / 1000.0);
+                }
+                continue;
+            }
+
+            if (!lost && now - lastFrameNanos >= timeout * 1_000_000) {
+                lost = true;
+                connected = false;
+                outages++;
+                attempts = 0;
+                backoffMillis = MIN_BACKOFF_MILLIS;
+                nextAttemptNanos = now;
+                System.err.println("camera '" + source.getName() + "': no frame for " + timeout + " ms");
+                onStall.run();
+            }
+            if (lost && now >= nextAttemptNanos) {
+                source.reconnect();
+                attempts++;
+                lastAttemptNanos = now;
+                nextAttemptNanos = now + backoffMillis * 1_000_000;
+                backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+}
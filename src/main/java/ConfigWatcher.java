@@ -0,0 +1,74 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the configuration file and calls back whenever it is rewritten.
+ *
+ * <p>The rPi dashboard and most editors save by writing several times in a
+ * row, so events are collected until the file has been quiet for
+ * {@link #SETTLE_MILLIS} before the callback runs. An exception thrown by
+ * the callback is printed and watching goes on.
+ */
+public class ConfigWatcher extends Thread {
+    private static final long SETTLE_MILLIS = 250;
+
+    private final Path file;
+    private final Runnable onChange;
+
+    public ConfigWatcher(String configFile, Runnable onChange) {
+        this.file = FileSystems.getDefault().getPath(configFile).toAbsolutePath();
+        this.onChange = onChange;
+        setName("ConfigWatcher");
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        Path dir = file.getParent();
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            dir.register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            System.out.println("Watching '" + file + "' for changes");
+            for (;;) {
+                WatchKey key = watcher.take();
+                boolean changed = drain(key);
+                // wait for the writer to finish before reading the file back
+                while (key.reset() && (key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drain(key);
+                }
+                if (changed) {
+                    // a bad edit mustn't end watching for the next one
+                    try {
+                        onChange.run();
+                    } catch (RuntimeException ex) {
+                        System.err.println("could not apply '" + file + "': " + ex);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            System.err.println("could not watch '" + file + "': " + ex);
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            return;
+        }
+    }
+
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed = true;
+            } else if (file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
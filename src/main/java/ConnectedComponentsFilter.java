@@ -0,0 +1,163 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Detection stage built on {@link Imgproc#connectedComponentsWithStats}.
+ *
+ * <p>A single pass over the mask gives the bounding box, pixel area and
+ * centroid of every blob. Width, height, area, ratio and fill checks run on
+ * those numbers alone; only the blobs that survive get traced and hulled so
+ * the perimeter, solidity and vertex checks of {@code filterContours} can be
+ * applied to them. Survivors are written out as convex hulls, the same shape
+ * the contour path produces.
+ */
+public class ConnectedComponentsFilter {
+    /**
+     * Stats of one blob that passed every filter.
+     */
+    public static class Blob {
+        public final Rect box = new Rect();
+        public double area;
+        public double centroidX;
+        public double centroidY;
+        /** Pixel area over bounding box area, 0 to 1. */
+        public double fillRatio;
+    }
+
+    private final Mat labels = new Mat();
+    private final Mat stats = new Mat();
+    private final Mat centroids = new Mat();
+    private final Mat blobMask = new Mat();
+    private final Mat hierarchy = new Mat();
+    private final MatOfInt hull = new MatOfInt();
+    private final List<MatOfPoint> traced = new ArrayList<>();
+    private final ArrayList<Blob> blobs = new ArrayList<>();
+    private int blobCount;
+    private int[] statsBuffer = new int[0];
+    private double[] centroidBuffer = new double[0];
+
+    /**
+     * The blobs accepted by the last call to {@link #filter}, in output order.
+     */
+    public List<Blob> blobs() {
+        return blobs.subList(0, blobCount);
+    }
+
+    /**
+     * Finds blobs in a binary mask and keeps the ones that meet the same
+     * criteria as GRIP's filterContours step.
+     */
+    public void filter(Mat mask, double minArea, double minPerimeter, double minWidth,
+            double maxWidth, double minHeight, double maxHeight, double[] solidity,
+            double maxVertexCount, double minVertexCount, double minRatio, double maxRatio,
+            double minFill, List<MatOfPoint> output) {
+        output.clear();
+        blobCount = 0;
+        int count = Imgproc.connectedComponentsWithStats(mask, labels, stats, centroids, 8, CvType.CV_32S);
+        if (count <= 1) {
+            return;
+        }
+
+        // copy the stats out with one call each instead of one per blob
+        int statsSize = count * Imgproc.CC_STAT_MAX;
+        if (statsBuffer.length < statsSize) {
+            statsBuffer = new int[statsSize];
+            centroidBuffer = new double[count * 2];
+        }
+        stats.get(0, 0, statsBuffer);
+        centroids.get(0, 0, centroidBuffer);
+
+        // label 0 is the background
+        for (int label = 1; label < count; label++) {
+            int row = label * Imgproc.CC_STAT_MAX;
+            int x = statsBuffer[row + Imgproc.CC_STAT_LEFT];
+            int y = statsBuffer[row + Imgproc.CC_STAT_TOP];
+            int width = statsBuffer[row + Imgproc.CC_STAT_WIDTH];
+            int height = statsBuffer[row + Imgproc.CC_STAT_HEIGHT];
+            int area = statsBuffer[row + Imgproc.CC_STAT_AREA];
+            if (width < minWidth || width > maxWidth) continue;
+            if (height < minHeight || height > maxHeight) continue;
+            if (area < minArea) continue;
+            final double ratio = width / (double) height;
+            if (ratio < minRatio || ratio > maxRatio) continue;
+            final double fill = area / ((double) width * height);
+            if (fill < minFill) continue;
+
+            MatOfPoint mopHull = traceHull(label, x, y, width, height);
+            if (mopHull == null) continue;
+            final double hullArea = Imgproc.contourArea(mopHull);
+            // pixel counts include the boundary, so a filled rectangle slightly exceeds its polygon
+            final double solid = hullArea > 0 ? Math.min(100, 100 * area / hullArea) : 100;
+            if (solid < solidity[0] || solid > solidity[1]) continue;
+            if (mopHull.rows() < minVertexCount || mopHull.rows() > maxVertexCount) continue;
+            if (minPerimeter > 0
+                    && Imgproc.arcLength(new MatOfPoint2f(mopHull.toArray()), true) < minPerimeter) continue;
+
+            Blob blob = nextBlob();
+            blob.box.x = x;
+            blob.box.y = y;
+            blob.box.width = width;
+            blob.box.height = height;
+            blob.area = area;
+            blob.centroidX = centroidBuffer[label * 2];
+            blob.centroidY = centroidBuffer[label * 2 + 1];
+            blob.fillRatio = fill;
+            output.add(mopHull);
+        }
+    }
+
+    private Blob nextBlob() {
+        if (blobCount == blobs.size()) {
+            blobs.add(new Blob());
+        }
+        return blobs.get(blobCount++);
+    }
+
+    /**
+     * Traces the outline of one label inside its bounding box and returns its convex hull.
+     */
+    private MatOfPoint traceHull(int label, int x, int y, int width, int height) {
+        Mat roi = labels.submat(y, y + height, x, x + width);
+        Core.compare(roi, new Scalar(label), blobMask, Core.CMP_EQ);
+        roi.release();
+        traced.clear();
+        Imgproc.findContours(blobMask, traced, hierarchy, Imgproc.RETR_EXTERNAL,
+                Imgproc.CHAIN_APPROX_SIMPLE, new Point(x, y));
+        if (traced.isEmpty()) {
+            return null;
+        }
+        MatOfPoint contour = traced.get(0);
+        for (int i = 1; i < traced.size(); i++) {
+            if (traced.get(i).rows() > contour.rows()) {
+                contour = traced.get(i);
+            }
+        }
+        Imgproc.convexHull(contour, hull);
+        MatOfPoint mopHull = new MatOfPoint();
+        mopHull.create((int) hull.size().height, 1, CvType.CV_32SC2);
+        int[] indices = hull.toArray();
+        int[] points = new int[contour.rows() * 2];
+        contour.get(0, 0, points);
+        int[] hullPoints = new int[indices.length * 2];
+        for (int j = 0; j < indices.length; j++) {
+            hullPoints[j * 2] = points[indices[j] * 2];
+            hullPoints[j * 2 + 1] = points[indices[j] * 2 + 1];
+        }
+        mopHull.put(0, 0, hullPoints);
+        for (MatOfPoint mop : traced) {
+            mop.release();
+        }
+        return mopHull;
+    }
+}
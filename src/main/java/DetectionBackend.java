@@ -0,0 +1,36 @@
+/**
+ * How a pipeline turns its threshold mask into candidate tapes.
+ */
+public enum DetectionBackend {
+    /** GRIP's findContours, convexHulls and filterContours steps. */
+    CONTOURS("contours"),
+    /** One connectedComponentsWithStats pass, hulls only for blobs that pass the cheap filters. */
+    CONNECTED_COMPONENTS("components"),
+    /** Pure Java threshold and run-length blob extraction on the blurred frame bytes. */
+    RUN_LENGTH("runlength"),
+    /** Blur, threshold and run-length extraction over horizontal strips in parallel, stitched at the seams. */
+    STRIPS("strips");
+
+    private final String label;
+
+    DetectionBackend(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Returns the backend with the given config label, or null if there is none.
+     */
+    public static DetectionBackend get(String label) {
+        for (DetectionBackend backend : values()) {
+            if (backend.label.equalsIgnoreCase(label)) {
+                return backend;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
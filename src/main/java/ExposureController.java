@@ -0,0 +1,203 @@
+import edu.wpi.cscore.VideoCamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/**
+ * Adjusts the exposure of the vision camera to keep the threshold mask
+ * clean.
+ *
+ * <p>At a bright venue much of the background passes the HSV threshold, and
+ * every blob of it becomes a contour to hull and filter. The tape, lit by
+ * the ring light, stays in the mask at far lower exposures than the
+ * background does. So after every processed frame the controller looks at
+ * how much of the mask is set, how many contours were found and whether a
+ * target was, and:
+ * <ul>
+ * <li>with more of the mask or more contours than allowed, steps the
+ * exposure down;
+ * <li>with no target for {@link #LOST_DECISIONS} decisions in a row, goes
+ * back to the last exposure a target was seen at, then steps up from there
+ * to search, up to the maximum;
+ * <li>otherwise holds.
+ * </ul>
+ * When stepping down loses the target, the exposure it was last seen at
+ * becomes a floor for {@link #FLOOR_DECISIONS} decisions, so the two rules
+ * don't take turns. Brightness is only moved once the exposure is pinned:
+ * down from the configured value at the floor or the minimum with the mask
+ * still flooded, and back up to it otherwise.
+ *
+ * <p>A decision is made every {@link #SETTLE_FRAMES} + 1 frames, so every
+ * change has {@link #SETTLE_FRAMES} frames to show up before the next one,
+ * and the mask is only counted when a decision is due. Exposure and
+ * brightness are in the camera's percent scale.
+ */
+public class ExposureController {
+    static final int SETTLE_FRAMES = 3;
+    static final int LOST_DECISIONS = 3;
+    static final int FLOOR_DECISIONS = 100;
+    static final double STEP = 1.25;
+    static final int BRIGHTNESS_STEP = 5;
+
+    private final VideoCamera camera;
+    private final int baseBrightness;
+    private volatile int minExposure = 1;
+    private volatile int maxExposure = 50;
+    private volatile double maxMaskRatio = 0.02;
+    private volatile int maxContours = 30;
+
+    private int exposure;
+    private int brightness;
+    private int settle;
+    private int lostDecisions;
+    private int foundExposure;
+    private int floorExposure;
+    private int floorDecisions;
+    private boolean steppedDown;
+    private boolean stopped;
+
+    private volatile double lastMaskRatio;
+    private volatile int lastContours;
+    private volatile long decisions;
+    private volatile long adjustments;
+
+    /**
+     * Takes over the exposure and brightness of camera, starting from
+     * exposure and brightness. Brightness is never raised above where it
+     * started.
+     */
+    public ExposureController(VideoCamera camera, int exposure, int brightness) {
+        this.camera = camera;
+        baseBrightness = brightness;
+        this.brightness = brightness;
+        this.exposure = exposure;
+        foundExposure = exposure;
+        camera.setExposureManual(exposure);
+        camera.setBrightness(brightness);
+        settle = SETTLE_FRAMES;
+    }
+
+    /**
+     * Sets the exposure range and how much of the mask, and how many
+     * contours, count as flooded.
+     */
+    public void setLimits(int minExposure, int maxExposure, double maxMaskRatio, int maxContours) {
+        this.minExposure = Math.max(0, minExposure);
+        this.maxExposure = Math.max(this.minExposure, maxExposure);
+        this.maxMaskRatio = maxMaskRatio;
+        this.maxContours = maxContours;
+    }
+
+    /**
+     * Called on the vision thread after every processed frame.
+     * @param mask the threshold mask of the frame, or null or empty if the
+     *     detection backend doesn't build one
+     * @param contours contours found in the mask, before any filtering
+     * @param found whether a target was found
+     */
+    public synchronized void update(Mat mask, int contours, boolean found) {
+        if (stopped) {
+            return;
+        }
+        if (settle > 0) {
+            settle--;
+            return;
+        }
+        settle = SETTLE_FRAMES;
+        decisions++;
+        double ratio = mask == null || mask.empty() ? 0 : (double) Core.countNonZero(mask) / mask.total();
+        lastMaskRatio = ratio;
+        lastContours = contours;
+        if (floorDecisions > 0 && --floorDecisions == 0) {
+            floorExposure = 0;
+        }
+
+        if (found) {
+            lostDecisions = 0;
+            foundExposure = exposure;
+            steppedDown = false;
+        } else {
+            lostDecisions++;
+            if (steppedDown) {
+                // too dark for the tape, don't come back down here for a while
+                floorExposure = foundExposure;
+                floorDecisions = FLOOR_DECISIONS;
+                steppedDown = false;
+            }
+        }
+
+        int min = Math.max(minExposure, floorExposure);
+        int max = maxExposure;
+        boolean flooded = ratio > maxMaskRatio || contours > maxContours;
+        if (exposure < min || exposure > max) {
+            // back above the floor, or the limits changed
+            set(Math.max(min, Math.min(max, exposure)), brightness);
+        } else if (flooded) {
+            if (exposure > min) {
+                set(Math.max(min, Math.min(exposure - 1, (int) (exposure / STEP))), brightness);
+                steppedDown = true;
+            } else if (brightness > 0) {
+                set(exposure, Math.max(0, brightness - BRIGHTNESS_STEP));
+            }
+        } else if (!found && lostDecisions >= LOST_DECISIONS) {
+            if (brightness < baseBrightness) {
+                set(exposure, Math.min(baseBrightness, brightness + BRIGHTNESS_STEP));
+            } else if (exposure < foundExposure) {
+                set(Math.min(max, foundExposure), brightness);
+            } else if (exposure < max) {
+                set(Math.min(max, Math.max(exposure + 1, (int) Math.ceil(exposure * STEP))), brightness);
+            }
+            lostDecisions = 0;
+        } else if (brightness < baseBrightness && ratio < maxMaskRatio / 4) {
+            set(exposure, Math.min(baseBrightness, brightness + BRIGHTNESS_STEP));
+        }
+    }
+
+    private void set(int exposure, int brightness) {
+        if (exposure != this.exposure) {
+            camera.setExposureManual(exposure);
+            this.exposure = exposure;
+        }
+        if (brightness != this.brightness) {
+            camera.setBrightness(brightness);
+            this.brightness = brightness;
+        }
+        adjustments++;
+    }
+
+    /**
+     * Leaves the camera alone from now on. Once this returns no call to
+     * {@link #update(Mat, int, boolean)} is changing it, so its settings
+     * can be put back.
+     */
+    public synchronized void stop() {
+        stopped = true;
+    }
+
+    public int exposure() {
+        return exposure;
+    }
+
+    public int brightness() {
+        return brightness;
+    }
+
+    /** Fraction of the mask set at the last decision. */
+    public double lastMaskRatio() {
+        return lastMaskRatio;
+    }
+
+    /** Contours found at the last decision. */
+    public int lastContours() {
+        return lastContours;
+    }
+
+    public long decisions() {
+        return decisions;
+    }
+
+    /** Changes made to exposure or brightness since start. */
+    public long adjustments() {
+        return adjustments;
+    }
+}
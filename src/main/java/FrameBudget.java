@@ -0,0 +1,221 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.opencv.core.MatOfPoint;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Keeps one frame of a pipeline within a time budget.
+ *
+ * <p>A frame full of lights can give thousands of contours, and the hull and
+ * filter steps then take hundreds of milliseconds. Each pipeline keeps one of
+ * these and starts it with the frame. After finding contours it caps them at
+ * the largest {@link #configure maxContours} by area, and between the
+ * stages after that it checks the clock. Past the deadline the pipeline
+ * either stops where it is and keeps the last frame's result, which is then
+ * stale, or carries on with what it has, which is degraded: the hulls stop
+ * at the deadline and only those done so far are filtered. A frame only goes
+ * stale up to {@link #MAX_STALE_RUN} times in a row, after that the
+ * pipeline always finishes with what it has, so a result that no longer
+ * changes can't hide a scene that does.
+ *
+ * <p>The budget and cap are the same for every pipeline, and how often each
+ * stage gave way is counted over all of them.
+ */
+public class FrameBudget {
+    static final int CAP = 0;
+    static final int DETECT = 1;
+    static final int HULLS = 2;
+    static final int FILTER = 3;
+    static final String[] STAGES = {"cap", "detect", "hulls", "filter"};
+    static final int MAX_STALE_RUN = 3;
+
+    private static volatile long budgetNanos;
+    private static volatile int maxContours;
+    private static final AtomicLong frames = new AtomicLong();
+    private static final AtomicLong degradedFrames = new AtomicLong();
+    private static final AtomicLongArray degraded = new AtomicLongArray(STAGES.length);
+    private static final AtomicLongArray stale = new AtomicLongArray(STAGES.length);
+
+    private long deadline = Long.MAX_VALUE;
+    private int stage = -1;
+    private boolean isStale;
+    private int staleRun;
+    private double[] areas = new double[256];
+    private double[] sorted = new double[256];
+    private int[] picked = new int[64];
+    private final ArrayList<MatOfPoint> kept = new ArrayList<>();
+
+    /**
+     * Sets the budget of every pipeline from the next frame.
+     * @param millis from the start of process() to the result, 0 for none
+     * @param maxContours contours kept after finding them, 0 for all
+     */
+    public static void configure(double millis, int maxContours) {
+        budgetNanos = (long) (millis * 1e6);
+        FrameBudget.maxContours = maxContours;
+    }
+
+    /** Frames started since start. */
+    public static long frames() {
+        return frames.get();
+    }
+
+    /** Frames whose result was degraded or stale. */
+    public static long degradedFrames() {
+        return degradedFrames.get();
+    }
+
+    /** Times the stage went on with less than everything. */
+    public static long degraded(int stage) {
+        return degraded.get(stage);
+    }
+
+    /** Times the frame stopped before the stage and kept the last result. */
+    public static long stale(int stage) {
+        return stale.get(stage);
+    }
+
+    /**
+     * Starts the clock for a frame.
+     */
+    public void start() {
+        staleRun = isStale ? staleRun + 1 : 0;
+        long budget = budgetNanos;
+        deadline = budget > 0 ? System.nanoTime() + budget : Long.MAX_VALUE;
+        stage = -1;
+        isStale = false;
+        frames.incrementAndGet();
+    }
+
+    /** Whether the frame is past its deadline. */
+    public boolean expired() {
+        return deadline != Long.MAX_VALUE && System.nanoTime() > deadline;
+    }
+
+    /**
+     * Checks the clock before stage.
+     * @return true if the pipeline should stop here and keep the last result
+     */
+    public boolean stopBefore(int stage) {
+        if (!expired()) {
+            return false;
+        }
+        if (staleRun >= MAX_STALE_RUN) {
+            degrade(stage);
+            return false;
+        }
+        if (this.stage < 0) {
+            degradedFrames.incrementAndGet();
+        }
+        this.stage = stage;
+        isStale = true;
+        FrameBudget.stale.incrementAndGet(stage);
+        return true;
+    }
+
+    /**
+     * Records that stage went on with less than everything.
+     */
+    public void degrade(int stage) {
+        if (this.stage < 0) {
+            degradedFrames.incrementAndGet();
+        }
+        if (!isStale) {
+            this.stage = stage;
+        }
+        degraded.incrementAndGet(stage);
+    }
+
+    /**
+     * Keeps the largest contours by area, largest first, if there are more
+     * than the cap. Otherwise leaves contours as they are.
+     */
+    public void cap(List<MatOfPoint> contours) {
+        int max = maxContours;
+        int count = contours.size();
+        if (max <= 0 || count <= max) {
+            return;
+        }
+        if (areas.length < count) {
+            areas = new double[Math.max(count, areas.length * 2)];
+            sorted = new double[areas.length];
+        }
+        if (picked.length < max) {
+            picked = new int[max];
+        }
+        for (int i = 0; i < count; i++) {
+            areas[i] = Imgproc.contourArea(contours.get(i));
+        }
+        System.arraycopy(areas, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        double threshold = sorted[count - max];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (areas[i] > threshold) {
+                picked[n++] = i;
+            }
+        }
+        for (int i = 0; i < count && n < max; i++) {
+            if (areas[i] == threshold) {
+                picked[n++] = i;
+            }
+        }
+        // a few hundred at most, insertion sort, largest first
+        for (int i = 1; i < n; i++) {
+            int index = picked[i];
+            int j = i - 1;
+            while (j >= 0 && areas[picked[j]] < areas[index]) {
+                picked[j + 1] = picked[j];
+                j--;
+            }
+            picked[j + 1] = index;
+        }
+        kept.clear();
+        for (int i = 0; i < n; i++) {
+            kept.add(contours.get(picked[i]));
+        }
+        contours.clear();
+        contours.addAll(kept);
+        kept.clear();
+        degrade(CAP);
+    }
+
+    /** Whether the last frame's result is missing something, or stale. */
+    public boolean isDegraded() {
+        return stage >= 0;
+    }
+
+    /** Whether the last frame kept the result of the one before. */
+    public boolean isStale() {
+        return isStale;
+    }
+
+    /**
+     * The stage the last frame gave way at, or the stage it stopped before
+     * if it is stale; -1 if it was complete.
+     */
+    public int stage() {
+        return stage;
+    }
+
+    /**
+     * Counts since start, for logging.
+     */
+    public static String summary() {
+        StringBuilder text = new StringBuilder();
+        text.append(degradedFrames()).append(" of ").append(frames()).append(" frames over budget");
+        for (int i = 0; i < STAGES.length; i++) {
+            long d = degraded(i);
+            long s = stale(i);
+            if (d + s > 0) {
+                text.append(", ").append(STAGES[i]).append(' ').append(d).append(" degraded ").append(s)
+                        .append(" stale");
+            }
+        }
+        return text.toString();
+    }
+}
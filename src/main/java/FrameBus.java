@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Publishes images to other processes on the Pi through a memory-mapped
+ * ring of slots, one image per slot.
+ *
+ * <p>The file, best kept on tmpfs such as /dev/shm, starts with a
+ * {@link #HEADER_SIZE} byte header: magic, version, slot count, slot size
+ * and the sequence number of the newest complete image. Each slot starts
+ * with a {@link #SLOT_HEADER_SIZE} byte header: sequence number, grab time,
+ * camera frame number, width, height, bytes per row, {@link #BGR} or
+ * {@link #GRAY} and data length, followed by the pixels, rows top to bottom
+ * without padding. Everything is little endian; the offsets are the
+ * constants below and src/main/c/frame_bus_reader.c spells them out for C.
+ *
+ * <p>The writer never waits for readers. Publishing sets the slot's sequence
+ * to 0, writes the image, then sets the slot's sequence and the newest
+ * sequence to the new number. A reader takes the newest sequence, reads the
+ * slot in place if its sequence matches, and checks it again when done: if
+ * it changed, the writer lapped the reader and the image is to be dropped.
+ * {@link FrameBusReader} does this for Java readers.
+ *
+ * <p>Grab times are {@link System#nanoTime()}, which on Linux is
+ * CLOCK_MONOTONIC, so readers in any language can work out the age of an
+ * image. Publishing copies the Mat into the slot once through a buffer
+ * kept for it, since OpenCV's Java API can't copy into a ByteBuffer
+ * directly; readers copy nothing.
+ */
+public class FrameBus implements AutoCloseable {
+    static final long MAGIC = 0x454d415246565344L; // "DSVFRAME" in file order
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int SLOT_HEADER_SIZE = 64;
+
+    // header
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_VERSION = 8;
+    static final int HEADER_SLOTS = 12;
+    static final int HEADER_SLOT_SIZE = 16;
+    static final int HEADER_LATEST = 24;
+
+    // slot header
+    static final int SLOT_SEQUENCE = 0;
+    static final int SLOT_TIME_NANOS = 8;
+    static final int SLOT_FRAME = 16;
+    static final int SLOT_WIDTH = 24;
+    static final int SLOT_HEIGHT = 28;
+    static final int SLOT_STRIDE = 32;
+    static final int SLOT_FORMAT = 36;
+    static final int SLOT_LENGTH = 40;
+
+    /** 8 bit blue, green, red per pixel, as the camera frames. */
+    public static final int BGR = 1;
+    /** 8 bit per pixel, as the threshold masks. */
+    public static final int GRAY = 2;
+
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final int slotSize;
+    private final ByteBuffer[] pixels;
+    private final byte[] copy;
+    private long sequence;
+    private long dropped;
+
+    private FrameBus(FileChannel channel, MappedByteBuffer buffer, int slots, int slotSize) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slots = slots;
+        this.slotSize = slotSize;
+        pixels = new ByteBuffer[slots];
+        for (int i = 0; i < slots; i++) {
+            ByteBuffer view = buffer.duplicate();
+            int at = HEADER_SIZE + i * slotSize + SLOT_HEADER_SIZE;
+            view.position(at).limit(at + slotSize - SLOT_HEADER_SIZE);
+            pixels[i] = view.slice();
+        }
+        // Mat.get wants whole pixels, so a multiple of 3 bytes
+        copy = new byte[(slotSize - SLOT_HEADER_SIZE) / 3 * 3];
+    }
+
+    /**
+     * Creates the bus at file, replacing whatever was there, with slots
+     * slots of up to maxBytes of pixels each. The old file is unlinked
+     * rather than truncated, so readers still mapping it don't fault; they
+     * stop seeing new images until they reopen.
+     * @throws IllegalArgumentException if the ring wouldn't fit in one mapping
+     */
+    public static FrameBus create(String file, int slots, int maxBytes) throws IOException {
+        // keep the pixels of every slot cache line aligned
+        int slotSize = (SLOT_HEADER_SIZE + maxBytes + 63) / 64 * 64;
+        long size = HEADER_SIZE + (long) slots * slotSize;
+        if (slots < 2 || maxBytes < 1 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("a frame bus needs 2 or more slots in under 2 GB, not " + slots
+                    + " slots of " + maxBytes + " bytes");
+        }
+        Files.deleteIfExists(Paths.get(file));
+        FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(HEADER_VERSION, VERSION);
+            buffer.putInt(HEADER_SLOTS, slots);
+            buffer.putInt(HEADER_SLOT_SIZE, slotSize);
+            LONGS.setRelease(buffer, HEADER_LATEST, 0L);
+            // the magic goes last so a reader never sees a half written header
+            LONGS.setRelease(buffer, HEADER_MAGIC, MAGIC);
+            return new FrameBus(channel, buffer, slots, slotSize);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Publishes image, which has to be 8 bit with 1 or 3 channels. Only to be
+     * called from one thread.
+     * @param timeNanos {@link System#nanoTime()} when the frame was grabbed
+     * @param frame camera frame number, shared by a frame and its mask
+     * @return false if the image doesn't fit a slot or isn't 8 bit
+     */
+    public boolean publish(Mat image, long timeNanos, long frame) {
+        int format = image.type() == CvType.CV_8UC3 ? BGR : image.type() == CvType.CV_8UC1 ? GRAY : 0;
+        long length = image.total() * image.elemSize();
+        if (format == 0 || length > copy.length || !image.isContinuous()) {
+            dropped++;
+            return false;
+        }
+        int slot = (int) (sequence % slots);
+        int at = HEADER_SIZE + slot * slotSize;
+        sequence++;
+
+        LONGS.setOpaque(buffer, at + SLOT_SEQUENCE, 0L);
+        VarHandle.storeStoreFence();
+        image.get(0, 0, copy);
+        buffer.putLong(at + SLOT_TIME_NANOS, timeNanos);
+        buffer.putLong(at + SLOT_FRAME, frame);
+        buffer.putInt(at + SLOT_WIDTH, image.cols());
+        buffer.putInt(at + SLOT_HEIGHT, image.rows());
+        buffer.putInt(at + SLOT_STRIDE, (int) (image.cols() * image.elemSize()));
+        buffer.putInt(at + SLOT_FORMAT, format);
+        buffer.putInt(at + SLOT_LENGTH, (int) length);
+        pixels[slot].clear();
+        pixels[slot].put(copy, 0, (int) length);
+        LONGS.setRelease(buffer, at + SLOT_SEQUENCE, sequence);
+        LONGS.setRelease(buffer, HEADER_LATEST, sequence);
+        return true;
+    }
+
+    /** Images published so far. */
+    public long published() {
+        return sequence;
+    }
+
+    /** Images that couldn't be published because of their size or type. */
+    public long dropped() {
+        return dropped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads images published on a {@link FrameBus}, in place.
+ *
+ * <p>{@link #next(Frame)} points a {@link Frame} at the newest image without
+ * copying it. The writer doesn't wait for readers, so once done with the
+ * pixels a reader has to ask {@link Frame#isValid()} whether the slot was
+ * overwritten meanwhile, and throw away what it worked out if it was. Images
+ * published while a reader was busy are skipped, not queued.
+ *
+ * <p>Usage, also run by {@link #main(String...)} to report what a bus carries:
+ * <pre>
+ * FrameBusReader reader = FrameBusReader.open("/dev/shm/vision-frames");
+ * FrameBusReader.Frame frame = reader.newFrame();
+ * while (true) {
+ *     if (reader.next(frame)) {
+ *         ByteBuffer pixels = frame.pixels(); // frame.height() rows of frame.stride() bytes
+ *         ...
+ *         if (!frame.isValid()) {
+ *             // overwritten while reading, drop the result
+ *         }
+ *     }
+ * }
+ * </pre>
+ */
+public class FrameBusReader implements AutoCloseable {
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final int slotSize;
+    private final ByteBuffer[] pixels;
+    private long last;
+
+    /**
+     * A view of one slot of the bus. Reused by {@link #next(Frame)}.
+     */
+    public class Frame {
+        private int at;
+        private long sequence;
+        private long timeNanos;
+        private long frame;
+        private int width;
+        private int height;
+        private int stride;
+        private int format;
+        private ByteBuffer data;
+
+        /** Publishing order, counting from 1. */
+        public long sequence() {
+            return sequence;
+        }
+
+        /** {@link System#nanoTime()} of the vision process, CLOCK_MONOTONIC, when the frame was grabbed. */
+        public long timeNanos() {
+            return timeNanos;
+        }
+
+        /** Camera frame number, shared by a frame and its mask. */
+        public long frame() {
+            return frame;
+        }
+
+        public int width() {
+            return width;
+        }
+
+        public int height() {
+            return height;
+        }
+
+        /** Bytes per row. */
+        public int stride() {
+            return stride;
+        }
+
+        /** {@link FrameBus#BGR} or {@link FrameBus#GRAY}. */
+        public int format() {
+            return format;
+        }
+
+        /**
+         * The pixels, in the mapping itself, positioned at the first byte and
+         * limited to the image.
+         */
+        public ByteBuffer pixels() {
+            return data;
+        }
+
+        /**
+         * Whether the slot still holds this image, so what was read from it
+         * is whole.
+         */
+        public boolean isValid() {
+            VarHandle.loadLoadFence();
+            return (long) FrameBus.LONGS.getAcquire(buffer, at + FrameBus.SLOT_SEQUENCE) == sequence;
+        }
+    }
+
+    private FrameBusReader(FileChannel channel, MappedByteBuffer buffer, int slots, int slotSize) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slots = slots;
+        this.slotSize = slotSize;
+        pixels = new ByteBuffer[slots];
+        for (int i = 0; i < slots; i++) {
+            ByteBuffer view = buffer.duplicate();
+            int at = FrameBus.HEADER_SIZE + i * slotSize + FrameBus.SLOT_HEADER_SIZE;
+            view.position(at).limit(at + slotSize - FrameBus.SLOT_HEADER_SIZE);
+            pixels[i] = view.slice();
+        }
+    }
+
+    /**
+     * Maps the bus at file for reading.
+     * @throws IOException if file isn't a frame bus
+     */
+    public static FrameBusReader open(String file) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.capacity() < FrameBus.HEADER_SIZE
+                    || (long) FrameBus.LONGS.getAcquire(buffer, FrameBus.HEADER_MAGIC) != FrameBus.MAGIC
+                    || buffer.getInt(FrameBus.HEADER_VERSION) != FrameBus.VERSION) {
+                throw new IOException("'" + file + "' is not a version " + FrameBus.VERSION + " frame bus");
+            }
+            int slots = buffer.getInt(FrameBus.HEADER_SLOTS);
+            int slotSize = buffer.getInt(FrameBus.HEADER_SLOT_SIZE);
+            if (FrameBus.HEADER_SIZE + (long) slots * slotSize > buffer.capacity()) {
+                throw new IOException("'" + file + "' is shorter than its header says");
+            }
+            return new FrameBusReader(channel, buffer, slots, slotSize);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public Frame newFrame() {
+        return new Frame();
+    }
+
+    /**
+     * Sequence number of the newest image, 0 before the first one.
+     */
+    public long latest() {
+        return (long) FrameBus.LONGS.getAcquire(buffer, FrameBus.HEADER_LATEST);
+    }
+
+    /**
+     * Points out at the newest image if it's newer than the last one returned.
+     * @return false if there is no new image, or it was being overwritten
+     */
+    public boolean next(Frame out) {
+        long sequence = latest();
+        if (sequence == 0 || sequence == last) {
+            return false;
+        }
+        int slot = (int) ((sequence - 1) % slots);
+        int at = FrameBus.HEADER_SIZE + slot * slotSize;
+        if ((long) FrameBus.LONGS.getAcquire(buffer, at + FrameBus.SLOT_SEQUENCE) != sequence) {
+            return false;
+        }
+        out.at = at;
+        out.sequence = sequence;
+        out.timeNanos = buffer.getLong(at + FrameBus.SLOT_TIME_NANOS);
+        out.frame = buffer.getLong(at + FrameBus.SLOT_FRAME);
+        out.width = buffer.getInt(at + FrameBus.SLOT_WIDTH);
+        out.height = buffer.getInt(at + FrameBus.SLOT_HEIGHT);
+        out.stride = buffer.getInt(at + FrameBus.SLOT_STRIDE);
+        out.format = buffer.getInt(at + FrameBus.SLOT_FORMAT);
+        int length = buffer.getInt(at + FrameBus.SLOT_LENGTH);
+        if (!out.isValid() || length < 0 || length > slotSize - FrameBus.SLOT_HEADER_SIZE) {
+            return false;
+        }
+        out.data = pixels[slot];
+        out.data.clear().limit(length);
+        last = sequence;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Main. Reads a bus for a while and reports the rate, the age of the
+     * images when picked up, and how many were skipped or overwritten.
+     * Usage: {@code java -cp <jar> FrameBusReader <bus file> [seconds]}
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: FrameBusReader <bus file> [seconds]");
+            return;
+        }
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        try (FrameBusReader reader = open(args[0])) {
+            Frame frame = reader.newFrame();
+            long end = System.nanoTime() + seconds * 1_000_000_000L;
+            long first = 0;
+            long read = 0;
+            long torn = 0;
+            long ageNanos = 0;
+            long checksum = 0;
+            while (System.nanoTime() < end) {
+                if (!reader.next(frame)) {
+                    Thread.sleep(1);
+                    continue;
+                }
+                long age = System.nanoTime() - frame.timeNanos();
+                // touch every row, as a consumer would
+                ByteBuffer pixels = frame.pixels();
+                for (int i = 0; i < pixels.limit(); i += frame.stride()) {
+                    checksum += pixels.get(i);
+                }
+                if (!frame.isValid()) {
+                    torn++;
+                    continue;
+                }
+                if (first == 0) {
+                    first = frame.sequence();
+                }
+                read++;
+                ageNanos += age;
+            }
+            long published = reader.latest() - first + 1;
+            System.out.printf("%s: %dx%d %s, read %d of %d images (%.1f/s), %d overwritten while reading,"
+                    + " %.2f ms old on average (checksum %d)%n", args[0], frame.width(), frame.height(),
+                    frame.format() == FrameBus.BGR ? "BGR" : "gray", read, first == 0 ? 0 : published,
+                    (double) read / seconds, torn, read == 0 ? 0 : ageNanos / 1e6 / read, checksum);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+import org.opencv.core.Mat;
+
+/**
+ * Where the vision loop gets its frames from.
+ *
+ * <p>Shaped after {@link edu.wpi.cscore.CvSink} so a camera can be swapped
+ * for a simulated source in tests.
+ */
+public interface FrameSource {
+    /**
+     * Waits up to timeoutSeconds for the next frame and copies it into image.
+     * @return the frame time, or 0 on timeout or error
+     */
+    long grabFrame(Mat image, double timeoutSeconds);
+
+    /**
+     * Closes the device and opens it again.
+     */
+    void reconnect();
+
+    String getName();
+}
@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Receives the results of other coprocessors and fuses them with this one's.
+ *
+ * <p>The other coprocessors send their {@link ResultPacket}s here with
+ * {@link UdpResultSender}, their "udp results" pointed at this one. A
+ * daemon thread receives them, and the vision thread of this process offers
+ * its own results straight to {@link #offerLocal(ResultPacket)}. Either way
+ * the packet goes through a {@link ResultFuser} at once and the listener
+ * gets the fused result on the same thread, so fusing adds no waiting; the
+ * time from a packet arriving to the listener returning is kept as the
+ * added latency.
+ *
+ * <p>Run on its own it prints the fused results once a second and can pass
+ * them on, which is how fusion is tried out with several local processes,
+ * see {@link FusionSimulation}.
+ *
+ * <p>Usage: {@code java -cp <jar> FusionNode <port> [--window ms]
+ * [--max-age ms] [--mount host=forward,right]... [--send host:port]}
+ */
+public class FusionNode extends Thread {
+    /**
+     * Called with every fused result.
+     */
+    public interface Listener {
+        /**
+         * @param fused valid until the listener returns
+         */
+        void fused(FusionNode node, ResultPacket fused);
+    }
+
+    private final DatagramChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(ResultPacket.SIZE * 2);
+    private final ResultPacket received = new ResultPacket();
+    private final ResultPacket fused = new ResultPacket();
+    private final ResultPacket localFused = new ResultPacket();
+    private final ResultFuser fuser = new ResultFuser();
+    private volatile Listener listener = (node, result) -> { };
+
+    private volatile long packets;
+    private volatile long fusedCount;
+    private volatile long lastAddedNanos;
+    private volatile long maxAddedNanos;
+    private volatile long totalAddedNanos;
+
+    /**
+     * Binds to port on every interface. Call {@link #start()} to begin receiving.
+     */
+    public FusionNode(int port) throws IOException {
+        channel = DatagramChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(port));
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        setName("FusionNode");
+        setDaemon(true);
+    }
+
+    public ResultFuser fuser() {
+        return fuser;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Fuses a result of this process, as the source {@link ResultFuser#LOCAL}.
+     * The listener is called on the calling thread.
+     */
+    public void offerLocal(ResultPacket packet) {
+        long now = System.nanoTime();
+        synchronized (localFused) {
+            if (fuser.offer(ResultFuser.LOCAL, ResultFuser.LOCAL, packet, now, localFused)) {
+                publish(localFused, now);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.interrupted()) {
+            buffer.clear();
+            SocketAddress from;
+            try {
+                from = channel.receive(buffer);
+            } catch (IOException ex) {
+                if (!channel.isOpen()) {
+                    return;
+                }
+                continue;
+            }
+            long now = System.nanoTime();
+            buffer.flip();
+            if (from == null || !received.read(buffer)) {
+                continue;
+            }
+            packets++;
+            String host = from instanceof InetSocketAddress
+                    ? ((InetSocketAddress) from).getAddress().getHostAddress() : from.toString();
+            if (fuser.offer(from, host, received, now, fused)) {
+                publish(fused, now);
+            }
+        }
+    }
+
+    private void publish(ResultPacket result, long arrivalNanos) {
+        listener.fused(this, result);
+        long added = System.nanoTime() - arrivalNanos;
+        synchronized (this) {
+            lastAddedNanos = added;
+            maxAddedNanos = Math.max(maxAddedNanos, added);
+            totalAddedNanos += added;
+            fusedCount++;
+        }
+    }
+
+    /** Packets received from other coprocessors. */
+    public long packets() {
+        return packets;
+    }
+
+    /** Fused results handed to the listener. */
+    public long fusedCount() {
+        return fusedCount;
+    }
+
+    /** From the packet arriving to the listener returning, for the last fused result. */
+    public long lastAddedNanos() {
+        return lastAddedNanos;
+    }
+
+    public long maxAddedNanos() {
+        return maxAddedNanos;
+    }
+
+    public synchronized double meanAddedNanos() {
+        return fusedCount == 0 ? 0 : (double) totalAddedNanos / fusedCount;
+    }
+
+    /**
+     * Stops receiving and frees the port.
+     */
+    public void close() throws IOException {
+        interrupt();
+        channel.close();
+    }
+
+    /**
+     * The local port, for when 0 was asked for.
+     */
+    public int port() throws SocketException {
+        return channel.socket().getLocalPort();
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: FusionNode <port> [--window ms] [--max-age ms] [--mount host=forward,right]..."
+                    + " [--send host:port]");
+            return;
+        }
+        FusionNode node = new FusionNode(Integer.parseInt(args[0]));
+        double window = 20;
+        double maxAge = 100;
+        UdpResultSender sender = null;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--window": window = Double.parseDouble(args[i + 1]); break;
+                case "--max-age": maxAge = Double.parseDouble(args[i + 1]); break;
+                case "--mount":
+                    String[] mount = args[i + 1].split("[=,]");
+                    if (mount.length != 3) {
+                        System.err.println("--mount needs host=forward,right, not '" + args[i + 1] + "'");
+                        return;
+                    }
+                    node.fuser().setMount(mount[0], Double.parseDouble(mount[1]), Double.parseDouble(mount[2]));
+                    break;
+                case "--send":
+                    int colon = args[i + 1].lastIndexOf(':');
+                    sender = new UdpResultSender(args[i + 1].substring(0, colon),
+                            Integer.parseInt(args[i + 1].substring(colon + 1)));
+                    break;
+                default:
+                    System.err.println("unknown option '" + args[i] + "'");
+                    return;
+            }
+        }
+        node.fuser().setTiming(window, maxAge);
+        ResultPacket latest = new ResultPacket();
+        UdpResultSender forward = sender;
+        node.setListener((fusionNode, fused) -> {
+            if (forward != null) {
+                forward.send(fused);
+            }
+            synchronized (latest) {
+                latest.set(fused);
+            }
+        });
+        node.start();
+        System.out.println("fusing on port " + node.port());
+        long lastFused = 0;
+        for (;;) {
+            Thread.sleep(1000);
+            long count = node.fusedCount();
+            synchronized (latest) {
+                System.out.printf("%d fused/s from %d sources (%d now), %s, distance %.1f in, offset %.1f in,"
+                        + " confidence %.2f, spread %.1f in, added %.0f us mean %.0f us max%n",
+                        count - lastFused, node.fuser().sources(), node.fuser().lastSources(),
+                        latest.found() ? "found" : "no target", latest.distanceInches, latest.offsetInches,
+                        latest.confidence, node.fuser().lastSpreadInches(), node.meanAddedNanos() / 1000,
+                        node.maxAddedNanos() / 1000.0);
+            }
+            lastFused = count;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a {@link FusionNode} against several {@link SimulatedCoprocessor}
+ * processes on this machine and reports how well and how fast it fuses.
+ *
+ * <p>Each coprocessor is a separate JVM sending from its own loopback
+ * address, 127.0.0.2 and up, with its own mount, noise, confidence and
+ * latency; the noisier ones report a lower confidence, as a real pipeline
+ * would for a farther or more oblique view. The node is told the mounts
+ * and fuses in this process. Every fused result is compared with where the
+ * target really was at its capture time, and the report gives that error
+ * next to the error of each coprocessor on its own, which they print as
+ * they finish, along with the latency fusing added and the age of the
+ * fused results.
+ *
+ * <p>Usage: {@code java -cp <jar> FusionSimulation [--sources n]
+ * [--seconds n] [--fps n] [--window ms] [--max-age ms]}
+ */
+public final class FusionSimulation {
+    /** Forward and right of the robot's center, noise in inches, confidence, latency in ms. */
+    private static final double[][] COPROCESSORS = {
+        {12, 0, 1.0, 0.9, 25},
+        {-10, 8, 2.0, 0.6, 40},
+        {-10, -8, 3.0, 0.4, 35},
+        {6, 10, 1.5, 0.7, 30},
+    };
+
+    private FusionSimulation() {
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        int count = 3;
+        double seconds = 10;
+        double fps = 30;
+        double window = 20;
+        double maxAge = 100;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sources": count = Integer.parseInt(args[i + 1]); break;
+                case "--seconds": seconds = Double.parseDouble(args[i + 1]); break;
+                case "--fps": fps = Double.parseDouble(args[i + 1]); break;
+                case "--window": window = Double.parseDouble(args[i + 1]); break;
+                case "--max-age": maxAge = Double.parseDouble(args[i + 1]); break;
+                default:
+                    System.err.println("unknown option '" + args[i] + "'");
+                    return;
+            }
+        }
+        count = Math.max(1, Math.min(COPROCESSORS.length, count));
+
+        FusionNode node = new FusionNode(0);
+        node.fuser().setTiming(window, maxAge);
+        double[] truth = new double[2];
+        double[] errors = new double[3];
+        long[] ages = new long[1];
+        node.setListener((fusionNode, fused) -> {
+            if (!fused.found()) {
+                return;
+            }
+            SimulatedCoprocessor.truth(fused.captureNanos, truth);
+            double errorForward = fused.distanceInches - truth[0];
+            double errorRight = fused.offsetInches - truth[1];
+            errors[0] += errorForward * errorForward + errorRight * errorRight;
+            errors[1]++;
+            errors[2] += fusionNode.fuser().lastSources();
+            ages[0] += fused.ageMicros;
+        });
+        node.start();
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classPath = System.getProperty("java.class.path");
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double[] coprocessor = COPROCESSORS[i];
+            String address = "127.0.0." + (i + 2);
+            node.fuser().setMount(address, coprocessor[0], coprocessor[1]);
+            processes.add(new ProcessBuilder(java, "-cp", classPath, "SimulatedCoprocessor",
+                    "127.0.0.1:" + node.port(), "--bind", address, "--fps", Double.toString(fps),
+                    "--seconds", Double.toString(seconds), "--forward", Double.toString(coprocessor[0]),
+                    "--right", Double.toString(coprocessor[1]), "--noise", Double.toString(coprocessor[2]),
+                    "--confidence", Double.toString(coprocessor[3]), "--latency", Double.toString(coprocessor[4]),
+                    "--seed", Integer.toString(i + 1))
+                    .redirectErrorStream(true).start());
+        }
+        for (Process process : processes) {
+            process.waitFor();
+            // a few lines each, well within the pipe's buffer
+            System.out.print(new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+        }
+        node.close();
+        node.join();
+
+        double fused = errors[1];
+        System.out.printf("fused: %d packets in, %d results, %.2f sources per result, %d out of order%n",
+                node.packets(), node.fusedCount(), fused == 0 ? 0 : errors[2] / fused,
+                node.fuser().outOfOrder());
+        System.out.printf("fused: error %.2f in rms, age %.1f ms mean%n",
+                fused == 0 ? 0 : Math.sqrt(errors[0] / fused), fused == 0 ? 0 : ages[0] / fused / 1000);
+        System.out.printf("fusing added %.1f us mean, %.1f us max%n",
+                node.meanAddedNanos() / 1000, node.maxAddedNanos() / 1000.0);
+    }
+}
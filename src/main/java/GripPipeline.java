@@ -6,7 +6,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.HashMap;
-import edu.wpi.first.vision.VisionPipeline;
 
 import org.opencv.core.*;
 import org.opencv.core.Core.*;
@@ -20,9 +19,14 @@ import org.opencv.objdetect.*;
 *
 * <p>An OpenCV pipeline generated by GRIP.
 *
+* <p>GRIP generated a class per export, GripPipeline, GripPipelineMV and
+* GripPipelineOriginal, that differed only in their values. They are this one
+* class, constructed with the values of an export; see
+* {@link #defaultParams(String)}.
+*
 * @author GRIP
 */
-public class GripPipeline implements VisionPipeline {
+public class GripPipeline implements SharedFramePipeline {
 
 	//Outputs
 	private Mat blurOutput = new Mat();
@@ -31,51 +35,258 @@ public class GripPipeline implements VisionPipeline {
 	private ArrayList<MatOfPoint> convexHullsOutput = new ArrayList<MatOfPoint>();
 	private ArrayList<MatOfPoint> filterContoursOutput = new ArrayList<MatOfPoint>();
 
+	private volatile PipelineParams params;
+	private volatile DetectionBackend detection = DetectionBackend.CONTOURS;
+	private final AdaptiveContourFilter contourFilter = new AdaptiveContourFilter();
+	private final FrameBudget budget = new FrameBudget();
+	private final PipelineStats stats = new PipelineStats(budget, contourFilter);
+	private final ConnectedComponentsFilter connectedComponents = new ConnectedComponentsFilter();
+	private final RunLengthFilter runLength = new RunLengthFilter();
+	private StripParallelProcessor strips;
+
 	static {
 		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
 	}
 
+	/**
+	 * @param params the values to start with, e.g. those of an export from
+	 *     {@link #defaultParams(String)}
+	 */
+	public GripPipeline(PipelineParams params) {
+		this.params = params;
+	}
+
 	/**
 	 * This is the primary method that runs the entire pipeline and updates the outputs.
 	 */
 	@Override	public void process(Mat source0) {
+		DetectionBackend detection = this.detection;
+		PipelineParams params = this.params;
+		budget.start();
+
+		if (detection == DetectionBackend.STRIPS) {
+			// every step runs per strip, on the full frame
+			VisionEvents.Stage event = VisionEvents.stage("Strips");
+			stripProcessor().process(source0, params, filterContoursOutput);
+			VisionEvents.end(event, filterContoursOutput.size());
+			return;
+		}
+
 		// Step Blur0:
+		VisionEvents.Stage event = VisionEvents.stage("Blur0");
 		Mat blurInput = source0;
-		BlurType blurType = BlurType.get("Box Blur");
-		double blurRadius = 1.8018018018018012;
+		BlurType blurType = BlurType.get(params.blurType);
+		double blurRadius = params.blurRadius;
 		blur(blurInput, blurType, blurRadius, blurOutput);
+		VisionEvents.end(event, -1);
 
 		// Step HSV_Threshold0:
 		Mat hsvThresholdInput = blurOutput;
-		double[] hsvThresholdHue = {103.59712230215827, 180.0};
-		double[] hsvThresholdSaturation = {2.5709219497986515, 70.45488099416727};
-		double[] hsvThresholdValue = {210.97122302158274, 255.0};
-		hsvThreshold(hsvThresholdInput, hsvThresholdHue, hsvThresholdSaturation, hsvThresholdValue, hsvThresholdOutput);
+		double[] hsvThresholdHue = params.hsvThresholdHue;
+		double[] hsvThresholdSaturation = params.hsvThresholdSaturation;
+		double[] hsvThresholdValue = params.hsvThresholdValue;
+		if (detection != DetectionBackend.RUN_LENGTH) {
+			event = VisionEvents.stage("HSV_Threshold0");
+			hsvThreshold(hsvThresholdInput, hsvThresholdHue, hsvThresholdSaturation, hsvThresholdValue, hsvThresholdOutput);
+			VisionEvents.end(event, -1);
+		}
 
-		// Step Find_Contours0:
-		Mat findContoursInput = hsvThresholdOutput;
-		boolean findContoursExternalOnly = false;
-		findContours(findContoursInput, findContoursExternalOnly, findContoursOutput);
+		findTargets(detection, params, hsvThresholdInput);
+	}
 
-		// Step Convex_Hulls0:
-		ArrayList<MatOfPoint> convexHullsContours = findContoursOutput;
-		convexHulls(convexHullsContours, convexHullsOutput);
+	/**
+	 * Runs the pipeline on a frame whose blur and HSV conversion may be shared
+	 * with other pipelines. The shared Mats are read only here; blurOutput()
+	 * is not updated in this mode.
+	 */
+	@Override
+	public void process(SharedFrame frame) {
+		DetectionBackend detection = this.detection;
+		PipelineParams params = this.params;
+		budget.start();
+
+		if (detection == DetectionBackend.STRIPS) {
+			VisionEvents.Stage event = VisionEvents.stage("Strips");
+			stripProcessor().process(frame.source(), params, filterContoursOutput);
+			VisionEvents.end(event, filterContoursOutput.size());
+			return;
+		}
+
+		// Step Blur0, computed once per frame for every pipeline with the same blur:
+		VisionEvents.Stage event = VisionEvents.stage("Blur0");
+		Mat blurred = frame.blur(params.blurType, params.blurRadius);
+		VisionEvents.end(event, -1);
+
+		// Step HSV_Threshold0, the color conversion is shared the same way:
+		if (detection != DetectionBackend.RUN_LENGTH) {
+			event = VisionEvents.stage("HSV_Threshold0");
+			Mat hsv = frame.hsv(params.blurType, params.blurRadius);
+			double[] hue = params.hsvThresholdHue;
+			double[] sat = params.hsvThresholdSaturation;
+			double[] val = params.hsvThresholdValue;
+			Core.inRange(hsv, new Scalar(hue[0], sat[0], val[0]),
+				new Scalar(hue[1], sat[1], val[1]), hsvThresholdOutput);
+			VisionEvents.end(event, -1);
+		}
+
+		findTargets(detection, params, blurred);
+	}
+
+	private StripParallelProcessor stripProcessor() {
+		if (strips == null) {
+			strips = new StripParallelProcessor();
+		}
+		return strips;
+	}
+
+	/**
+	 * Runs the steps after HSV_Threshold0 for the selected detection backend.
+	 * @param hsvThresholdInput the blurred frame, read by the run length backend.
+	 */
+	private void findTargets(DetectionBackend detection, PipelineParams params, Mat hsvThresholdInput) {
+		double[] hsvThresholdHue = params.hsvThresholdHue;
+		double[] hsvThresholdSaturation = params.hsvThresholdSaturation;
+		double[] hsvThresholdValue = params.hsvThresholdValue;
+
+		// over budget already, the last result stands
+		if (budget.stopBefore(FrameBudget.DETECT)) {
+			return;
+		}
+
+		if (detection == DetectionBackend.CONTOURS) {
+			// Step Find_Contours0:
+			VisionEvents.Stage event = VisionEvents.stage("Find_Contours0");
+			Mat findContoursInput = hsvThresholdOutput;
+			boolean findContoursExternalOnly = params.findContoursExternalOnly;
+			findContours(findContoursInput, findContoursExternalOnly, findContoursOutput);
+			VisionEvents.end(event, findContoursOutput.size());
+			budget.cap(findContoursOutput);
+			if (budget.stopBefore(FrameBudget.HULLS)) {
+				return;
+			}
+
+			// Step Convex_Hulls0:
+			event = VisionEvents.stage("Convex_Hulls0");
+			ArrayList<MatOfPoint> convexHullsContours = findContoursOutput;
+			convexHulls(convexHullsContours, convexHullsOutput);
+			VisionEvents.end(event, convexHullsOutput.size());
+		}
 
 		// Step Filter_Contours0:
+		if (budget.stopBefore(FrameBudget.FILTER)) {
+			return;
+		}
+		VisionEvents.Stage filterEvent = VisionEvents.stage(detection == DetectionBackend.CONNECTED_COMPONENTS
+				? "Connected_Components" : detection == DetectionBackend.RUN_LENGTH ? "Run_Length" : "Filter_Contours0");
 		ArrayList<MatOfPoint> filterContoursContours = convexHullsOutput;
-		double filterContoursMinArea = 50.0;
-		double filterContoursMinPerimeter = 0.0;
-		double filterContoursMinWidth = 25.0;
-		double filterContoursMaxWidth = 200.0;
-		double filterContoursMinHeight = 50.0;
-		double filterContoursMaxHeight = 1000.0;
-		double[] filterContoursSolidity = {80.93525179856115, 100.0};
-		double filterContoursMaxVertices = 500000.0;
-		double filterContoursMinVertices = 0.0;
-		double filterContoursMinRatio = 0.0;
-		double filterContoursMaxRatio = 1000.0;
-		filterContours(filterContoursContours, filterContoursMinArea, filterContoursMinPerimeter, filterContoursMinWidth, filterContoursMaxWidth, filterContoursMinHeight, filterContoursMaxHeight, filterContoursSolidity, filterContoursMaxVertices, filterContoursMinVertices, filterContoursMinRatio, filterContoursMaxRatio, filterContoursOutput);
+		double filterContoursMinArea = params.filterContoursMinArea;
+		double filterContoursMinPerimeter = params.filterContoursMinPerimeter;
+		double filterContoursMinWidth = params.filterContoursMinWidth;
+		double filterContoursMaxWidth = params.filterContoursMaxWidth;
+		double filterContoursMinHeight = params.filterContoursMinHeight;
+		double filterContoursMaxHeight = params.filterContoursMaxHeight;
+		double[] filterContoursSolidity = params.filterContoursSolidity;
+		double filterContoursMaxVertices = params.filterContoursMaxVertices;
+		double filterContoursMinVertices = params.filterContoursMinVertices;
+		double filterContoursMinRatio = params.filterContoursMinRatio;
+		double filterContoursMaxRatio = params.filterContoursMaxRatio;
+		if (detection == DetectionBackend.CONNECTED_COMPONENTS) {
+			// blobs come straight from the threshold mask, the contour steps above are skipped
+			double connectedComponentsMinFill = params.connectedComponentsMinFill;
+			connectedComponents.filter(hsvThresholdOutput, filterContoursMinArea, filterContoursMinPerimeter, filterContoursMinWidth, filterContoursMaxWidth, filterContoursMinHeight, filterContoursMaxHeight, filterContoursSolidity, filterContoursMaxVertices, filterContoursMinVertices, filterContoursMinRatio, filterContoursMaxRatio, connectedComponentsMinFill, filterContoursOutput);
+		}
+		else if (detection == DetectionBackend.RUN_LENGTH) {
+			// thresholds the blurred frame itself, no HSV conversion or mask Mat
+			runLength.filter(hsvThresholdInput, hsvThresholdHue, hsvThresholdSaturation, hsvThresholdValue, filterContoursMinArea, filterContoursMinPerimeter, filterContoursMinWidth, filterContoursMaxWidth, filterContoursMinHeight, filterContoursMaxHeight, filterContoursSolidity, filterContoursMaxVertices, filterContoursMinVertices, filterContoursMinRatio, filterContoursMaxRatio, filterContoursOutput);
+		}
+		else {
+			contourFilter.filter(filterContoursContours, filterContoursMinArea, filterContoursMinPerimeter, filterContoursMinWidth, filterContoursMaxWidth, filterContoursMinHeight, filterContoursMaxHeight, filterContoursSolidity, filterContoursMaxVertices, filterContoursMinVertices, filterContoursMinRatio, filterContoursMaxRatio, filterContoursOutput);
+		}
+		VisionEvents.end(filterEvent, filterContoursOutput.size());
+	}
+
+	/**
+	 * The values GRIP generated an export with.
+	 * @param name the class GRIP generated for the export
+	 * @return a new PipelineParams holding the generated values, or null if the name is unknown.
+	 */
+	public static PipelineParams defaultParams(String name) {
+		PipelineParams params = new PipelineParams();
+		switch (name) {
+			case "GripPipeline":
+				params.blurType = "Box Blur";
+				params.blurRadius = 1.8018018018018012;
+				params.hsvThresholdHue = new double[] {103.59712230215827, 180.0};
+				params.hsvThresholdSaturation = new double[] {2.5709219497986515, 70.45488099416727};
+				params.hsvThresholdValue = new double[] {210.97122302158274, 255.0};
+				params.findContoursExternalOnly = false;
+				params.filterContoursMinArea = 50.0;
+				params.filterContoursMinPerimeter = 0.0;
+				params.filterContoursMinWidth = 25.0;
+				params.filterContoursMaxWidth = 200.0;
+				params.filterContoursMinHeight = 50.0;
+				params.filterContoursMaxHeight = 1000.0;
+				params.filterContoursSolidity = new double[] {80.93525179856115, 100.0};
+				params.filterContoursMaxVertices = 500000.0;
+				params.filterContoursMinVertices = 0.0;
+				params.filterContoursMinRatio = 0.0;
+				params.filterContoursMaxRatio = 1000.0;
+				params.connectedComponentsMinFill = 0.0;
+				break;
+			case "GripPipelineMV":
+				params.blurType = "Box Blur";
+				params.blurRadius = 1.8018018018018012;
+				params.hsvThresholdHue = new double[] {50.847457627118644, 91.76470588235293};
+				params.hsvThresholdSaturation = new double[] {40.44132651882339, 217.41619465410108};
+				params.hsvThresholdValue = new double[] {210.97122302158274, 255.0};
+				params.findContoursExternalOnly = false;
+				params.filterContoursMinArea = 50.0;
+				params.filterContoursMinPerimeter = 0.0;
+				params.filterContoursMinWidth = 25.0;
+				params.filterContoursMaxWidth = 200.0;
+				params.filterContoursMinHeight = 50.0;
+				params.filterContoursMaxHeight = 1000.0;
+				params.filterContoursSolidity = new double[] {80.93525179856115, 100.0};
+				params.filterContoursMaxVertices = 500000.0;
+				params.filterContoursMinVertices = 0.0;
+				params.filterContoursMinRatio = 0.0;
+				params.filterContoursMaxRatio = 1000.0;
+				params.connectedComponentsMinFill = 0.0;
+				break;
+			case "GripPipelineOriginal":
+				params.blurType = "Box Blur";
+				params.blurRadius = 1.8867924528301887;
+				params.hsvThresholdHue = new double[] {41.2297280819412, 115.49488054607508};
+				params.hsvThresholdSaturation = new double[] {38.4180790960452, 104.87201365187713};
+				params.hsvThresholdValue = new double[] {204.3833277972121, 254.9677077508763};
+				params.findContoursExternalOnly = true;
+				params.filterContoursMinArea = 50.0;
+				params.filterContoursMinPerimeter = 0.0;
+				params.filterContoursMinWidth = 0.0;
+				params.filterContoursMaxWidth = 1000.0;
+				params.filterContoursMinHeight = 20.0;
+				params.filterContoursMaxHeight = 1000.0;
+				params.filterContoursSolidity = new double[] {0, 100};
+				params.filterContoursMaxVertices = 1000000.0;
+				params.filterContoursMinVertices = 0.0;
+				params.filterContoursMinRatio = 0.0;
+				params.filterContoursMaxRatio = 1000.0;
+				params.connectedComponentsMinFill = 0.0;
+				break;
+			default:
+				return null;
+		}
+		return params;
+	}
 
+	@Override
+	public PipelineParams params() {
+		return params;
+	}
+
+	@Override
+	public void setParams(PipelineParams params) {
+		this.params = params;
 	}
 
 	/**
@@ -94,6 +305,11 @@ public class GripPipeline implements VisionPipeline {
 		return hsvThresholdOutput;
 	}
 
+	@Override
+	public PipelineStats stats() {
+		return stats;
+	}
+
 	/**
 	 * This method is a generated getter for the output of a Find_Contours.
 	 * @return ArrayList<MatOfPoint> output from Find_Contours.
@@ -114,10 +330,37 @@ public class GripPipeline implements VisionPipeline {
 	 * This method is a generated getter for the output of a Filter_Contours.
 	 * @return ArrayList<MatOfPoint> output from Filter_Contours.
 	 */
+	@Override
 	public ArrayList<MatOfPoint> filterContoursOutput() {
 		return filterContoursOutput;
 	}
 
+	/**
+	 * The blobs behind filterContoursOutput when the connected components backend is used.
+	 * @return List of blob stats, in the same order as filterContoursOutput.
+	 */
+	public List<ConnectedComponentsFilter.Blob> connectedComponentsOutput() {
+		return connectedComponents.blobs();
+	}
+
+	/**
+	 * The blobs behind filterContoursOutput when the run length backend is used.
+	 * @return List of blob stats, in the same order as filterContoursOutput.
+	 */
+	public List<RunLengthBlobExtractor.Blob> runLengthOutput() {
+		return runLength.extractor().blobs();
+	}
+
+	@Override
+	public void setDetection(DetectionBackend detection) {
+		this.detection = detection;
+	}
+
+	@Override
+	public DetectionBackend detection() {
+		return detection;
+	}
+
 
 	/**
 	 * An indication of which type of filter to use for a blur.
@@ -232,6 +475,11 @@ public class GripPipeline implements VisionPipeline {
 		final MatOfInt hull = new MatOfInt();
 		outputContours.clear();
 		for (int i = 0; i < inputContours.size(); i++) {
+			if (budget.expired()) {
+				// the largest come first when there were too many
+				budget.degrade(FrameBudget.HULLS);
+				break;
+			}
 			final MatOfPoint contour = inputContours.get(i);
 			final MatOfPoint mopHull = new MatOfPoint();
 			Imgproc.convexHull(contour, hull);
@@ -246,55 +494,6 @@ public class GripPipeline implements VisionPipeline {
 	}
 
 
-	/**
-	 * Filters out contours that do not meet certain criteria.
-	 * @param inputContours is the input list of contours
-	 * @param output is the the output list of contours
-	 * @param minArea is the minimum area of a contour that will be kept
-	 * @param minPerimeter is the minimum perimeter of a contour that will be kept
-	 * @param minWidth minimum width of a contour
-	 * @param maxWidth maximum width
-	 * @param minHeight minimum height
-	 * @param maxHeight maximimum height
-	 * @param Solidity the minimum and maximum solidity of a contour
-	 * @param minVertexCount minimum vertex Count of the contours
-	 * @param maxVertexCount maximum vertex Count
-	 * @param minRatio minimum ratio of width to height
-	 * @param maxRatio maximum ratio of width to height
-	 */
-	private void filterContours(List<MatOfPoint> inputContours, double minArea,
-		double minPerimeter, double minWidth, double maxWidth, double minHeight, double
-		maxHeight, double[] solidity, double maxVertexCount, double minVertexCount, double
-		minRatio, double maxRatio, List<MatOfPoint> output) {
-		final MatOfInt hull = new MatOfInt();
-		output.clear();
-		//operation
-		for (int i = 0; i < inputContours.size(); i++) {
-			final MatOfPoint contour = inputContours.get(i);
-			final Rect bb = Imgproc.boundingRect(contour);
-			if (bb.width < minWidth || bb.width > maxWidth) continue;
-			if (bb.height < minHeight || bb.height > maxHeight) continue;
-			final double area = Imgproc.contourArea(contour);
-			if (area < minArea) continue;
-			if (Imgproc.arcLength(new MatOfPoint2f(contour.toArray()), true) < minPerimeter) continue;
-			Imgproc.convexHull(contour, hull);
-			MatOfPoint mopHull = new MatOfPoint();
-			mopHull.create((int) hull.size().height, 1, CvType.CV_32SC2);
-			for (int j = 0; j < hull.size().height; j++) {
-				int index = (int)hull.get(j, 0)[0];
-				double[] point = new double[] { contour.get(index, 0)[0], contour.get(index, 0)[1]};
-				mopHull.put(j, 0, point);
-			}
-			final double solid = 100 * area / Imgproc.contourArea(mopHull);
-			if (solid < solidity[0] || solid > solidity[1]) continue;
-			if (contour.rows() < minVertexCount || contour.rows() > maxVertexCount)	continue;
-			final double ratio = bb.width / (double)bb.height;
-			if (ratio < minRatio || ratio > maxRatio) continue;
-			output.add(contour);
-		}
-	}
-
-
 
 
 }
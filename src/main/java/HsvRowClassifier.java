@@ -0,0 +1,61 @@
+/**
+ * Classifies packed BGR pixels against HSV bounds without converting them.
+ *
+ * <p>Uses the 8-bit definitions of {@code Imgproc.COLOR_BGR2HSV} (hue 0-180,
+ * saturation and value 0-255), but cross-multiplies the saturation and hue
+ * tests so the loop has no divisions. Pixels right at a bound can land on
+ * the other side from OpenCV's rounded result; everything else agrees.
+ */
+public class HsvRowClassifier implements RunLengthBlobExtractor.RowClassifier {
+    private final float hueMin;
+    private final float hueMax;
+    private final float satMin;
+    private final float satMax;
+    private final int valMin;
+    private final int valMax;
+
+    /**
+     * @param hue The min and max hue, 0-180
+     * @param sat The min and max saturation, 0-255
+     * @param val The min and max value, 0-255
+     */
+    public HsvRowClassifier(double[] hue, double[] sat, double[] val) {
+        // hue is compared in degrees, which is how the sector math below comes out
+        hueMin = (float) (hue[0] * 2);
+        hueMax = (float) (hue[1] * 2);
+        satMin = (float) sat[0];
+        satMax = (float) sat[1];
+        valMin = (int) Math.ceil(val[0]);
+        valMax = (int) Math.floor(val[1]);
+    }
+
+    @Override
+    public void classify(byte[] frame, int offset, int width, byte[] mask) {
+        final float hueMin = this.hueMin;
+        final float hueMax = this.hueMax;
+        final float satMin = this.satMin;
+        final float satMax = this.satMax;
+        final int valMin = this.valMin;
+        final int valMax = this.valMax;
+        for (int x = 0, i = offset; x < width; x++, i += 3) {
+            final int b = frame[i] & 0xff;
+            final int g = frame[i + 1] & 0xff;
+            final int r = frame[i + 2] & 0xff;
+            final int v = Math.max(r, Math.max(g, b));
+            final int delta = v - Math.min(r, Math.min(g, b));
+
+            // h * delta, in degrees; gray pixels come out as hue 0 like OpenCV
+            final int hueTimesDelta = v == r ? 60 * (g - b) + (g < b ? 360 * delta : 0)
+                    : v == g ? 120 * delta + 60 * (b - r)
+                    : 240 * delta + 60 * (r - g);
+            final float sat255 = 255f * delta;
+
+            // with delta 0 both sides of the hue test are 0, so test hue 0 itself
+            final boolean pass = v >= valMin && v <= valMax
+                    && sat255 >= satMin * v && sat255 <= satMax * v
+                    && (delta == 0 ? hueMin <= 0
+                            : hueTimesDelta >= hueMin * delta && hueTimesDelta <= hueMax * delta);
+            mask[x] = (byte) (pass ? 1 : 0);
+        }
+    }
+}
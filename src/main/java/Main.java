@@ -9,7 +9,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 import javax.naming.directory.NoSuchAttributeException;
 
@@ -20,15 +24,16 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 
 import edu.wpi.cscore.MjpegServer;
 import edu.wpi.cscore.UsbCamera;
+import edu.wpi.cscore.VideoProperty;
 import edu.wpi.cscore.VideoSource;
 import edu.wpi.first.cameraserver.CameraServer;
 import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.networktables.*;
-import edu.wpi.first.vision.VisionThread;
 
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
@@ -40,6 +45,66 @@ import org.opencv.imgproc.Imgproc;
    {
        "team": <team number>,
        "ntmode": <"client" or "server", "client" if unspecified>
+       "pipeline": <vision pipeline class, "GripPipelineMV" if unspecified>
+       "params": <parameter file from ParameterTuner, or an object of pipeline class to parameter file;
+                  a file is only used for the pipeline it was tuned for, the pipeline's own values if unspecified>
+       "detection": <"contours", "components", "runlength" or "strips", "contours" if unspecified>
+       "ranking": <"center", "distance" or "confidence", "center" if unspecified>
+       "motion threshold": <gray levels a tile must change by to process the frame, 0 (every frame) if unspecified>
+       "motion max skip": <frames in a row that may reuse the last result, 10 if unspecified>
+       "flight recorder": <true to emit Flight Recorder events per pipeline stage, false if unspecified>
+       "camera timeout": <ms without a frame before the vision camera counts as lost, 500 if unspecified>
+       "idle fps": <frames a second to process while the robot is disabled or not connected,
+                    0 for full rate always, 2 if unspecified>
+       "frame budget": <ms a frame may take before it gives up on the rest, see FrameBudget,
+                        0 (no limit) if unspecified>
+       "max contours": <largest contours kept per frame, 0 for all, 200 if unspecified>
+       "stream auto": <true to pick stream profiles by clients, bandwidth and load, false if unspecified>
+       "stream mbps": <bandwidth the streams may use, 3 if unspecified>
+       "stream latency": <vision loop ms above which the streams give way, 50 if unspecified>
+       "telemetry log": <file to log every frame's summary to, see TelemetryLog, none if unspecified>
+       "telemetry records": <frames the log holds before wrapping around, 1000000 if unspecified>
+       "frame bus": <file prefix, e.g. "/dev/shm/vision", to publish frames to <prefix>-frames and masks
+                     to <prefix>-masks for other processes, see FrameBus, none if unspecified>
+       "frame bus slots": <images each bus holds before wrapping around, 4 if unspecified>
+       "udp results": <host to also send every frame's best target to as a ResultPacket, none if unspecified>
+       "udp port": <port of the UdpResultReceiver on that host, 5800 if unspecified>
+       "stereo": {                                  // optional, triangulate with two cameras
+           "left": <name of the left camera, not the vision camera>
+           "right": <name of the right camera, mounted level with the left one, not the vision camera>
+           "baseline": <inches between the camera centers>
+           "max skew": <ms between two frames for them to be paired, 10 if unspecified>
+       }
+       "exposure control": {                        // optional, adjust the vision camera's exposure
+           "min": <lowest exposure, 1 if unspecified>
+           "max": <highest exposure, 50 if unspecified>
+           "max mask": <fraction of the threshold mask that may be set, 0.02 if unspecified>
+           "max contours": <contours the mask may give, 30 if unspecified>
+       }
+       "shadow": {                                  // optional, compare a candidate with "pipeline"
+           "pipeline": <candidate vision pipeline class, its targets are logged, never published>
+           "detection": <detection backend>         // optional
+           "sample": <take at most one frame in this many, 5 if unspecified>
+       }
+       "fusion": {                                  // optional, fuse other coprocessors' results with ours
+           "port": <port the other coprocessors send their "udp results" to, 5801 if unspecified>
+           "window": <ms between results for them to be fused, 20 if unspecified>
+           "max age": <ms after which a result is left out, 100 if unspecified>
+           "sources": [                             // optional, where each coprocessor's camera sits
+               {
+                   "host": <address of a coprocessor, or "local" for this one>
+                   "forward": <inches forward of the robot's center, 0 if unspecified>
+                   "right": <inches right of the robot's center, 0 if unspecified>
+               }
+           ]
+       }
+       "pipelines": [                               // optional, run alongside "pipeline"
+           {
+               "name": <subtable name under GRIP>
+               "pipeline": <vision pipeline class>
+               "detection": <detection backend>     // optional
+           }
+       ]
        "cameras": [
            {
                "name": <camera name>
@@ -81,33 +146,165 @@ public final class Main {
         public JsonElement streamConfig;
     }
 
-    public static int team;
-    public static boolean server;
-    public static List<CameraConfig> cameraConfigs = new ArrayList<>();
+    /**
+     * The "stereo" object of the configuration file.
+     */
+    @SuppressWarnings("MemberName")
+    public static class StereoConfig {
+        public String left;
+        public String right;
+        public double baseline;
+        public double maxSkew = 10;
+    }
+
+    /**
+     * The "exposure control" object of the configuration file.
+     */
+    @SuppressWarnings("MemberName")
+    public static class ExposureConfig {
+        public int min = 1;
+        public int max = 50;
+        public double maxMask = 0.02;
+        public int maxContours = 30;
+    }
+
+    /**
+     * The "shadow" object of the configuration file.
+     */
+    @SuppressWarnings("MemberName")
+    public static class ShadowConfig {
+        public String pipeline;
+        public DetectionBackend detection = DetectionBackend.CONTOURS;
+        public int sample = 5;
+    }
+
+    /**
+     * The "fusion" object of the configuration file.
+     */
+    @SuppressWarnings("MemberName")
+    public static class FusionConfig {
+        public int port = 5801;
+        public double window = 20;
+        public double maxAge = 100;
+        public Map<String, double[]> mounts = new LinkedHashMap<>();
+    }
+
+    /**
+     * A camera that has been started, along with the config it was started with.
+     */
+    public static class RunningCamera {
+        public CameraConfig config;
+        public UsbCamera camera;
+        public MjpegServer server;
+    }
+
+    /**
+     * Everything read from the configuration file. A reload reads the file
+     * into a new one and swaps it in only if all of it was understood.
+     */
+    @SuppressWarnings("MemberName")
+    public static class Settings {
+        public int team;
+        public boolean server;
+        public String pipeline = PipelineSelector.DEFAULT_PIPELINE;
+        public PipelineParams pipelineParams;
+        /** Tuned parameters by pipeline class; pipelineParams is the entry of "pipeline". */
+        public Map<String, PipelineParams> tunedParams = new LinkedHashMap<>();
+        public DetectionBackend detection = DetectionBackend.CONTOURS;
+        public TargetRanker.Ranking ranking = TargetRanker.Ranking.CENTER;
+        public List<PipelineGraph.BranchConfig> pipelineConfigs = new ArrayList<>();
+        public double motionThreshold;
+        public int motionMaxSkip = 10;
+        public boolean flightRecorder;
+        public long cameraTimeout = 500;
+        public double idleFps = 2;
+        public double frameBudget;
+        public int maxContours = 200;
+        public boolean streamAuto;
+        public double streamMbps = 3;
+        public double streamLatency = 50;
+        public String telemetryFile;
+        public long telemetryRecords = 1000000;
+        public String frameBusPrefix;
+        public int frameBusSlots = 4;
+        public String udpHost;
+        public int udpPort = 5800;
+        public StereoConfig stereoConfig;
+        public ExposureConfig exposureConfig;
+        public ShadowConfig shadowConfig;
+        public FusionConfig fusionConfig;
+        public List<CameraConfig> cameraConfigs = new ArrayList<>();
+    }
+
+    /** The settings in effect. */
+    public static volatile Settings settings = new Settings();
+
+    /**
+     * What a camera setting goes back to when its key is removed from the
+     * config.
+     */
+    static final JsonObject CAMERA_DEFAULTS = new JsonObject();
+    /** Camera config keys that make up the video mode. */
+    static final List<String> VIDEO_MODE_KEYS = Arrays.asList("pixel format", "width", "height", "fps");
+
+    static {
+        CAMERA_DEFAULTS.addProperty("brightness", 50);
+        CAMERA_DEFAULTS.addProperty("white balance", "auto");
+        CAMERA_DEFAULTS.addProperty("exposure", "auto");
+    }
+
+    private static final Map<String, RunningCamera> runningCameras = new LinkedHashMap<>();
+    /** The camera the vision thread reads from, fixed at startup. */
+    private static String visionCameraName;
+    private static NetworkTableInstance ntinst;
+    private static PipelineSelector visionPipeline;
+    private static PipelineGraph visionGraph;
+    private static MotionGate visionGate;
+    private static StreamGovernor streamGovernor;
+    private static CameraSupervisor<MotionGate> cameraSupervisor;
+    private static volatile double visionLoopMillis;
+    private static volatile TelemetryLog telemetryLog;
+    private static volatile FrameBus frameBus;
+    private static volatile FrameBus maskBus;
+    private static volatile UdpResultSender udpSender;
+    private static StereoVision stereoVision;
+    private static PipelineSelector[] stereoPipelines;
+    /** The cameras stereoVision reads from, fixed at startup. */
+    private static List<String> stereoCameraNames = new ArrayList<>();
+    private static volatile ShadowRunner shadowRunner;
+    private static volatile ExposureController exposureController;
+    private static volatile FusionNode fusionNode;
+    /** The port fusionNode receives on, or -1 without one; fixed at startup. */
+    private static int fusionPort = -1;
+    private static final ResultPacket resultPacket = new ResultPacket();
+    private static final TargetRanker targetRanker = new TargetRanker();
     private static final Object imgLock = new Object();
   
     // Constants for Distance to robot calculations
-    private final static double TAPE_ANGLE = 14. / 360 * 2 * Math.PI; // In radians
-    private final static double CAMERA_VIEW_ANGLE_HORIZONTAL = 70.42 / 360 * 2 * Math.PI; // horizontal FOV (in radians)
-    private final static double CAMERA_VIEW_ANGLE_VERTICAL = 43.3 / 360 * 2 * Math.PI; // vertical FOV (in radians)
+    final static double TAPE_ANGLE = 14. / 360 * 2 * Math.PI; // In radians
+    final static double CAMERA_VIEW_ANGLE_HORIZONTAL = 70.42 / 360 * 2 * Math.PI; // horizontal FOV (in radians)
+    final static double CAMERA_VIEW_ANGLE_VERTICAL = 43.3 / 360 * 2 * Math.PI; // vertical FOV (in radians)
 
-    private final static double BB_WIDTH_1 = 2 * Math.cos(TAPE_ANGLE);
-    private final static double BB_WIDTH_2 = 5.5 * Math.sin(TAPE_ANGLE);
-    private final static double BB_WIDTH = BB_WIDTH_1 + BB_WIDTH_2;
+    final static double BB_WIDTH_1 = 2 * Math.cos(TAPE_ANGLE);
+    final static double BB_WIDTH_2 = 5.5 * Math.sin(TAPE_ANGLE);
+    final static double BB_WIDTH = BB_WIDTH_1 + BB_WIDTH_2;
 
-    private final static double BB_HEIGHT_1 = 5.5 * Math.cos(TAPE_ANGLE);
-    private final static double BB_HEIGHT_2 = 2 * Math.sin(TAPE_ANGLE);
-    private final static double BB_HEIGHT = BB_HEIGHT_1 + BB_HEIGHT_2;
+    final static double BB_HEIGHT_1 = 5.5 * Math.cos(TAPE_ANGLE);
+    final static double BB_HEIGHT_2 = 2 * Math.sin(TAPE_ANGLE);
+    final static double BB_HEIGHT = BB_HEIGHT_1 + BB_HEIGHT_2;
 
     // Too confusing
     //private final static double LENGTH_OF_BOUNDING_RECTANGLE_INCHES = 2 * Math.cos(2*Math.PI-Math.PI-TAPE_ANGLE) + 5.5 * Math.sin(14);
     //private final static double HEIGHT_OF_BOUNDING_RECTANGLE_INCHES = 5.5 * Math.sin(TAPE_ANGLE) + 2 * Math.cos(180 - 90 - TAPE_ANGLE);
-    private final static double distanceBetweenTapeCentersInches = LENGTH_OF_BOUNDING_RECTANGLE_INCHES + 8; // 2 * (Width of bounding square) (times 2 squares / half their width) / 2 + distance between top inner tips
+    final static double distanceBetweenTapeCentersInches = BB_WIDTH + 8; // 2 * (Width of bounding square) (times 2 squares / half their width) / 2 + distance between top inner tips
   
     // Camera Resolution: 1080p
     final static int HEIGHT_OF_CAMERA_PIXELS = 1080;
     final static int WIDTH_OF_CAMERA_PIXELS = 1920;
 
+    // The two distance estimates must agree within this fraction to be trusted
+    final static double DISTANCE_CROSS_CHECK = 0.10;
+
 
   private Main() {
   }
@@ -119,10 +316,36 @@ public final class Main {
     System.err.println("config error in '" + configFile + "': " + str);
   }
 
+  /**
+   * Reads a parameter file into tunedParams, under the pipeline it was tuned
+   * for. A file that names no pipeline is taken to be for forPipeline, or
+   * for "pipeline" if that is null too.
+   */
+    private static boolean readParams(Settings parsed, String forPipeline, String file) {
+        PipelineParams params;
+        try {
+            params = PipelineParams.read(file);
+        } catch (IOException | JsonParseException ex) {
+            parseError("could not read params file '" + file + "': " + ex);
+            return false;
+        }
+        if (forPipeline != null && params.pipeline != null && !params.pipeline.equals(forPipeline)) {
+            parseError("params file '" + file + "' was tuned for " + params.pipeline + ", not " + forPipeline);
+            return false;
+        }
+        String key = forPipeline != null ? forPipeline : params.pipeline != null ? params.pipeline : parsed.pipeline;
+        if (!PipelineSelector.isKnown(key)) {
+            parseError("params file '" + file + "': unknown pipeline '" + key + "'");
+            return false;
+        }
+        parsed.tunedParams.put(key, params);
+        return true;
+    }
+
   /**
    * Read single camera configuration.
    */
-  public static boolean readCameraConfig(JsonObject config) {
+  public static boolean readCameraConfig(Settings parsed, JsonObject config) {
     CameraConfig cam = new CameraConfig();
 
     // name
@@ -146,51 +369,315 @@ public final class Main {
 
     cam.config = config;
 
-    cameraConfigs.add(cam);
+    parsed.cameraConfigs.add(cam);
     return true;
   }
 
+  /**
+   * Read single extra pipeline configuration.
+   */
+    public static boolean readPipelineConfig(Settings parsed, JsonObject config) {
+        PipelineGraph.BranchConfig branch = new PipelineGraph.BranchConfig();
+
+        // name
+        JsonElement nameElement = config.get("name");
+        if (nameElement == null) {
+            parseError("could not read pipeline name");
+            return false;
+        }
+        branch.name = nameElement.getAsString();
+
+        // pipeline
+        JsonElement pipelineElement = config.get("pipeline");
+        if (pipelineElement == null || !PipelineSelector.isKnown(pipelineElement.getAsString())) {
+            parseError("pipeline '" + branch.name + "': could not read pipeline");
+            return false;
+        }
+        branch.pipeline = pipelineElement.getAsString();
+
+        // detection (optional)
+        if (config.has("detection")) {
+            String str = config.get("detection").getAsString();
+            DetectionBackend backend = DetectionBackend.get(str);
+            if (backend != null) {
+                branch.detection = backend;
+            } else {
+                parseError("pipeline '" + branch.name + "': could not understand detection value '" + str + "'");
+            }
+        }
+
+        parsed.pipelineConfigs.add(branch);
+        return true;
+    }
+
   /**
    * Read configuration file.
+   * @return what it sets, or null if it couldn't be read or understood
    */
-  @SuppressWarnings("PMD.CyclomaticComplexity")
-  public static boolean readConfig() {
+  public static Settings readConfig() {
         // parse file
         JsonElement top;
         try {
         top = new JsonParser().parse(Files.newBufferedReader(Paths.get(configFile)));
         } catch (IOException ex) {
             System.err.println("could not open '" + configFile + "': " + ex);
-            return false;
+            return null;
+        } catch (JsonParseException ex) {
+            parseError("not valid JSON: " + ex.getMessage());
+            return null;
         }
 
         // top level must be an object
         if (!top.isJsonObject()) {
             parseError("must be JSON object");
-            return false;
+            return null;
+        }
+
+        Settings parsed = new Settings();
+        try {
+            return readSettings(parsed, top.getAsJsonObject()) ? parsed : null;
+        } catch (IllegalStateException | IllegalArgumentException | UnsupportedOperationException ex) {
+            // a value of the wrong type, e.g. a string where a number goes
+            parseError(ex.toString());
+            return null;
         }
-        JsonObject obj = top.getAsJsonObject();
+    }
 
+  /**
+   * Read the settings of the configuration file into parsed, which starts
+   * out with the defaults.
+   */
+  @SuppressWarnings("PMD.CyclomaticComplexity")
+    private static boolean readSettings(Settings parsed, JsonObject obj) {
         // team number
         JsonElement teamElement = obj.get("team");
         if (teamElement == null) {
             parseError("could not read team number");
             return false;
         }
-        team = teamElement.getAsInt();
+        parsed.team = teamElement.getAsInt();
 
         // ntmode (optional)
         if (obj.has("ntmode")) {
             String str = obj.get("ntmode").getAsString();
             if ("client".equalsIgnoreCase(str)) {
-                server = false;
+                parsed.server = false;
             } else if ("server".equalsIgnoreCase(str)) {
-                server = true;
+                parsed.server = true;
             } else {
                 parseError("could not understand ntmode value '" + str + "'");
             }
         }
 
+        // pipeline (optional)
+        if (obj.has("pipeline")) {
+            String str = obj.get("pipeline").getAsString();
+            if (PipelineSelector.isKnown(str)) {
+                parsed.pipeline = str;
+            } else {
+                parseError("could not understand pipeline value '" + str + "'");
+            }
+        }
+
+        // tuned parameters of the pipeline (optional)
+        if (obj.has("params")) {
+            JsonElement paramsElement = obj.get("params");
+            if (paramsElement.isJsonObject()) {
+                for (Map.Entry<String, JsonElement> entry : paramsElement.getAsJsonObject().entrySet()) {
+                    if (!readParams(parsed, entry.getKey(), entry.getValue().getAsString())) {
+                        return false;
+                    }
+                }
+            } else if (!readParams(parsed, null, paramsElement.getAsString())) {
+                return false;
+            }
+            parsed.pipelineParams = parsed.tunedParams.get(parsed.pipeline);
+            if (parsed.pipelineParams == null) {
+                parseError("no params for " + parsed.pipeline + ", using its own values");
+            }
+        }
+
+        // detection backend of the pipeline (optional)
+        if (obj.has("detection")) {
+            String str = obj.get("detection").getAsString();
+            DetectionBackend backend = DetectionBackend.get(str);
+            if (backend != null) {
+                parsed.detection = backend;
+            } else {
+                parseError("could not understand detection value '" + str + "'");
+            }
+        }
+
+        // target ranking (optional)
+        if (obj.has("ranking")) {
+            String str = obj.get("ranking").getAsString();
+            TargetRanker.Ranking value = TargetRanker.Ranking.get(str);
+            if (value != null) {
+                parsed.ranking = value;
+            } else {
+                parseError("could not understand ranking value '" + str + "'");
+            }
+        }
+
+        // motion gate (optional)
+        if (obj.has("motion threshold")) {
+            parsed.motionThreshold = obj.get("motion threshold").getAsDouble();
+        }
+        if (obj.has("motion max skip")) {
+            parsed.motionMaxSkip = obj.get("motion max skip").getAsInt();
+        }
+
+        // Flight Recorder events (optional)
+        if (obj.has("flight recorder")) {
+            parsed.flightRecorder = obj.get("flight recorder").getAsBoolean();
+        }
+
+        // vision camera stall timeout (optional)
+        if (obj.has("camera timeout")) {
+            parsed.cameraTimeout = obj.get("camera timeout").getAsLong();
+        }
+
+        // heartbeat rate while the robot is idle (optional)
+        if (obj.has("idle fps")) {
+            parsed.idleFps = obj.get("idle fps").getAsDouble();
+        }
+
+        // per frame time budget (optional)
+        if (obj.has("frame budget")) {
+            parsed.frameBudget = obj.get("frame budget").getAsDouble();
+        }
+        if (obj.has("max contours")) {
+            parsed.maxContours = obj.get("max contours").getAsInt();
+        }
+
+        // stream profiles (optional)
+        if (obj.has("stream auto")) {
+            parsed.streamAuto = obj.get("stream auto").getAsBoolean();
+        }
+        if (obj.has("stream mbps")) {
+            parsed.streamMbps = obj.get("stream mbps").getAsDouble();
+        }
+        if (obj.has("stream latency")) {
+            parsed.streamLatency = obj.get("stream latency").getAsDouble();
+        }
+
+        // telemetry log (optional)
+        if (obj.has("telemetry log")) {
+            parsed.telemetryFile = obj.get("telemetry log").getAsString();
+        }
+        if (obj.has("telemetry records")) {
+            parsed.telemetryRecords = obj.get("telemetry records").getAsLong();
+        }
+
+        // frame bus (optional)
+        if (obj.has("frame bus")) {
+            parsed.frameBusPrefix = obj.get("frame bus").getAsString();
+        }
+        if (obj.has("frame bus slots")) {
+            parsed.frameBusSlots = obj.get("frame bus slots").getAsInt();
+        }
+
+        // UDP result channel (optional)
+        if (obj.has("udp results")) {
+            parsed.udpHost = obj.get("udp results").getAsString();
+        }
+        if (obj.has("udp port")) {
+            parsed.udpPort = obj.get("udp port").getAsInt();
+        }
+
+        // stereo (optional)
+        if (obj.has("stereo")) {
+            JsonObject stereo = obj.get("stereo").getAsJsonObject();
+            if (!stereo.has("left") || !stereo.has("right") || !stereo.has("baseline")) {
+                parseError("stereo needs left, right and baseline");
+                return false;
+            }
+            parsed.stereoConfig = new StereoConfig();
+            parsed.stereoConfig.left = stereo.get("left").getAsString();
+            parsed.stereoConfig.right = stereo.get("right").getAsString();
+            parsed.stereoConfig.baseline = stereo.get("baseline").getAsDouble();
+            if (stereo.has("max skew")) {
+                parsed.stereoConfig.maxSkew = stereo.get("max skew").getAsDouble();
+            }
+        }
+
+        // exposure control (optional)
+        if (obj.has("exposure control")) {
+            JsonObject exposure = obj.get("exposure control").getAsJsonObject();
+            parsed.exposureConfig = new ExposureConfig();
+            if (exposure.has("min")) {
+                parsed.exposureConfig.min = exposure.get("min").getAsInt();
+            }
+            if (exposure.has("max")) {
+                parsed.exposureConfig.max = exposure.get("max").getAsInt();
+            }
+            if (exposure.has("max mask")) {
+                parsed.exposureConfig.maxMask = exposure.get("max mask").getAsDouble();
+            }
+            if (exposure.has("max contours")) {
+                parsed.exposureConfig.maxContours = exposure.get("max contours").getAsInt();
+            }
+        }
+
+        // shadow pipeline (optional)
+        if (obj.has("shadow")) {
+            JsonObject shadow = obj.get("shadow").getAsJsonObject();
+            if (!shadow.has("pipeline") || !PipelineSelector.isKnown(shadow.get("pipeline").getAsString())) {
+                parseError("shadow: could not read pipeline");
+                return false;
+            }
+            parsed.shadowConfig = new ShadowConfig();
+            parsed.shadowConfig.pipeline = shadow.get("pipeline").getAsString();
+            if (shadow.has("detection")) {
+                String str = shadow.get("detection").getAsString();
+                DetectionBackend backend = DetectionBackend.get(str);
+                if (backend != null) {
+                    parsed.shadowConfig.detection = backend;
+                } else {
+                    parseError("shadow: could not understand detection value '" + str + "'");
+                }
+            }
+            if (shadow.has("sample")) {
+                parsed.shadowConfig.sample = shadow.get("sample").getAsInt();
+            }
+        }
+
+        // fusion with other coprocessors (optional)
+        if (obj.has("fusion")) {
+            JsonObject fusion = obj.get("fusion").getAsJsonObject();
+            parsed.fusionConfig = new FusionConfig();
+            if (fusion.has("port")) {
+                parsed.fusionConfig.port = fusion.get("port").getAsInt();
+            }
+            if (fusion.has("window")) {
+                parsed.fusionConfig.window = fusion.get("window").getAsDouble();
+            }
+            if (fusion.has("max age")) {
+                parsed.fusionConfig.maxAge = fusion.get("max age").getAsDouble();
+            }
+            if (fusion.has("sources")) {
+                for (JsonElement element : fusion.get("sources").getAsJsonArray()) {
+                    JsonObject source = element.getAsJsonObject();
+                    if (!source.has("host")) {
+                        parseError("fusion: could not read source host");
+                        return false;
+                    }
+                    double forward = source.has("forward") ? source.get("forward").getAsDouble() : 0;
+                    double right = source.has("right") ? source.get("right").getAsDouble() : 0;
+                    parsed.fusionConfig.mounts.put(source.get("host").getAsString(), new double[] {forward, right});
+                }
+            }
+        }
+
+        // extra pipelines (optional)
+        if (obj.has("pipelines")) {
+            for (JsonElement element : obj.get("pipelines").getAsJsonArray()) {
+                if (!readPipelineConfig(parsed, element.getAsJsonObject())) {
+                    return false;
+                }
+            }
+        }
+
         // cameras
         JsonElement camerasElement = obj.get("cameras");
         if (camerasElement == null) {
@@ -199,7 +686,7 @@ public final class Main {
         }
         JsonArray cameras = camerasElement.getAsJsonArray();
         for (JsonElement camera : cameras) {
-            if (!readCameraConfig(camera.getAsJsonObject())) {
+            if (!readCameraConfig(parsed, camera.getAsJsonObject())) {
                 return false;
             }
         }
@@ -225,9 +712,637 @@ public final class Main {
         server.setConfigJson(gson.toJson(config.streamConfig));
         }
 
+        RunningCamera running = new RunningCamera();
+        running.config = config;
+        running.camera = camera;
+        running.server = server;
+        runningCameras.put(config.name, running);
+
         return camera;
     }
 
+  /**
+   * Start NetworkTables in the configured mode.
+   */
+    private static void startNetworkTables() {
+        if (settings.server) {
+            System.out.println("Setting up NetworkTables server");
+            ntinst.startServer();
+        } else {
+            System.out.println("Setting up NetworkTables client for team " + settings.team);
+            ntinst.startClientTeam(settings.team);
+        }
+    }
+
+  /**
+   * Returns the members of a camera config that differ from the running one.
+   * Properties are compared one by one so only the changed ones get applied.
+   * Settings removed from the config go back to {@link #CAMERA_DEFAULTS};
+   * see {@link #removedProperties} and {@link #videoModeRemoved} for the
+   * ones that can't be put back with a config value.
+   */
+    static JsonObject diffCameraConfig(JsonObject oldConfig, JsonObject newConfig) {
+        JsonObject diff = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : CAMERA_DEFAULTS.entrySet()) {
+            if (oldConfig.has(entry.getKey()) && !newConfig.has(entry.getKey())) {
+                diff.add(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, JsonElement> entry : newConfig.entrySet()) {
+            String key = entry.getKey();
+            if ("name".equals(key) || "path".equals(key) || "stream".equals(key)) {
+                continue;
+            }
+            JsonElement oldValue = oldConfig.get(key);
+            if (entry.getValue().equals(oldValue)) {
+                continue;
+            }
+            if ("properties".equals(key) && oldValue != null && oldValue.isJsonArray()
+                    && entry.getValue().isJsonArray()) {
+                JsonArray changed = new JsonArray();
+                for (JsonElement property : entry.getValue().getAsJsonArray()) {
+                    if (!oldValue.getAsJsonArray().contains(property)) {
+                        changed.add(property);
+                    }
+                }
+                diff.add(key, changed);
+            } else {
+                diff.add(key, entry.getValue());
+            }
+        }
+        return diff;
+    }
+
+  /**
+   * Returns the names of the properties in the old "properties" array that
+   * the new one no longer sets. Either may be null.
+   */
+    static List<String> removedProperties(JsonElement oldProperties, JsonElement newProperties) {
+        List<String> removed = new ArrayList<>();
+        if (oldProperties == null || !oldProperties.isJsonArray()) {
+            return removed;
+        }
+        List<String> kept = new ArrayList<>();
+        if (newProperties != null && newProperties.isJsonArray()) {
+            for (JsonElement property : newProperties.getAsJsonArray()) {
+                if (property.isJsonObject() && property.getAsJsonObject().has("name")) {
+                    kept.add(property.getAsJsonObject().get("name").getAsString());
+                }
+            }
+        }
+        for (JsonElement property : oldProperties.getAsJsonArray()) {
+            if (property.isJsonObject() && property.getAsJsonObject().has("name")) {
+                String name = property.getAsJsonObject().get("name").getAsString();
+                if (!kept.contains(name) && !removed.contains(name)) {
+                    removed.add(name);
+                }
+            }
+        }
+        return removed;
+    }
+
+  /**
+   * Whether a video mode setting was removed from a camera config. The mode
+   * the camera would have without one is whatever the driver picks when it's
+   * opened, so only reopening puts it back.
+   */
+    static boolean videoModeRemoved(JsonObject oldConfig, JsonObject newConfig) {
+        for (String key : VIDEO_MODE_KEYS) {
+            if (oldConfig.has(key) && !newConfig.has(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+  /**
+   * Puts the named properties back to their defaults. String properties have
+   * no default and are left alone.
+   */
+    private static void resetProperties(String what, List<String> names, Function<String, VideoProperty> lookup) {
+        for (String name : names) {
+            VideoProperty property = lookup.apply(name);
+            if (!property.isValid() || property.isString()) {
+                System.err.println(what + ": can't reset property '" + name + "'");
+                continue;
+            }
+            System.out.println(what + ": resetting property '" + name + "' to " + property.getDefault());
+            property.set(property.getDefault());
+        }
+    }
+
+    private static JsonElement streamProperties(JsonElement streamConfig) {
+        return streamConfig != null && streamConfig.isJsonObject()
+                ? streamConfig.getAsJsonObject().get("properties") : null;
+    }
+
+  /**
+   * Re-read the configuration file and apply whatever changed to the running
+   * cameras, streams, NetworkTables and pipeline. The vision thread keeps running.
+   */
+    public static synchronized void reloadConfig() {
+        System.out.println("Reloading '" + configFile + "'");
+        Settings parsed = readConfig();
+        if (parsed == null) {
+            System.err.println("keeping previous configuration");
+            return;
+        }
+        Settings old = settings;
+        settings = parsed;
+
+        // NetworkTables mode or team
+        if (settings.team != old.team || settings.server != old.server) {
+            if (old.server) {
+                ntinst.stopServer();
+            } else {
+                ntinst.stopClient();
+            }
+            startNetworkTables();
+        }
+
+        Gson gson = new GsonBuilder().create();
+        String visionCamera = visionCameraName;
+        List<String> seen = new ArrayList<>();
+        for (CameraConfig config : settings.cameraConfigs) {
+            seen.add(config.name);
+            RunningCamera running = runningCameras.get(config.name);
+            if (running == null) {
+                startCamera(config);
+                continue;
+            }
+            boolean modeRemoved = videoModeRemoved(running.config.config, config.config);
+            if (!config.path.equals(running.config.path) || modeRemoved) {
+                String change = modeRemoved ? "removing the video mode" : "path change";
+                if (config.name.equals(visionCamera) || stereoCameraNames.contains(config.name)) {
+                    System.err.println("camera '" + config.name + "': " + change + " of the "
+                            + (config.name.equals(visionCamera) ? "vision" : "stereo") + " camera needs a restart");
+                    continue;
+                }
+                System.out.println("camera '" + config.name + "': " + change + ", reopening");
+                CameraServer.getInstance().removeServer(running.server.getName());
+                running.server.close();
+                running.camera.close();
+                runningCameras.remove(config.name);
+                startCamera(config);
+                continue;
+            }
+
+            JsonObject diff = diffCameraConfig(running.config.config, config.config);
+            if (diff.size() > 0) {
+                System.out.println("camera '" + config.name + "': applying " + diff);
+                running.camera.setConfigJson(gson.toJson(diff));
+            }
+            resetProperties("camera '" + config.name + "'",
+                    removedProperties(running.config.config.get("properties"), config.config.get("properties")),
+                    running.camera::getProperty);
+            if (config.streamConfig == null ? running.config.streamConfig != null
+                    : !config.streamConfig.equals(running.config.streamConfig)) {
+                resetProperties("stream '" + config.name + "'", removedProperties(
+                        streamProperties(running.config.streamConfig), streamProperties(config.streamConfig)),
+                        running.server::getProperty);
+                if (config.streamConfig != null) {
+                    System.out.println("camera '" + config.name + "': applying stream " + config.streamConfig);
+                    running.server.setConfigJson(gson.toJson(config.streamConfig));
+                }
+            }
+            running.config = config;
+        }
+
+        // cameras that are no longer configured
+        for (RunningCamera running : new ArrayList<>(runningCameras.values())) {
+            String name = running.config.name;
+            if (seen.contains(name)) {
+                continue;
+            }
+            if (name.equals(visionCamera) || stereoCameraNames.contains(name)) {
+                System.err.println("camera '" + name + "': the " + (name.equals(visionCamera) ? "vision" : "stereo")
+                        + " camera can't be removed without a restart");
+                continue;
+            }
+            System.out.println("Stopping camera '" + name + "'");
+            CameraServer.getInstance().removeServer(running.server.getName());
+            running.server.close();
+            running.camera.close();
+            runningCameras.remove(name);
+        }
+
+        if (visionPipeline != null) {
+            if (!settings.pipeline.equals(old.pipeline)) {
+                visionPipeline.select(settings.pipeline);
+            }
+            visionPipeline.setDetection(settings.detection);
+            if (settings.pipelineParams != null) {
+                visionPipeline.setParams(settings.pipelineParams);
+            } else if (old.pipelineParams != null || !settings.pipeline.equals(old.pipeline)) {
+                // a pipeline used before may still hold params tuned for it
+                visionPipeline.setParams(PipelineSelector.defaultParams(settings.pipeline));
+            }
+        }
+        targetRanker.setRanking(settings.ranking);
+        VisionEvents.setEnabled(settings.flightRecorder);
+        FrameBudget.configure(settings.frameBudget, settings.maxContours);
+        if (visionGraph != null) {
+            visionGraph.configure(settings.pipelineConfigs, settings.ranking, Main::paramsFor);
+        }
+        if (visionGate != null) {
+            visionGate.setThreshold(settings.motionThreshold);
+            visionGate.setMaxSkip(settings.motionMaxSkip);
+            visionGate.invalidate();
+        }
+        if (cameraSupervisor != null) {
+            cameraSupervisor.setTimeout(settings.cameraTimeout);
+            cameraSupervisor.setIdleRate(settings.idleFps);
+        }
+        if (streamGovernor != null) {
+            streamGovernor.setBudget(settings.streamMbps, settings.streamLatency);
+            streamGovernor.setEnabled(settings.streamAuto);
+        }
+        if (settings.telemetryFile == null ? old.telemetryFile != null
+                : !settings.telemetryFile.equals(old.telemetryFile)
+                        || settings.telemetryRecords != old.telemetryRecords) {
+            openTelemetryLog();
+        }
+        if (settings.frameBusPrefix == null ? old.frameBusPrefix != null
+                : !settings.frameBusPrefix.equals(old.frameBusPrefix) || settings.frameBusSlots != old.frameBusSlots) {
+            openFrameBus();
+        }
+        if (settings.udpHost == null ? old.udpHost != null
+                : !settings.udpHost.equals(old.udpHost) || settings.udpPort != old.udpPort) {
+            openUdpSender();
+        }
+        // compared with the cameras running, a change refused before must not pass as applied
+        boolean sameStereoCameras = settings.stereoConfig == null ? stereoCameraNames.isEmpty()
+                : stereoCameraNames.equals(Arrays.asList(settings.stereoConfig.left, settings.stereoConfig.right));
+        if (!sameStereoCameras) {
+            System.err.println("stereo: adding, removing or changing cameras needs a restart");
+        } else if (stereoVision != null && settings.stereoConfig != null) {
+            stereoVision.triangulator().setBaseline(settings.stereoConfig.baseline);
+            stereoVision.setMaxSkew(settings.stereoConfig.maxSkew);
+            for (PipelineSelector selector : stereoPipelines) {
+                if (!settings.pipeline.equals(old.pipeline)) {
+                    selector.select(settings.pipeline);
+                }
+                selector.setDetection(settings.detection);
+                if (settings.pipelineParams != null) {
+                    selector.setParams(settings.pipelineParams);
+                } else if (old.pipelineParams != null || !settings.pipeline.equals(old.pipeline)) {
+                    // a pipeline used before may still hold params tuned for it
+                    selector.setParams(PipelineSelector.defaultParams(settings.pipeline));
+                }
+            }
+        }
+        // compared with the port bound, a change refused before must not pass as applied
+        if (settings.fusionConfig == null ? fusionPort != -1 : settings.fusionConfig.port != fusionPort) {
+            System.err.println("fusion: turning it on or off or changing its port needs a restart");
+        }
+        if (fusionNode != null && settings.fusionConfig != null) {
+            configureFusion(fusionNode);
+        }
+        startShadow();
+        startExposureControl();
+    }
+
+  /**
+   * Starts, updates or stops exposure control of the vision camera to match
+   * the configuration. Stopping puts back the camera's configured settings.
+   */
+    private static void startExposureControl() {
+        ExposureConfig limits = settings.exposureConfig;
+        RunningCamera vision = visionCameraName == null ? null : runningCameras.get(visionCameraName);
+        if (limits == null || vision == null) {
+            ExposureController controller = exposureController;
+            if (controller != null && vision != null) {
+                System.out.println("Stopping exposure control");
+                exposureController = null;
+                // the vision thread may still be in update()
+                controller.stop();
+                vision.camera.setConfigJson(new GsonBuilder().create().toJson(vision.config.config));
+            }
+            return;
+        }
+        ExposureController controller = exposureController;
+        if (controller == null) {
+            JsonObject config = vision.config.config;
+            JsonElement exposure = config.get("exposure");
+            JsonElement brightness = config.get("brightness");
+            int start = exposure != null && exposure.getAsJsonPrimitive().isNumber() ? exposure.getAsInt()
+                    : limits.max;
+            int startBrightness = brightness != null ? brightness.getAsInt() : vision.camera.getBrightness();
+            System.out.println("Starting exposure control of camera '" + vision.config.name + "' at " + start);
+            controller = new ExposureController(vision.camera, start, startBrightness);
+        }
+        controller.setLimits(limits.min, limits.max, limits.maxMask, limits.maxContours);
+        exposureController = controller;
+    }
+
+  /**
+   * The parameters tuned for a pipeline class, or the values it was
+   * generated with if there are none.
+   */
+    private static PipelineParams paramsFor(String pipeline) {
+        PipelineParams params = settings.tunedParams.get(pipeline);
+        return params != null ? params : PipelineSelector.defaultParams(pipeline);
+    }
+
+  /**
+   * Starts, replaces, updates or stops the shadow pipeline to match the
+   * configuration.
+   */
+    private static void startShadow() {
+        ShadowConfig config = settings.shadowConfig;
+        ShadowRunner runner = shadowRunner;
+        if (config == null || runner != null && !runner.pipelineName().equals(config.pipeline)) {
+            if (runner != null) {
+                System.out.println("Stopping shadow pipeline " + runner.pipelineName());
+                shadowRunner = null;
+                runner.interrupt();
+                runner = null;
+            }
+            if (config == null) {
+                return;
+            }
+        }
+        if (runner == null) {
+            System.out.println("Shadowing " + settings.pipeline + " with " + config.pipeline + ", one frame in "
+                    + config.sample + " at most");
+            runner = new ShadowRunner(config.pipeline);
+            runner.start();
+        }
+        runner.setSample(config.sample);
+        runner.candidate().setDetection(config.detection);
+        runner.candidate().setParams(paramsFor(config.pipeline));
+        runner.ranker().setRanking(settings.ranking);
+        shadowRunner = runner;
+    }
+
+  /**
+   * Starts triangulating with the configured camera pair, publishing to
+   * GRIP/Stereo in the Targets layout with at most one target.
+   */
+    private static void startStereo(NetworkTable table) {
+        StereoConfig config = settings.stereoConfig;
+        RunningCamera left = runningCameras.get(config.left);
+        RunningCamera right = runningCameras.get(config.right);
+        if (left == null || right == null) {
+            System.err.println("stereo: cameras '" + config.left + "' and '" + config.right
+                    + "' have to be configured");
+            return;
+        }
+        if (config.left.equals(visionCameraName) || config.right.equals(visionCameraName)) {
+            // both would grab from the one sink CameraServer keeps per camera
+            System.err.println("stereo: camera '" + visionCameraName + "' is read by the vision thread already");
+            return;
+        }
+        PipelineSelector[] views = {new PipelineSelector(settings.pipeline), new PipelineSelector(settings.pipeline)};
+        stereoPipelines = views;
+        for (PipelineSelector view : views) {
+            view.setDetection(settings.detection);
+            if (settings.pipelineParams != null) {
+                view.setParams(settings.pipelineParams);
+            }
+        }
+        NetworkTable stereoTable = table.getSubTable("Stereo");
+        NetworkTableEntry targetsEntry = stereoTable.getEntry("Targets");
+        NetworkTableEntry timestampEntry = stereoTable.getEntry("Timestamp");
+        NetworkTableEntry skewEntry = stereoTable.getEntry("SkewMillis");
+        double[] none = new double[0];
+        double[] packed = new double[TargetRanker.FIELDS];
+        stereoVision = new StereoVision(new CameraFrameSource(left.camera), new CameraFrameSource(right.camera),
+                views[0], views[1], config.baseline, (stereo, found, target) -> {
+                    if (found) {
+                        packed[0] = target.distanceInches;
+                        packed[1] = target.offsetInches;
+                        packed[2] = target.angleRadians;
+                        packed[3] = target.confidence;
+                        packed[4] = target.score;
+                    }
+                    targetsEntry.setDoubleArray(found ? packed : none);
+                    skewEntry.setDouble(stereo.lastSkewMicros() / 1000.0);
+                    timestampEntry.setDouble(System.currentTimeMillis() / 1000.0);
+                });
+        stereoVision.setMaxSkew(config.maxSkew);
+        stereoVision.start();
+        stereoCameraNames = Arrays.asList(config.left, config.right);
+        System.out.println("Stereo with '" + config.left + "' and '" + config.right + "', "
+                + config.baseline + " in apart");
+    }
+
+  /**
+   * Starts receiving the other coprocessors' results and fusing them with
+   * this one's, publishing to GRIP/Fused in the Targets layout with at most
+   * one target, and sending the fused result instead of this one's if
+   * "udp results" is set.
+   */
+    private static void startFusion(NetworkTable table) {
+        FusionConfig config = settings.fusionConfig;
+        FusionNode node;
+        try {
+            node = new FusionNode(config.port);
+        } catch (IOException ex) {
+            System.err.println("fusion: could not receive on port " + config.port + ": " + ex);
+            return;
+        }
+        configureFusion(node);
+        NetworkTable fusedTable = table.getSubTable("Fused");
+        NetworkTableEntry targetsEntry = fusedTable.getEntry("Targets");
+        NetworkTableEntry sourcesEntry = fusedTable.getEntry("Sources");
+        NetworkTableEntry timestampEntry = fusedTable.getEntry("Timestamp");
+        double[] none = new double[0];
+        double[] packed = new double[TargetRanker.FIELDS];
+        // called from the vision thread for this coprocessor's results and from the node's for the others'
+        node.setListener((fusion, fused) -> {
+            synchronized (packed) {
+                if (fused.found()) {
+                    packed[0] = fused.distanceInches;
+                    packed[1] = fused.offsetInches;
+                    packed[2] = fused.angleRadians;
+                    packed[3] = fused.confidence;
+                    // nothing ranks across coprocessors, the confidence stands in for the score
+                    packed[4] = fused.confidence;
+                }
+                targetsEntry.setDoubleArray(fused.found() ? packed : none);
+                sourcesEntry.setDouble(fusion.fuser().lastSources());
+                timestampEntry.setDouble(System.currentTimeMillis() / 1000.0);
+                UdpResultSender sender = udpSender;
+                if (sender != null) {
+                    sender.send(fused);
+                }
+            }
+        });
+        node.start();
+        fusionNode = node;
+        fusionPort = config.port;
+        System.out.println("Fusing results received on port " + config.port + " with this coprocessor's");
+    }
+
+    private static void configureFusion(FusionNode node) {
+        FusionConfig config = settings.fusionConfig;
+        node.fuser().setTiming(config.window, config.maxAge);
+        node.fuser().clearMounts();
+        for (Map.Entry<String, double[]> mount : config.mounts.entrySet()) {
+            node.fuser().setMount(mount.getKey(), mount.getValue()[0], mount.getValue()[1]);
+        }
+    }
+
+  /**
+   * Swaps the UDP result channel for the configured one.
+   */
+    private static void openUdpSender() {
+        UdpResultSender old = udpSender;
+        udpSender = null;
+        if (old != null) {
+            try {
+                old.close();
+            } catch (IOException ex) {
+                System.err.println("could not close udp results: " + ex);
+            }
+        }
+        if (settings.udpHost != null) {
+            try {
+                udpSender = new UdpResultSender(settings.udpHost, settings.udpPort);
+                System.out.println("Sending results to " + settings.udpHost + ":" + settings.udpPort + " over UDP");
+            } catch (IOException ex) {
+                System.err.println("could not send udp results to '" + settings.udpHost + "': " + ex);
+            }
+        }
+    }
+
+  /**
+   * Swaps the frame and mask buses for the configured ones. Like the
+   * telemetry log, the old ones stay mapped for an image being published.
+   */
+    private static void openFrameBus() {
+        String prefix = settings.frameBusPrefix;
+        FrameBus oldFrames = frameBus;
+        FrameBus oldMasks = maskBus;
+        frameBus = null;
+        maskBus = null;
+        try {
+            if (oldFrames != null) {
+                oldFrames.close();
+            }
+            if (oldMasks != null) {
+                oldMasks.close();
+            }
+        } catch (IOException ex) {
+            System.err.println("could not close frame bus: " + ex);
+        }
+        if (prefix != null) {
+            int pixels = WIDTH_OF_CAMERA_PIXELS * HEIGHT_OF_CAMERA_PIXELS;
+            try {
+                FrameBus frames = FrameBus.create(prefix + "-frames", settings.frameBusSlots, pixels * 3);
+                maskBus = FrameBus.create(prefix + "-masks", settings.frameBusSlots, pixels);
+                frameBus = frames;
+                System.out.println("Publishing frames and masks to '" + prefix + "-*'");
+            } catch (IOException | IllegalArgumentException ex) {
+                System.err.println("could not create frame bus '" + prefix + "': " + ex);
+            }
+        }
+    }
+
+  /**
+   * Swaps the telemetry log for the configured one. The vision thread may
+   * still be writing a record to the old one; its mapping stays valid after
+   * closing, so that record just doesn't count.
+   */
+    private static void openTelemetryLog() {
+        TelemetryLog old = telemetryLog;
+        telemetryLog = null;
+        if (old != null) {
+            try {
+                old.close();
+            } catch (IOException ex) {
+                System.err.println("could not close telemetry log: " + ex);
+            }
+        }
+        if (settings.telemetryFile != null) {
+            try {
+                telemetryLog = TelemetryLog.open(settings.telemetryFile, settings.telemetryRecords);
+                System.out.println("Logging telemetry to '" + settings.telemetryFile + "', "
+                        + telemetryLog.written() + " records so far");
+            } catch (IOException | IllegalArgumentException ex) {
+                System.err.println("could not open telemetry log '" + settings.telemetryFile + "': " + ex);
+            }
+        }
+    }
+
+  /**
+   * The cameras running right now.
+   */
+    static synchronized List<RunningCamera> runningCameraList() {
+        return new ArrayList<>(runningCameras.values());
+    }
+
+  /**
+   * What the vision thread does with every processed frame before
+   * publishing: picks the tape pair and estimates its target into selected,
+   * and ranks every valid pair, best first, into ranker for robot code that
+   * wants to choose. Shared with {@link AllocationBudget} so it measures the
+   * work the listener really does.
+   * @return TelemetryLog.PAIRED if a pair was picked, with
+   *     TelemetryLog.PUBLISHED if its estimate passed the cross-check
+   */
+    static int selectTarget(TargetPipeline pipeline, TargetRanker ranker, TargetCandidate selected) {
+        ArrayList<MatOfPoint> found = pipeline.filterContoursOutput();
+        int flags = 0;
+        if (found.size() > 1) { // Everything used inside (from the outside) has to be static
+            VisionEvents.TargetTapes tapesEvent = VisionEvents.targetTapes(found.size());
+            Rect[] contours = getTargetTapes(pipeline);
+            VisionEvents.end(tapesEvent);
+            estimateTarget(contours[0], contours[1], selected);
+            flags |= TelemetryLog.PAIRED;
+            if (selected.confidence > 0) {
+                flags |= TelemetryLog.PUBLISHED;
+            }
+        }
+        ranker.rank(found);
+        return flags;
+    }
+
+  /**
+   * Works out distance, offset and bearing of the target formed by two tapes.
+   * The confidence is 0 when the width and height based distances disagree by
+   * DISTANCE_CROSS_CHECK or more.
+   */
+    static void estimateTarget(Rect left, Rect right, TargetCandidate out) {
+        double inchesPerPixel, 
+                newAngle,
+                distanceBetweenTapeCentersPixels, 
+                distanceToRobotInches, 
+                tapeDistanceRightInches,
+                distanceToRobotBasedOnTapeHeight;
+        int tapeCenterPixelsToCenterScreen;
+        int centerX1 = left.x + (left.width / 2);
+        int centerX2 = right.x + (right.width / 2);
+        int heightOfTapePixels = (left.height + right.height) / 2;
+
+        // Calculate the distance between the robot and the tape.
+        distanceBetweenTapeCentersPixels = centerX2 - centerX1;
+        tapeCenterPixelsToCenterScreen = (centerX2 + centerX1) / 2 - WIDTH_OF_CAMERA_PIXELS / 2; // finds how far right the tapes are from the center of the screen in pixels
+        inchesPerPixel = distanceBetweenTapeCentersInches / distanceBetweenTapeCentersPixels ;
+        newAngle = distanceBetweenTapeCentersPixels/WIDTH_OF_CAMERA_PIXELS * CAMERA_VIEW_ANGLE_HORIZONTAL / 2; // half of cone of vision is 39 degrees
+
+        // these values will be used to determing the path of the robot
+        distanceToRobotInches = (distanceBetweenTapeCentersInches / 2) / Math.tan(newAngle);
+        tapeDistanceRightInches = tapeCenterPixelsToCenterScreen * inchesPerPixel;
+        distanceToRobotBasedOnTapeHeight = (heightOfTapePixels / 2 * inchesPerPixel) / Math.tan(CAMERA_VIEW_ANGLE_HORIZONTAL / 2 * heightOfTapePixels / HEIGHT_OF_CAMERA_PIXELS);
+
+        out.left.x = left.x;
+        out.left.y = left.y;
+        out.left.width = left.width;
+        out.left.height = left.height;
+        out.right.x = right.x;
+        out.right.y = right.y;
+        out.right.width = right.width;
+        out.right.height = right.height;
+        out.distanceInches = distanceToRobotInches;
+        out.heightDistanceInches = distanceToRobotBasedOnTapeHeight;
+        out.offsetInches = tapeDistanceRightInches;
+        out.angleRadians = (double) tapeCenterPixelsToCenterScreen / WIDTH_OF_CAMERA_PIXELS * CAMERA_VIEW_ANGLE_HORIZONTAL;
+        double disagreement = Math.abs(distanceToRobotBasedOnTapeHeight - distanceToRobotInches) / distanceToRobotInches;
+        out.confidence = Double.isNaN(disagreement) ? 0 : Math.max(0, 1 - disagreement / DISTANCE_CROSS_CHECK);
+    }
+
   /**
    * Example pipeline.
    */
@@ -251,25 +1366,33 @@ public final class Main {
         }
 
         // read configuration
-        if (!readConfig()) {
+        settings = readConfig();
+        if (settings == null) {
             return;
         }
 
         // start NetworkTables
-        NetworkTableInstance ntinst = NetworkTableInstance.getDefault();
-        if (server) {
-            System.out.println("Setting up NetworkTables server");
-            ntinst.startServer();
-        } else {
-            System.out.println("Setting up NetworkTables client for team " + team);
-            ntinst.startClientTeam(team);
-        }
+        ntinst = NetworkTableInstance.getDefault();
+        startNetworkTables();
         
         // Creating networktables and getting their entrees
         NetworkTable table = ntinst.getTable("GRIP");
         NetworkTableEntry distanceToRobotEntry = table.getEntry("DistanceToRobotInches");
         NetworkTableEntry distanceRightToRobotEntry = table.getEntry("DistanceRightToRobotInches");
         NetworkTableEntry angleOfRobotToTapeEntry = table.getEntry("AngleOfRobotToTapeRadians"); // Not Implemented
+        NetworkTableEntry targetsEntry = table.getEntry("Targets"); // packed, see TargetRanker
+        NetworkTableEntry timestampEntry = table.getEntry("Timestamp"); // seconds, changes every frame
+        NetworkTableEntry reusedEntry = table.getEntry("Reused"); // scene unchanged, result of an earlier frame
+        NetworkTableEntry cameraConnectedEntry = table.getEntry("CameraConnected");
+        NetworkTableEntry idleEntry = table.getEntry("Idle"); // robot disabled, heartbeat frames only
+        NetworkTableEntry degradedEntry = table.getEntry("Degraded"); // out of time, partial or stale result
+        TargetCandidate selectedTarget = new TargetCandidate();
+        openTelemetryLog();
+        openFrameBus();
+        openUdpSender();
+        targetRanker.setRanking(settings.ranking);
+        VisionEvents.setEnabled(settings.flightRecorder);
+        FrameBudget.configure(settings.frameBudget, settings.maxContours);
         int angle = 45; //random value
         double cameraHeightInches = 42; //guessed height 
         double cameraOffsetRightInchesFromCenter = 6; //random value
@@ -277,70 +1400,257 @@ public final class Main {
 
         // start cameras
         List<VideoSource> cameras = new ArrayList<>();
-        for (CameraConfig cameraConfig : cameraConfigs) {
+        for (CameraConfig cameraConfig : settings.cameraConfigs) {
             cameras.add(startCamera(cameraConfig));
         }
 
 
         // start image processing on camera 0 if present
         if (cameras.size() >= 1) {
-        VisionThread visionThread = new VisionThread(cameras.get(0),
-                new GripPipelineMV() pip, pipeline -> {
-                    if (!pipeline.filterContoursOutput().isEmpty() && pipeline.filterContoursOutput().size() > 1) { // Everything used inside (from the outside) has to be static
-                        Rect[] contours = getTargetTapes(pipeline);
-                        synchronized (contours[0]) {
-                            double inchesPerPixel, 
-                                    newAngle,
-                                    distanceBetweenTapeCentersPixels, 
-                                    distanceToRobotInches, 
-                                    tapeDistanceRightInches,
-                                    distanceToRobotBasedOnTapeHeight;
-                            int tapeCenterPixelsToCenterScreen;
-                            int centerX1 = contours[0].x + (contours[0].width / 2);
-                            int centerX2 = contours[1].x + (contours[1].width / 2);
-                            int heightOfTapePixels = (contours[0].height + contours[1].height) / 2;
-
-                            // Calculate the distance between the robot and the tape.
-                            distanceBetweenTapeCentersPixels = centerX2 - centerX1;
-                            tapeCenterPixelsToCenterScreen = (centerX2 + centerX1) / 2 - WIDTH_OF_CAMERA_PIXELS; // finds how far right the tapes are from the center of the screen in pixels
-                            inchesPerPixel = distanceBetweenTapeCentersInches / distanceBetweenTapeCentersPixels ;
-                            newAngle = distanceBetweenTapeCentersPixels/WIDTH_OF_CAMERA_PIXELS * CAMERA_VIEW_ANGLE_HORIZONTAL / 2; // half of cone of vision is 39 degrees
-
-                            
-                            // these values will be used to determing the path of the robot
-                            distanceToRobotInches = (distanceBetweenTapeCentersInches / 2) / Math.tan(newAngle);
-                            tapeDistanceRightInches = tapeCenterPixelsToCenterScreen * inchesPerPixel;
-                            distanceToRobotBasedOnTapeHeight = (heightOfTapePixels / 2 * inchesPerPixel) / Math.tan(CAMERA_VIEW_ANGLE_HORIZONTAL / 2 * heightOfTapePixels / HEIGHT_OF_CAMERA_PIXELS);
-
-                            // Output values to NetworkTables if two calculated values are within X percent
-                            if(Math.abs(distanceToRobotBasedOnTapeHeight - distanceToRobotInches)/ distanceToRobotInches < 0.10) {
-                                distanceToRobotEntry.setDouble(distanceToRobotInches);
-                                distanceRightToRobotEntry.setDouble(tapeDistanceRightInches);
-                                angleOfRobotToTapeEntry.setDouble(0); // dummy value
-                            }
-                            else {
-                                distanceToRobotEntry.setDouble(-1); // Impossible value
-                                distanceRightToRobotEntry.setDouble(0); // dummy value
-                                angleOfRobotToTapeEntry.setDouble(360); // dummy value
-                            }
+        visionPipeline = new PipelineSelector(settings.pipeline);
+        visionPipeline.setDetection(settings.detection);
+        if (settings.pipelineParams != null) {
+            visionPipeline.setParams(settings.pipelineParams);
+        }
+        visionGraph = new PipelineGraph(visionPipeline, table);
+        visionGraph.configure(settings.pipelineConfigs, settings.ranking, Main::paramsFor);
+        long[] lastFrameNanos = new long[1];
+        visionGate = new MotionGate(visionGraph);
+        visionGate.setThreshold(settings.motionThreshold);
+        visionGate.setMaxSkip(settings.motionMaxSkip);
+        visionCameraName = settings.cameraConfigs.get(0).name;
+        cameraSupervisor = new CameraSupervisor<>(new CameraFrameSource(cameras.get(0)),
+                visionGate, pipeline -> {
+                    long now = System.nanoTime();
+                    // heartbeat frames would pass for a slow loop
+                    boolean idle = cameraSupervisor.isIdle();
+                    if (lastFrameNanos[0] != 0 && !idle) {
+                        visionLoopMillis += ((now - lastFrameNanos[0]) / 1e6 - visionLoopMillis) * 0.1;
+                    }
+                    lastFrameNanos[0] = idle ? 0 : now;
+                    idleEntry.setBoolean(idle);
+
+                    // the values haven't changed, only tell the robot they're still current
+                    timestampEntry.setDouble(System.currentTimeMillis() / 1000.0);
+                    reusedEntry.setBoolean(visionGate.reused());
+                    if (visionGate.reused()) {
+                        sendResult(ResultPacket.REUSED);
+                        publishFrame(pipeline, false);
+                        logTelemetry(pipeline, TelemetryLog.REUSED, targetRanker.count(), selectedTarget);
+                        return;
+                    }
+
+                    VisionEvents.Publish publishEvent = VisionEvents.publish();
+                    FrameBudget budget = pipeline.stats().budget();
+                    degradedEntry.setBoolean(budget.isDegraded());
+                    int flags = selectTarget(pipeline, targetRanker, selectedTarget);
+                    if ((flags & TelemetryLog.PAIRED) != 0) {
+                        // Output values to NetworkTables if two calculated values are within X percent
+                        if ((flags & TelemetryLog.PUBLISHED) != 0) {
+                            distanceToRobotEntry.setDouble(selectedTarget.distanceInches);
+                            distanceRightToRobotEntry.setDouble(selectedTarget.offsetInches);
+                            angleOfRobotToTapeEntry.setDouble(0); // dummy value
                         }
-                    }     
+                        else {
+                            distanceToRobotEntry.setDouble(-1); // Impossible value
+                            distanceRightToRobotEntry.setDouble(0); // dummy value
+                            angleOfRobotToTapeEntry.setDouble(360); // dummy value
+                        }
+                    }
+
+                    targetsEntry.setDoubleArray(targetRanker.packed());
+                    VisionEvents.end(publishEvent, targetRanker.count());
+                    flags |= budget.isStale() ? TelemetryLog.STALE
+                            : budget.isDegraded() ? TelemetryLog.DEGRADED : 0;
+                    ExposureController exposure = exposureController;
+                    if (exposure != null) {
+                        DetectionBackend backend = pipeline.detection();
+                        boolean masked = backend == DetectionBackend.CONTOURS
+                                || backend == DetectionBackend.CONNECTED_COMPONENTS;
+                        exposure.update(masked ? pipeline.hsvThresholdOutput() : null,
+                                backend == DetectionBackend.CONTOURS ? pipeline.findContoursOutput().size()
+                                        : pipeline.filterContoursOutput().size(), targetRanker.count() > 0);
+                    }
+                    ShadowRunner shadow = shadowRunner;
+                    if (shadow != null) {
+                        shadow.offer(cameraSupervisor.frame(), targetRanker, now - cameraSupervisor.frameNanos(),
+                                budget);
+                    }
+                    sendResult(budget.isStale() ? ResultPacket.STALE
+                            : budget.isDegraded() ? ResultPacket.DEGRADED : 0);
+                    logTelemetry(pipeline, flags, targetRanker.count(), selectedTarget);
+                    publishFrame(pipeline, true);
                 });
-            visionThread.start();
+            // withdraw the results as soon as the camera stops, they only get staler
+            cameraSupervisor.setTimeout(settings.cameraTimeout);
+            cameraSupervisor.setIdleRate(settings.idleFps);
+            cameraSupervisor.setOnStall(() -> {
+                cameraConnectedEntry.setBoolean(false);
+                distanceToRobotEntry.setDouble(-1); // Impossible value
+                distanceRightToRobotEntry.setDouble(0); // dummy value
+                angleOfRobotToTapeEntry.setDouble(360); // dummy value
+                targetsEntry.setDoubleArray(new double[0]);
+                timestampEntry.setDouble(System.currentTimeMillis() / 1000.0);
+            });
+            cameraSupervisor.setOnRecover(() -> {
+                cameraConnectedEntry.setBoolean(true);
+                visionGate.invalidate();
+            });
+            cameraConnectedEntry.setBoolean(true);
+            cameraSupervisor.start();
+            // full rate from the first frame after enable, see CameraSupervisor
+            new RobotStateMonitor(ntinst, active -> cameraSupervisor.setIdle(!active));
+
+            streamGovernor = new StreamGovernor(Main::runningCameraList, settings.cameraConfigs.get(0).name,
+                    () -> visionLoopMillis);
+            streamGovernor.setBudget(settings.streamMbps, settings.streamLatency);
+            streamGovernor.setEnabled(settings.streamAuto);
+            streamGovernor.start();
+        }
+
+        if (settings.stereoConfig != null) {
+            startStereo(table);
         }
+        if (settings.fusionConfig != null) {
+            startFusion(table);
+        }
+        startShadow();
+        startExposureControl();
+
+        // pick up edits to the config file without restarting
+        new ConfigWatcher(configFile, Main::reloadConfig).start();
 
         // loop forever
+        long lastFrames = 0;
+        long lastSkipped = 0;
         for (;;) {
             try {
                 Thread.sleep(10000);
             } catch (InterruptedException ex) {
                 return;
             }
+            TelemetryLog log = telemetryLog;
+            if (log != null) {
+                log.force();
+            }
+            if (visionGate != null && settings.motionThreshold > 0) {
+                long frames = visionGate.frames() - lastFrames;
+                long skipped = visionGate.skipped() - lastSkipped;
+                lastFrames += frames;
+                lastSkipped += skipped;
+                System.out.printf("motion gate: reused %d of %d frames (%.0f%%)%n", skipped, frames,
+                        frames == 0 ? 0 : 100.0 * skipped / frames);
+            }
+            PipelineSelector pipeline = visionPipeline;
+            if (pipeline != null && pipeline.detection() == DetectionBackend.CONTOURS) {
+                AdaptiveContourFilter filter = pipeline.stats().contourFilter();
+                System.out.printf("contour filter: %s, %d reorders%n", filter.order(), filter.reorders());
+            }
+            if (FrameBudget.degradedFrames() > 0) {
+                System.out.println("frame budget: " + FrameBudget.summary());
+            }
+            ShadowRunner shadow = shadowRunner;
+            if (shadow != null) {
+                System.out.println("shadow: " + shadow.summary());
+            }
+            ExposureController exposure = exposureController;
+            if (exposure != null) {
+                System.out.printf("exposure control: exposure %d, brightness %d, mask %.2f%%, %d contours,"
+                        + " %d adjustments in %d decisions%n", exposure.exposure(), exposure.brightness(),
+                        100 * exposure.lastMaskRatio(), exposure.lastContours(), exposure.adjustments(),
+                        exposure.decisions());
+            }
+            FusionNode fusion = fusionNode;
+            if (fusion != null) {
+                System.out.printf("fusion: %d results received from %d sources, %d fused, %d out of order,"
+                        + " %d sources in the last, added %.0f us mean, %.0f us max%n", fusion.packets(),
+                        fusion.fuser().sources(), fusion.fusedCount(), fusion.fuser().outOfOrder(),
+                        fusion.fuser().lastSources(), fusion.meanAddedNanos() / 1000,
+                        fusion.maxAddedNanos() / 1000.0);
+            }
+        }
+    }
+
+  /**
+   * Appends the frame the vision thread just finished to the telemetry log,
+   * if there is one. Doesn't allocate.
+   */
+    private static void logTelemetry(TargetPipeline pipeline, int flags, int targets, TargetCandidate pair) {
+        TelemetryLog log = telemetryLog;
+        if (log == null) {
+            return;
+        }
+        boolean contours = pipeline.detection() == DetectionBackend.CONTOURS;
+        long latencyNanos = System.nanoTime() - cameraSupervisor.frameNanos();
+        log.write(cameraSupervisor.frames(), System.currentTimeMillis(), (int) (latencyNanos / 1000), flags,
+                contours ? pipeline.findContoursOutput().size() : -1,
+                contours ? pipeline.convexHullsOutput().size() : -1,
+                pipeline.filterContoursOutput().size(), targets, pair);
+    }
+
+  /**
+   * Sends the best ranked target of the frame the vision thread just
+   * finished over UDP, if enabled, or with fusion on hands it to the
+   * fusion node, which sends the fused result instead.
+   */
+    private static void sendResult(short flags) {
+        UdpResultSender sender = udpSender;
+        FusionNode fusion = fusionNode;
+        if (sender == null && fusion == null) {
+            return;
+        }
+        ResultPacket packet = resultPacket;
+        packet.sequence = cameraSupervisor.frames();
+        packet.captureNanos = cameraSupervisor.frameNanos();
+        packet.targets = targetRanker.count();
+        packet.flags = flags;
+        if (packet.targets > 0) {
+            TargetCandidate best = targetRanker.candidate(0);
+            packet.flags |= ResultPacket.FOUND;
+            packet.distanceInches = best.distanceInches;
+            packet.offsetInches = best.offsetInches;
+            packet.angleRadians = best.angleRadians;
+            packet.confidence = best.confidence;
+        } else {
+            packet.distanceInches = 0;
+            packet.offsetInches = 0;
+            packet.angleRadians = 0;
+            packet.confidence = 0;
+        }
+        packet.ageMicros = (int) ((System.nanoTime() - packet.captureNanos) / 1000);
+        if (fusion != null) {
+            fusion.offerLocal(packet);
+        } else {
+            sender.send(packet);
+        }
+    }
+
+  /**
+   * Puts the frame the vision thread just finished on the frame bus, after
+   * the results are out so readers don't delay them.
+   * @param withMask also put the threshold mask on the mask bus, if the
+   *     pipeline ran on this frame with a backend that builds one
+   */
+    private static void publishFrame(TargetPipeline pipeline, boolean withMask) {
+        FrameBus frames = frameBus;
+        if (frames == null) {
+            return;
+        }
+        Mat frame = cameraSupervisor.frame();
+        long frameNanos = cameraSupervisor.frameNanos();
+        frames.publish(frame, frameNanos, cameraSupervisor.frames());
+        FrameBus masks = maskBus;
+        DetectionBackend backend = pipeline.detection();
+        Mat mask = pipeline.hsvThresholdOutput();
+        if (withMask && masks != null
+                && (backend == DetectionBackend.CONTOURS || backend == DetectionBackend.CONNECTED_COMPONENTS)
+                && mask.rows() == frame.rows() && mask.cols() == frame.cols()) {
+            masks.publish(mask, frameNanos, cameraSupervisor.frames());
         }
     }
 
     // Gets the two contours closes to the center of the screen
-    private static Rect[] getTargetTapes(GripPipelineMV pipeline) {
+    static Rect[] getTargetTapes(TargetPipeline pipeline) {
         ArrayList<MatOfPoint> contours = pipeline.filterContoursOutput();
         Rect[] rects = {Imgproc.boundingRect(contours.get(0)), Imgproc.boundingRect(contours.get(1))};
         if(pipeline.filterContoursOutput().size() == 2) {
@@ -0,0 +1,167 @@
+import java.util.ArrayList;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Skips the wrapped pipeline while the scene isn't changing.
+ *
+ * <p>Each frame is shrunk to a grid of {@link #GRID_WIDTH} x
+ * {@link #GRID_HEIGHT} tiles by area averaging and turned to gray, which
+ * costs a small fraction of a full run. If no tile's mean differs from the
+ * last fully processed frame by more than the threshold, the wrapped
+ * pipeline isn't run and its outputs, those of the last processed frame,
+ * are used again; {@link #reused()} tells the listener so. Comparing
+ * against the last processed frame rather than the previous one means slow
+ * drift still adds up to a change. After max skip reused frames in a row
+ * the next one is processed regardless.
+ *
+ * <p>The comparison needs the whole frame, so the gate isn't a
+ * {@link SharedFramePipeline}: it takes frames only through
+ * {@link #process(Mat)} and passes them on whole.
+ */
+public class MotionGate implements TargetPipeline {
+    static final int GRID_WIDTH = 32;
+    static final int GRID_HEIGHT = 18;
+
+    private final TargetPipeline pipeline;
+    private final Mat small = new Mat();
+    private final Mat gray = new Mat();
+    private final Mat reference = new Mat();
+    private final Mat difference = new Mat();
+    private final Size gridSize = new Size(GRID_WIDTH, GRID_HEIGHT);
+    private volatile double threshold;
+    private volatile int maxSkip = 10;
+    private volatile boolean invalidated;
+    private boolean reused;
+    private int skippedInARow;
+    private volatile long frames;
+    private volatile long skipped;
+
+    public MotionGate(TargetPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Sets how many gray levels a tile mean has to change by to count as
+     * motion. 0 turns the gate off and every frame is processed.
+     */
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Sets how many frames in a row may reuse the last result.
+     */
+    public void setMaxSkip(int maxSkip) {
+        this.maxSkip = maxSkip;
+    }
+
+    /**
+     * Makes the next frame run in full, for when something other than the
+     * scene changed the result, such as a new pipeline or parameters.
+     */
+    public void invalidate() {
+        invalidated = true;
+    }
+
+    /**
+     * Whether the outputs are those of an earlier frame. Valid in the listener
+     * of the frame just processed.
+     */
+    public boolean reused() {
+        return reused;
+    }
+
+    /** Frames seen since start. */
+    public long frames() {
+        return frames;
+    }
+
+    /** Frames that reused an earlier result since start. */
+    public long skipped() {
+        return skipped;
+    }
+
+    @Override
+    public void process(Mat source0) {
+        frames++;
+        double threshold = this.threshold;
+        if (threshold <= 0) {
+            reused = false;
+            pipeline.process(source0);
+            return;
+        }
+
+        Imgproc.resize(source0, small, gridSize, 0, 0, Imgproc.INTER_AREA);
+        Imgproc.cvtColor(small, gray, Imgproc.COLOR_BGR2GRAY);
+        if (invalidated) {
+            invalidated = false;
+            reference.release();
+        }
+        if (!reference.empty() && skippedInARow < maxSkip) {
+            Core.absdiff(gray, reference, difference);
+            if (Core.minMaxLoc(difference).maxVal <= threshold) {
+                reused = true;
+                skippedInARow++;
+                skipped++;
+                return;
+            }
+        }
+
+        reused = false;
+        skippedInARow = 0;
+        gray.copyTo(reference);
+        pipeline.process(source0);
+    }
+
+    @Override
+    public ArrayList<MatOfPoint> filterContoursOutput() {
+        return pipeline.filterContoursOutput();
+    }
+
+    @Override
+    public Mat hsvThresholdOutput() {
+        return pipeline.hsvThresholdOutput();
+    }
+
+    @Override
+    public ArrayList<MatOfPoint> findContoursOutput() {
+        return pipeline.findContoursOutput();
+    }
+
+    @Override
+    public ArrayList<MatOfPoint> convexHullsOutput() {
+        return pipeline.convexHullsOutput();
+    }
+
+    @Override
+    public PipelineStats stats() {
+        return pipeline.stats();
+    }
+
+    @Override
+    public void setDetection(DetectionBackend detection) {
+        invalidate();
+        pipeline.setDetection(detection);
+    }
+
+    @Override
+    public DetectionBackend detection() {
+        return pipeline.detection();
+    }
+
+    @Override
+    public PipelineParams params() {
+        return pipeline.params();
+    }
+
+    @Override
+    public void setParams(PipelineParams params) {
+        invalidate();
+        pipeline.setParams(params);
+    }
+}
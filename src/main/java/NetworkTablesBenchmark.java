@@ -0,0 +1,323 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.EntryNotification;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * Measures how long vision results take to get from the NetworkTables
+ * calls in {@link Main} to the robot, over a local connection.
+ *
+ * <p>A vision client publishes a frame's results at the camera frame rate
+ * and a fake robot, the server, listens for them. Five ways of publishing
+ * are compared:
+ * <ul>
+ * <li>entries: one setDouble per value, as the listener in Main does, left
+ * to the NetworkTables update rate</li>
+ * <li>entries+flush: the same followed by flush()</li>
+ * <li>packed: all values in one setDoubleArray, like the Targets entry</li>
+ * <li>packed+flush: the same followed by flush()</li>
+ * <li>udp: one {@link ResultPacket} per frame through {@link UdpResultSender}
+ * and {@link UdpResultReceiver}, bypassing NetworkTables</li>
+ * </ul>
+ * Each frame carries its sequence number and send time in the values, so
+ * the robot can tell when all of a frame has arrived and how long it took.
+ * Frames overwritten before they were sent count as lost. Jitter is the
+ * standard deviation of the latency. The publish cost is the time spent in
+ * the NetworkTables or UDP calls on the vision thread.
+ *
+ * <p>Usage: {@code java -cp <jar> NetworkTablesBenchmark [robot | vision <host>]
+ * [--fps n] [--seconds n] [--port n] [--udp-port n]}. Without a mode both ends run in this
+ * process. To measure across processes start {@code robot} first, then
+ * {@code vision localhost}; latency then relies on both processes reading
+ * the same monotonic clock, so they have to run on the same machine.
+ */
+public final class NetworkTablesBenchmark {
+    private static final String TABLE = "NTBenchmark";
+    private static final String[] VARIANTS = {"entries", "entries+flush", "packed", "packed+flush", "udp"};
+    private static final String UDP = "udp";
+    private static final String DONE = "done";
+    private static final int PACKED_TARGETS = 2;
+
+    private NetworkTablesBenchmark() {
+    }
+
+    /**
+     * The fake robot. Collects the latency of each complete frame of the
+     * current variant and reports when the variant changes.
+     */
+    private static class Robot {
+        private final long[] latencies;
+        private final double[] entryValues = new double[3];
+        private final boolean[] entryFresh = new boolean[3];
+        private String variant = "";
+        private int received;
+        private int lastSequence = -1;
+        private long firstNanos;
+        private long lastNanos;
+
+        Robot(int capacity) {
+            latencies = new long[capacity];
+        }
+
+        void listen(NetworkTableInstance instance, UdpResultReceiver receiver) {
+            instance.addEntryListener("/" + TABLE + "/", this::update,
+                    EntryListenerFlags.kNew | EntryListenerFlags.kUpdate);
+            receiver.setListener(this::update);
+        }
+
+        private synchronized void update(ResultPacket packet) {
+            long now = System.nanoTime();
+            if (variant.equals(UDP)) {
+                receive((int) packet.sequence - 1, packet.captureNanos, now);
+            }
+        }
+
+        private synchronized void update(EntryNotification event) {
+            long now = System.nanoTime();
+            String name = event.name.substring(TABLE.length() + 2);
+            int entry;
+            switch (name) {
+                case "Variant":
+                    report();
+                    variant = event.value.getString();
+                    received = 0;
+                    lastSequence = -1;
+                    Arrays.fill(entryValues, -1);
+                    Arrays.fill(entryFresh, false);
+                    notifyAll();
+                    return;
+                case "Targets":
+                    double[] packed = event.value.getDoubleArray();
+                    if (packed.length >= 2) {
+                        receive((int) packed[0], (long) packed[1], now);
+                    }
+                    return;
+                case "Sequence":
+                    entry = 0;
+                    break;
+                case "SentNanos":
+                    entry = 1;
+                    break;
+                case "Angle":
+                    entry = 2;
+                    break;
+                default:
+                    return;
+            }
+            entryValues[entry] = event.value.getDouble();
+            entryFresh[entry] = true;
+            // a frame written entry by entry is complete once every entry has its new value
+            if (entryFresh[0] && entryFresh[1] && entryFresh[2] && entryValues[0] == entryValues[2]) {
+                receive((int) entryValues[0], (long) entryValues[1], now);
+                Arrays.fill(entryFresh, false);
+            }
+        }
+
+        private void receive(int sequence, long sentNanos, long now) {
+            if (sequence <= lastSequence || received == latencies.length) {
+                return;
+            }
+            if (received == 0) {
+                firstNanos = now;
+            }
+            lastSequence = sequence;
+            lastNanos = now;
+            latencies[received++] = now - sentNanos;
+        }
+
+        /**
+         * Prints the statistics of the current variant, if any frames of it arrived.
+         */
+        synchronized void report() {
+            if (variant.isEmpty() || variant.equals(DONE)) {
+                return;
+            }
+            int sent = lastSequence + 1;
+            long[] sorted = Arrays.copyOf(latencies, received);
+            Arrays.sort(sorted);
+            double mean = 0;
+            for (long latency : sorted) {
+                mean += latency / 1e6 / received;
+            }
+            double variance = 0;
+            for (long latency : sorted) {
+                variance += (latency / 1e6 - mean) * (latency / 1e6 - mean) / received;
+            }
+            double seconds = (lastNanos - firstNanos) / 1e9;
+            System.out.printf("%s,%d,%d,%.1f,%.2f,%.2f,%.2f,%.2f,%.3f,%.1f%n", variant, sent, received,
+                    sent == 0 ? 0 : 100.0 * (sent - received) / sent,
+                    percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+                    percentile(sorted, 1), Math.sqrt(variance), seconds > 0 ? (received - 1) / seconds : 0);
+        }
+
+        synchronized void awaitVariant(String expected) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!variant.equals(expected) && System.nanoTime() < deadline) {
+                wait(100);
+            }
+        }
+
+        synchronized boolean done() {
+            return variant.equals(DONE);
+        }
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) throws InterruptedException, IOException {
+        String mode = "";
+        String host = "localhost";
+        int fps = 30;
+        int seconds = 10;
+        int port = 1736;
+        int udpPort = 5800;
+        int i = 0;
+        if (args.length > 0 && !args[0].startsWith("--")) {
+            mode = args[i++];
+            if (mode.equals("vision")) {
+                if (args.length < 2) {
+                    System.err.println("usage: NetworkTablesBenchmark vision <host> [--fps n] [--seconds n]"
+                            + " [--port n] [--udp-port n]");
+                    return;
+                }
+                host = args[i++];
+            }
+        }
+        for (; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--fps": fps = Integer.parseInt(args[i + 1]); break;
+                case "--seconds": seconds = Integer.parseInt(args[i + 1]); break;
+                case "--port": port = Integer.parseInt(args[i + 1]); break;
+                case "--udp-port": udpPort = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.err.println("unknown option '" + args[i] + "'");
+                    return;
+            }
+        }
+        int frames = fps * seconds;
+
+        Robot robot = null;
+        NetworkTableInstance server = null;
+        UdpResultReceiver receiver = null;
+        if (!mode.equals("vision")) {
+            server = NetworkTableInstance.create();
+            server.startServer("networktables-benchmark.ini", "", port);
+            receiver = new UdpResultReceiver(udpPort);
+            receiver.start();
+            robot = new Robot(frames);
+            robot.listen(server, receiver);
+            System.out.println("variant,sent,received,lost %,latency ms p50,p90,p99,max,jitter ms,received per s");
+        }
+        if (mode.equals("robot")) {
+            System.out.println("fake robot listening on port " + port + ", udp port " + udpPort);
+            while (!robot.done()) {
+                Thread.sleep(500);
+            }
+            receiver.close();
+            server.close();
+            return;
+        }
+
+        NetworkTableInstance client = NetworkTableInstance.create();
+        client.startClient(host, port);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!client.isConnected() && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        if (!client.isConnected()) {
+            System.err.println("could not connect to " + host + ":" + port);
+            client.close();
+            return;
+        }
+        NetworkTable table = client.getTable(TABLE);
+        NetworkTableEntry variantEntry = table.getEntry("Variant");
+        NetworkTableEntry sequenceEntry = table.getEntry("Sequence");
+        NetworkTableEntry sentEntry = table.getEntry("SentNanos");
+        NetworkTableEntry angleEntry = table.getEntry("Angle");
+        NetworkTableEntry targetsEntry = table.getEntry("Targets");
+        double[] packed = new double[TargetRanker.FIELDS * PACKED_TARGETS];
+        UdpResultSender sender = new UdpResultSender(host, udpPort);
+        ResultPacket packet = new ResultPacket();
+        long[] publishNanos = new long[frames];
+        long period = TimeUnit.SECONDS.toNanos(1) / fps;
+
+        for (String variant : VARIANTS) {
+            variantEntry.setString(variant);
+            client.flush();
+            if (robot != null) {
+                robot.awaitVariant(variant);
+            } else {
+                Thread.sleep(500);
+            }
+            boolean flush = variant.endsWith("+flush");
+            boolean pack = variant.startsWith("packed");
+            boolean udp = variant.equals(UDP);
+
+            long next = System.nanoTime();
+            for (int frame = 0; frame < frames; frame++) {
+                long now;
+                while ((now = System.nanoTime()) < next) {
+                    long remaining = next - now;
+                    if (remaining > 2_000_000) {
+                        Thread.sleep(1);
+                    }
+                }
+                next += period;
+
+                long start = System.nanoTime();
+                if (udp) {
+                    packet.sequence = frame + 1;
+                    packet.captureNanos = start;
+                    packet.flags = ResultPacket.FOUND;
+                    packet.distanceInches = frame;
+                    sender.send(packet);
+                } else if (pack) {
+                    packed[0] = frame;
+                    packed[1] = start;
+                    for (int field = 2; field < packed.length; field++) {
+                        packed[field] = frame * 0.5 + field;
+                    }
+                    targetsEntry.setDoubleArray(packed);
+                } else {
+                    sequenceEntry.setDouble(frame);
+                    sentEntry.setDouble(start);
+                    angleEntry.setDouble(frame);
+                }
+                if (flush) {
+                    client.flush();
+                }
+                publishNanos[frame] = System.nanoTime() - start;
+            }
+            Arrays.sort(publishNanos);
+            System.err.printf("%s: publish cost %.1f us median, %.1f us p99%n", variant,
+                    percentile(publishNanos, 0.5) * 1000, percentile(publishNanos, 0.99) * 1000);
+            // let the last updates drain before switching variants
+            Thread.sleep(500);
+        }
+        variantEntry.setString(DONE);
+        client.flush();
+        Thread.sleep(500);
+        client.close();
+        sender.close();
+        if (server != null) {
+            receiver.close();
+            server.close();
+        }
+    }
+
+    /**
+     * Returns the given percentile of sorted nanosecond values in milliseconds.
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))] / 1e6;
+    }
+}
@@ -0,0 +1,441 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ToDoubleFunction;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Searches a pipeline's HSV bounds, blur radius and filterContours limits
+ * for the best detection F1 score on a labeled frame set, and writes the
+ * result as a parameter file for the "params" key of the configuration.
+ *
+ * <p>The labels are a CSV of {@code file,x,y,width,height}, one line per
+ * tape, with file names relative to the CSV. A frame without tapes is
+ * listed with its file name only. SyntheticTargetBenchmark --write produces
+ * such a set; real frames can be labeled by hand. A detection counts as
+ * found when its bounding box overlaps a label by at least half (IoU).
+ *
+ * <p>For each blur radius the frames are blurred and converted to HSV once,
+ * in a {@link SharedFrame} each, and every candidate evaluated with that
+ * radius reads them from there. The search is a hill climb: each round
+ * tries moving every parameter up and down by its step, all candidates in
+ * parallel on every core, then takes the best single move or, if better,
+ * the best moves of all parameters together. Steps halve when no move
+ * helps, and a radius is done after {@link #REFINEMENTS} halvings.
+ *
+ * <p>Candidates are scored under the same {@link FrameBudget} as the live
+ * vision loop, so a contour cap that drops tapes there drops them here too;
+ * set it to what the configuration uses with {@code --max-contours} and
+ * {@code --frame-budget}. The file records the pipeline it was tuned for,
+ * and the vision loop only applies it to that pipeline.
+ *
+ * <p>Usage: {@code java -cp <jar> ParameterTuner <pipeline> <labels.csv>
+ * <output.json> [--radii r,r,...] [--max-contours n] [--frame-budget ms]}
+ */
+public final class ParameterTuner {
+    private static final double MIN_IOU = 0.5;
+    private static final int REFINEMENTS = 3;
+    private static final int MAX_ROUNDS = 40;
+    private static final int[] MOVES = {-3, -2, -1, 1, 2, 3};
+
+    private ParameterTuner() {
+    }
+
+    /**
+     * One labeled frame.
+     */
+    private static class Sample {
+        final List<Rect> labels;
+        final SharedFrame frame = new SharedFrame();
+
+        Sample(List<Rect> labels, Mat image) {
+            this.labels = labels;
+            frame.reset(image);
+        }
+    }
+
+    /**
+     * Detection counts over the whole set.
+     */
+    private static class Score {
+        int truePositives;
+        int falsePositives;
+        int falseNegatives;
+
+        double f1() {
+            int denominator = 2 * truePositives + falsePositives + falseNegatives;
+            return denominator == 0 ? 1 : 2.0 * truePositives / denominator;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("F1 %.4f (%d found, %d false, %d missed)", f1(), truePositives,
+                    falsePositives, falseNegatives);
+        }
+    }
+
+    /**
+     * One searched parameter.
+     */
+    private static class Dimension {
+        final String name;
+        final double max;
+        final double initialStep;
+        private final ToDoubleFunction<PipelineParams> getter;
+        private final ObjDoubleConsumer<PipelineParams> setter;
+
+        Dimension(String name, double max, double initialStep, ToDoubleFunction<PipelineParams> getter,
+                ObjDoubleConsumer<PipelineParams> setter) {
+            this.name = name;
+            this.max = max;
+            this.initialStep = initialStep;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        double get(PipelineParams params) {
+            return getter.applyAsDouble(params);
+        }
+
+        /**
+         * Sets the value on params. Range arrays are replaced rather than
+         * written, so params handed to a pipeline earlier never change.
+         */
+        void set(PipelineParams params, double value) {
+            setter.accept(params, value);
+        }
+    }
+
+    private static double[] with(double[] range, int index, double value) {
+        double[] copy = range.clone();
+        copy[index] = value;
+        return copy;
+    }
+
+    private static final Dimension[] DIMENSIONS = {
+        new Dimension("hue min", 180, 8, p -> p.hsvThresholdHue[0],
+                (p, v) -> p.hsvThresholdHue = with(p.hsvThresholdHue, 0, v)),
+        new Dimension("hue max", 180, 8, p -> p.hsvThresholdHue[1],
+                (p, v) -> p.hsvThresholdHue = with(p.hsvThresholdHue, 1, v)),
+        new Dimension("saturation min", 255, 16, p -> p.hsvThresholdSaturation[0],
+                (p, v) -> p.hsvThresholdSaturation = with(p.hsvThresholdSaturation, 0, v)),
+        new Dimension("saturation max", 255, 16, p -> p.hsvThresholdSaturation[1],
+                (p, v) -> p.hsvThresholdSaturation = with(p.hsvThresholdSaturation, 1, v)),
+        new Dimension("value min", 255, 16, p -> p.hsvThresholdValue[0],
+                (p, v) -> p.hsvThresholdValue = with(p.hsvThresholdValue, 0, v)),
+        new Dimension("value max", 255, 16, p -> p.hsvThresholdValue[1],
+                (p, v) -> p.hsvThresholdValue = with(p.hsvThresholdValue, 1, v)),
+        new Dimension("solidity min", 100, 8, p -> p.filterContoursSolidity[0],
+                (p, v) -> p.filterContoursSolidity = with(p.filterContoursSolidity, 0, v)),
+        new Dimension("min area", 20000, 40, p -> p.filterContoursMinArea, (p, v) -> p.filterContoursMinArea = v),
+        new Dimension("min width", 1000, 4, p -> p.filterContoursMinWidth, (p, v) -> p.filterContoursMinWidth = v),
+        new Dimension("min height", 1000, 4, p -> p.filterContoursMinHeight,
+                (p, v) -> p.filterContoursMinHeight = v),
+        new Dimension("min ratio", 10, 0.1, p -> p.filterContoursMinRatio, (p, v) -> p.filterContoursMinRatio = v),
+        new Dimension("max ratio", 10, 0.2, p -> p.filterContoursMaxRatio, (p, v) -> p.filterContoursMaxRatio = v),
+    };
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("usage: ParameterTuner <pipeline> <labels.csv> <output.json> [--radii r,r,...]"
+                    + " [--max-contours n] [--frame-budget ms]");
+            return;
+        }
+        String name = args[0];
+        PipelineParams start = PipelineSelector.defaultParams(name);
+        if (start == null) {
+            System.err.println("unknown pipeline '" + name + "'");
+            return;
+        }
+        List<Integer> radii = new ArrayList<>();
+        radii.add((int) (start.blurRadius + 0.5));
+        String radiiList = null;
+        // the live defaults of "max contours" and "frame budget"
+        int maxContours = 200;
+        double frameBudget = 0;
+        for (int i = 3; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--radii": radiiList = args[i + 1]; break;
+                case "--max-contours": maxContours = Integer.parseInt(args[i + 1]); break;
+                case "--frame-budget": frameBudget = Double.parseDouble(args[i + 1]); break;
+                default:
+                    System.err.println("unknown option '" + args[i] + "'");
+                    return;
+            }
+        }
+        FrameBudget.configure(frameBudget, maxContours);
+        if (radiiList != null) {
+            for (String radius : radiiList.split(",")) {
+                int value = Integer.parseInt(radius.trim());
+                if (!radii.contains(value)) {
+                    radii.add(value);
+                }
+            }
+        } else {
+            for (int radius : new int[] {0, 1, 2, 3, 5}) {
+                if (!radii.contains(radius)) {
+                    radii.add(radius);
+                }
+            }
+        }
+
+        // the pipeline classes load the OpenCV library, so make one before reading images
+        PipelineSelector.create(name);
+        List<Sample> samples = readSamples(Paths.get(args[1]));
+        if (samples.isEmpty()) {
+            System.err.println("no frames in '" + args[1] + "'");
+            return;
+        }
+        int labels = 0;
+        for (Sample sample : samples) {
+            labels += sample.labels.size();
+        }
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        ThreadLocal<SharedFramePipeline> pipelines = ThreadLocal.withInitial(() -> {
+            SharedFramePipeline pipeline = PipelineSelector.create(name);
+            pipeline.setDetection(DetectionBackend.CONTOURS);
+            return pipeline;
+        });
+        System.out.printf("%d frames, %d tapes, %d threads%n", samples.size(), labels, pool.getParallelism());
+
+        long startNanos = System.nanoTime();
+        Score original = evaluate(pool, pipelines, samples, start);
+        System.out.println("generated values: " + original);
+        PipelineParams best = start;
+        Score bestScore = original;
+        for (int radius : radii) {
+            for (Sample sample : samples) {
+                sample.frame.release();
+            }
+            PipelineParams params = bestScore == original ? start.copy() : best.copy();
+            params.blurRadius = radius;
+            prime(pool, samples, params);
+            Score score = evaluate(pool, pipelines, samples, params);
+            PipelineParams climbed = climb(pool, pipelines, samples, params, score);
+            score = evaluate(pool, pipelines, samples, climbed);
+            System.out.printf("blur radius %d: %s%n", radius, score);
+            if (score.f1() > bestScore.f1()) {
+                best = climbed;
+                bestScore = score;
+            }
+        }
+        pool.shutdown();
+
+        best = best.copy();
+        best.pipeline = name;
+        best.write(args[2]);
+        System.out.printf("best: %s, blur radius %.0f, in %.1f s%n", bestScore, best.blurRadius,
+                (System.nanoTime() - startNanos) / 1e9);
+        for (Dimension dimension : DIMENSIONS) {
+            System.out.printf("  %s %.2f -> %.2f%n", dimension.name, dimension.get(start), dimension.get(best));
+        }
+        System.out.println("wrote '" + args[2] + "'; load it with \"params\": \"" + args[2] + "\"");
+    }
+
+    private static List<Sample> readSamples(Path labelFile) throws IOException {
+        Map<String, List<Rect>> labels = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(labelFile)) {
+            String[] fields = line.split(",");
+            if (fields[0].isEmpty() || fields[0].equals("file")) {
+                continue;
+            }
+            List<Rect> boxes = labels.computeIfAbsent(fields[0].trim(), file -> new ArrayList<>());
+            if (fields.length >= 5) {
+                boxes.add(new Rect(Integer.parseInt(fields[1].trim()), Integer.parseInt(fields[2].trim()),
+                        Integer.parseInt(fields[3].trim()), Integer.parseInt(fields[4].trim())));
+            }
+        }
+        Path dir = labelFile.toAbsolutePath().getParent();
+        List<Sample> samples = new ArrayList<>();
+        for (Map.Entry<String, List<Rect>> entry : labels.entrySet()) {
+            Mat image = Imgcodecs.imread(dir.resolve(entry.getKey()).toString());
+            if (image.empty()) {
+                System.err.println("could not read '" + entry.getKey() + "'");
+                continue;
+            }
+            samples.add(new Sample(entry.getValue(), image));
+        }
+        return samples;
+    }
+
+    /**
+     * Blurs and converts every frame for params' blur in parallel, so the
+     * candidates don't queue up behind the first one to ask.
+     */
+    private static void prime(ForkJoinPool pool, List<Sample> samples, PipelineParams params) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Sample sample : samples) {
+            tasks.add(pool.submit(() -> sample.frame.hsv(params.blurType, params.blurRadius)));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    private static PipelineParams climb(ForkJoinPool pool, ThreadLocal<SharedFramePipeline> pipelines,
+            List<Sample> samples, PipelineParams params, Score score) {
+        double[] steps = new double[DIMENSIONS.length];
+        for (int d = 0; d < DIMENSIONS.length; d++) {
+            steps[d] = DIMENSIONS[d].initialStep;
+        }
+        PipelineParams current = params;
+        double currentF1 = score.f1();
+        int refinements = 0;
+        for (int round = 0; round < MAX_ROUNDS && refinements <= REFINEMENTS; round++) {
+            // every single move, evaluated in parallel
+            List<PipelineParams> candidates = new ArrayList<>();
+            List<Integer> owners = new ArrayList<>();
+            for (int d = 0; d < DIMENSIONS.length; d++) {
+                Dimension dimension = DIMENSIONS[d];
+                for (int move : MOVES) {
+                    double value = dimension.get(current) + move * steps[d];
+                    if (value < 0 || value > dimension.max) {
+                        continue;
+                    }
+                    PipelineParams candidate = current.copy();
+                    dimension.set(candidate, value);
+                    if (valid(candidate)) {
+                        candidates.add(candidate);
+                        owners.add(d);
+                    }
+                }
+            }
+            double[] f1s = evaluateAll(pool, pipelines, samples, candidates);
+
+            // best move per dimension, and the best overall
+            int[] bestOfDimension = new int[DIMENSIONS.length];
+            Arrays.fill(bestOfDimension, -1);
+            int bestIndex = -1;
+            for (int i = 0; i < candidates.size(); i++) {
+                int d = owners.get(i);
+                if (f1s[i] > currentF1 && (bestOfDimension[d] < 0 || f1s[i] > f1s[bestOfDimension[d]])) {
+                    bestOfDimension[d] = i;
+                }
+                if (f1s[i] > currentF1 && (bestIndex < 0 || f1s[i] > f1s[bestIndex])) {
+                    bestIndex = i;
+                }
+            }
+            if (bestIndex < 0) {
+                for (int d = 0; d < steps.length; d++) {
+                    steps[d] /= 2;
+                }
+                refinements++;
+                continue;
+            }
+
+            PipelineParams next = candidates.get(bestIndex);
+            double nextF1 = f1s[bestIndex];
+            PipelineParams combined = current.copy();
+            int improved = 0;
+            for (int d = 0; d < DIMENSIONS.length; d++) {
+                if (bestOfDimension[d] >= 0) {
+                    DIMENSIONS[d].set(combined, DIMENSIONS[d].get(candidates.get(bestOfDimension[d])));
+                    improved++;
+                }
+            }
+            if (improved > 1 && valid(combined)) {
+                double combinedF1 = evaluate(pool, pipelines, samples, combined).f1();
+                if (combinedF1 > nextF1) {
+                    next = combined;
+                    nextF1 = combinedF1;
+                }
+            }
+            current = next;
+            currentF1 = nextF1;
+        }
+        return current;
+    }
+
+    /**
+     * False if a lower bound has passed its upper bound.
+     */
+    private static boolean valid(PipelineParams params) {
+        return params.hsvThresholdHue[0] <= params.hsvThresholdHue[1]
+                && params.hsvThresholdSaturation[0] <= params.hsvThresholdSaturation[1]
+                && params.hsvThresholdValue[0] <= params.hsvThresholdValue[1]
+                && params.filterContoursSolidity[0] <= params.filterContoursSolidity[1]
+                && params.filterContoursMinRatio <= params.filterContoursMaxRatio
+                && params.filterContoursMinWidth <= params.filterContoursMaxWidth
+                && params.filterContoursMinHeight <= params.filterContoursMaxHeight;
+    }
+
+    private static double[] evaluateAll(ForkJoinPool pool, ThreadLocal<SharedFramePipeline> pipelines,
+            List<Sample> samples, List<PipelineParams> candidates) {
+        List<ForkJoinTask<Double>> tasks = new ArrayList<>();
+        for (PipelineParams candidate : candidates) {
+            tasks.add(pool.submit(() -> score(pipelines.get(), samples, candidate).f1()));
+        }
+        double[] f1s = new double[candidates.size()];
+        for (int i = 0; i < f1s.length; i++) {
+            f1s[i] = tasks.get(i).join();
+        }
+        return f1s;
+    }
+
+    private static Score evaluate(ForkJoinPool pool, ThreadLocal<SharedFramePipeline> pipelines,
+            List<Sample> samples, PipelineParams params) {
+        return pool.submit(() -> score(pipelines.get(), samples, params)).join();
+    }
+
+    /**
+     * Runs one candidate over every frame on the calling thread.
+     */
+    private static Score score(SharedFramePipeline pipeline, List<Sample> samples, PipelineParams params) {
+        pipeline.setParams(params);
+        Score score = new Score();
+        for (Sample sample : samples) {
+            pipeline.process(sample.frame);
+            List<MatOfPoint> found = pipeline.filterContoursOutput();
+            boolean[] matched = new boolean[sample.labels.size()];
+            for (MatOfPoint contour : found) {
+                Rect box = Imgproc.boundingRect(contour);
+                int match = -1;
+                double bestIou = MIN_IOU;
+                for (int i = 0; i < matched.length; i++) {
+                    double iou = iou(box, sample.labels.get(i));
+                    if (!matched[i] && iou >= bestIou) {
+                        match = i;
+                        bestIou = iou;
+                    }
+                }
+                if (match >= 0) {
+                    matched[match] = true;
+                    score.truePositives++;
+                } else {
+                    score.falsePositives++;
+                }
+            }
+            for (boolean label : matched) {
+                if (!label) {
+                    score.falseNegatives++;
+                }
+            }
+        }
+        return score;
+    }
+
+    private static double iou(Rect a, Rect b) {
+        int ix = Math.max(0, Math.min(a.x + a.width, b.x + b.width) - Math.max(a.x, b.x));
+        int iy = Math.max(0, Math.min(a.y + a.height, b.y + b.height) - Math.max(a.y, b.y));
+        double intersection = (double) ix * iy;
+        double union = a.area() + b.area() - intersection;
+        return union > 0 ? intersection / union : 0;
+    }
+}
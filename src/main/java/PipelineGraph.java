@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+
+/**
+ * Runs the primary pipeline and any number of extra pipelines on the same frame.
+ *
+ * <p>All pipelines get one {@link SharedFrame}, so a blur or HSV conversion
+ * that several of them need is computed once and shared read-only. Past the
+ * shared steps each extra pipeline runs as its own task on
+ * {@link VisionWorkers#pool()} while the primary one runs on the vision
+ * thread, on the shared frame too if it's a {@link SharedFramePipeline}.
+ * Each extra pipeline publishes its ranked targets to its own subtable,
+ * {@code GRIP/<name>/Targets}. The outputs of this class are those of the
+ * primary pipeline, so the listener in {@link Main} works unchanged. The
+ * graph owns its shared frame, so it only takes whole frames itself.
+ */
+public class PipelineGraph implements TargetPipeline {
+    /**
+     * An extra pipeline from the "pipelines" list in the configuration file.
+     */
+    @SuppressWarnings("MemberName")
+    public static class BranchConfig {
+        public String name;
+        public String pipeline;
+        public DetectionBackend detection = DetectionBackend.CONTOURS;
+    }
+
+    private static class Branch {
+        final String name;
+        final String pipelineName;
+        final SharedFramePipeline pipeline;
+        final TargetRanker ranker = new TargetRanker();
+        final NetworkTableEntry targets;
+
+        Branch(BranchConfig config, NetworkTable table) {
+            name = config.name;
+            pipelineName = config.pipeline;
+            pipeline = PipelineSelector.create(config.pipeline);
+            targets = table.getSubTable(config.name).getEntry("Targets");
+        }
+
+        void run(SharedFrame frame) {
+            try {
+                pipeline.process(frame);
+                ranker.rank(pipeline.filterContoursOutput());
+                targets.setDoubleArray(ranker.packed());
+            } catch (RuntimeException ex) {
+                System.err.println("pipeline '" + name + "' failed: " + ex);
+            }
+        }
+    }
+
+    private final TargetPipeline primary;
+    private final NetworkTable table;
+    private final SharedFrame shared = new SharedFrame();
+    private volatile List<Branch> branches = Collections.emptyList();
+
+    public PipelineGraph(TargetPipeline primary, NetworkTable table) {
+        this.primary = primary;
+        this.table = table;
+    }
+
+    /**
+     * Replace the extra pipelines, starting with the next frame. Branches whose
+     * name and pipeline are unchanged keep their buffers.
+     * @param params the parameters to run a pipeline class with
+     */
+    public void configure(List<BranchConfig> configs, TargetRanker.Ranking ranking,
+            Function<String, PipelineParams> params) {
+        List<Branch> old = branches;
+        List<Branch> updated = new ArrayList<>();
+        for (BranchConfig config : configs) {
+            Branch branch = null;
+            for (Branch candidate : old) {
+                if (candidate.name.equals(config.name) && candidate.pipelineName.equals(config.pipeline)) {
+                    branch = candidate;
+                }
+            }
+            if (branch == null) {
+                System.out.println("Adding pipeline '" + config.name + "' (" + config.pipeline + ")");
+                branch = new Branch(config, table);
+            }
+            branch.pipeline.setDetection(config.detection);
+            branch.pipeline.setParams(params.apply(config.pipeline));
+            branch.ranker.setRanking(ranking);
+            updated.add(branch);
+        }
+        branches = updated;
+    }
+
+    /**
+     * The shared frame, for counting how much preprocessing was saved.
+     */
+    public SharedFrame sharedFrame() {
+        return shared;
+    }
+
+    @Override
+    public void process(Mat source0) {
+        List<Branch> branches = this.branches;
+        if (branches.isEmpty()) {
+            // nothing to share with
+            primary.process(source0);
+            return;
+        }
+        shared.reset(source0);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(branches.size());
+        for (Branch branch : branches) {
+            tasks.add(VisionWorkers.pool().submit(() -> branch.run(shared)));
+        }
+        try {
+            if (primary instanceof SharedFramePipeline) {
+                ((SharedFramePipeline) primary).process(shared);
+            } else {
+                primary.process(source0);
+            }
+        } finally {
+            // the frame Mat is reused by the caller, so every branch must finish with it first
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
+    }
+
+    @Override
+    public ArrayList<MatOfPoint> filterContoursOutput() {
+        return primary.filterContoursOutput();
+    }
+
+    @Override
+    public Mat hsvThresholdOutput() {
+        return primary.hsvThresholdOutput();
+    }
+
+    @Override
+    public ArrayList<MatOfPoint> findContoursOutput() {
+        return primary.findContoursOutput();
+    }
+
+    @Override
+    public ArrayList<MatOfPoint> convexHullsOutput() {
+        return primary.convexHullsOutput();
+    }
+
+    @Override
+    public PipelineStats stats() {
+        return primary.stats();
+    }
+
+    @Override
+    public void setDetection(DetectionBackend detection) {
+        primary.setDetection(detection);
+    }
+
+    @Override
+    public DetectionBackend detection() {
+        return primary.detection();
+    }
+
+    @Override
+    public PipelineParams params() {
+        return primary.params();
+    }
+
+    @Override
+    public void setParams(PipelineParams params) {
+        primary.setParams(params);
+    }
+}
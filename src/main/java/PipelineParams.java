@@ -0,0 +1,128 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * The tunable values of a GRIP pipeline.
+ *
+ * <p>Field names match the locals in the generated {@code process} methods so
+ * values can be copied over from a regenerated pipeline by hand. Instances
+ * are treated as immutable once handed to a pipeline; use {@link #copy()} to
+ * derive new ones.
+ *
+ * <p>Parameter files, as written by {@link ParameterTuner} and loaded with
+ * the "params" key of the configuration file, are these fields as JSON.
+ */
+public class PipelineParams {
+    /** The pipeline these values were tuned for, or null if they fit any. */
+    public String pipeline;
+
+    // Blur0
+    public String blurType;
+    public double blurRadius;
+
+    // HSV_Threshold0
+    public double[] hsvThresholdHue;
+    public double[] hsvThresholdSaturation;
+    public double[] hsvThresholdValue;
+
+    // Find_Contours0
+    public boolean findContoursExternalOnly;
+
+    // Filter_Contours0
+    public double filterContoursMinArea;
+    public double filterContoursMinPerimeter;
+    public double filterContoursMinWidth;
+    public double filterContoursMaxWidth;
+    public double filterContoursMinHeight;
+    public double filterContoursMaxHeight;
+    public double[] filterContoursSolidity;
+    public double filterContoursMaxVertices;
+    public double filterContoursMinVertices;
+    public double filterContoursMinRatio;
+    public double filterContoursMaxRatio;
+
+    // connected components backend only
+    public double connectedComponentsMinFill;
+
+    /**
+     * Returns a deep copy that can be changed without affecting this one.
+     */
+    public PipelineParams copy() {
+        PipelineParams copy = new PipelineParams();
+        copy.pipeline = pipeline;
+        copy.blurType = blurType;
+        copy.blurRadius = blurRadius;
+        copy.hsvThresholdHue = hsvThresholdHue.clone();
+        copy.hsvThresholdSaturation = hsvThresholdSaturation.clone();
+        copy.hsvThresholdValue = hsvThresholdValue.clone();
+        copy.findContoursExternalOnly = findContoursExternalOnly;
+        copy.filterContoursMinArea = filterContoursMinArea;
+        copy.filterContoursMinPerimeter = filterContoursMinPerimeter;
+        copy.filterContoursMinWidth = filterContoursMinWidth;
+        copy.filterContoursMaxWidth = filterContoursMaxWidth;
+        copy.filterContoursMinHeight = filterContoursMinHeight;
+        copy.filterContoursMaxHeight = filterContoursMaxHeight;
+        copy.filterContoursSolidity = filterContoursSolidity.clone();
+        copy.filterContoursMaxVertices = filterContoursMaxVertices;
+        copy.filterContoursMinVertices = filterContoursMinVertices;
+        copy.filterContoursMinRatio = filterContoursMinRatio;
+        copy.filterContoursMaxRatio = filterContoursMaxRatio;
+        copy.connectedComponentsMinFill = connectedComponentsMinFill;
+        return copy;
+    }
+
+    /**
+     * Reads a parameter file. Every field but pipeline has to be present; a
+     * missing one would otherwise read as 0 and reject every contour.
+     * @throws JsonParseException if the file isn't a complete parameter set
+     */
+    public static PipelineParams read(String file) throws IOException {
+        JsonElement json;
+        try (Reader reader = Files.newBufferedReader(Paths.get(file))) {
+            json = new JsonParser().parse(reader);
+        }
+        if (!json.isJsonObject()) {
+            throw new JsonParseException("'" + file + "' is not a parameter set");
+        }
+        for (Field field : PipelineParams.class.getFields()) {
+            String name = field.getName();
+            JsonElement value = json.getAsJsonObject().get(name);
+            if (!Modifier.isStatic(field.getModifiers()) && !"pipeline".equals(name)
+                    && (value == null || value.isJsonNull())) {
+                throw new JsonParseException("'" + file + "' has no " + name);
+            }
+        }
+        PipelineParams params = new Gson().fromJson(json, PipelineParams.class);
+        if (params.blurType == null || !isRange(params.hsvThresholdHue)
+                || !isRange(params.hsvThresholdSaturation) || !isRange(params.hsvThresholdValue)
+                || !isRange(params.filterContoursSolidity)) {
+            throw new JsonParseException("'" + file + "' is not a complete parameter set");
+        }
+        return params;
+    }
+
+    /**
+     * Writes this parameter set to a file that {@link #read(String)} can load.
+     */
+    public void write(String file) throws IOException {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        try (Writer writer = Files.newBufferedWriter(Paths.get(file))) {
+            gson.toJson(this, writer);
+        }
+    }
+
+    private static boolean isRange(double[] range) {
+        return range != null && range.length == 2;
+    }
+}
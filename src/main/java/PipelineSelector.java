@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+
+/**
+ * Delegates to one of the GRIP pipelines, chosen by name. Each is a
+ * {@link GripPipeline} of its own, started with the values of the export of
+ * that name.
+ *
+ * <p>The vision thread owns a single selector for its whole lifetime. A new
+ * selection only takes effect at the start of the next {@link #process(Mat)}
+ * call, so the listener always reads the outputs of the pipeline that
+ * produced the frame.
+ */
+public class PipelineSelector implements SharedFramePipeline {
+    public static final String DEFAULT_PIPELINE = "GripPipelineMV";
+
+    private final Map<String, SharedFramePipeline> pipelines = new HashMap<>();
+    private volatile String pending;
+    private volatile DetectionBackend pendingDetection;
+    private volatile PipelineParams pendingParams;
+    private String activeName;
+    private volatile SharedFramePipeline active;
+
+    public PipelineSelector(String name) {
+        activeName = name;
+        active = get(name);
+    }
+
+    /**
+     * Returns true if name refers to a pipeline this selector can run.
+     */
+    public static boolean isKnown(String name) {
+        return GripPipeline.defaultParams(name) != null;
+    }
+
+    /**
+     * The values the named pipeline was generated with, or null if the name is unknown.
+     */
+    public static PipelineParams defaultParams(String name) {
+        return GripPipeline.defaultParams(name);
+    }
+
+    /**
+     * Creates a new instance of the named pipeline, or returns null if the name is unknown.
+     */
+    public static SharedFramePipeline create(String name) {
+        PipelineParams params = GripPipeline.defaultParams(name);
+        return params == null ? null : new GripPipeline(params);
+    }
+
+    private SharedFramePipeline get(String name) {
+        // keep every pipeline that has been used so switching back reuses its buffers
+        SharedFramePipeline pipeline = pipelines.get(name);
+        if (pipeline == null) {
+            pipeline = create(name);
+            if (pipeline == null) {
+                throw new IllegalArgumentException("unknown pipeline '" + name + "'");
+            }
+            pipelines.put(name, pipeline);
+        }
+        return pipeline;
+    }
+
+    /**
+     * Switch to another pipeline starting with the next frame.
+     */
+    public void select(String name) {
+        if (!isKnown(name)) {
+            throw new IllegalArgumentException("unknown pipeline '" + name + "'");
+        }
+        pending = name;
+    }
+
+    /**
+     * The pipeline that processed the most recent frame.
+     */
+    public TargetPipeline active() {
+        return active;
+    }
+
+    public String activeName() {
+        return activeName;
+    }
+
+    @Override
+    public void process(Mat source0) {
+        applyPending();
+        active.process(source0);
+    }
+
+    @Override
+    public void process(SharedFrame frame) {
+        applyPending();
+        active.process(frame);
+    }
+
+    private void applyPending() {
+        String name = pending;
+        if (name != null) {
+            pending = null;
+            if (!name.equals(activeName)) {
+                active = get(name);
+                activeName = name;
+                System.out.println("Switched vision pipeline to " + name);
+            }
+        }
+        DetectionBackend detection = pendingDetection;
+        if (detection != null) {
+            pendingDetection = null;
+            if (detection != active.detection()) {
+                active.setDetection(detection);
+                System.out.println("Switched " + activeName + " detection to " + detection);
+            }
+        }
+        PipelineParams params = pendingParams;
+        if (params != null) {
+            pendingParams = null;
+            active.setParams(params);
+        }
+    }
+
+    @Override
+    public ArrayList<MatOfPoint> filterContoursOutput() {
+        return active.filterContoursOutput();
+    }
+
+    @Override
+    public Mat hsvThresholdOutput() {
+        return active.hsvThresholdOutput();
+    }
+
+    @Override
+    public ArrayList<MatOfPoint> findContoursOutput() {
+        return active.findContoursOutput();
+    }
+
+    @Override
+    public ArrayList<MatOfPoint> convexHullsOutput() {
+        return active.convexHullsOutput();
+    }
+
+    @Override
+    public PipelineStats stats() {
+        return active.stats();
+    }
+
+    /**
+     * Change the detection backend of the selected pipeline starting with the
+     * next frame. Call after {@link #select(String)} to target a new selection.
+     */
+    @Override
+    public void setDetection(DetectionBackend detection) {
+        pendingDetection = detection;
+    }
+
+    @Override
+    public DetectionBackend detection() {
+        return active.detection();
+    }
+
+    @Override
+    public PipelineParams params() {
+        return active.params();
+    }
+
+    /**
+     * Change the parameters of the selected pipeline starting with the next
+     * frame. Call after {@link #select(String)} to target a new selection.
+     */
+    @Override
+    public void setParams(PipelineParams params) {
+        pendingParams = params;
+    }
+}
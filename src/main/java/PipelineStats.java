@@ -0,0 +1,32 @@
+/**
+ * What a pipeline reports about how its frames went, besides its outputs.
+ *
+ * <p>Every pipeline hands out one of these from {@link TargetPipeline#stats()},
+ * so the pipelines that wrap another forward that single accessor, and a new
+ * statistic only has to be added here and where it's kept.
+ */
+public class PipelineStats {
+    private final FrameBudget budget;
+    private final AdaptiveContourFilter contourFilter;
+
+    public PipelineStats(FrameBudget budget, AdaptiveContourFilter contourFilter) {
+        this.budget = budget;
+        this.contourFilter = contourFilter;
+    }
+
+    /**
+     * How the last frame kept to the time budget, whether its result is
+     * complete, degraded or stale.
+     */
+    public FrameBudget budget() {
+        return budget;
+    }
+
+    /**
+     * The contour filter of the contours backend, for its check order and
+     * how often it changed.
+     */
+    public AdaptiveContourFilter contourFilter() {
+        return contourFilter;
+    }
+}
@@ -0,0 +1,212 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fuses the {@link ResultPacket}s of several coprocessors into one target.
+ *
+ * <p>Every source keeps its newest packet. Its capture time is put on this
+ * side's clock as the time of arrival minus the packet's age, which is off
+ * by the network delay only, well under a millisecond on the robot's
+ * network. Whenever a packet arrives the newest capture time of any source
+ * sets the moment being estimated, and every source whose newest capture is
+ * within the window before it and no older than the maximum age takes part.
+ *
+ * <p>Each source reports the target from its own camera, so before fusing
+ * the distance and offset are moved to the robot's frame with the source's
+ * mount: how far forward and right of the robot's center its camera is,
+ * looking straight ahead. Sources that found a target are then averaged.
+ * Taking confidence as the inverse of a source's spread, each is weighted
+ * by its confidence squared, and by how fresh it is, from full weight at
+ * the moment being estimated down to none at the maximum age. The fused
+ * confidence is the weighted mean of theirs, its capture time the weighted
+ * mean of theirs, and it is found if any source found it.
+ *
+ * <p>Sources are told apart by their address, and their mounts looked up by
+ * host, so local processes sending from different ports are different
+ * sources sharing one mount. A source that has sent nothing for longer than
+ * the maximum age is forgotten, so senders that restart on a new port don't
+ * pile up.
+ */
+public class ResultFuser {
+    static final double MIN_WEIGHT = 0.05;
+    /** The host of results offered without a network hop. */
+    public static final String LOCAL = "local";
+
+    private static class Source {
+        final Object key;
+        final String host;
+        final ResultPacket latest = new ResultPacket();
+        long captureNanos;
+        long arrivalNanos;
+        boolean valid;
+
+        Source(Object key, String host) {
+            this.key = key;
+            this.host = host;
+        }
+    }
+
+    private final List<Source> sources = new ArrayList<>();
+    private final Map<String, double[]> mounts = new HashMap<>();
+    private long windowNanos = 20_000_000;
+    private long maxAgeNanos = 100_000_000;
+    private long sequence;
+    private int lastSources;
+    private double lastSpreadInches;
+    private long outOfOrder;
+
+    /**
+     * Sets how far apart in time results may be to be fused, and how old
+     * they may get before they're left out.
+     */
+    public synchronized void setTiming(double windowMillis, double maxAgeMillis) {
+        windowNanos = (long) (windowMillis * 1e6);
+        maxAgeNanos = (long) (maxAgeMillis * 1e6);
+    }
+
+    /**
+     * Sets where the camera of every source on host sits, in inches from the
+     * robot's center.
+     */
+    public synchronized void setMount(String host, double forwardInches, double rightInches) {
+        mounts.put(host, new double[] {forwardInches, rightInches});
+    }
+
+    public synchronized void clearMounts() {
+        mounts.clear();
+    }
+
+    /**
+     * Takes a packet from a source and fuses it with the others.
+     * @param key tells sources apart, e.g. their socket address
+     * @param host looks up the source's mount
+     * @param arrivalNanos {@link System#nanoTime()} when the packet arrived
+     * @param out the fused result, valid when true is returned
+     * @return false if the packet was older than one already taken from the
+     *     source, or nothing is recent enough to fuse
+     */
+    public synchronized boolean offer(Object key, String host, ResultPacket packet, long arrivalNanos,
+            ResultPacket out) {
+        Source source = null;
+        for (int i = sources.size() - 1; i >= 0; i--) {
+            Source candidate = sources.get(i);
+            if (candidate.key.equals(key)) {
+                source = candidate;
+            } else if (arrivalNanos - candidate.arrivalNanos > maxAgeNanos) {
+                sources.remove(i);
+            }
+        }
+        if (source == null) {
+            source = new Source(key, host);
+            sources.add(source);
+        }
+        // a restarted sender has a new session and counts from 1 again
+        if (source.valid && packet.session == source.latest.session
+                && packet.sequence <= source.latest.sequence) {
+            outOfOrder++;
+            return false;
+        }
+        source.latest.set(packet);
+        source.captureNanos = arrivalNanos - packet.ageMicros * 1000L;
+        source.arrivalNanos = arrivalNanos;
+        source.valid = true;
+        return fuse(arrivalNanos, out);
+    }
+
+    private boolean fuse(long now, ResultPacket out) {
+        long newest = Long.MIN_VALUE;
+        for (Source source : sources) {
+            if (source.valid && now - source.captureNanos <= maxAgeNanos) {
+                newest = Math.max(newest, source.captureNanos);
+            }
+        }
+        if (newest == Long.MIN_VALUE) {
+            return false;
+        }
+        int count = 0;
+        int found = 0;
+        int targets = 0;
+        short flags = 0;
+        double weights = 0;
+        double forward = 0;
+        double right = 0;
+        double confidence = 0;
+        double capture = 0;
+        double minForward = Double.MAX_VALUE;
+        double maxForward = -Double.MAX_VALUE;
+        for (Source source : sources) {
+            if (!source.valid || newest - source.captureNanos > windowNanos
+                    || now - source.captureNanos > maxAgeNanos) {
+                continue;
+            }
+            count++;
+            ResultPacket packet = source.latest;
+            flags |= packet.flags & (ResultPacket.DEGRADED | ResultPacket.STALE);
+            if (!packet.found()) {
+                continue;
+            }
+            double[] mount = mounts.get(source.host);
+            double sourceForward = packet.distanceInches + (mount == null ? 0 : mount[0]);
+            double sourceRight = packet.offsetInches + (mount == null ? 0 : mount[1]);
+            double freshness = 1 - (double) (now - source.captureNanos) / maxAgeNanos;
+            double trust = Math.max(packet.confidence, MIN_WEIGHT);
+            double weight = trust * trust * Math.max(freshness, MIN_WEIGHT);
+            weights += weight;
+            forward += weight * sourceForward;
+            right += weight * sourceRight;
+            confidence += weight * packet.confidence;
+            capture += weight * (source.captureNanos - newest);
+            minForward = Math.min(minForward, sourceForward);
+            maxForward = Math.max(maxForward, sourceForward);
+            targets = Math.max(targets, packet.targets);
+            found++;
+        }
+        lastSources = count;
+        out.sequence = ++sequence;
+        out.targets = targets;
+        if (found > 0) {
+            out.flags = (short) (flags | ResultPacket.FOUND);
+            out.distanceInches = forward / weights;
+            out.offsetInches = right / weights;
+            out.angleRadians = Math.atan2(out.offsetInches, out.distanceInches);
+            out.confidence = confidence / weights;
+            out.captureNanos = newest + (long) (capture / weights);
+            lastSpreadInches = maxForward - minForward;
+        } else {
+            out.flags = flags;
+            out.distanceInches = 0;
+            out.offsetInches = 0;
+            out.angleRadians = 0;
+            out.confidence = 0;
+            out.captureNanos = newest;
+            lastSpreadInches = 0;
+        }
+        out.ageMicros = (int) ((now - out.captureNanos) / 1000);
+        return true;
+    }
+
+    /** Sources that took part in the last fused result. */
+    public synchronized int lastSources() {
+        return lastSources;
+    }
+
+    /**
+     * How far apart the forward distances of the sources that found the
+     * target were, for the last fused result.
+     */
+    public synchronized double lastSpreadInches() {
+        return lastSpreadInches;
+    }
+
+    /** Sources heard from within the maximum age. */
+    public synchronized int sources() {
+        return sources.size();
+    }
+
+    /** Packets dropped because a newer one from the same source had arrived. */
+    public synchronized long outOfOrder() {
+        return outOfOrder;
+    }
+}
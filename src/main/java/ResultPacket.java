@@ -0,0 +1,127 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The fixed layout of a result sent over UDP by {@link UdpResultSender}.
+ *
+ * <p>One {@link #SIZE} byte datagram per frame, big endian:
+ * <pre>
+ *  0 int    magic, "DSVR"
+ *  4 short  version
+ *  6 short  flags, {@link #FOUND}, {@link #REUSED}, {@link #DEGRADED} and {@link #STALE}
+ *  8 long   sequence, counting frames from 1
+ * 16 long   capture time, System.nanoTime() of the vision process when the frame was grabbed
+ * 24 int    age in microseconds from grabbing the frame to sending this packet
+ * 28 int    number of valid tape pairs in the frame
+ * 32 double distance to the best target, inches
+ * 40 double offset of the best target to the right, inches
+ * 48 double bearing of the best target, radians, positive to the right
+ * 56 double confidence of the best target, 0 to 1
+ * 64 long   session, a random number picked by the sender when it starts
+ * </pre>
+ * The target fields are 0 when FOUND isn't set. A new session means the
+ * sender restarted and its sequence started over. The capture time is only
+ * comparable to other packets of the same sender; on the robot, the time
+ * of arrival minus the age tells when the frame was taken, give or take the
+ * network.
+ *
+ * <p>This class and {@link UdpResultReceiver} only need the JDK, so they can
+ * be copied into robot code as they are.
+ */
+public class ResultPacket {
+    public static final int MAGIC = 0x44535652; // "DSVR"
+    public static final short VERSION = 2;
+    public static final int SIZE = 72;
+
+    /** A target was found and the target fields are valid. */
+    public static final short FOUND = 1;
+    /** The scene hadn't changed and the results are those of an earlier frame. */
+    public static final short REUSED = 2;
+    /** The frame ran out of time and the results may miss targets, see FrameBudget. */
+    public static final short DEGRADED = 4;
+    /** The frame ran out of time and the results are those of an earlier frame. */
+    public static final short STALE = 8;
+
+    public short flags;
+    public long sequence;
+    public long captureNanos;
+    public int ageMicros;
+    public int targets;
+    public double distanceInches;
+    public double offsetInches;
+    public double angleRadians;
+    public double confidence;
+    public long session;
+
+    public boolean found() {
+        return (flags & FOUND) != 0;
+    }
+
+    public boolean reused() {
+        return (flags & REUSED) != 0;
+    }
+
+    public boolean degraded() {
+        return (flags & DEGRADED) != 0;
+    }
+
+    public boolean stale() {
+        return (flags & STALE) != 0;
+    }
+
+    /**
+     * Writes this packet at the start of buffer, which is left flipped for sending.
+     */
+    public void write(ByteBuffer buffer) {
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort(flags);
+        buffer.putLong(sequence);
+        buffer.putLong(captureNanos);
+        buffer.putInt(ageMicros);
+        buffer.putInt(targets);
+        buffer.putDouble(distanceInches);
+        buffer.putDouble(offsetInches);
+        buffer.putDouble(angleRadians);
+        buffer.putDouble(confidence);
+        buffer.putLong(session);
+        buffer.flip();
+    }
+
+    /**
+     * Reads a received packet from a flipped buffer.
+     * @return false if the buffer doesn't hold a packet of this version
+     */
+    public boolean read(ByteBuffer buffer) {
+        if (buffer.remaining() < SIZE || buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION) {
+            return false;
+        }
+        flags = buffer.getShort(6);
+        sequence = buffer.getLong(8);
+        captureNanos = buffer.getLong(16);
+        ageMicros = buffer.getInt(24);
+        targets = buffer.getInt(28);
+        distanceInches = buffer.getDouble(32);
+        offsetInches = buffer.getDouble(40);
+        angleRadians = buffer.getDouble(48);
+        confidence = buffer.getDouble(56);
+        session = buffer.getLong(64);
+        return true;
+    }
+
+    /**
+     * Copies every field of other into this packet.
+     */
+    public void set(ResultPacket other) {
+        flags = other.flags;
+        sequence = other.sequence;
+        captureNanos = other.captureNanos;
+        ageMicros = other.ageMicros;
+        targets = other.targets;
+        distanceInches = other.distanceInches;
+        offsetInches = other.offsetInches;
+        angleRadians = other.angleRadians;
+        confidence = other.confidence;
+        session = other.session;
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.function.Consumer;
+
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTableValue;
+
+/**
+ * Watches NetworkTables for whether the robot needs vision right now.
+ *
+ * <p>The robot counts as active while NetworkTables is connected and the
+ * control word the driver station code publishes under FMSInfo has the
+ * enabled bit set and the emergency stop bit clear, in any mode. Anything
+ * else, no connection, disabled, stopped, or a robot program that never
+ * published a control word, counts as idle. Both the connection and the
+ * entry are watched with listeners, so a change is seen as soon as
+ * NetworkTables delivers it rather than at the next poll.
+ */
+public class RobotStateMonitor {
+    // HAL control word bits, as published by DriverStation
+    static final int ENABLED = 0x01;
+    static final int AUTONOMOUS = 0x02;
+    static final int TEST = 0x04;
+    static final int ESTOP = 0x08;
+    static final int FMS_ATTACHED = 0x10;
+    static final int DS_ATTACHED = 0x20;
+
+    private final NetworkTableEntry controlDataEntry;
+    private final Consumer<Boolean> listener;
+    private boolean connected;
+    private int controlWord;
+    private volatile boolean active;
+    private volatile long changes;
+
+    /**
+     * Starts watching. listener is called with the new state on the
+     * NetworkTables listener thread whenever it changes, and once straight
+     * away with the current state.
+     */
+    public RobotStateMonitor(NetworkTableInstance instance, Consumer<Boolean> listener) {
+        this.listener = listener;
+        controlDataEntry = instance.getTable("FMSInfo").getEntry("FMSControlData");
+        synchronized (this) {
+            connected = instance.isConnected();
+            controlWord = (int) controlDataEntry.getDouble(0);
+            active = isActive(connected, controlWord);
+        }
+        listener.accept(active);
+        instance.addConnectionListener(notification -> {
+            synchronized (this) {
+                connected = instance.isConnected();
+                update();
+            }
+        }, false);
+        controlDataEntry.addListener(notification -> {
+            synchronized (this) {
+                NetworkTableValue value = notification.value;
+                controlWord = value != null && value.isDouble() ? (int) value.getDouble() : 0;
+                update();
+            }
+        }, EntryListenerFlags.kNew | EntryListenerFlags.kUpdate | EntryListenerFlags.kDelete);
+    }
+
+    private static boolean isActive(boolean connected, int controlWord) {
+        return connected && (controlWord & ENABLED) != 0 && (controlWord & ESTOP) == 0;
+    }
+
+    private void update() {
+        boolean now = isActive(connected, controlWord);
+        if (now != active) {
+            active = now;
+            changes++;
+            listener.accept(now);
+        }
+    }
+
+    /** Whether the robot is connected and enabled. */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * The last control word seen, for logging.
+     */
+    public synchronized int controlWord() {
+        return controlWord;
+    }
+
+    /** Times the robot went from idle to active or back. */
+    public long changes() {
+        return changes;
+    }
+}
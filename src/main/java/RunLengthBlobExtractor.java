@@ -0,0 +1,453 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pure Java blob extractor working on run lengths.
+ *
+ * <p>Rows are classified into a one byte per pixel mask by a
+ * {@link RowClassifier}, encoded as runs of set pixels, and merged with the
+ * runs of the previous row as they arrive (8-connected, like findContours).
+ * Only the runs and per-blob bounding box and pixel count are kept, so no
+ * full-frame mask or native memory is needed. All buffers are reused
+ * between frames.
+ *
+ * <p>{@link #filter} applies the same criteria as GRIP's filterContours to
+ * the convex hull of each blob, so its output is comparable to
+ * {@code filterContoursOutput()} of the contour path.
+ */
+public class RunLengthBlobExtractor {
+    /**
+     * Decides which pixels of a row belong to the target.
+     */
+    public interface RowClassifier {
+        /**
+         * Writes 1 to mask[x] for pixels that pass and 0 for the rest.
+         * @param frame the frame bytes
+         * @param offset index of the first byte of the row in frame
+         * @param width number of pixels in the row
+         * @param mask output, at least width long
+         */
+        void classify(byte[] frame, int offset, int width, byte[] mask);
+    }
+
+    /**
+     * A blob that passed every filter.
+     */
+    public static class Blob {
+        public int x;
+        public int y;
+        public int width;
+        public int height;
+        /** Number of set pixels. */
+        public int pixelCount;
+        /** Area of the convex hull through the pixel centers, as contourArea would report it. */
+        public double area;
+        /** Hull vertices as x, y pairs. */
+        public int[] hull = new int[16];
+        public int hullSize;
+    }
+
+    private byte[] mask = new byte[0];
+
+    // runs in row-major order
+    private int runCount;
+    private int[] runY = new int[256];
+    private int[] runStart = new int[256];
+    private int[] runEnd = new int[256];
+    private int[] runLabel = new int[256];
+    // run indices grouped by root label, each group in row-major order
+    private int[] runOrder = new int[256];
+    private int[] labelRunsStart = new int[257];
+    private int prevRowFirst;
+    private int prevRowEnd;
+    private int firstRowY;
+    private int lastRowY;
+
+    // union-find over labels, stats are kept at the root
+    private int labelCount;
+    private int[] parent = new int[256];
+    private int[] minX = new int[256];
+    private int[] maxX = new int[256];
+    private int[] minY = new int[256];
+    private int[] maxY = new int[256];
+    private int[] pixels = new int[256];
+
+    private final ArrayList<Blob> blobs = new ArrayList<>();
+    private int blobCount;
+    private int[] hullScratch = new int[64];
+
+    /**
+     * Clears the state left by the previous frame.
+     */
+    public void begin() {
+        runCount = 0;
+        labelCount = 0;
+        prevRowFirst = 0;
+        prevRowEnd = 0;
+        firstRowY = Integer.MIN_VALUE;
+        lastRowY = Integer.MIN_VALUE;
+        blobCount = 0;
+    }
+
+    /**
+     * Classifies and merges every row of a frame.
+     * @param frame the frame bytes
+     * @param width frame width in pixels
+     * @param height frame height in pixels
+     * @param rowStride bytes from the start of one row to the next
+     * @param classifier turns a row of frame bytes into mask values
+     */
+    public void extract(byte[] frame, int width, int height, int rowStride, RowClassifier classifier) {
+        begin();
+        if (mask.length < width) {
+            mask = new byte[width];
+        }
+        for (int y = 0; y < height; y++) {
+            classifier.classify(frame, y * rowStride, width, mask);
+            addRow(y, mask, width);
+        }
+    }
+
+    /**
+     * Encodes one mask row as runs and joins them to the blobs of the row above.
+     * Rows must be added in increasing order; a skipped row breaks connectivity.
+     */
+    public void addRow(int y, byte[] mask, int width) {
+        addRow(y, mask, 0, width);
+    }
+
+    /**
+     * Same as {@link #addRow(int, byte[], int)} for a row that starts at
+     * offset in mask, such as one row of a whole mask image.
+     */
+    public void addRow(int y, byte[] mask, int offset, int width) {
+        int rowFirst = runCount;
+        int x = 0;
+        while (x < width) {
+            while (x < width && mask[offset + x] == 0) {
+                x++;
+            }
+            if (x == width) {
+                break;
+            }
+            int start = x;
+            while (x < width && mask[offset + x] != 0) {
+                x++;
+            }
+            addRun(y, start, x - 1);
+        }
+        int rowEnd = runCount;
+
+        if (firstRowY == Integer.MIN_VALUE) {
+            firstRowY = y;
+        }
+        if (lastRowY == y - 1) {
+            joinRows(prevRowFirst, prevRowEnd, rowFirst, rowEnd);
+        }
+        prevRowFirst = rowFirst;
+        prevRowEnd = rowEnd;
+        lastRowY = y;
+    }
+
+    /**
+     * Appends the rows extracted by another extractor, such as the next strip
+     * of the same frame, and joins blobs that touch across the seam. Its
+     * first row must directly follow the last row added here.
+     */
+    public void append(RunLengthBlobExtractor other) {
+        ensureRuns(runCount + other.runCount);
+        ensureLabels(labelCount + other.labelCount);
+        int labelOffset = labelCount;
+        int runOffset = runCount;
+        for (int label = 0; label < other.labelCount; label++) {
+            parent[labelOffset + label] = other.parent[label] + labelOffset;
+        }
+        System.arraycopy(other.minX, 0, minX, labelOffset, other.labelCount);
+        System.arraycopy(other.maxX, 0, maxX, labelOffset, other.labelCount);
+        System.arraycopy(other.minY, 0, minY, labelOffset, other.labelCount);
+        System.arraycopy(other.maxY, 0, maxY, labelOffset, other.labelCount);
+        System.arraycopy(other.pixels, 0, pixels, labelOffset, other.labelCount);
+        System.arraycopy(other.runY, 0, runY, runOffset, other.runCount);
+        System.arraycopy(other.runStart, 0, runStart, runOffset, other.runCount);
+        System.arraycopy(other.runEnd, 0, runEnd, runOffset, other.runCount);
+        for (int i = 0; i < other.runCount; i++) {
+            runLabel[runOffset + i] = other.runLabel[i] + labelOffset;
+        }
+        labelCount += other.labelCount;
+        runCount += other.runCount;
+        if (other.lastRowY == Integer.MIN_VALUE) {
+            return;
+        }
+
+        // join the seam: our last row against the first row of other
+        int firstRowEnd = runOffset;
+        while (firstRowEnd < runCount && runY[firstRowEnd] == other.firstRowY) {
+            firstRowEnd++;
+        }
+        if (lastRowY == other.firstRowY - 1) {
+            joinRows(prevRowFirst, prevRowEnd, runOffset, firstRowEnd);
+        }
+        if (firstRowY == Integer.MIN_VALUE) {
+            firstRowY = other.firstRowY;
+        }
+        prevRowFirst = other.prevRowFirst + runOffset;
+        prevRowEnd = other.prevRowEnd + runOffset;
+        lastRowY = other.lastRowY;
+    }
+
+    private void ensureRuns(int size) {
+        if (size > runY.length) {
+            size = Math.max(size, runY.length * 2);
+            runY = Arrays.copyOf(runY, size);
+            runStart = Arrays.copyOf(runStart, size);
+            runEnd = Arrays.copyOf(runEnd, size);
+            runLabel = Arrays.copyOf(runLabel, size);
+        }
+    }
+
+    private void ensureLabels(int size) {
+        if (size > parent.length) {
+            size = Math.max(size, parent.length * 2);
+            parent = Arrays.copyOf(parent, size);
+            minX = Arrays.copyOf(minX, size);
+            maxX = Arrays.copyOf(maxX, size);
+            minY = Arrays.copyOf(minY, size);
+            maxY = Arrays.copyOf(maxY, size);
+            pixels = Arrays.copyOf(pixels, size);
+        }
+    }
+
+    private void addRun(int y, int start, int end) {
+        ensureRuns(runCount + 1);
+        ensureLabels(labelCount + 1);
+        int label = labelCount++;
+        parent[label] = label;
+        minX[label] = start;
+        maxX[label] = end;
+        minY[label] = y;
+        maxY[label] = y;
+        pixels[label] = end - start + 1;
+
+        runY[runCount] = y;
+        runStart[runCount] = start;
+        runEnd[runCount] = end;
+        runLabel[runCount] = label;
+        runCount++;
+    }
+
+    /**
+     * Unions every run of the current row with the runs above it that touch it,
+     * including diagonally. Both rows are sorted by start, so one pass suffices.
+     */
+    private void joinRows(int prevFirst, int prevEnd, int curFirst, int curEnd) {
+        int p = prevFirst;
+        for (int c = curFirst; c < curEnd; c++) {
+            int start = runStart[c] - 1;
+            int end = runEnd[c] + 1;
+            while (p < prevEnd && runEnd[p] < start) {
+                p++;
+            }
+            for (int q = p; q < prevEnd && runStart[q] <= end; q++) {
+                union(runLabel[q], runLabel[c]);
+            }
+        }
+    }
+
+    private int find(int label) {
+        while (parent[label] != label) {
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return;
+        }
+        if (rootB < rootA) {
+            int tmp = rootA;
+            rootA = rootB;
+            rootB = tmp;
+        }
+        parent[rootB] = rootA;
+        minX[rootA] = Math.min(minX[rootA], minX[rootB]);
+        maxX[rootA] = Math.max(maxX[rootA], maxX[rootB]);
+        minY[rootA] = Math.min(minY[rootA], minY[rootB]);
+        maxY[rootA] = Math.max(maxY[rootA], maxY[rootB]);
+        pixels[rootA] += pixels[rootB];
+    }
+
+    /**
+     * Number of connected blobs found since {@link #begin()}, before filtering.
+     */
+    public int blobCount() {
+        int count = 0;
+        for (int label = 0; label < labelCount; label++) {
+            if (find(label) == label) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Keeps the blobs that meet the criteria of GRIP's filterContours step.
+     * Width, height and ratio are checked from the bounding box first; the hull
+     * is only built for blobs that pass those.
+     */
+    public void filter(double minArea, double minPerimeter, double minWidth, double maxWidth,
+            double minHeight, double maxHeight, double[] solidity, double maxVertexCount,
+            double minVertexCount, double minRatio, double maxRatio) {
+        blobCount = 0;
+        bucketRuns();
+        for (int label = 0; label < labelCount; label++) {
+            if (parent[label] != label) continue;
+            final int width = maxX[label] - minX[label] + 1;
+            final int height = maxY[label] - minY[label] + 1;
+            if (width < minWidth || width > maxWidth) continue;
+            if (height < minHeight || height > maxHeight) continue;
+            final double ratio = width / (double) height;
+            if (ratio < minRatio || ratio > maxRatio) continue;
+
+            Blob blob = nextBlob();
+            buildHull(label, blob);
+            blob.area = hullArea(blob);
+            // pixel counts include the boundary, so a filled rectangle slightly exceeds its polygon
+            final double solid = blob.area > 0 ? Math.min(100, 100 * pixels[label] / blob.area) : 100;
+            if (blob.area < minArea
+                    || hullPerimeter(blob) < minPerimeter
+                    || solid < solidity[0] || solid > solidity[1]
+                    || blob.hullSize < minVertexCount || blob.hullSize > maxVertexCount) {
+                blobCount--;
+                continue;
+            }
+            blob.x = minX[label];
+            blob.y = minY[label];
+            blob.width = width;
+            blob.height = height;
+            blob.pixelCount = pixels[label];
+        }
+    }
+
+    /**
+     * The blobs accepted by the last call to {@link #filter}.
+     */
+    public List<Blob> blobs() {
+        return blobs.subList(0, blobCount);
+    }
+
+    private Blob nextBlob() {
+        if (blobCount == blobs.size()) {
+            blobs.add(new Blob());
+        }
+        return blobs.get(blobCount++);
+    }
+
+    /**
+     * Resolves the label of every run to its root and groups the runs by it
+     * with a counting sort, so each hull reads only its own runs.
+     */
+    private void bucketRuns() {
+        if (runOrder.length < runCount) {
+            runOrder = new int[runY.length];
+        }
+        if (labelRunsStart.length < labelCount + 1) {
+            labelRunsStart = new int[parent.length + 1];
+        }
+        Arrays.fill(labelRunsStart, 0, labelCount + 1, 0);
+        for (int i = 0; i < runCount; i++) {
+            int root = find(runLabel[i]);
+            runLabel[i] = root;
+            labelRunsStart[root + 1]++;
+        }
+        for (int label = 0; label < labelCount; label++) {
+            labelRunsStart[label + 1] += labelRunsStart[label];
+        }
+        // stable, so every group keeps the row-major order; labelRunsStart[label]
+        // ends up at the end of its group, which is where the next one starts
+        for (int i = 0; i < runCount; i++) {
+            runOrder[labelRunsStart[runLabel[i]]++] = i;
+        }
+        for (int label = labelCount; label > 0; label--) {
+            labelRunsStart[label] = labelRunsStart[label - 1];
+        }
+        labelRunsStart[0] = 0;
+    }
+
+    /**
+     * Andrew's monotone chain over the run end points of one blob. Runs are
+     * stored in row-major order, so the points are already sorted by (y, x).
+     */
+    private void buildHull(int label, Blob blob) {
+        int points = 0;
+        for (int k = labelRunsStart[label]; k < labelRunsStart[label + 1]; k++) {
+            int i = runOrder[k];
+            if (hullScratch.length < (points + 2) * 2) {
+                hullScratch = Arrays.copyOf(hullScratch, hullScratch.length * 2);
+            }
+            hullScratch[points * 2] = runStart[i];
+            hullScratch[points * 2 + 1] = runY[i];
+            points++;
+            hullScratch[points * 2] = runEnd[i];
+            hullScratch[points * 2 + 1] = runY[i];
+            points++;
+        }
+
+        if (blob.hull.length < (points + 1) * 2) {
+            blob.hull = new int[(points + 1) * 2];
+        }
+        int[] hull = blob.hull;
+        int size = 0;
+        // lower chain, then upper chain
+        for (int i = 0; i < points; i++) {
+            size = pushHull(hull, size, 2, hullScratch[i * 2], hullScratch[i * 2 + 1]);
+        }
+        int lowerSize = size + 1;
+        for (int i = points - 2; i >= 0; i--) {
+            size = pushHull(hull, size, lowerSize, hullScratch[i * 2], hullScratch[i * 2 + 1]);
+        }
+        // the last point repeats the first
+        blob.hullSize = Math.max(1, size - 1);
+    }
+
+    private static int pushHull(int[] hull, int size, int minSize, int x, int y) {
+        while (size >= minSize) {
+            int ax = hull[(size - 2) * 2];
+            int ay = hull[(size - 2) * 2 + 1];
+            int bx = hull[(size - 1) * 2];
+            int by = hull[(size - 1) * 2 + 1];
+            long cross = (long) (bx - ax) * (y - ay) - (long) (by - ay) * (x - ax);
+            if (cross > 0) {
+                break;
+            }
+            size--;
+        }
+        hull[size * 2] = x;
+        hull[size * 2 + 1] = y;
+        return size + 1;
+    }
+
+    private static double hullArea(Blob blob) {
+        long twice = 0;
+        int[] hull = blob.hull;
+        for (int i = 0; i < blob.hullSize; i++) {
+            int j = (i + 1) % blob.hullSize;
+            twice += (long) hull[i * 2] * hull[j * 2 + 1] - (long) hull[j * 2] * hull[i * 2 + 1];
+        }
+        return Math.abs(twice) / 2.0;
+    }
+
+    private static double hullPerimeter(Blob blob) {
+        double perimeter = 0;
+        int[] hull = blob.hull;
+        for (int i = 0; i < blob.hullSize; i++) {
+            int j = (i + 1) % blob.hullSize;
+            perimeter += Math.hypot(hull[j * 2] - hull[i * 2], hull[j * 2 + 1] - hull[i * 2 + 1]);
+        }
+        return perimeter;
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Runs a {@link RunLengthBlobExtractor} on a BGR Mat in place of GRIP's
+ * hsvThreshold, findContours, convexHulls and filterContours steps.
+ *
+ * <p>The frame is copied to the Java heap with a single call and classified
+ * there, so the only native work left per frame is that copy and creating
+ * the hulls of the few blobs that pass the filters.
+ */
+public class RunLengthFilter {
+    private final RunLengthBlobExtractor extractor = new RunLengthBlobExtractor();
+    private byte[] frame = new byte[0];
+    private HsvRowClassifier classifier;
+    private double[] classifierHue;
+    private double[] classifierSat;
+    private double[] classifierVal;
+    private YuyvRowClassifier yuyvClassifier;
+    private PipelineParams yuyvParams;
+    private final Mat yuyvMat = new Mat();
+
+    public RunLengthBlobExtractor extractor() {
+        return extractor;
+    }
+
+    /**
+     * Thresholds input by HSV and writes the hulls of the blobs that pass the
+     * filterContours criteria to output.
+     */
+    public void filter(Mat input, double[] hue, double[] sat, double[] val, double minArea,
+            double minPerimeter, double minWidth, double maxWidth, double minHeight,
+            double maxHeight, double[] solidity, double maxVertexCount, double minVertexCount,
+            double minRatio, double maxRatio, List<MatOfPoint> output) {
+        output.clear();
+        int width = input.cols();
+        int height = input.rows();
+        int size = width * height * 3;
+        if (frame.length < size) {
+            frame = new byte[size];
+        }
+        input.get(0, 0, frame);
+
+        if (classifier == null || !sameBounds(hue, sat, val)) {
+            classifier = new HsvRowClassifier(hue, sat, val);
+            classifierHue = hue.clone();
+            classifierSat = sat.clone();
+            classifierVal = val.clone();
+        }
+        extractor.extract(frame, width, height, width * 3, classifier);
+        extractor.filter(minArea, minPerimeter, minWidth, maxWidth, minHeight, maxHeight,
+                solidity, maxVertexCount, minVertexCount, minRatio, maxRatio);
+        writeHulls(output);
+    }
+
+    /**
+     * Thresholds a raw YUYV frame directly in YUV and writes the hulls of the
+     * blobs that pass the filterContours criteria of params to output. The
+     * blur step is skipped; the 4:2:2 chroma already averages pixel pairs.
+     * @param yuyv packed YUYV bytes, two per pixel
+     */
+    public void filterYuyv(byte[] yuyv, int width, int height, PipelineParams params,
+            List<MatOfPoint> output) {
+        output.clear();
+        if (yuyvClassifier == null || yuyvParams != params) {
+            yuyvClassifier = new YuyvRowClassifier(params.hsvThresholdHue,
+                    params.hsvThresholdSaturation, params.hsvThresholdValue);
+            yuyvParams = params;
+        }
+        extractor.extract(yuyv, width, height, width * 2, yuyvClassifier);
+        extractor.filter(params.filterContoursMinArea, params.filterContoursMinPerimeter,
+                params.filterContoursMinWidth, params.filterContoursMaxWidth,
+                params.filterContoursMinHeight, params.filterContoursMaxHeight,
+                params.filterContoursSolidity, params.filterContoursMaxVertices,
+                params.filterContoursMinVertices, params.filterContoursMinRatio,
+                params.filterContoursMaxRatio);
+        writeHulls(output);
+    }
+
+    /**
+     * Converts a raw YUYV frame to BGR. Only needed when something has to show
+     * the frame, such as a debug stream; detection works on the YUYV bytes.
+     */
+    public void yuyvToBgr(byte[] yuyv, int width, int height, Mat bgr) {
+        yuyvMat.create(height, width, CvType.CV_8UC2);
+        yuyvMat.put(0, 0, yuyv);
+        Imgproc.cvtColor(yuyvMat, bgr, Imgproc.COLOR_YUV2BGR_YUYV);
+    }
+
+    private void writeHulls(List<MatOfPoint> output) {
+        for (RunLengthBlobExtractor.Blob blob : extractor.blobs()) {
+            MatOfPoint mopHull = new MatOfPoint();
+            mopHull.create(blob.hullSize, 1, CvType.CV_32SC2);
+            mopHull.put(0, 0, Arrays.copyOf(blob.hull, blob.hullSize * 2));
+            output.add(mopHull);
+        }
+    }
+
+    private boolean sameBounds(double[] hue, double[] sat, double[] val) {
+        return Arrays.equals(hue, classifierHue)
+                && Arrays.equals(sat, classifierSat)
+                && Arrays.equals(val, classifierVal);
+    }
+}
@@ -0,0 +1,220 @@
+import org.opencv.core.Mat;
+
+/**
+ * Runs a candidate pipeline on a sample of the live frames and compares it
+ * with the primary one, without touching what gets published.
+ *
+ * <p>After the primary pipeline has finished a frame, the vision thread
+ * offers it here. Every nth frame is taken, copied, and processed on this
+ * thread, which runs at the lowest priority; its targets are only compared
+ * with those of the primary pipeline, never published. A frame is skipped,
+ * never queued, when this thread is still busy with the last one, when the
+ * workers of {@link VisionWorkers#pool()} are all in use, or when the
+ * primary frame ran out of its {@link FrameBudget}, so the candidate only
+ * ever gets cores the primary loop isn't using. The JVM only passes thread
+ * priorities on to Linux with {@code -XX:ThreadPriorityPolicy=1}, as root;
+ * without it the skipping is what keeps the shadow out of the way.
+ *
+ * <p>The two agree on a frame when neither finds a target, or both find one
+ * with distances within {@link Main#DISTANCE_CROSS_CHECK} of each other and
+ * bearings within {@link #MAX_ANGLE_DIFFERENCE}. The relative cost is the
+ * candidate's total processing time over the primary's, on the same frames;
+ * both are wall times.
+ */
+public class ShadowRunner extends Thread {
+    static final double MAX_ANGLE_DIFFERENCE = Math.toRadians(2);
+
+    private final String pipelineName;
+    private final TargetPipeline candidate;
+    private final TargetRanker ranker = new TargetRanker();
+    private final Mat frame = new Mat();
+    private final int cores = Runtime.getRuntime().availableProcessors();
+    private volatile int sampleEvery = 5;
+    private int sinceSample;
+
+    // the sampled frame, guarded by this
+    private boolean busy;
+    private int primaryTargets;
+    private double primaryDistance;
+    private double primaryAngle;
+    private long primaryNanos;
+
+    private volatile long offered;
+    private volatile long skippedBusy;
+    private volatile long skippedCores;
+    private volatile long compared;
+    private volatile long bothFound;
+    private volatile long bothMissing;
+    private volatile long onlyPrimary;
+    private volatile long onlyCandidate;
+    private volatile long agreed;
+    private volatile long primaryTotalNanos;
+    private volatile long candidateTotalNanos;
+
+    /**
+     * @param pipelineName a pipeline class known to {@link PipelineSelector#create(String)}
+     */
+    public ShadowRunner(String pipelineName) {
+        this.pipelineName = pipelineName;
+        candidate = PipelineSelector.create(pipelineName);
+        if (candidate == null) {
+            throw new IllegalArgumentException("unknown pipeline '" + pipelineName + "'");
+        }
+        setName("ShadowRunner");
+        setDaemon(true);
+        setPriority(Thread.MIN_PRIORITY);
+    }
+
+    public String pipelineName() {
+        return pipelineName;
+    }
+
+    public TargetPipeline candidate() {
+        return candidate;
+    }
+
+    public TargetRanker ranker() {
+        return ranker;
+    }
+
+    /**
+     * Sets which frames are taken, 1 for every frame the shadow can keep up
+     * with, n for at most one in n.
+     */
+    public void setSample(int every) {
+        sampleEvery = Math.max(1, every);
+    }
+
+    /**
+     * Offers the frame the primary pipeline just finished. Called on the
+     * vision thread; returns straight away.
+     * @param primary the ranked targets of the primary pipeline for frame
+     * @param primaryNanos how long the primary pipeline took for frame
+     * @param budget how the primary frame kept to its budget
+     */
+    public void offer(Mat frame, TargetRanker primary, long primaryNanos, FrameBudget budget) {
+        offered++;
+        if (++sinceSample < sampleEvery) {
+            return;
+        }
+        sinceSample = 0;
+        synchronized (this) {
+            if (busy) {
+                skippedBusy++;
+                return;
+            }
+        }
+        // one core for the vision thread, the pool's busy workers, and one for us
+        if (budget.isDegraded() || VisionWorkers.pool().getActiveThreadCount() + 2 > cores) {
+            skippedCores++;
+            return;
+        }
+        frame.copyTo(this.frame);
+        synchronized (this) {
+            primaryTargets = primary.count();
+            if (primaryTargets > 0) {
+                primaryDistance = primary.candidate(0).distanceInches;
+                primaryAngle = primary.candidate(0).angleRadians;
+            }
+            this.primaryNanos = primaryNanos;
+            busy = true;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (;;) {
+                synchronized (this) {
+                    while (!busy) {
+                        wait();
+                    }
+                }
+                long start = System.nanoTime();
+                try {
+                    candidate.process(frame);
+                    ranker.rank(candidate.filterContoursOutput());
+                } catch (RuntimeException ex) {
+                    System.err.println("shadow pipeline '" + pipelineName + "' failed: " + ex);
+                    synchronized (this) {
+                        busy = false;
+                    }
+                    continue;
+                }
+                long nanos = System.nanoTime() - start;
+                synchronized (this) {
+                    compare(nanos);
+                    busy = false;
+                }
+            }
+        } catch (InterruptedException ex) {
+            // stopping
+        }
+    }
+
+    private void compare(long nanos) {
+        compared++;
+        primaryTotalNanos += primaryNanos;
+        candidateTotalNanos += nanos;
+        boolean found = ranker.count() > 0;
+        if (primaryTargets == 0 && !found) {
+            bothMissing++;
+            agreed++;
+        } else if (primaryTargets == 0) {
+            onlyCandidate++;
+        } else if (!found) {
+            onlyPrimary++;
+        } else {
+            bothFound++;
+            TargetCandidate best = ranker.candidate(0);
+            if (Math.abs(best.distanceInches - primaryDistance) <= Main.DISTANCE_CROSS_CHECK * primaryDistance
+                    && Math.abs(best.angleRadians - primaryAngle) <= MAX_ANGLE_DIFFERENCE) {
+                agreed++;
+            }
+        }
+    }
+
+    /** Frames offered since start. */
+    public long offered() {
+        return offered;
+    }
+
+    /** Sampled frames skipped because the last one wasn't done yet. */
+    public long skippedBusy() {
+        return skippedBusy;
+    }
+
+    /** Sampled frames skipped because the primary loop needed the cores. */
+    public long skippedCores() {
+        return skippedCores;
+    }
+
+    /** Frames both pipelines processed. */
+    public long compared() {
+        return compared;
+    }
+
+    public long agreed() {
+        return agreed;
+    }
+
+    /**
+     * Candidate processing time over primary processing time, on the
+     * compared frames.
+     */
+    public double relativeCost() {
+        return primaryTotalNanos == 0 ? Double.NaN : (double) candidateTotalNanos / primaryTotalNanos;
+    }
+
+    /**
+     * Counts since start, for logging.
+     */
+    public synchronized String summary() {
+        return String.format("%s agreed on %d of %d frames (%.1f%%): both found %d, both missing %d,"
+                + " only primary %d, only %s %d; cost %.2fx; %d of %d offered frames skipped busy, %d for cores",
+                pipelineName, agreed, compared, compared == 0 ? 0 : 100.0 * agreed / compared, bothFound,
+                bothMissing, onlyPrimary, pipelineName, onlyCandidate, relativeCost(), skippedBusy, offered,
+                skippedCores);
+    }
+}
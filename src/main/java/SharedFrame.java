@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * One camera frame plus the preprocessing steps computed from it so far.
+ *
+ * <p>Pipelines running on the same frame ask for their blur and HSV
+ * conversion here instead of computing their own. Each distinct step
+ * (blur type and effective radius) is computed by whichever pipeline asks
+ * first; the others wait for it and then share the result. The returned
+ * Mats must not be written to. Buffers are kept across frames.
+ */
+public class SharedFrame {
+    private static class Stage {
+        final String type;
+        final int radius;
+        final Mat blur = new Mat();
+        final Mat hsv = new Mat();
+        long blurFrame = -1;
+        long hsvFrame = -1;
+
+        Stage(String type, int radius) {
+            this.type = type;
+            this.radius = radius;
+        }
+    }
+
+    private final List<Stage> stages = new ArrayList<>();
+    private Mat source;
+    private long frame;
+    private int requested;
+    private int computed;
+
+    /**
+     * Starts a new frame. Results of the previous frame become stale.
+     */
+    public synchronized void reset(Mat source) {
+        this.source = source;
+        frame++;
+    }
+
+    /**
+     * Frees the buffers of every step, for when the steps asked for so far
+     * won't be asked for again.
+     */
+    public synchronized void release() {
+        for (Stage stage : stages) {
+            stage.blur.release();
+            stage.hsv.release();
+        }
+        stages.clear();
+    }
+
+    public Mat source() {
+        return source;
+    }
+
+    /**
+     * The source blurred the way GRIP's blur step does it.
+     * @param type GRIP blur label, such as "Box Blur"
+     * @param radius blur radius as GRIP reports it
+     */
+    public Mat blur(String type, double radius) {
+        Stage stage = stage(type, radius);
+        synchronized (stage) {
+            if (stage.blurFrame != frame) {
+                blur(source, stage.type, stage.radius, stage.blur);
+                stage.blurFrame = frame;
+                count(true);
+            } else {
+                count(false);
+            }
+            return stage.blur;
+        }
+    }
+
+    /**
+     * The blurred source converted to HSV.
+     */
+    public Mat hsv(String type, double radius) {
+        Mat blurred = blur(type, radius);
+        Stage stage = stage(type, radius);
+        synchronized (stage) {
+            if (stage.hsvFrame != frame) {
+                Imgproc.cvtColor(blurred, stage.hsv, Imgproc.COLOR_BGR2HSV);
+                stage.hsvFrame = frame;
+                count(true);
+            } else {
+                count(false);
+            }
+            return stage.hsv;
+        }
+    }
+
+    private synchronized Stage stage(String type, double doubleRadius) {
+        // GRIP rounds the radius, so 1.80 and 1.88 are the same blur
+        int radius = (int) (doubleRadius + 0.5);
+        for (Stage stage : stages) {
+            if (stage.radius == radius && stage.type.equals(type)) {
+                return stage;
+            }
+        }
+        Stage stage = new Stage(type, radius);
+        stages.add(stage);
+        return stage;
+    }
+
+    /**
+     * How many rows above and below a pixel the blur reads.
+     */
+    static int blurReach(String type, int radius) {
+        switch (type) {
+            case "Gaussian Blur":
+                return 3 * radius;
+            case "Bilateral Filter":
+                // bilateralFilter derives its diameter from sigmaSpace * 1.5
+                return (int) Math.round(radius * 1.5) + 1;
+            default:
+                return radius;
+        }
+    }
+
+    private synchronized void count(boolean compute) {
+        requested++;
+        if (compute) {
+            computed++;
+        }
+    }
+
+    /**
+     * Number of preprocessing steps asked for since the start.
+     */
+    public synchronized int requested() {
+        return requested;
+    }
+
+    /**
+     * Number of preprocessing steps actually computed since the start.
+     */
+    public synchronized int computed() {
+        return computed;
+    }
+
+    /**
+     * Same kernels as the blur step in the GRIP pipelines.
+     */
+    static void blur(Mat input, String type, int radius, Mat output) {
+        int kernelSize;
+        switch (type) {
+            case "Gaussian Blur":
+                kernelSize = 6 * radius + 1;
+                Imgproc.GaussianBlur(input, output, new Size(kernelSize, kernelSize), radius);
+                break;
+            case "Median Filter":
+                kernelSize = 2 * radius + 1;
+                Imgproc.medianBlur(input, output, kernelSize);
+                break;
+            case "Bilateral Filter":
+                Imgproc.bilateralFilter(input, output, -1, radius, radius);
+                break;
+            case "Box Blur":
+            default:
+                kernelSize = 2 * radius + 1;
+                Imgproc.blur(input, output, new Size(kernelSize, kernelSize));
+                break;
+        }
+    }
+}
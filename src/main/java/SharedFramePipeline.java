@@ -0,0 +1,15 @@
+/**
+ * A {@link TargetPipeline} that can take its preprocessing from a
+ * {@link SharedFrame}.
+ *
+ * <p>Implemented by {@link GripPipeline}, and by
+ * {@link PipelineSelector}, which hands the frame to whichever one is
+ * active. Pipelines that need the whole frame, such as {@link MotionGate},
+ * only implement TargetPipeline.
+ */
+public interface SharedFramePipeline extends TargetPipeline {
+    /**
+     * Process a frame whose preprocessing may be shared with other pipelines.
+     */
+    void process(SharedFrame frame);
+}
@@ -0,0 +1,141 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stands in for a coprocessor sending its results to a {@link FusionNode}.
+ *
+ * <p>The target moves in front of the robot on a path that depends only on
+ * {@link System#nanoTime()}, which every process on the machine shares, so
+ * several of these and the node all agree on where it was at any moment;
+ * see {@link #truth(long, double[])}. Every frame the target is seen from
+ * the given mount as it was the given latency ago, with Gaussian noise on
+ * the distance and offset, and sometimes missed. The packet is sent from
+ * the given local address, so processes on different loopback addresses
+ * get different mounts at the node. At the end the error of what was sent,
+ * moved back to the robot's frame, is printed.
+ *
+ * <p>Usage: {@code java -cp <jar> SimulatedCoprocessor <host:port> [--bind address]
+ * [--fps n] [--seconds n] [--forward in] [--right in] [--noise in]
+ * [--confidence c] [--miss fraction] [--latency ms] [--seed n]}
+ */
+public final class SimulatedCoprocessor {
+    private static final double CENTER_DISTANCE = 84;
+    private static final double DISTANCE_SWING = 36;
+    private static final double OFFSET_SWING = 18;
+    private static final double DISTANCE_PERIOD = 4;
+    private static final double OFFSET_PERIOD = 3;
+
+    private SimulatedCoprocessor() {
+    }
+
+    /**
+     * Where the target is at nanos, in inches forward and right of the
+     * robot's center.
+     */
+    public static void truth(long nanos, double[] out) {
+        double seconds = nanos / 1e9;
+        out[0] = CENTER_DISTANCE + DISTANCE_SWING * Math.sin(2 * Math.PI * seconds / DISTANCE_PERIOD);
+        out[1] = OFFSET_SWING * Math.sin(2 * Math.PI * seconds / OFFSET_PERIOD);
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: SimulatedCoprocessor <host:port> [--bind address] [--fps n] [--seconds n]"
+                    + " [--forward in] [--right in] [--noise in] [--confidence c] [--miss fraction]"
+                    + " [--latency ms] [--seed n]");
+            return;
+        }
+        int colon = args[0].lastIndexOf(':');
+        InetSocketAddress target = new InetSocketAddress(args[0].substring(0, colon),
+                Integer.parseInt(args[0].substring(colon + 1)));
+        String bind = null;
+        double fps = 30;
+        double seconds = 10;
+        double forward = 0;
+        double right = 0;
+        double noise = 1;
+        double confidence = 0.8;
+        double miss = 0.05;
+        double latency = 30;
+        long seed = 2019;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--bind": bind = args[i + 1]; break;
+                case "--fps": fps = Double.parseDouble(args[i + 1]); break;
+                case "--seconds": seconds = Double.parseDouble(args[i + 1]); break;
+                case "--forward": forward = Double.parseDouble(args[i + 1]); break;
+                case "--right": right = Double.parseDouble(args[i + 1]); break;
+                case "--noise": noise = Double.parseDouble(args[i + 1]); break;
+                case "--confidence": confidence = Double.parseDouble(args[i + 1]); break;
+                case "--miss": miss = Double.parseDouble(args[i + 1]); break;
+                case "--latency": latency = Double.parseDouble(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                default:
+                    System.err.println("unknown option '" + args[i] + "'");
+                    return;
+            }
+        }
+
+        Random random = new Random(seed);
+        ResultPacket packet = new ResultPacket();
+        // not from the seeded random, a rerun is a new session
+        packet.session = new Random().nextLong();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(ResultPacket.SIZE);
+        double[] truth = new double[2];
+        long period = (long) (1e9 / fps);
+        long latencyNanos = (long) (latency * 1e6);
+        long sent = 0;
+        long found = 0;
+        double squared = 0;
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.bind(bind == null ? null : new InetSocketAddress(bind, 0));
+            channel.connect(target);
+            long start = System.nanoTime();
+            long end = start + (long) (seconds * 1e9);
+            for (long next = start; next < end; next += period) {
+                LockSupport.parkNanos(next - System.nanoTime());
+                long now = System.nanoTime();
+                long capture = now - latencyNanos;
+                truth(capture, truth);
+                packet.sequence = sent + 1;
+                packet.captureNanos = capture;
+                packet.ageMicros = (int) (latencyNanos / 1000);
+                if (random.nextDouble() < miss) {
+                    packet.flags = 0;
+                    packet.targets = 0;
+                    packet.distanceInches = 0;
+                    packet.offsetInches = 0;
+                    packet.angleRadians = 0;
+                    packet.confidence = 0;
+                } else {
+                    packet.flags = ResultPacket.FOUND;
+                    packet.targets = 1;
+                    packet.distanceInches = truth[0] - forward + random.nextGaussian() * noise;
+                    packet.offsetInches = truth[1] - right + random.nextGaussian() * noise;
+                    packet.angleRadians = Math.atan2(packet.offsetInches, packet.distanceInches);
+                    packet.confidence = confidence;
+                    double errorForward = packet.distanceInches + forward - truth[0];
+                    double errorRight = packet.offsetInches + right - truth[1];
+                    squared += errorForward * errorForward + errorRight * errorRight;
+                    found++;
+                }
+                packet.write(buffer);
+                try {
+                    channel.write(buffer);
+                } catch (IOException ex) {
+                    // the node isn't up yet; the next frame tries again
+                }
+                sent++;
+            }
+        }
+        System.out.printf("%s: sent %d, found %d, error %.2f in rms%n", bind == null ? "coprocessor" : bind,
+                sent, found, found == 0 ? 0 : Math.sqrt(squared / found));
+    }
+}
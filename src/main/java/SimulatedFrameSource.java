@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Mat;
+
+/**
+ * A camera that gets unplugged on a schedule, for exercising
+ * {@link CameraSupervisor} without bumping real hardware.
+ *
+ * <p>Frames are copies of one image delivered at a fixed rate. During an
+ * outage grabFrame times out like a {@link edu.wpi.cscore.CvSink} on a
+ * stalled camera. Once the outage is over frames come back either by
+ * themselves or, if the source needs a reconnect, only after
+ * {@link #reconnect()} has been called and the reopen delay has passed.
+ * All times are in milliseconds from the first grab.
+ */
+public class SimulatedFrameSource implements FrameSource {
+    private final Mat image;
+    private final long periodNanos;
+    private final List<long[]> outages = new ArrayList<>();
+    private long reopenMillis = 250;
+    private long phaseMillis;
+    private boolean needsReconnect = true;
+    private long startNanos;
+    private long nextFrameNanos;
+    private long reconnectedNanos = -1;
+    private int current = -1;
+
+    public SimulatedFrameSource(Mat image, double fps) {
+        this.image = image;
+        periodNanos = (long) (1e9 / fps);
+    }
+
+    /**
+     * Adds an outage. Outages have to be added in order and must not overlap.
+     */
+    public synchronized void addOutage(long startMillis, long lengthMillis) {
+        outages.add(new long[] {startMillis, startMillis + lengthMillis});
+    }
+
+    /**
+     * Sets how long the device takes to deliver its first frame after a reconnect.
+     */
+    public synchronized void setReopenMillis(long millis) {
+        reopenMillis = millis;
+    }
+
+    /**
+     * Delays the first frame, and so every frame after it, by millis from the
+     * first grab, like a second camera that isn't synchronized to the first.
+     */
+    public synchronized void setPhase(long millis) {
+        phaseMillis = millis;
+    }
+
+    /**
+     * Sets whether frames only come back after a reconnect, as when the
+     * device reappears under a driver that has given up on it.
+     */
+    public synchronized void setNeedsReconnect(boolean needsReconnect) {
+        this.needsReconnect = needsReconnect;
+    }
+
+    /**
+     * The outages added so far, as {start, end} in milliseconds from the first grab.
+     */
+    public synchronized List<long[]> outages() {
+        return new ArrayList<>(outages);
+    }
+
+    /**
+     * Milliseconds since the first grab.
+     */
+    public synchronized long millis() {
+        return startNanos == 0 ? 0 : (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    @Override
+    public long grabFrame(Mat out, double timeoutSeconds) {
+        long deadline;
+        synchronized (this) {
+            if (startNanos == 0) {
+                startNanos = System.nanoTime();
+                nextFrameNanos = startNanos + phaseMillis * 1_000_000;
+            }
+            deadline = System.nanoTime() + (long) (timeoutSeconds * 1e9);
+        }
+        for (;;) {
+            long now = System.nanoTime();
+            long waitUntil;
+            synchronized (this) {
+                if (delivering(now) && now >= nextFrameNanos) {
+                    nextFrameNanos = Math.max(nextFrameNanos + periodNanos, now);
+                    image.copyTo(out);
+                    return now / 1000;
+                }
+                waitUntil = Math.min(deadline, delivering(now) ? nextFrameNanos : now + 1_000_000);
+            }
+            if (now >= deadline) {
+                return 0;
+            }
+            try {
+                Thread.sleep(Math.max(0, (waitUntil - now) / 1_000_000), (int) ((waitUntil - now) % 1_000_000));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+    }
+
+    private boolean delivering(long now) {
+        long millis = (now - startNanos) / 1_000_000;
+        while (current + 1 < outages.size() && millis >= outages.get(current + 1)[0]) {
+            current++;
+            reconnectedNanos = -1;
+        }
+        if (current < 0) {
+            return true;
+        }
+        long[] outage = outages.get(current);
+        if (millis < outage[1]) {
+            return false;
+        }
+        if (!needsReconnect) {
+            return true;
+        }
+        return reconnectedNanos >= 0 && now - reconnectedNanos >= reopenMillis * 1_000_000;
+    }
+
+    @Override
+    public synchronized void reconnect() {
+        long now = System.nanoTime();
+        if (current >= 0 && (now - startNanos) / 1_000_000 >= outages.get(current)[1]) {
+            if (reconnectedNanos < 0) {
+                reconnectedNanos = now;
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "simulated";
+    }
+}
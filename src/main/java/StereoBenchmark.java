@@ -0,0 +1,209 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinTask;
+
+import org.opencv.core.Mat;
+
+/**
+ * Compares stereo triangulation against the single camera distance on
+ * synthetic stereo frames, and measures what the second camera costs.
+ *
+ * <p>The first part renders each scene twice with
+ * {@link SyntheticTargetGenerator}, once from each camera half a baseline
+ * either side of the rig center, at distances from 2 to 30 feet. Both views
+ * go through the pipeline and {@link StereoTriangulator}; the left view alone
+ * also goes through the usual cross-checked {@link TargetRanker} for the
+ * single camera figures. Errors are medians and 95th percentiles over the
+ * frames where a target was found. Both views are timed processed one after
+ * the other and in parallel as {@link StereoVision} does it.
+ *
+ * <p>The second part runs {@link StereoVision} itself on two simulated
+ * cameras at 30 fps, the right one out of phase with the left, and reports
+ * how many pairs made it through the timestamp check, their skew and the
+ * latency from the later frame arriving to the result.
+ *
+ * <p>Usage: {@code java -cp <jar> StereoBenchmark <pipeline> [--baseline in]
+ * [--frames n] [--noise sigma] [--blur sigma] [--decoys n] [--seed n]
+ * [--phase ms] [--max-skew ms] [--seconds n]}
+ */
+public final class StereoBenchmark {
+    private static final int MIN_DISTANCE = 24;
+    private static final int MAX_DISTANCE = 360;
+    private static final int DISTANCE_STEP = 24;
+    private static final double MAX_YAW = Math.toRadians(20);
+
+    private StereoBenchmark() {
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) throws InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: StereoBenchmark <pipeline> [--baseline in] [--frames n] [--noise sigma]"
+                    + " [--blur sigma] [--decoys n] [--seed n] [--phase ms] [--max-skew ms] [--seconds n]");
+            return;
+        }
+        TargetPipeline left = PipelineSelector.create(args[0]);
+        TargetPipeline right = PipelineSelector.create(args[0]);
+        if (left == null) {
+            System.err.println("unknown pipeline '" + args[0] + "'");
+            return;
+        }
+        double baseline = 8;
+        int frames = 20;
+        double noise = 0;
+        double blur = 0;
+        int decoys = 0;
+        long seed = 2019;
+        long phase = 5;
+        double maxSkew = 10;
+        int seconds = 5;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--baseline": baseline = Double.parseDouble(args[i + 1]); break;
+                case "--frames": frames = Integer.parseInt(args[i + 1]); break;
+                case "--noise": noise = Double.parseDouble(args[i + 1]); break;
+                case "--blur": blur = Double.parseDouble(args[i + 1]); break;
+                case "--decoys": decoys = Integer.parseInt(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                case "--phase": phase = Long.parseLong(args[i + 1]); break;
+                case "--max-skew": maxSkew = Double.parseDouble(args[i + 1]); break;
+                case "--seconds": seconds = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.err.println("unknown option '" + args[i] + "'");
+                    return;
+            }
+        }
+
+        SyntheticTargetGenerator generator = new SyntheticTargetGenerator(left.params(), seed);
+        generator.setNoise(noise);
+        generator.setBlur(blur);
+        generator.setDecoys(decoys);
+        Random random = new Random(seed);
+        TargetRanker leftRanker = new TargetRanker();
+        TargetRanker rightRanker = new TargetRanker();
+        leftRanker.setCrossCheck(false);
+        rightRanker.setCrossCheck(false);
+        TargetRanker monoRanker = new TargetRanker();
+        StereoTriangulator triangulator = new StereoTriangulator(baseline);
+        TargetCandidate stereo = new TargetCandidate();
+
+        Mat leftFrame = new Mat();
+        Mat rightFrame = new Mat();
+        SyntheticTargetGenerator.Scene scene = new SyntheticTargetGenerator.Scene();
+        double[] stereoErrors = new double[frames];
+        double[] monoErrors = new double[frames];
+        long[] serial = new long[frames];
+        long[] parallel = new long[frames];
+
+        System.out.println("distance in,stereo found %,stereo err % median,stereo err % p95,"
+                + "mono found %,mono err % median,mono err % p95,ms serial,ms parallel");
+        for (int distance = MIN_DISTANCE; distance <= MAX_DISTANCE; distance += DISTANCE_STEP) {
+            int stereoFound = 0;
+            int monoFound = 0;
+            for (int i = 0; i < frames; i++) {
+                // keep the target inside both views
+                double halfView = distance * Math.tan(Main.CAMERA_VIEW_ANGLE_HORIZONTAL / 2);
+                double reach = Main.distanceBetweenTapeCentersInches / 2 + Main.BB_WIDTH + baseline / 2;
+                double offset = (random.nextDouble() * 2 - 1) * Math.max(0, halfView - reach) * 0.8;
+                scene.distanceInches = distance;
+                scene.heightInches = (random.nextDouble() * 2 - 1) * distance * 0.15;
+                scene.yawRadians = (random.nextDouble() * 2 - 1) * MAX_YAW;
+                scene.offsetInches = offset + baseline / 2;
+                generator.render(scene, leftFrame);
+                scene.offsetInches = offset - baseline / 2;
+                generator.render(scene, rightFrame);
+
+                long start = System.nanoTime();
+                left.process(leftFrame);
+                leftRanker.rank(left.filterContoursOutput());
+                right.process(rightFrame);
+                rightRanker.rank(right.filterContoursOutput());
+                serial[i] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                Mat view = leftFrame;
+                ForkJoinTask<?> task = VisionWorkers.pool().submit(() -> {
+                    left.process(view);
+                    leftRanker.rank(left.filterContoursOutput());
+                });
+                right.process(rightFrame);
+                rightRanker.rank(right.filterContoursOutput());
+                task.join();
+                boolean found = triangulator.triangulate(leftRanker, rightRanker, stereo);
+                parallel[i] = System.nanoTime() - start;
+
+                if (found) {
+                    stereoErrors[stereoFound++] = 100 * Math.abs(stereo.distanceInches - distance) / distance;
+                }
+                monoRanker.rank(left.filterContoursOutput());
+                if (monoRanker.count() > 0) {
+                    double mono = monoRanker.candidate(0).distanceInches;
+                    monoErrors[monoFound++] = 100 * Math.abs(mono - distance) / distance;
+                }
+            }
+            System.out.printf("%d,%.1f,%.2f,%.2f,%.1f,%.2f,%.2f,%.2f,%.2f%n", distance,
+                    100.0 * stereoFound / frames, percentile(stereoErrors, stereoFound, 0.5),
+                    percentile(stereoErrors, stereoFound, 0.95), 100.0 * monoFound / frames,
+                    percentile(monoErrors, monoFound, 0.5), percentile(monoErrors, monoFound, 0.95),
+                    percentile(serial, frames, 0.5) / 1e6, percentile(parallel, frames, 0.5) / 1e6);
+        }
+
+        // timestamp pairing on two free running cameras
+        scene.distanceInches = 120;
+        scene.heightInches = 0;
+        scene.yawRadians = 0;
+        scene.offsetInches = baseline / 2;
+        generator.render(scene, leftFrame);
+        scene.offsetInches = -baseline / 2;
+        generator.render(scene, rightFrame);
+        SimulatedFrameSource leftSource = new SimulatedFrameSource(leftFrame, 30);
+        SimulatedFrameSource rightSource = new SimulatedFrameSource(rightFrame, 30);
+        rightSource.setPhase(phase);
+        long[] latencies = new long[seconds * 30 + 30];
+        long[] skews = new long[latencies.length];
+        int[] results = new int[2];
+        StereoVision vision = new StereoVision(leftSource, rightSource, left, right, baseline,
+                (stereoVision, found, target) -> {
+                    int n = results[0];
+                    if (n < latencies.length) {
+                        latencies[n] = System.nanoTime() - stereoVision.lastCaptureNanos();
+                        skews[n] = stereoVision.lastSkewMicros();
+                        results[0]++;
+                        if (found) {
+                            results[1]++;
+                        }
+                    }
+                });
+        vision.setMaxSkew(maxSkew);
+        vision.start();
+        Thread.sleep(seconds * 1000L);
+        vision.interrupt();
+        vision.join();
+        int pairs = Math.min(results[0], latencies.length);
+        System.out.printf("%nphase %d ms, max skew %.1f ms: %d pairs in %d s (%.1f/s), %d frames dropped for skew,"
+                + " skew %.2f ms median, target in %d pairs, latency %.2f ms median, %.2f ms p95%n",
+                phase, maxSkew, pairs, seconds, (double) pairs / seconds, vision.skewDrops(),
+                percentile(skews, pairs, 0.5) / 1000, results[1], percentile(latencies, pairs, 0.5) / 1e6,
+                percentile(latencies, pairs, 0.95) / 1e6);
+    }
+
+    private static double percentile(double[] values, int count, double fraction) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return sorted[Math.min(count - 1, (int) (fraction * count))];
+    }
+
+    private static double percentile(long[] values, int count, double fraction) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return sorted[Math.min(count - 1, (int) (fraction * count))];
+    }
+}
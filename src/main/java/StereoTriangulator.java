@@ -0,0 +1,119 @@
+/**
+ * Works out target depth from the same tape pair seen by two cameras.
+ *
+ * <p>The cameras are assumed to be the same model as in {@link Main},
+ * mounted side by side facing the same way, baseline inches apart, with
+ * their rows lined up. A target then shows up in the same rows of both
+ * views, further left in the right camera's view by the disparity
+ * {@code f * B / Z}, which gives the depth Z without relying on the tape
+ * size in pixels the way {@link Main#estimateTarget} does.
+ *
+ * <p>Targets are matched across the views from the ranked candidates of each
+ * camera: every pair of candidates with a positive disparity, centers within
+ * {@link #MAX_ROW_DIFFERENCE} of a tape height in rows and tape heights
+ * within {@link #MAX_HEIGHT_RATIO} of each other is a match, and the best
+ * ranked left candidate with a match wins. Offsets and bearings are from
+ * the midpoint between the cameras.
+ */
+public class StereoTriangulator {
+    static final double MAX_ROW_DIFFERENCE = 0.5;
+    static final double MAX_HEIGHT_RATIO = 1.3;
+
+    private final double focalPixels =
+            Main.WIDTH_OF_CAMERA_PIXELS / 2.0 / Math.tan(Main.CAMERA_VIEW_ANGLE_HORIZONTAL / 2);
+    private volatile double baselineInches;
+    private double disparityPixels;
+
+    /**
+     * @param baselineInches distance between the two camera centers
+     */
+    public StereoTriangulator(double baselineInches) {
+        this.baselineInches = baselineInches;
+    }
+
+    public void setBaseline(double baselineInches) {
+        this.baselineInches = baselineInches;
+    }
+
+    public double baseline() {
+        return baselineInches;
+    }
+
+    /**
+     * The disparity of the last match, in pixels.
+     */
+    public double disparityPixels() {
+        return disparityPixels;
+    }
+
+    /**
+     * Matches the candidates of the two views and triangulates the best match.
+     * The rects of out are those of the left view and heightDistanceInches is
+     * the left camera's own estimate; confidence is how well the match lines up.
+     * @return false if no candidates match
+     */
+    public boolean triangulate(TargetRanker left, TargetRanker right, TargetCandidate out) {
+        for (int i = 0; i < left.count(); i++) {
+            TargetCandidate l = left.candidate(i);
+            double lx = centerX(l);
+            double ly = centerY(l);
+            double lh = height(l);
+            TargetCandidate match = null;
+            double bestCost = Double.MAX_VALUE;
+            for (int j = 0; j < right.count(); j++) {
+                TargetCandidate r = right.candidate(j);
+                double rows = Math.abs(centerY(r) - ly) / lh;
+                double heights = Math.max(lh, height(r)) / Math.min(lh, height(r));
+                if (lx - centerX(r) <= 0 || rows > MAX_ROW_DIFFERENCE || heights > MAX_HEIGHT_RATIO) {
+                    continue;
+                }
+                double cost = rows / MAX_ROW_DIFFERENCE + (heights - 1) / (MAX_HEIGHT_RATIO - 1);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    match = r;
+                }
+            }
+            if (match != null) {
+                solve(l, lx - centerX(match), lx, 1 - bestCost / 2, out);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void solve(TargetCandidate left, double disparity, double leftX, double confidence,
+            TargetCandidate out) {
+        double baseline = baselineInches;
+        double depth = focalPixels * baseline / disparity;
+        // left camera sits half a baseline left of the midpoint
+        double offset = (leftX - Main.WIDTH_OF_CAMERA_PIXELS / 2.0) * depth / focalPixels - baseline / 2;
+        disparityPixels = disparity;
+        out.left.x = left.left.x;
+        out.left.y = left.left.y;
+        out.left.width = left.left.width;
+        out.left.height = left.left.height;
+        out.right.x = left.right.x;
+        out.right.y = left.right.y;
+        out.right.width = left.right.width;
+        out.right.height = left.right.height;
+        out.distanceInches = depth;
+        out.heightDistanceInches = left.heightDistanceInches;
+        out.offsetInches = offset;
+        out.angleRadians = Math.atan2(offset, depth);
+        out.confidence = Math.max(0, Math.min(1, confidence));
+        out.score = left.score;
+    }
+
+    private static double centerX(TargetCandidate candidate) {
+        return (candidate.left.x + candidate.left.width / 2.0 + candidate.right.x + candidate.right.width / 2.0) / 2;
+    }
+
+    private static double centerY(TargetCandidate candidate) {
+        return (candidate.left.y + candidate.left.height / 2.0 + candidate.right.y + candidate.right.height / 2.0)
+                / 2;
+    }
+
+    private static double height(TargetCandidate candidate) {
+        return Math.max(1, (candidate.left.height + candidate.right.height) / 2.0);
+    }
+}
@@ -0,0 +1,245 @@
+import java.util.concurrent.ForkJoinTask;
+
+import org.opencv.core.Mat;
+
+/**
+ * Runs a pipeline on each of two cameras and triangulates their targets.
+ *
+ * <p>Each camera is read by a grabber thread of its own, which always holds
+ * the newest frame and its timestamp. The stereo thread waits until both
+ * have a frame it hasn't used and takes them. If their timestamps are
+ * further apart than the maximum skew it drops the older one and takes its
+ * successor, until they aren't, so the two views always show the same
+ * moment. A pair is
+ * processed in parallel, the left view on {@link VisionWorkers#pool()} and
+ * the right on the stereo thread, then both are ranked and handed to
+ * {@link StereoTriangulator}. Frames are swapped between the grabbers and
+ * the stereo thread rather than copied.
+ */
+public class StereoVision extends Thread {
+    /**
+     * Called on the stereo thread after every processed pair.
+     */
+    public interface Listener {
+        /**
+         * @param found whether a target was triangulated into target
+         * @param target valid until the next call
+         */
+        void stereoResult(StereoVision stereo, boolean found, TargetCandidate target);
+    }
+
+    /**
+     * Keeps the newest frame of one camera.
+     */
+    private static class Grabber extends Thread {
+        private final FrameSource source;
+        private Mat spare = new Mat();
+        private Mat latest = new Mat();
+        private long latestTime;
+        private long latestNanos;
+        private boolean fresh;
+        private long takenTime;
+        private long takenNanos;
+
+        Grabber(FrameSource source, String side) {
+            this.source = source;
+            setName("StereoGrabber-" + side);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.interrupted()) {
+                long time = source.grabFrame(spare, 0.5);
+                if (time == 0) {
+                    continue;
+                }
+                long now = System.nanoTime();
+                synchronized (this) {
+                    Mat swap = latest;
+                    latest = spare;
+                    spare = swap;
+                    latestTime = time;
+                    latestNanos = now;
+                    fresh = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Waits up to timeoutMillis for a frame that hasn't been taken yet.
+         */
+        synchronized boolean await(long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (!fresh) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+
+        /**
+         * Swaps the fresh frame for into, which the grabber reuses. Its
+         * times are left in takenTime and takenNanos.
+         */
+        synchronized Mat take(Mat into) {
+            Mat frame = latest;
+            latest = into;
+            fresh = false;
+            takenTime = latestTime;
+            takenNanos = latestNanos;
+            return frame;
+        }
+    }
+
+    private final Grabber leftGrabber;
+    private final Grabber rightGrabber;
+    private final TargetPipeline leftPipeline;
+    private final TargetPipeline rightPipeline;
+    private final TargetRanker leftRanker = new TargetRanker();
+    private final TargetRanker rightRanker = new TargetRanker();
+    private final StereoTriangulator triangulator;
+    private final TargetCandidate target = new TargetCandidate();
+    private final Listener listener;
+    private volatile long maxSkewMicros = 10_000;
+    private Mat leftFrame = new Mat();
+    private Mat rightFrame = new Mat();
+
+    private volatile long pairs;
+    private volatile long skewDrops;
+    private volatile long lastSkewMicros;
+    private volatile long lastLatencyNanos;
+    private volatile long lastCaptureNanos;
+
+    public StereoVision(FrameSource left, FrameSource right, TargetPipeline leftPipeline,
+            TargetPipeline rightPipeline, double baselineInches, Listener listener) {
+        leftGrabber = new Grabber(left, "left");
+        rightGrabber = new Grabber(right, "right");
+        this.leftPipeline = leftPipeline;
+        this.rightPipeline = rightPipeline;
+        leftRanker.setCrossCheck(false);
+        rightRanker.setCrossCheck(false);
+        triangulator = new StereoTriangulator(baselineInches);
+        this.listener = listener;
+        setName("StereoVision");
+        setDaemon(true);
+    }
+
+    /**
+     * Sets how far apart, in milliseconds, the timestamps of two frames may be
+     * for them to count as the same moment.
+     */
+    public void setMaxSkew(double millis) {
+        maxSkewMicros = (long) (millis * 1000);
+    }
+
+    public StereoTriangulator triangulator() {
+        return triangulator;
+    }
+
+    /** Pairs processed since start. */
+    public long pairs() {
+        return pairs;
+    }
+
+    /** Frames dropped because the other camera had no frame close enough in time. */
+    public long skewDrops() {
+        return skewDrops;
+    }
+
+    /** Timestamp difference of the last pair, in microseconds. */
+    public long lastSkewMicros() {
+        return lastSkewMicros;
+    }
+
+    /** From the later of the two frames arriving to the result, for the last pair. */
+    public long lastLatencyNanos() {
+        return lastLatencyNanos;
+    }
+
+    /**
+     * {@link System#nanoTime()} when the later frame of the last pair arrived.
+     */
+    public long lastCaptureNanos() {
+        return lastCaptureNanos;
+    }
+
+    @Override
+    public void start() {
+        leftGrabber.start();
+        rightGrabber.start();
+        super.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.interrupted()) {
+                if (!leftGrabber.await(500) || !rightGrabber.await(500)) {
+                    continue;
+                }
+                leftFrame = leftGrabber.take(leftFrame);
+                rightFrame = rightGrabber.take(rightFrame);
+                if (!pair()) {
+                    continue;
+                }
+                long captureNanos = Math.max(leftGrabber.takenNanos, rightGrabber.takenNanos);
+                lastSkewMicros = Math.abs(leftGrabber.takenTime - rightGrabber.takenTime);
+                lastCaptureNanos = captureNanos;
+                process();
+                lastLatencyNanos = System.nanoTime() - captureNanos;
+                pairs++;
+            }
+        } catch (InterruptedException ex) {
+            // stopping
+        } finally {
+            leftGrabber.interrupt();
+            rightGrabber.interrupt();
+        }
+    }
+
+    /**
+     * Replaces the older of the taken frames with its successor until the
+     * two are within the maximum skew.
+     * @return false if the older camera had no new frame in time
+     */
+    private boolean pair() throws InterruptedException {
+        for (;;) {
+            long skew = leftGrabber.takenTime - rightGrabber.takenTime;
+            if (Math.abs(skew) <= maxSkewMicros) {
+                return true;
+            }
+            // the older frame can't have a partner any more
+            skewDrops++;
+            Grabber older = skew < 0 ? leftGrabber : rightGrabber;
+            if (!older.await(500)) {
+                return false;
+            }
+            if (older == leftGrabber) {
+                leftFrame = leftGrabber.take(leftFrame);
+            } else {
+                rightFrame = rightGrabber.take(rightFrame);
+            }
+        }
+    }
+
+    private void process() {
+        Mat left = leftFrame;
+        ForkJoinTask<?> leftTask = VisionWorkers.pool().submit(() -> {
+            leftPipeline.process(left);
+            leftRanker.rank(leftPipeline.filterContoursOutput());
+        });
+        try {
+            rightPipeline.process(rightFrame);
+            rightRanker.rank(rightPipeline.filterContoursOutput());
+        } finally {
+            leftTask.join();
+        }
+        boolean found = triangulator.triangulate(leftRanker, rightRanker, target);
+        listener.stereoResult(this, found, target);
+    }
+}
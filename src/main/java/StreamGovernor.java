@@ -0,0 +1,293 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import edu.wpi.cscore.VideoSource;
+
+/**
+ * Picks the stream profile of the camera servers from how many driver
+ * station clients are watching, the bandwidth going out and how long the
+ * vision loop is taking.
+ *
+ * <p>Once a second the governor counts the established connections on each
+ * stream port and the bytes sent on the network interfaces. One client gets
+ * the camera's own MJPEG frames passed through, more clients get smaller
+ * profiles. On top of that the profile steps down whenever the bandwidth or
+ * vision loop budget is exceeded and steps back up after
+ * {@link #CALM_SECONDS} seconds well under both. With no client watching,
+ * cameras other than the vision camera are switched to
+ * {@code kAutoManage} so cscore stops capturing and encoding them until a
+ * client connects.
+ *
+ * <p>Process CPU time is added up per profile while it is active and
+ * printed every {@link #REPORT_SECONDS} seconds, so the cost of each profile
+ * can be read off a practice match.
+ */
+public class StreamGovernor extends Thread {
+    private static final int CALM_SECONDS = 5;
+    private static final int REPORT_SECONDS = 30;
+    private static final String ESTABLISHED = "01";
+
+    /**
+     * Stream settings, from best to cheapest.
+     */
+    public enum Profile {
+        /** Camera resolution and frame rate, MJPEG frames passed through. */
+        FULL("full", 0, 0, -1, 0),
+        MEDIUM("medium", 320, 240, 50, 15),
+        LOW("low", 160, 120, 30, 10),
+        /** Nobody watching. */
+        IDLE("idle", 160, 120, 30, 10);
+
+        private final String label;
+        final int width;
+        final int height;
+        final int compression;
+        final int fps;
+
+        Profile(String label, int width, int height, int compression, int fps) {
+            this.label = label;
+            this.width = width;
+            this.height = height;
+            this.compression = compression;
+            this.fps = fps;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final Supplier<List<Main.RunningCamera>> cameras;
+    private final String visionCamera;
+    private final DoubleSupplier loopMillis;
+    private final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private final long[] cpuNanos = new long[Profile.values().length];
+    private final long[] wallNanos = new long[Profile.values().length];
+    private volatile boolean enabled;
+    private volatile double bandwidthMbps = 3;
+    private volatile double latencyMillis = 50;
+    private Profile profile = Profile.FULL;
+    private boolean applied;
+    private int calmSeconds;
+    private long lastTxBytes = -1;
+
+    /**
+     * Creates a governor.
+     * @param cameras the running cameras, read once a second
+     * @param visionCamera name of the camera the vision thread reads, which is always kept open
+     * @param loopMillis current duration of the vision loop
+     */
+    public StreamGovernor(Supplier<List<Main.RunningCamera>> cameras, String visionCamera,
+            DoubleSupplier loopMillis) {
+        this.cameras = cameras;
+        this.visionCamera = visionCamera;
+        this.loopMillis = loopMillis;
+        setName("StreamGovernor");
+        setDaemon(true);
+    }
+
+    /**
+     * Turns automatic profiles on or off. When turned off, within a second
+     * the streams go back to the full profile with each camera's "stream"
+     * config on top, and the cameras back to {@code kKeepOpen}.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Sets the bandwidth the streams may use and the vision loop duration
+     * above which the streams give way.
+     */
+    public void setBudget(double bandwidthMbps, double latencyMillis) {
+        this.bandwidthMbps = bandwidthMbps;
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public void run() {
+        long lastCpu = os.getProcessCpuTime();
+        long lastWall = System.nanoTime();
+        long lastReport = lastWall;
+        boolean wasEnabled = false;
+        for (;;) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            long cpu = os.getProcessCpuTime();
+            long wall = System.nanoTime();
+            List<Main.RunningCamera> running = cameras.get();
+            double mbps = measureMbps();
+
+            if (!enabled) {
+                if (wasEnabled) {
+                    restore(running);
+                    report();
+                }
+                wasEnabled = false;
+                lastCpu = cpu;
+                lastWall = wall;
+                continue;
+            }
+            if (!wasEnabled) {
+                applied = false;
+                wasEnabled = true;
+            }
+
+            cpuNanos[profile.ordinal()] += cpu - lastCpu;
+            wallNanos[profile.ordinal()] += wall - lastWall;
+            lastCpu = cpu;
+            lastWall = wall;
+
+            int clients = 0;
+            for (Main.RunningCamera camera : running) {
+                clients += countClients(camera.server.getPort());
+            }
+            Profile next = choose(clients, mbps, loopMillis.getAsDouble());
+            if (next != profile || !applied) {
+                System.out.printf("stream profile %s -> %s (%d clients, %.2f Mbit/s, %.1f ms loop)%n",
+                        profile, next, clients, mbps, loopMillis.getAsDouble());
+                profile = next;
+                apply(running);
+            }
+
+            if (wall - lastReport >= REPORT_SECONDS * 1_000_000_000L) {
+                lastReport = wall;
+                report();
+            }
+        }
+    }
+
+    private Profile choose(int clients, double mbps, double loop) {
+        if (clients == 0) {
+            calmSeconds = 0;
+            return Profile.IDLE;
+        }
+        Profile best = clients == 1 ? Profile.FULL : clients == 2 ? Profile.MEDIUM : Profile.LOW;
+        Profile current = profile == Profile.IDLE ? best : profile;
+        if (mbps > bandwidthMbps || loop > latencyMillis) {
+            calmSeconds = 0;
+            return current == Profile.FULL ? Profile.MEDIUM : Profile.LOW;
+        }
+        if (current.ordinal() < best.ordinal()) {
+            return best;
+        }
+        if (mbps < 0.6 * bandwidthMbps && loop < 0.7 * latencyMillis) {
+            calmSeconds++;
+        } else {
+            calmSeconds = 0;
+        }
+        if (calmSeconds >= CALM_SECONDS && current.ordinal() > best.ordinal()) {
+            calmSeconds = 0;
+            return Profile.values()[current.ordinal() - 1];
+        }
+        return current;
+    }
+
+    private void apply(List<Main.RunningCamera> running) {
+        applied = true;
+        for (Main.RunningCamera camera : running) {
+            camera.server.setResolution(profile.width, profile.height);
+            camera.server.setCompression(profile.compression);
+            camera.server.setFPS(profile.fps);
+        }
+        setCameraStrategy(running, profile == Profile.IDLE
+                ? VideoSource.ConnectionStrategy.kAutoManage : VideoSource.ConnectionStrategy.kKeepOpen);
+    }
+
+    /**
+     * Puts the streams and cameras back to how they'd be without the governor.
+     */
+    private void restore(List<Main.RunningCamera> running) {
+        Gson gson = new GsonBuilder().create();
+        for (Main.RunningCamera camera : running) {
+            camera.server.setResolution(Profile.FULL.width, Profile.FULL.height);
+            camera.server.setCompression(Profile.FULL.compression);
+            camera.server.setFPS(Profile.FULL.fps);
+            if (camera.config.streamConfig != null) {
+                camera.server.setConfigJson(gson.toJson(camera.config.streamConfig));
+            }
+        }
+        setCameraStrategy(running, VideoSource.ConnectionStrategy.kKeepOpen);
+        profile = Profile.FULL;
+        System.out.println("stream profile back to the configured streams");
+    }
+
+    private void setCameraStrategy(List<Main.RunningCamera> running, VideoSource.ConnectionStrategy strategy) {
+        for (Main.RunningCamera camera : running) {
+            if (!camera.config.name.equals(visionCamera)) {
+                camera.camera.setConnectionStrategy(strategy);
+            }
+        }
+    }
+
+    private void report() {
+        StringBuilder line = new StringBuilder("stream cpu:");
+        for (Profile each : Profile.values()) {
+            long wall = wallNanos[each.ordinal()];
+            if (wall > 0) {
+                line.append(String.format(" %s %.0f%% of a core over %d s,", each,
+                        100.0 * cpuNanos[each.ordinal()] / wall, wall / 1_000_000_000L));
+            }
+        }
+        System.out.println(line);
+    }
+
+    /**
+     * Counts the established TCP connections to a local port.
+     */
+    static int countClients(int port) {
+        String local = String.format(":%04X", port);
+        int count = 0;
+        for (String table : new String[] {"/proc/net/tcp", "/proc/net/tcp6"}) {
+            try {
+                for (String line : Files.readAllLines(Paths.get(table))) {
+                    String[] fields = line.trim().split("\\s+");
+                    if (fields.length > 3 && fields[1].endsWith(local) && fields[3].equals(ESTABLISHED)) {
+                        count++;
+                    }
+                }
+            } catch (IOException ex) {
+                // not on Linux or no IPv6; count what we can
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the rate of bytes sent on all interfaces but loopback since the last call.
+     */
+    private double measureMbps() {
+        long total = 0;
+        try (DirectoryStream<Path> interfaces = Files.newDirectoryStream(Paths.get("/sys/class/net"))) {
+            for (Path iface : interfaces) {
+                if (iface.getFileName().toString().equals("lo")) {
+                    continue;
+                }
+                Path txBytes = iface.resolve("statistics/tx_bytes");
+                if (Files.exists(txBytes)) {
+                    total += Long.parseLong(new String(Files.readAllBytes(txBytes)).trim());
+                }
+            }
+        } catch (IOException | NumberFormatException ex) {
+            return 0;
+        }
+        double mbps = lastTxBytes < 0 ? 0 : (total - lastTxBytes) * 8 / 1e6;
+        lastTxBytes = total;
+        return mbps;
+    }
+}
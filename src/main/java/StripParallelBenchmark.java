@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Measures how strip-parallel processing scales from 1 to 4 cores and checks
+ * its output against the serial pipeline.
+ *
+ * <p>For each core count the frame is split into that many strips on a pool
+ * of matching size. The result is compared with the one strip run, which
+ * must match exactly, and with the serial contour path of the pipeline by
+ * bounding box.
+ *
+ * <p>Usage: {@code java -cp <jar> StripParallelBenchmark <pipeline> <image>}
+ */
+public final class StripParallelBenchmark {
+    private static final int RUNS = 30;
+    private static final int MAX_CORES = 4;
+
+    private StripParallelBenchmark() {
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) {
+        if (args.length < 2) {
+            System.err.println("usage: StripParallelBenchmark <pipeline> <image>");
+            return;
+        }
+        TargetPipeline pipeline = PipelineSelector.create(args[0]);
+        if (pipeline == null) {
+            System.err.println("unknown pipeline '" + args[0] + "'");
+            return;
+        }
+        Mat frame = Imgcodecs.imread(args[1]);
+        if (frame.empty()) {
+            System.err.println("could not read '" + args[1] + "'");
+            return;
+        }
+        PipelineParams params = pipeline.params();
+
+        // serial reference
+        long[] times = new long[RUNS];
+        pipeline.setDetection(DetectionBackend.CONTOURS);
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            pipeline.process(frame);
+            times[run] = System.nanoTime() - start;
+        }
+        List<Rect> serial = boxes(pipeline.filterContoursOutput());
+        double serialMillis = median(times) / 1e6;
+        System.out.printf("serial %s.process: %.2f ms, %d targets%n", args[0], serialMillis, serial.size());
+
+        System.out.println("cores,ms,speedup vs 1 core,same as 1 strip,matches serial");
+        List<Rect> oneStrip = null;
+        double oneStripMillis = 0;
+        List<MatOfPoint> output = new ArrayList<>();
+        for (int cores = 1; cores <= MAX_CORES; cores++) {
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, cores - 1));
+            StripParallelProcessor processor = new StripParallelProcessor(pool, cores);
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                processor.process(frame, params, output);
+                times[run] = System.nanoTime() - start;
+            }
+            pool.shutdown();
+
+            List<Rect> found = boxes(output);
+            double millis = median(times) / 1e6;
+            if (oneStrip == null) {
+                oneStrip = found;
+                oneStripMillis = millis;
+            }
+            System.out.printf("%d,%.2f,%.2f,%b,%d/%d%n", cores, millis, oneStripMillis / millis,
+                    found.equals(oneStrip), countMatches(serial, found), serial.size());
+        }
+    }
+
+    private static List<Rect> boxes(List<MatOfPoint> contours) {
+        List<Rect> boxes = new ArrayList<>();
+        for (MatOfPoint contour : contours) {
+            boxes.add(Imgproc.boundingRect(contour));
+        }
+        return boxes;
+    }
+
+    /**
+     * Counts the expected boxes that have a found box overlapping by at least half.
+     */
+    private static int countMatches(List<Rect> expected, List<Rect> found) {
+        int matched = 0;
+        for (Rect a : expected) {
+            for (Rect b : found) {
+                int ix = Math.max(0, Math.min(a.x + a.width, b.x + b.width) - Math.max(a.x, b.x));
+                int iy = Math.max(0, Math.min(a.y + a.height, b.y + b.height) - Math.max(a.y, b.y));
+                double intersection = (double) ix * iy;
+                double union = a.area() + b.area() - intersection;
+                if (union > 0 && intersection / union >= 0.5) {
+                    matched++;
+                    break;
+                }
+            }
+        }
+        return matched;
+    }
+
+    private static long median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
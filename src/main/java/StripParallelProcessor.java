@@ -0,0 +1,146 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Runs blur, HSV threshold and blob extraction over horizontal strips of a
+ * frame in parallel.
+ *
+ * <p>Each strip is blurred together with enough rows above and below for the
+ * blur kernel, so its own rows come out exactly as in a full-frame blur.
+ * The strip's rows are then thresholded with the same cvtColor and inRange
+ * calls as GRIP, and fed to its own {@link RunLengthBlobExtractor}. The
+ * extractors are appended in order, which joins blobs that cross a seam,
+ * and the merged blobs are filtered with the pipeline's filterContours
+ * criteria. The output matches the run length backend on the whole frame.
+ */
+public class StripParallelProcessor {
+    private static class Strip {
+        final Mat blurred = new Mat();
+        final Mat hsv = new Mat();
+        final Mat mask = new Mat();
+        final RunLengthBlobExtractor extractor = new RunLengthBlobExtractor();
+        byte[] bytes = new byte[0];
+        int top;
+        int bottom;
+    }
+
+    private final ForkJoinPool pool;
+    private final Strip[] strips;
+    private final RunLengthBlobExtractor merged = new RunLengthBlobExtractor();
+    private final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+    /**
+     * Splits frames into one strip per core of the shared worker pool, plus
+     * one for the calling thread.
+     */
+    public StripParallelProcessor() {
+        this(VisionWorkers.pool(), VisionWorkers.pool().getParallelism() + 1);
+    }
+
+    public StripParallelProcessor(ForkJoinPool pool, int stripCount) {
+        this.pool = pool;
+        strips = new Strip[Math.max(1, stripCount)];
+        for (int i = 0; i < strips.length; i++) {
+            strips[i] = new Strip();
+        }
+    }
+
+    public int stripCount() {
+        return strips.length;
+    }
+
+    /**
+     * The merged extractor of the last frame, for its blob stats.
+     */
+    public RunLengthBlobExtractor extractor() {
+        return merged;
+    }
+
+    /**
+     * Processes a BGR frame and writes the hulls of the blobs that pass the
+     * filters of params to output.
+     */
+    public void process(Mat frame, PipelineParams params, List<MatOfPoint> output) {
+        output.clear();
+        int height = frame.rows();
+        int blurRadius = (int) (params.blurRadius + 0.5);
+        int reach = SharedFrame.blurReach(params.blurType, blurRadius);
+
+        tasks.clear();
+        for (int i = 0; i < strips.length; i++) {
+            Strip strip = strips[i];
+            strip.top = height * i / strips.length;
+            strip.bottom = height * (i + 1) / strips.length;
+            if (i > 0) {
+                tasks.add(pool.submit(() -> runStrip(frame, strip, params, blurRadius, reach)));
+            }
+        }
+        try {
+            runStrip(frame, strips[0], params, blurRadius, reach);
+        } finally {
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
+
+        // stitch the strips back together in order
+        merged.begin();
+        for (Strip strip : strips) {
+            merged.append(strip.extractor);
+        }
+        merged.filter(params.filterContoursMinArea, params.filterContoursMinPerimeter,
+                params.filterContoursMinWidth, params.filterContoursMaxWidth,
+                params.filterContoursMinHeight, params.filterContoursMaxHeight,
+                params.filterContoursSolidity, params.filterContoursMaxVertices,
+                params.filterContoursMinVertices, params.filterContoursMinRatio,
+                params.filterContoursMaxRatio);
+        for (RunLengthBlobExtractor.Blob blob : merged.blobs()) {
+            MatOfPoint mopHull = new MatOfPoint();
+            mopHull.create(blob.hullSize, 1, CvType.CV_32SC2);
+            mopHull.put(0, 0, Arrays.copyOf(blob.hull, blob.hullSize * 2));
+            output.add(mopHull);
+        }
+    }
+
+    private static void runStrip(Mat frame, Strip strip, PipelineParams params, int blurRadius, int reach) {
+        strip.extractor.begin();
+        if (strip.bottom <= strip.top) {
+            return;
+        }
+        int width = frame.cols();
+        int top = Math.max(0, strip.top - reach);
+        int bottom = Math.min(frame.rows(), strip.bottom + reach);
+
+        // blur with the overlap, then keep only the strip's own rows
+        Mat source = frame.submat(top, bottom, 0, width);
+        SharedFrame.blur(source, params.blurType, blurRadius, strip.blurred);
+        source.release();
+        Mat inner = strip.blurred.submat(strip.top - top, strip.bottom - top, 0, width);
+        Imgproc.cvtColor(inner, strip.hsv, Imgproc.COLOR_BGR2HSV);
+        inner.release();
+        double[] hue = params.hsvThresholdHue;
+        double[] sat = params.hsvThresholdSaturation;
+        double[] val = params.hsvThresholdValue;
+        Core.inRange(strip.hsv, new Scalar(hue[0], sat[0], val[0]),
+                new Scalar(hue[1], sat[1], val[1]), strip.mask);
+
+        int rows = strip.bottom - strip.top;
+        if (strip.bytes.length < rows * width) {
+            strip.bytes = new byte[rows * width];
+        }
+        strip.mask.get(0, 0, strip.bytes);
+        for (int row = 0; row < rows; row++) {
+            strip.extractor.addRow(strip.top + row, strip.bytes, row * width, width);
+        }
+    }
+}
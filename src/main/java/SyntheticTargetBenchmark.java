@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Streams synthetic target frames through a pipeline and reports how far
+ * the distance math is off at each distance, and how fast the pipeline runs.
+ *
+ * <p>At every distance from 2 to 18 feet, frames are rendered with a random
+ * lateral offset, height and wall yaw that keep the target in view. Each
+ * frame is run through the pipeline and paired two ways: by
+ * {@link TargetRanker}, which drops pairs failing the distance cross-check,
+ * and by the listener's {@link Main#getTargetTapes}, which doesn't. Errors
+ * are medians and 95th percentiles over the frames where a target was found;
+ * frames per second only count the pipeline and the ranking, not rendering.
+ *
+ * <p>Usage: {@code java -cp <jar> SyntheticTargetBenchmark <pipeline>
+ * [--frames n] [--noise sigma] [--blur sigma] [--decoys n] [--seed n]
+ * [--write dir]}. With {@code --write} every frame is also saved as a PNG
+ * next to a truth.csv and the labels.csv of tape boxes that
+ * {@link ParameterTuner} reads, so the set can be fed to the other tools.
+ */
+public final class SyntheticTargetBenchmark {
+    private static final int MIN_DISTANCE = 24;
+    private static final int MAX_DISTANCE = 216;
+    private static final int DISTANCE_STEP = 24;
+    private static final double MAX_YAW = Math.toRadians(30);
+
+    private SyntheticTargetBenchmark() {
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: SyntheticTargetBenchmark <pipeline> [--frames n] [--noise sigma]"
+                    + " [--blur sigma] [--decoys n] [--seed n] [--write dir]");
+            return;
+        }
+        TargetPipeline pipeline = PipelineSelector.create(args[0]);
+        if (pipeline == null) {
+            System.err.println("unknown pipeline '" + args[0] + "'");
+            return;
+        }
+        int frames = 20;
+        double noise = 0;
+        double blur = 0;
+        int decoys = 0;
+        long seed = 2019;
+        Path write = null;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--frames": frames = Integer.parseInt(args[i + 1]); break;
+                case "--noise": noise = Double.parseDouble(args[i + 1]); break;
+                case "--blur": blur = Double.parseDouble(args[i + 1]); break;
+                case "--decoys": decoys = Integer.parseInt(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                case "--write": write = Paths.get(args[i + 1]); break;
+                default:
+                    System.err.println("unknown option '" + args[i] + "'");
+                    return;
+            }
+        }
+
+        SyntheticTargetGenerator generator = new SyntheticTargetGenerator(pipeline.params(), seed);
+        generator.setNoise(noise);
+        generator.setBlur(blur);
+        generator.setDecoys(decoys);
+        Random random = new Random(seed);
+        TargetRanker ranker = new TargetRanker();
+        TargetCandidate legacy = new TargetCandidate();
+        PrintWriter truth = null;
+        PrintWriter labels = null;
+        if (write != null) {
+            Files.createDirectories(write);
+            truth = new PrintWriter(Files.newBufferedWriter(write.resolve("truth.csv")));
+            truth.println("file,distance in,offset in,height in,yaw deg");
+            labels = new PrintWriter(Files.newBufferedWriter(write.resolve("labels.csv")));
+            labels.println("file,x,y,width,height");
+        }
+
+        Mat frame = new Mat();
+        SyntheticTargetGenerator.Scene scene = new SyntheticTargetGenerator.Scene();
+        double[] distanceErrors = new double[frames];
+        double[] offsetErrors = new double[frames];
+        double[] angleErrors = new double[frames];
+        double[] legacyErrors = new double[frames];
+        long[] times = new long[frames];
+        long totalNanos = 0;
+        int totalFrames = 0;
+        int frameNumber = 0;
+
+        System.out.println("distance in,found %,distance err % median,distance err % p95,"
+                + "offset err in median,angle err deg median,legacy found %,legacy distance err % median,"
+                + "ms median,fps");
+        for (int distance = MIN_DISTANCE; distance <= MAX_DISTANCE; distance += DISTANCE_STEP) {
+            int found = 0;
+            int legacyFound = 0;
+            for (int i = 0; i < frames; i++) {
+                // keep the whole target inside the frame
+                double halfView = distance * Math.tan(Main.CAMERA_VIEW_ANGLE_HORIZONTAL / 2);
+                double reach = Main.distanceBetweenTapeCentersInches / 2 + Main.BB_WIDTH;
+                scene.distanceInches = distance;
+                scene.offsetInches = (random.nextDouble() * 2 - 1) * Math.max(0, halfView - reach) * 0.8;
+                scene.heightInches = (random.nextDouble() * 2 - 1) * distance * 0.15;
+                scene.yawRadians = (random.nextDouble() * 2 - 1) * MAX_YAW;
+                generator.render(scene, frame);
+                if (truth != null) {
+                    String name = String.format("frame-%05d.png", frameNumber);
+                    Imgcodecs.imwrite(write.resolve(name).toString(), frame);
+                    truth.printf("%s,%.3f,%.3f,%.3f,%.3f%n", name, scene.distanceInches, scene.offsetInches,
+                            scene.heightInches, Math.toDegrees(scene.yawRadians));
+                    for (Rect box : generator.tapeBoxes(scene)) {
+                        labels.printf("%s,%d,%d,%d,%d%n", name, box.x, box.y, box.width, box.height);
+                    }
+                }
+                frameNumber++;
+
+                long start = System.nanoTime();
+                pipeline.process(frame);
+                ranker.rank(pipeline.filterContoursOutput());
+                times[i] = System.nanoTime() - start;
+
+                if (ranker.count() > 0) {
+                    TargetCandidate best = ranker.candidate(0);
+                    distanceErrors[found] = 100 * Math.abs(best.distanceInches - distance) / distance;
+                    offsetErrors[found] = Math.abs(best.offsetInches - scene.offsetInches);
+                    angleErrors[found] = Math.toDegrees(Math.abs(best.angleRadians - scene.angleRadians()));
+                    found++;
+                }
+                if (pipeline.filterContoursOutput().size() > 1) {
+                    Rect[] tapes = Main.getTargetTapes(pipeline);
+                    Main.estimateTarget(tapes[0], tapes[1], legacy);
+                    legacyErrors[legacyFound++] = 100 * Math.abs(legacy.distanceInches - distance) / distance;
+                }
+            }
+
+            double millis = percentile(times, frames, 0.5) / 1e6;
+            System.out.printf("%d,%.1f,%.2f,%.2f,%.2f,%.2f,%.1f,%.2f,%.2f,%.1f%n", distance,
+                    100.0 * found / frames,
+                    percentile(distanceErrors, found, 0.5), percentile(distanceErrors, found, 0.95),
+                    percentile(offsetErrors, found, 0.5), percentile(angleErrors, found, 0.5),
+                    100.0 * legacyFound / frames, percentile(legacyErrors, legacyFound, 0.5),
+                    millis, 1000 / millis);
+            for (int i = 0; i < frames; i++) {
+                totalNanos += times[i];
+            }
+            totalFrames += frames;
+        }
+        if (truth != null) {
+            truth.close();
+            labels.close();
+        }
+        System.out.printf("%d frames, %.1f fps overall%n", totalFrames, totalFrames / (totalNanos / 1e9));
+    }
+
+    private static double percentile(double[] values, int count, double fraction) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return sorted[Math.min(count - 1, (int) (fraction * count))];
+    }
+
+    private static double percentile(long[] values, int count, double fraction) {
+        long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return sorted[Math.min(count - 1, (int) (fraction * count))];
+    }
+}
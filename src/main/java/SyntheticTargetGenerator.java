@@ -0,0 +1,242 @@
+import java.util.Random;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Renders the 2019 tape pair at a known pose so the distance math has
+ * ground truth to be checked against.
+ *
+ * <p>The tapes are the 2" x 5.5" strips tilted {@link Main#TAPE_ANGLE}
+ * toward each other, with their centers {@link Main#distanceBetweenTapeCentersInches}
+ * apart, projected through a pinhole camera with the field of view and
+ * resolution in {@link Main}. The tape color is the middle of a pipeline's
+ * HSV threshold, so every pipeline sees the tapes. On top of that the
+ * generator can add defocus blur, sensor noise and decoy lights, some in
+ * the tape color and some white.
+ */
+public class SyntheticTargetGenerator {
+    private static final double TAPE_WIDTH = 2;
+    private static final double TAPE_HEIGHT = 5.5;
+    private static final Scalar BACKGROUND = new Scalar(30, 28, 25);
+    private static final Scalar WHITE = new Scalar(245, 245, 245);
+
+    /**
+     * Where the target is relative to the camera.
+     */
+    public static class Scene {
+        /** Depth of the target center along the camera axis. */
+        public double distanceInches;
+        /** How far right of the camera axis the target center is. */
+        public double offsetInches;
+        /** How far above the camera axis the target center is. */
+        public double heightInches;
+        /** Rotation of the target wall about the vertical axis, 0 when facing the camera. */
+        public double yawRadians;
+
+        public Scene() {
+        }
+
+        public Scene(double distanceInches, double offsetInches, double heightInches, double yawRadians) {
+            this.distanceInches = distanceInches;
+            this.offsetInches = offsetInches;
+            this.heightInches = heightInches;
+            this.yawRadians = yawRadians;
+        }
+
+        /** Bearing of the target center from the camera axis, positive to the right. */
+        public double angleRadians() {
+            return Math.atan2(offsetInches, distanceInches);
+        }
+    }
+
+    private final Random random;
+    private final Scalar tapeColor;
+    private final Mat noise = new Mat();
+    private final MatOfPoint polygon = new MatOfPoint();
+    private final Point[] corners = new Point[4];
+    private double noiseSigma;
+    private double blurSigma;
+    private int decoys;
+
+    /**
+     * Creates a generator whose tapes pass the HSV threshold of params.
+     * @param seed seeds the decoy placement and the sensor noise, so the same
+     *     seed renders the same frames
+     */
+    public SyntheticTargetGenerator(PipelineParams params, long seed) {
+        random = new Random(seed);
+        Core.setRNGSeed((int) seed);
+        tapeColor = toBgr(mid(params.hsvThresholdHue), mid(params.hsvThresholdSaturation),
+                mid(params.hsvThresholdValue));
+        for (int i = 0; i < corners.length; i++) {
+            corners[i] = new Point();
+        }
+    }
+
+    /**
+     * Standard deviation of the gaussian noise added to every channel, 0 for none.
+     */
+    public void setNoise(double sigma) {
+        noiseSigma = sigma;
+    }
+
+    /**
+     * Sigma in pixels of the gaussian defocus blur, 0 for none.
+     */
+    public void setBlur(double sigma) {
+        blurSigma = sigma;
+    }
+
+    /**
+     * Number of lights scattered around the target. Half are in the tape
+     * color and shaped like upright bars or round lamps, so they reach the
+     * filters; the rest are white and should fail the threshold.
+     */
+    public void setDecoys(int count) {
+        decoys = count;
+    }
+
+    /**
+     * Focal length in pixels of the pinhole camera matching {@link Main}'s
+     * horizontal field of view.
+     */
+    public static double focalLengthPixels() {
+        return Main.WIDTH_OF_CAMERA_PIXELS / 2.0 / Math.tan(Main.CAMERA_VIEW_ANGLE_HORIZONTAL / 2);
+    }
+
+    /**
+     * Renders scene into out as a BGR frame of {@link Main}'s camera size.
+     */
+    public void render(Scene scene, Mat out) {
+        out.create(Main.HEIGHT_OF_CAMERA_PIXELS, Main.WIDTH_OF_CAMERA_PIXELS, CvType.CV_8UC3);
+        out.setTo(BACKGROUND);
+
+        double halfSpacing = Main.distanceBetweenTapeCentersInches / 2;
+        drawTape(scene, -halfSpacing, 1, out);
+        drawTape(scene, halfSpacing, -1, out);
+
+        if (decoys > 0) {
+            drawDecoys(scene, out);
+        }
+        if (blurSigma > 0) {
+            Imgproc.GaussianBlur(out, out, new Size(0, 0), blurSigma);
+        }
+        if (noiseSigma > 0) {
+            noise.create(out.size(), CvType.CV_16SC3);
+            Core.randn(noise, 0, noiseSigma);
+            Core.add(out, noise, out, new Mat(), CvType.CV_8UC3);
+        }
+    }
+
+    /**
+     * Returns the bounding boxes of the left and right tape as rendered for
+     * scene, the labels a detector should find.
+     */
+    public Rect[] tapeBoxes(Scene scene) {
+        double halfSpacing = Main.distanceBetweenTapeCentersInches / 2;
+        return new Rect[] {tapeBox(scene, -halfSpacing, 1), tapeBox(scene, halfSpacing, -1)};
+    }
+
+    private Rect tapeBox(Scene scene, double centerX, int lean) {
+        tapeCorners(scene, centerX, lean);
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (Point corner : corners) {
+            minX = Math.min(minX, corner.x);
+            minY = Math.min(minY, corner.y);
+            maxX = Math.max(maxX, corner.x);
+            maxY = Math.max(maxY, corner.y);
+        }
+        int x = (int) Math.floor(minX);
+        int y = (int) Math.floor(minY);
+        return new Rect(x, y, (int) Math.ceil(maxX) - x, (int) Math.ceil(maxY) - y);
+    }
+
+    /**
+     * Draws one tape centered centerX inches from the target center. lean is
+     * 1 for the left tape, whose top tilts right, and -1 for the right one.
+     */
+    private void drawTape(Scene scene, double centerX, int lean, Mat out) {
+        tapeCorners(scene, centerX, lean);
+        polygon.fromArray(corners);
+        Imgproc.fillConvexPoly(out, polygon, tapeColor, Imgproc.LINE_AA, 0);
+    }
+
+    private void tapeCorners(Scene scene, double centerX, int lean) {
+        double sin = Math.sin(Main.TAPE_ANGLE) * lean;
+        double cos = Math.cos(Main.TAPE_ANGLE);
+        double halfWidth = TAPE_WIDTH / 2;
+        double halfHeight = TAPE_HEIGHT / 2;
+        double[] us = {-halfWidth, halfWidth, halfWidth, -halfWidth};
+        double[] vs = {halfHeight, halfHeight, -halfHeight, -halfHeight};
+        for (int i = 0; i < 4; i++) {
+            double x = centerX + us[i] * cos + vs[i] * sin;
+            double y = -us[i] * sin + vs[i] * cos;
+            project(scene, x, y, corners[i]);
+        }
+    }
+
+    /**
+     * Projects a point on the target wall, in inches from the target center
+     * with y up, to pixel coordinates.
+     */
+    private static void project(Scene scene, double x, double y, Point out) {
+        double cameraX = scene.offsetInches + x * Math.cos(scene.yawRadians);
+        double cameraY = scene.heightInches + y;
+        double cameraZ = scene.distanceInches + x * Math.sin(scene.yawRadians);
+        double focal = focalLengthPixels();
+        out.x = Main.WIDTH_OF_CAMERA_PIXELS / 2.0 + focal * cameraX / cameraZ;
+        out.y = Main.HEIGHT_OF_CAMERA_PIXELS / 2.0 - focal * cameraY / cameraZ;
+    }
+
+    private void drawDecoys(Scene scene, Mat out) {
+        // keep the decoys off the target so they test pairing, not occlusion
+        double focal = focalLengthPixels();
+        double reach = (Main.distanceBetweenTapeCentersInches + TAPE_HEIGHT) * focal / scene.distanceInches;
+        double targetX = Main.WIDTH_OF_CAMERA_PIXELS / 2.0 + focal * scene.offsetInches / scene.distanceInches;
+        double targetY = Main.HEIGHT_OF_CAMERA_PIXELS / 2.0 - focal * scene.heightInches / scene.distanceInches;
+        int width = out.cols();
+        int height = out.rows();
+        Point center = new Point();
+        for (int i = 0; i < decoys; i++) {
+            int size = 6 + random.nextInt(60);
+            for (int attempt = 0; attempt < 10; attempt++) {
+                center.x = random.nextInt(width);
+                center.y = random.nextInt(height);
+                if (Math.abs(center.x - targetX) > reach + size || Math.abs(center.y - targetY) > reach + size) {
+                    break;
+                }
+            }
+            Scalar color = i % 2 == 0 ? tapeColor : WHITE;
+            if (random.nextBoolean()) {
+                Imgproc.circle(out, center, size / 2, color, -1, Imgproc.LINE_AA, 0);
+            } else {
+                int barWidth = Math.max(2, size / 3);
+                Imgproc.rectangle(out, new Point(center.x - barWidth / 2, center.y - size / 2),
+                        new Point(center.x + barWidth / 2, center.y + size / 2), color, -1);
+            }
+        }
+    }
+
+    private static double mid(double[] range) {
+        return (range[0] + range[1]) / 2;
+    }
+
+    private static Scalar toBgr(double hue, double saturation, double value) {
+        Mat hsv = new Mat(1, 1, CvType.CV_8UC3, new Scalar(hue, saturation, value));
+        Mat bgr = new Mat();
+        Imgproc.cvtColor(hsv, bgr, Imgproc.COLOR_HSV2BGR);
+        double[] color = bgr.get(0, 0);
+        return new Scalar(color[0], color[1], color[2]);
+    }
+}
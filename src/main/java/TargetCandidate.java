@@ -0,0 +1,23 @@
+import org.opencv.core.Rect;
+
+/**
+ * One pair of tapes and the target estimate worked out from it.
+ *
+ * <p>Instances are pooled by {@link TargetRanker} and overwritten every frame.
+ */
+public class TargetCandidate {
+    public final Rect left = new Rect();
+    public final Rect right = new Rect();
+    /** Distance from the spacing of the tape centers. */
+    public double distanceInches;
+    /** Distance from the tape height, only used to cross-check distanceInches. */
+    public double heightDistanceInches;
+    /** How far right of the camera axis the target center is. */
+    public double offsetInches;
+    /** Bearing of the target center from the camera axis, positive to the right. */
+    public double angleRadians;
+    /** 0 when the two distance estimates disagree by the cross-check tolerance or more, 1 when they match. */
+    public double confidence;
+    /** Ranking key, lower is better. */
+    public double score;
+}
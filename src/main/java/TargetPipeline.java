@@ -0,0 +1,61 @@
+import java.util.ArrayList;
+
+import edu.wpi.first.vision.VisionPipeline;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+
+/**
+ * A vision pipeline that produces a filtered list of tape contours.
+ *
+ * <p>Implemented by {@link GripPipeline}, with the values of whichever GRIP
+ * export is selected in the configuration file, and by the pipelines that
+ * wrap it for {@link Main}.
+ */
+public interface TargetPipeline extends VisionPipeline {
+    /**
+     * The contours that survived every filter step of the last frame.
+     */
+    ArrayList<MatOfPoint> filterContoursOutput();
+
+    /**
+     * The HSV threshold mask of the last frame. Not updated by the run
+     * length and strips backends, which don't build one.
+     */
+    Mat hsvThresholdOutput();
+
+    /**
+     * The contours found in the threshold mask of the last frame. Only
+     * updated by the contours backend.
+     */
+    ArrayList<MatOfPoint> findContoursOutput();
+
+    /**
+     * The convex hulls of findContoursOutput. Only updated by the contours backend.
+     */
+    ArrayList<MatOfPoint> convexHullsOutput();
+
+    /**
+     * How the last frame went: its time budget and the state of the contour
+     * filter. The same object every frame.
+     */
+    PipelineStats stats();
+
+    /**
+     * Choose how the threshold mask is turned into contours, starting with the next frame.
+     */
+    void setDetection(DetectionBackend detection);
+
+    DetectionBackend detection();
+
+    /**
+     * The parameters used for the next frame.
+     */
+    PipelineParams params();
+
+    /**
+     * Replace the parameters, starting with the next frame. The pipeline
+     * keeps a reference, so don't change params afterwards.
+     */
+    void setParams(PipelineParams params);
+}
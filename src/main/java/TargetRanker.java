@@ -0,0 +1,266 @@
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+
+/**
+ * Pairs up filtered tapes into targets and ranks them.
+ *
+ * <p>The 2019 tapes lean toward each other at the top, so a tape whose top
+ * point is right of its center can only be the left half of a target. Tapes
+ * are sorted left to right and each neighbouring left/right pair whose
+ * distance estimates pass the cross-check in {@link Main#estimateTarget} becomes a
+ * candidate.
+ *
+ * <p>{@link #packed()} lays the candidates out best first as
+ * {@link #FIELDS} doubles each: distance (in), lateral offset (in), bearing
+ * (rad), confidence (0-1) and score. The output is capped at
+ * {@link #MAX_TARGETS} and everything, including the packed array for each
+ * count, is reused between frames.
+ */
+public class TargetRanker {
+    public static final int FIELDS = 5;
+    public static final int MAX_TARGETS = 8;
+
+    /**
+     * What makes one target better than another.
+     */
+    public enum Ranking {
+        /** Smallest bearing from the camera axis first. */
+        CENTER("center"),
+        /** Nearest first. */
+        DISTANCE("distance"),
+        /** Best agreement between the two distance estimates first. */
+        CONFIDENCE("confidence");
+
+        private final String label;
+
+        Ranking(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Returns the ranking with the given config label, or null if there is none.
+         */
+        public static Ranking get(String label) {
+            for (Ranking ranking : values()) {
+                if (ranking.label.equalsIgnoreCase(label)) {
+                    return ranking;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private volatile Ranking ranking = Ranking.CENTER;
+    private volatile boolean crossCheck = true;
+
+    private Rect[] tapes = new Rect[0];
+    private int[] lean = new int[0];
+    private int[] order = new int[0];
+    private int[] points = new int[64];
+    private final TargetCandidate[] candidates = new TargetCandidate[MAX_TARGETS + 1];
+    private int candidateCount;
+    private final double[][] packed = new double[MAX_TARGETS + 1][];
+
+    public TargetRanker() {
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = new TargetCandidate();
+        }
+        for (int i = 0; i <= MAX_TARGETS; i++) {
+            packed[i] = new double[i * FIELDS];
+        }
+    }
+
+    public void setRanking(Ranking ranking) {
+        this.ranking = ranking;
+    }
+
+    public Ranking ranking() {
+        return ranking;
+    }
+
+    /**
+     * Sets whether pairs whose two distance estimates disagree are dropped.
+     * Off for {@link StereoTriangulator}, which checks depth across views
+     * instead; the confidence is then still filled in, just not enforced.
+     */
+    public void setCrossCheck(boolean crossCheck) {
+        this.crossCheck = crossCheck;
+    }
+
+    /**
+     * Builds the ranked candidate list from the filtered contours of a frame.
+     */
+    public void rank(List<MatOfPoint> contours) {
+        int count = contours.size();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            MatOfPoint contour = contours.get(i);
+            Rect box = tapes[i];
+            lean[i] = measure(contour, box);
+        }
+        pairUp(count);
+    }
+
+    /**
+     * Same as {@link #rank(List)} for tapes already measured: their bounding
+     * boxes, and which way each leans as {@link #measure} tells it.
+     */
+    void rank(Rect[] boxes, int[] leans, int count) {
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            tapes[i].x = boxes[i].x;
+            tapes[i].y = boxes[i].y;
+            tapes[i].width = boxes[i].width;
+            tapes[i].height = boxes[i].height;
+            lean[i] = leans[i];
+        }
+        pairUp(count);
+    }
+
+    private void pairUp(int count) {
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        // left to right; the lists are short so insertion sort is plenty
+        for (int i = 1; i < count; i++) {
+            int tape = order[i];
+            int j = i - 1;
+            while (j >= 0 && tapes[order[j]].x > tapes[tape].x) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = tape;
+        }
+
+        Ranking ranking = this.ranking;
+        boolean crossCheck = this.crossCheck;
+        candidateCount = 0;
+        for (int i = 0; i + 1 < count; i++) {
+            int left = order[i];
+            int right = order[i + 1];
+            if (lean[left] < 0 || lean[right] > 0) continue;
+            TargetCandidate candidate = candidates[candidateCount];
+            Main.estimateTarget(tapes[left], tapes[right], candidate);
+            if (crossCheck && candidate.confidence <= 0) continue;
+            candidate.score = score(candidate, ranking);
+            insert();
+        }
+
+        double[] out = packed[candidateCount];
+        for (int i = 0; i < candidateCount; i++) {
+            TargetCandidate candidate = candidates[i];
+            int base = i * FIELDS;
+            out[base] = candidate.distanceInches;
+            out[base + 1] = candidate.offsetInches;
+            out[base + 2] = candidate.angleRadians;
+            out[base + 3] = candidate.confidence;
+            out[base + 4] = candidate.score;
+        }
+    }
+
+    /**
+     * Moves the candidate just written at candidateCount into place. When the
+     * list is full the worst one is dropped, which keeps a spare slot at the end.
+     */
+    private void insert() {
+        TargetCandidate added = candidates[candidateCount];
+        int i = candidateCount;
+        while (i > 0 && candidates[i - 1].score > added.score) {
+            candidates[i] = candidates[i - 1];
+            i--;
+        }
+        candidates[i] = added;
+        if (candidateCount < MAX_TARGETS) {
+            candidateCount++;
+        }
+    }
+
+    private static double score(TargetCandidate candidate, Ranking ranking) {
+        switch (ranking) {
+            case DISTANCE:
+                return candidate.distanceInches;
+            case CONFIDENCE:
+                return -candidate.confidence;
+            case CENTER:
+            default:
+                return Math.abs(candidate.angleRadians);
+        }
+    }
+
+    /**
+     * Fills in the bounding box of a contour and returns which way it leans:
+     * 1 if its top point is right of center, -1 if left, 0 if it can't tell.
+     */
+    private int measure(MatOfPoint contour, Rect box) {
+        int size = contour.rows() * 2;
+        if (points.length < size) {
+            points = new int[Math.max(size, points.length * 2)];
+        }
+        contour.get(0, 0, points);
+        int minX = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        int topX = 0;
+        for (int i = 0; i < size; i += 2) {
+            int x = points[i];
+            int y = points[i + 1];
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            if (y < minY) {
+                minY = y;
+                topX = x;
+            }
+            maxY = Math.max(maxY, y);
+        }
+        box.x = minX;
+        box.y = minY;
+        box.width = maxX - minX + 1;
+        box.height = maxY - minY + 1;
+        int center2 = minX + maxX;
+        return Integer.compare(topX * 2, center2);
+    }
+
+    private void ensureCapacity(int count) {
+        if (tapes.length < count) {
+            int size = Math.max(count, tapes.length * 2);
+            Rect[] grown = Arrays.copyOf(tapes, size);
+            for (int i = tapes.length; i < size; i++) {
+                grown[i] = new Rect();
+            }
+            tapes = grown;
+            lean = new int[size];
+            order = new int[size];
+        }
+    }
+
+    /**
+     * Number of candidates found in the last frame.
+     */
+    public int count() {
+        return candidateCount;
+    }
+
+    /**
+     * The candidates of the last frame, best first. Valid until the next call to rank.
+     */
+    public TargetCandidate candidate(int index) {
+        return candidates[index];
+    }
+
+    /**
+     * The packed candidates of the last frame. The same array is returned for
+     * the same count, so don't hold on to it across frames.
+     */
+    public double[] packed() {
+        return packed[candidateCount];
+    }
+}
@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.opencv.core.Rect;
+
+/**
+ * A memory-mapped log with one fixed-size record per vision frame.
+ *
+ * <p>The file is sized for its capacity when opened and mapped once, so
+ * writing a record is a handful of absolute puts into the mapping: no
+ * allocation, no system call, and the kernel writes the pages back on its
+ * own. When the log is full it wraps around and overwrites the oldest
+ * records. An existing log of the same capacity is continued rather than
+ * truncated, so a restart mid-match keeps what was logged before it.
+ *
+ * <p>The file starts with a {@link #HEADER_SIZE} byte header: the magic
+ * number, the format version, the record size, the capacity in records and
+ * the number of records ever written, all little endian. Records follow,
+ * laid out as the offsets below. {@link TelemetryLogReader} turns a log
+ * into CSV.
+ */
+public class TelemetryLog implements AutoCloseable {
+    static final long MAGIC = 0x4453564953494f4eL; // "DSVISION"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 96;
+
+    // header
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_VERSION = 8;
+    static final int HEADER_RECORD_SIZE = 12;
+    static final int HEADER_CAPACITY = 16;
+    static final int HEADER_WRITTEN = 24;
+
+    // record
+    static final int FRAME = 0;
+    static final int TIME_MILLIS = 8;
+    static final int LATENCY_MICROS = 16;
+    static final int FLAGS = 20;
+    static final int CONTOURS = 24;
+    static final int HULLS = 28;
+    static final int FILTERED = 32;
+    static final int TARGETS = 36;
+    static final int LEFT = 40; // x, y, width, height as shorts
+    static final int RIGHT = 48;
+    static final int DISTANCE = 56;
+    static final int HEIGHT_DISTANCE = 64;
+    static final int OFFSET = 72;
+    static final int ANGLE = 80;
+    static final int CONFIDENCE = 88;
+
+    /** The frame reused the result of an earlier one. */
+    public static final int REUSED = 1;
+    /** A tape pair was chosen; the rects and estimates are valid. */
+    public static final int PAIRED = 2;
+    /** The two distance estimates agreed and the pair was published. */
+    public static final int PUBLISHED = 4;
+    /** The frame ran out of time and went on with fewer contours. */
+    public static final int DEGRADED = 8;
+    /** The frame ran out of time and kept the result of the one before. */
+    public static final int STALE = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long capacity;
+    private long written;
+
+    private TelemetryLog(FileChannel channel, MappedByteBuffer buffer, long capacity, long written) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.written = written;
+    }
+
+    /**
+     * Opens the log at file, creating it with room for capacity records, or
+     * continuing it if it already is a log of that capacity.
+     * @throws IllegalArgumentException if the log wouldn't fit in one mapping
+     */
+    public static TelemetryLog open(String file, long capacity) throws IOException {
+        long size = HEADER_SIZE + capacity * RECORD_SIZE;
+        if (capacity < 1 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("a telemetry log holds 1 to "
+                    + (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE + " records, not " + capacity);
+        }
+        FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean existing = channel.size() == size;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            long written = 0;
+            if (existing && buffer.getLong(HEADER_MAGIC) == MAGIC && buffer.getInt(HEADER_VERSION) == VERSION
+                    && buffer.getInt(HEADER_RECORD_SIZE) == RECORD_SIZE
+                    && buffer.getLong(HEADER_CAPACITY) == capacity) {
+                written = buffer.getLong(HEADER_WRITTEN);
+            } else {
+                buffer.putLong(HEADER_MAGIC, MAGIC);
+                buffer.putInt(HEADER_VERSION, VERSION);
+                buffer.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+                buffer.putLong(HEADER_CAPACITY, capacity);
+                buffer.putLong(HEADER_WRITTEN, 0);
+            }
+            return new TelemetryLog(channel, buffer, capacity, written);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Records ever written, including those overwritten since.
+     */
+    public long written() {
+        return written;
+    }
+
+    /**
+     * Appends the summary of one frame. Only to be called from one thread.
+     * @param flags {@link #REUSED}, {@link #PAIRED}, {@link #PUBLISHED}, {@link #DEGRADED}
+     *     and {@link #STALE} or'ed together
+     * @param contours contours found, -1 if the detection backend doesn't report them
+     * @param hulls convex hulls, -1 if the detection backend doesn't report them
+     * @param filtered contours that passed the filters
+     * @param targets pairs ranked and published in Targets
+     * @param pair the pair chosen by {@link Main#getTargetTapes}, only read if flags has PAIRED
+     */
+    public void write(long frame, long timeMillis, int latencyMicros, int flags, int contours, int hulls,
+            int filtered, int targets, TargetCandidate pair) {
+        int at = HEADER_SIZE + (int) (written % capacity) * RECORD_SIZE;
+        buffer.putLong(at + FRAME, frame);
+        buffer.putLong(at + TIME_MILLIS, timeMillis);
+        buffer.putInt(at + LATENCY_MICROS, latencyMicros);
+        buffer.putInt(at + FLAGS, flags);
+        buffer.putInt(at + CONTOURS, contours);
+        buffer.putInt(at + HULLS, hulls);
+        buffer.putInt(at + FILTERED, filtered);
+        buffer.putInt(at + TARGETS, targets);
+        boolean paired = (flags & PAIRED) != 0;
+        putRect(at + LEFT, paired ? pair.left : null);
+        putRect(at + RIGHT, paired ? pair.right : null);
+        buffer.putDouble(at + DISTANCE, paired ? pair.distanceInches : Double.NaN);
+        buffer.putDouble(at + HEIGHT_DISTANCE, paired ? pair.heightDistanceInches : Double.NaN);
+        buffer.putDouble(at + OFFSET, paired ? pair.offsetInches : Double.NaN);
+        buffer.putDouble(at + ANGLE, paired ? pair.angleRadians : Double.NaN);
+        buffer.putFloat(at + CONFIDENCE, paired ? (float) pair.confidence : Float.NaN);
+        // count the record only once it's complete, for readers of a live log
+        written++;
+        buffer.putLong(HEADER_WRITTEN, written);
+    }
+
+    private void putRect(int at, Rect rect) {
+        buffer.putShort(at, rect == null ? 0 : (short) rect.x);
+        buffer.putShort(at + 2, rect == null ? 0 : (short) rect.y);
+        buffer.putShort(at + 4, rect == null ? 0 : (short) rect.width);
+        buffer.putShort(at + 6, rect == null ? 0 : (short) rect.height);
+    }
+
+    /**
+     * Writes the mapped pages back to the file now, rather than when the
+     * kernel gets round to it.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
@@ -0,0 +1,82 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Converts a {@link TelemetryLog} to CSV, oldest record first.
+ *
+ * <p>Columns that only make sense with a tape pair are left empty for frames
+ * without one. The log may be copied off the Pi while the vision program is
+ * still running; records are only counted once they are complete.
+ *
+ * <p>Usage: {@code java -cp <jar> TelemetryLogReader <log> <output.csv>}
+ */
+public final class TelemetryLogReader {
+    private TelemetryLogReader() {
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: TelemetryLogReader <log> <output.csv>");
+            return;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < TelemetryLog.HEADER_SIZE
+                || buffer.getLong(TelemetryLog.HEADER_MAGIC) != TelemetryLog.MAGIC) {
+            System.err.println("'" + args[0] + "' is not a telemetry log");
+            return;
+        }
+        int version = buffer.getInt(TelemetryLog.HEADER_VERSION);
+        if (version != TelemetryLog.VERSION) {
+            System.err.println("'" + args[0] + "' is a version " + version + " log, this reader only knows version "
+                    + TelemetryLog.VERSION);
+            return;
+        }
+        int recordSize = buffer.getInt(TelemetryLog.HEADER_RECORD_SIZE);
+        long capacity = buffer.getLong(TelemetryLog.HEADER_CAPACITY);
+        long written = buffer.getLong(TelemetryLog.HEADER_WRITTEN);
+        long count = Math.min(written, capacity);
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(args[1])))) {
+            out.println("frame,time ms,latency us,reused,paired,published,degraded,stale,contours,hulls,filtered,targets,"
+                    + "left x,left y,left width,left height,right x,right y,right width,right height,"
+                    + "distance in,height distance in,offset in,angle rad,confidence");
+            for (long i = written - count; i < written; i++) {
+                int at = TelemetryLog.HEADER_SIZE + (int) (i % capacity) * recordSize;
+                int flags = buffer.getInt(at + TelemetryLog.FLAGS);
+                out.printf("%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d", buffer.getLong(at + TelemetryLog.FRAME),
+                        buffer.getLong(at + TelemetryLog.TIME_MILLIS),
+                        buffer.getInt(at + TelemetryLog.LATENCY_MICROS),
+                        flags & TelemetryLog.REUSED, (flags & TelemetryLog.PAIRED) >> 1,
+                        (flags & TelemetryLog.PUBLISHED) >> 2, (flags & TelemetryLog.DEGRADED) >> 3,
+                        (flags & TelemetryLog.STALE) >> 4,
+                        buffer.getInt(at + TelemetryLog.CONTOURS), buffer.getInt(at + TelemetryLog.HULLS),
+                        buffer.getInt(at + TelemetryLog.FILTERED), buffer.getInt(at + TelemetryLog.TARGETS));
+                if ((flags & TelemetryLog.PAIRED) != 0) {
+                    for (int offset = 0; offset < 16; offset += 2) {
+                        out.print("," + buffer.getShort(at + TelemetryLog.LEFT + offset));
+                    }
+                    out.printf(",%.3f,%.3f,%.3f,%.5f,%.3f%n", buffer.getDouble(at + TelemetryLog.DISTANCE),
+                            buffer.getDouble(at + TelemetryLog.HEIGHT_DISTANCE),
+                            buffer.getDouble(at + TelemetryLog.OFFSET), buffer.getDouble(at + TelemetryLog.ANGLE),
+                            buffer.getFloat(at + TelemetryLog.CONFIDENCE));
+                } else {
+                    out.println(",,,,,,,,,,,,,");
+                }
+            }
+        }
+        System.out.println(count + " of " + written + " records written to '" + args[1] + "'");
+    }
+}
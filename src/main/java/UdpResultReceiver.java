@@ -0,0 +1,164 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.function.Consumer;
+
+/**
+ * Receives the {@link ResultPacket}s of {@link UdpResultSender} on the robot.
+ *
+ * <p>A daemon thread waits for packets and keeps the newest one; packets
+ * arriving out of order are dropped and counted, unless they come from a
+ * new session of the sender, which has restarted. Robot code either polls
+ * {@link #latest(ResultPacket)} from its periodic loop or sets a listener,
+ * called on the receiving thread as soon as a packet arrives. Along with
+ * each packet the time of arrival is kept, so the age of a result at any
+ * later point is {@link #ageMicros()}.
+ *
+ * <p>Usage in robot code, with this class and ResultPacket copied over:
+ * <pre>
+ * UdpResultReceiver vision = new UdpResultReceiver(5800);
+ * vision.start();
+ * ...
+ * ResultPacket result = new ResultPacket();
+ * if (vision.latest(result) &amp;&amp; result.found() &amp;&amp; vision.ageMicros() &lt; 100_000) {
+ *     turnBy(result.angleRadians);
+ * }
+ * </pre>
+ */
+public class UdpResultReceiver extends Thread {
+    private final DatagramChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(ResultPacket.SIZE * 2);
+    private final ResultPacket received = new ResultPacket();
+    private final ResultPacket latest = new ResultPacket();
+    private volatile Consumer<ResultPacket> listener;
+    private long receivedNanos;
+    private long count;
+    private long outOfOrder;
+    private long missed;
+    private long restarts;
+
+    /**
+     * Binds to port on every interface. Call {@link #start()} to begin receiving.
+     */
+    public UdpResultReceiver(int port) throws IOException {
+        channel = DatagramChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(port));
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        setName("UdpResultReceiver");
+        setDaemon(true);
+    }
+
+    /**
+     * Sets a callback for every packet taken as the newest, run on the
+     * receiving thread. The packet passed in is reused for the next one.
+     */
+    public void setListener(Consumer<ResultPacket> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Copies the newest packet into out.
+     * @return false if nothing has been received yet
+     */
+    public synchronized boolean latest(ResultPacket out) {
+        if (count == 0) {
+            return false;
+        }
+        out.set(latest);
+        return true;
+    }
+
+    /**
+     * How old the newest result is now, from the camera grabbing its frame,
+     * not counting the time on the network.
+     */
+    public synchronized long ageMicros() {
+        return count == 0 ? Long.MAX_VALUE : latest.ageMicros + (System.nanoTime() - receivedNanos) / 1000;
+    }
+
+    /**
+     * {@link System#nanoTime()} on this side when the newest packet arrived.
+     */
+    public synchronized long receivedNanos() {
+        return receivedNanos;
+    }
+
+    /** Packets taken as the newest. */
+    public synchronized long count() {
+        return count;
+    }
+
+    /** Packets dropped because a newer one had already arrived. */
+    public synchronized long outOfOrder() {
+        return outOfOrder;
+    }
+
+    /** Times the sender restarted, seen as a new session. */
+    public synchronized long restarts() {
+        return restarts;
+    }
+
+    /** Sequence numbers skipped, lost on the way or never sent. */
+    public synchronized long missed() {
+        return missed;
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.interrupted()) {
+            buffer.clear();
+            try {
+                channel.receive(buffer);
+            } catch (IOException ex) {
+                if (!channel.isOpen()) {
+                    return;
+                }
+                continue;
+            }
+            long now = System.nanoTime();
+            buffer.flip();
+            if (!received.read(buffer)) {
+                continue;
+            }
+            synchronized (this) {
+                // a restarted sender has a new session and counts from 1 again
+                if (count > 0 && received.session != latest.session) {
+                    restarts++;
+                } else if (count > 0 && received.sequence <= latest.sequence) {
+                    outOfOrder++;
+                    continue;
+                } else if (count > 0) {
+                    missed += received.sequence - latest.sequence - 1;
+                }
+                latest.set(received);
+                receivedNanos = now;
+                count++;
+            }
+            Consumer<ResultPacket> listener = this.listener;
+            if (listener != null) {
+                listener.accept(received);
+            }
+        }
+    }
+
+    /**
+     * Stops receiving and frees the port.
+     */
+    public void close() throws IOException {
+        interrupt();
+        channel.close();
+    }
+
+    /**
+     * The local port, for when 0 was asked for.
+     */
+    public int port() throws SocketException {
+        return channel.socket().getLocalPort();
+    }
+}
@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+
+/**
+ * Sends each frame's result to the robot as one {@link ResultPacket} datagram.
+ *
+ * <p>The channel is non-blocking and the buffer is kept, so sending costs one
+ * system call and never waits: a packet the kernel can't take right away is
+ * dropped and counted, the next frame's replaces it anyway. Every sender
+ * picks a session of its own, so a receiver can tell a restarted sender
+ * counting from 1 again from packets arriving late.
+ */
+public class UdpResultSender implements AutoCloseable {
+    static final long RETRY_MILLIS = 1000;
+
+    private final long session = new Random().nextLong();
+    private final String host;
+    private final int port;
+    private final DatagramChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(ResultPacket.SIZE);
+    private long sent;
+    private long failed;
+    private volatile InetSocketAddress resolved;
+    private volatile boolean warned;
+    private Thread resolver;
+    private long lastResolveNanos;
+
+    /**
+     * Opens a channel to host:port. The host is resolved here first; if that
+     * fails, such as for the roboRIO's name before it's up, it is resolved
+     * again on a thread of its own every {@link #RETRY_MILLIS} while packets
+     * are sent, and those sent before it resolves are counted as failed.
+     */
+    public UdpResultSender(String host, int port) throws IOException {
+        this.host = host;
+        this.port = port;
+        channel = DatagramChannel.open();
+        try {
+            channel.configureBlocking(false);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        lastResolveNanos = System.nanoTime();
+        if (address.isUnresolved()) {
+            System.err.println("could not resolve udp results host '" + host + "', retrying");
+            warned = true;
+        } else {
+            resolved = address;
+            connect();
+        }
+    }
+
+    /**
+     * Sends packet, stamped with this sender's session. Only to be called
+     * from one thread.
+     * @return false if it couldn't be sent right now
+     */
+    public boolean send(ResultPacket packet) {
+        if (!channel.isConnected() && !connect()) {
+            failed++;
+            return false;
+        }
+        packet.session = session;
+        packet.write(buffer);
+        try {
+            if (channel.write(buffer) == ResultPacket.SIZE) {
+                sent++;
+                return true;
+            }
+        } catch (IOException ex) {
+            // nobody listening yet gives ECONNREFUSED on a connected channel; keep trying
+        }
+        failed++;
+        return false;
+    }
+
+    /**
+     * Connects once the host has been resolved, or starts resolving it again
+     * if the last try is long enough ago.
+     */
+    private boolean connect() {
+        InetSocketAddress address = resolved;
+        if (address == null) {
+            if (System.nanoTime() - lastResolveNanos >= RETRY_MILLIS * 1_000_000L
+                    && (resolver == null || !resolver.isAlive())) {
+                resolve();
+            }
+            return false;
+        }
+        try {
+            channel.connect(address);
+            return true;
+        } catch (IOException ex) {
+            System.err.println("could not send udp results to " + address + ": " + ex);
+            resolved = null;
+            return false;
+        }
+    }
+
+    private void resolve() {
+        lastResolveNanos = System.nanoTime();
+        resolver = new Thread(() -> {
+            InetSocketAddress address = new InetSocketAddress(host, port);
+            if (address.isUnresolved()) {
+                if (!warned) {
+                    System.err.println("could not resolve udp results host '" + host + "', retrying");
+                    warned = true;
+                }
+            } else {
+                resolved = address;
+            }
+        }, "UdpResultSender resolve");
+        resolver.setDaemon(true);
+        resolver.start();
+    }
+
+    public long sent() {
+        return sent;
+    }
+
+    /** Packets that couldn't be sent, such as while the robot isn't up or resolved yet. */
+    public long failed() {
+        return failed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,161 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events for the vision loop.
+ *
+ * <p>Every GRIP step, the tape pairing in {@link Main} and the NetworkTables
+ * publishing become timed events carrying the frame number and how many
+ * contours were left, so one recording shows the stages next to GC and
+ * thread activity. Nothing is allocated or timed unless switched on with
+ * the "flight recorder" key of the configuration file; the events are then
+ * written by any running recording, for example one started with
+ * {@code jcmd <pid> JFR.start duration=180s filename=match.jfr}.
+ *
+ * <p>Usage from a step: {@code Stage event = VisionEvents.stage("Blur0");}
+ * before it and {@code VisionEvents.end(event, count);} after it. Both are
+ * no-ops taking null when switched off.
+ *
+ * <p>The same markers charge allocations to their stage while an
+ * {@link AllocationMeter} is counting, whether or not events are on.
+ */
+public final class VisionEvents {
+    private static volatile boolean enabled;
+    private static volatile long frame;
+
+    private VisionEvents() {
+    }
+
+    @Name("DeepSpaceVision.PipelineStage")
+    @Label("Pipeline Stage")
+    @Category("Vision")
+    @Description("One GRIP step of a pipeline")
+    static class Stage extends Event {
+        @Label("Frame")
+        long frame;
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Contours")
+        @Description("Contours left after the step, -1 for steps that don't produce contours")
+        int contours;
+    }
+
+    @Name("DeepSpaceVision.TargetTapes")
+    @Label("Target Tapes")
+    @Category("Vision")
+    @Description("Choosing the tape pair in Main.getTargetTapes")
+    static class TargetTapes extends Event {
+        @Label("Frame")
+        long frame;
+
+        @Label("Contours")
+        int contours;
+    }
+
+    @Name("DeepSpaceVision.Publish")
+    @Label("NetworkTables Publish")
+    @Category("Vision")
+    @Description("Pairing, ranking and writing a frame's results to NetworkTables in the listener")
+    static class Publish extends Event {
+        @Label("Frame")
+        long frame;
+
+        @Label("Targets")
+        int targets;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        VisionEvents.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Moves on to the next frame. Called by the vision loop before processing.
+     */
+    public static void nextFrame() {
+        frame++;
+    }
+
+    /**
+     * Starts timing a pipeline step, or returns null when switched off.
+     */
+    public static Stage stage(String name) {
+        if (!enabled) {
+            AllocationMeter.begin(name);
+            return null;
+        }
+        Stage event = new Stage();
+        event.frame = frame;
+        event.stage = name;
+        event.contours = -1;
+        event.begin();
+        AllocationMeter.begin(name);
+        return event;
+    }
+
+    /**
+     * Ends a step started with {@link #stage(String)}.
+     * @param contours contours left after the step, -1 if it doesn't produce any
+     */
+    public static void end(Stage event, int contours) {
+        AllocationMeter.end();
+        if (event != null) {
+            event.contours = contours;
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts timing the tape pairing, or returns null when switched off.
+     */
+    public static TargetTapes targetTapes(int contours) {
+        if (!enabled) {
+            AllocationMeter.begin("TargetTapes");
+            return null;
+        }
+        TargetTapes event = new TargetTapes();
+        event.frame = frame;
+        event.contours = contours;
+        event.begin();
+        AllocationMeter.begin("TargetTapes");
+        return event;
+    }
+
+    public static void end(TargetTapes event) {
+        AllocationMeter.end();
+        if (event != null) {
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts timing the NetworkTables writes of a frame, or returns null when switched off.
+     */
+    public static Publish publish() {
+        if (!enabled) {
+            AllocationMeter.begin("Publish");
+            return null;
+        }
+        Publish event = new Publish();
+        event.frame = frame;
+        event.begin();
+        AllocationMeter.begin("Publish");
+        return event;
+    }
+
+    public static void end(Publish event, int targets) {
+        AllocationMeter.end();
+        if (event != null) {
+            event.targets = targets;
+            event.commit();
+        }
+    }
+}
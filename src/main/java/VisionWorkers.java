@@ -0,0 +1,19 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The thread pool shared by everything that splits vision work across cores.
+ *
+ * <p>The vision thread itself does a share of the work, so the pool leaves
+ * one core for it.
+ */
+public final class VisionWorkers {
+    private static final ForkJoinPool POOL =
+            new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+    private VisionWorkers() {
+    }
+
+    public static ForkJoinPool pool() {
+        return POOL;
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Checks the YUYV color gate against the HSV threshold on saved frames and
+ * reports the latency saved.
+ *
+ * <p>Each image is turned into the YUYV frame a camera would have sent. The
+ * HSV path is timed as cscore and the pipeline run it (YUYV to BGR, BGR to
+ * HSV, inRange); the YUV path classifies the YUYV bytes directly. Masks are
+ * compared pixel by pixel, and detections by bounding box.
+ *
+ * <p>Usage: {@code java -cp <jar> YuvGateValidation <pipeline> <image>...}
+ */
+public final class YuvGateValidation {
+    private static final int RUNS = 25;
+
+    private YuvGateValidation() {
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) {
+        if (args.length < 2) {
+            System.err.println("usage: YuvGateValidation <pipeline> <image>...");
+            return;
+        }
+        TargetPipeline pipeline = PipelineSelector.create(args[0]);
+        if (pipeline == null) {
+            System.err.println("unknown pipeline '" + args[0] + "'");
+            return;
+        }
+        PipelineParams params = pipeline.params();
+        YuyvRowClassifier yuyvClassifier = new YuyvRowClassifier(params.hsvThresholdHue,
+                params.hsvThresholdSaturation, params.hsvThresholdValue);
+        RunLengthFilter runLength = new RunLengthFilter();
+
+        Mat camera = new Mat();
+        Mat hsv = new Mat();
+        Mat hsvMask = new Mat();
+        List<MatOfPoint> yuvOutput = new ArrayList<>();
+        long[] hsvTimes = new long[RUNS];
+        long[] yuvTimes = new long[RUNS];
+        long totalPixels = 0;
+        long totalAgree = 0;
+        int totalHsvTargets = 0;
+        int totalMatched = 0;
+        double totalHsvMillis = 0;
+        double totalYuvMillis = 0;
+
+        System.out.println("image,pixel agreement %,hsv targets,yuv targets,matched,hsv ms,yuv ms");
+        for (int i = 1; i < args.length; i++) {
+            Mat image = Imgcodecs.imread(args[i]);
+            if (image.empty()) {
+                System.err.println("could not read '" + args[i] + "'");
+                continue;
+            }
+            int width = image.cols() & ~1;
+            int height = image.rows();
+            byte[] yuyv = toYuyv(image.submat(0, height, 0, width));
+            runLength.yuyvToBgr(yuyv, width, height, camera);
+
+            // HSV path: the conversion cscore does, then the pipeline's threshold
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                runLength.yuyvToBgr(yuyv, width, height, camera);
+                Imgproc.cvtColor(camera, hsv, Imgproc.COLOR_BGR2HSV);
+                Core.inRange(hsv,
+                        new Scalar(params.hsvThresholdHue[0], params.hsvThresholdSaturation[0], params.hsvThresholdValue[0]),
+                        new Scalar(params.hsvThresholdHue[1], params.hsvThresholdSaturation[1], params.hsvThresholdValue[1]),
+                        hsvMask);
+                hsvTimes[run] = System.nanoTime() - start;
+            }
+
+            // YUV path: gate the raw bytes
+            byte[] yuvMask = new byte[width * height];
+            byte[] row = new byte[width];
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                for (int y = 0; y < height; y++) {
+                    yuyvClassifier.classify(yuyv, y * width * 2, width, row);
+                    System.arraycopy(row, 0, yuvMask, y * width, width);
+                }
+                yuvTimes[run] = System.nanoTime() - start;
+            }
+
+            byte[] expected = new byte[width * height];
+            hsvMask.get(0, 0, expected);
+            long agree = 0;
+            for (int p = 0; p < expected.length; p++) {
+                if ((expected[p] != 0) == (yuvMask[p] != 0)) {
+                    agree++;
+                }
+            }
+
+            pipeline.setDetection(DetectionBackend.CONTOURS);
+            pipeline.process(camera);
+            runLength.filterYuyv(yuyv, width, height, params, yuvOutput);
+            int matched = countMatches(pipeline.filterContoursOutput(), yuvOutput);
+
+            double hsvMillis = median(hsvTimes) / 1e6;
+            double yuvMillis = median(yuvTimes) / 1e6;
+            System.out.printf("%s,%.3f,%d,%d,%d,%.3f,%.3f%n", args[i], 100.0 * agree / expected.length,
+                    pipeline.filterContoursOutput().size(), yuvOutput.size(), matched, hsvMillis, yuvMillis);
+
+            totalPixels += expected.length;
+            totalAgree += agree;
+            totalHsvTargets += pipeline.filterContoursOutput().size();
+            totalMatched += matched;
+            totalHsvMillis += hsvMillis;
+            totalYuvMillis += yuvMillis;
+        }
+
+        int images = args.length - 1;
+        System.out.printf("pixel agreement %.3f%%, %d of %d HSV targets matched%n",
+                100.0 * totalAgree / Math.max(1, totalPixels), totalMatched, totalHsvTargets);
+        System.out.printf("color gate %.3f ms (HSV) vs %.3f ms (YUV), %.3f ms saved per frame%n",
+                totalHsvMillis / images, totalYuvMillis / images, (totalHsvMillis - totalYuvMillis) / images);
+    }
+
+    /**
+     * Packs a BGR image into YUYV with the BT.601 limited range equations,
+     * averaging the chroma of each pixel pair like a camera would.
+     */
+    static byte[] toYuyv(Mat bgr) {
+        int width = bgr.cols();
+        int height = bgr.rows();
+        byte[] pixels = new byte[width * height * 3];
+        Mat continuous = bgr.isContinuous() ? bgr : bgr.clone();
+        continuous.get(0, 0, pixels);
+        byte[] yuyv = new byte[width * height * 2];
+        for (int i = 0, o = 0; i < pixels.length; i += 6, o += 4) {
+            int b0 = pixels[i] & 0xff, g0 = pixels[i + 1] & 0xff, r0 = pixels[i + 2] & 0xff;
+            int b1 = pixels[i + 3] & 0xff, g1 = pixels[i + 4] & 0xff, r1 = pixels[i + 5] & 0xff;
+            double r = (r0 + r1) / 2.0, g = (g0 + g1) / 2.0, b = (b0 + b1) / 2.0;
+            yuyv[o] = clamp(16 + 0.257 * r0 + 0.504 * g0 + 0.098 * b0);
+            yuyv[o + 1] = clamp(128 - 0.148 * r - 0.291 * g + 0.439 * b);
+            yuyv[o + 2] = clamp(16 + 0.257 * r1 + 0.504 * g1 + 0.098 * b1);
+            yuyv[o + 3] = clamp(128 + 0.439 * r - 0.368 * g - 0.071 * b);
+        }
+        return yuyv;
+    }
+
+    private static byte clamp(double value) {
+        return (byte) Math.max(0, Math.min(255, (int) Math.round(value)));
+    }
+
+    /**
+     * Counts the expected contours that have a found contour with a bounding
+     * box overlapping by at least half.
+     */
+    private static int countMatches(List<MatOfPoint> expected, List<MatOfPoint> found) {
+        int matched = 0;
+        for (MatOfPoint contour : expected) {
+            Rect a = Imgproc.boundingRect(contour);
+            for (MatOfPoint other : found) {
+                Rect b = Imgproc.boundingRect(other);
+                int ix = Math.max(0, Math.min(a.x + a.width, b.x + b.width) - Math.max(a.x, b.x));
+                int iy = Math.max(0, Math.min(a.y + a.height, b.y + b.height) - Math.max(a.y, b.y));
+                double intersection = (double) ix * iy;
+                double union = a.area() + b.area() - intersection;
+                if (union > 0 && intersection / union >= 0.5) {
+                    matched++;
+                    break;
+                }
+            }
+        }
+        return matched;
+    }
+
+    private static long median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
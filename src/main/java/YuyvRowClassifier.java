@@ -0,0 +1,70 @@
+/**
+ * Classifies packed YUYV (YUV 4:2:2) pixels against HSV bounds without
+ * converting the frame to BGR or HSV.
+ *
+ * <p>The HSV gate is not a box in YUV space, so it is baked into a lookup
+ * table over 6 bits each of Y, U and V when the classifier is built. Each
+ * cell is classified by converting its center with the BT.601 limited range
+ * equations (the ones {@code COLOR_YUV2BGR_YUYV} uses) and running it through
+ * {@link HsvRowClassifier}. Per pixel, classification is then a shift, an or
+ * and a table load.
+ */
+public class YuyvRowClassifier implements RunLengthBlobExtractor.RowClassifier {
+    private static final int BITS = 6;
+    private static final int SHIFT = 8 - BITS;
+    private static final int LEVELS = 1 << BITS;
+
+    private final byte[] table = new byte[LEVELS * LEVELS * LEVELS];
+
+    /**
+     * @param hue The min and max hue, 0-180
+     * @param sat The min and max saturation, 0-255
+     * @param val The min and max value, 0-255
+     */
+    public YuyvRowClassifier(double[] hue, double[] sat, double[] val) {
+        HsvRowClassifier hsv = new HsvRowClassifier(hue, sat, val);
+        byte[] bgr = new byte[LEVELS * 3];
+        byte[] mask = new byte[LEVELS];
+        int half = 1 << SHIFT >> 1;
+        for (int y = 0; y < LEVELS; y++) {
+            for (int u = 0; u < LEVELS; u++) {
+                for (int v = 0; v < LEVELS; v++) {
+                    toBgr((y << SHIFT) + half, (u << SHIFT) + half, (v << SHIFT) + half, bgr, v * 3);
+                }
+                hsv.classify(bgr, 0, LEVELS, mask);
+                System.arraycopy(mask, 0, table, (y * LEVELS + u) * LEVELS, LEVELS);
+            }
+        }
+    }
+
+    /**
+     * Converts one limited range BT.601 YUV sample to BGR bytes.
+     */
+    static void toBgr(int y, int u, int v, byte[] bgr, int offset) {
+        double c = 1.164 * (y - 16);
+        double d = u - 128;
+        double e = v - 128;
+        bgr[offset] = clamp(c + 2.018 * d);
+        bgr[offset + 1] = clamp(c - 0.391 * d - 0.813 * e);
+        bgr[offset + 2] = clamp(c + 1.596 * e);
+    }
+
+    private static byte clamp(double value) {
+        return (byte) Math.max(0, Math.min(255, (int) Math.round(value)));
+    }
+
+    /**
+     * Classifies one row. Offset must point at the Y of an even pixel and width
+     * must be even, as it always is for YUYV; each pair of pixels shares the U
+     * and V that follow their Y samples.
+     */
+    @Override
+    public void classify(byte[] frame, int offset, int width, byte[] mask) {
+        final byte[] table = this.table;
+        for (int x = 0, i = offset; x + 1 < width; x += 2, i += 4) {
+            final int uv = ((frame[i + 1] & 0xff) >> SHIFT) * LEVELS + ((frame[i + 3] & 0xff) >> SHIFT);
+            mask[x] = table[((frame[i] & 0xff) >> SHIFT) * LEVELS * LEVELS + uv];
+            mask[x + 1] = table[((frame[i + 2] & 0xff) >> SHIFT) * LEVELS * LEVELS + uv];
+        }
+    }
+}
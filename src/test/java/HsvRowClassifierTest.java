@@ -0,0 +1,66 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HsvRowClassifierTest {
+    private static final double[] ANY_HUE = {0, 180};
+    private static final double[] ANY = {0, 255};
+
+    private static byte[] classify(HsvRowClassifier classifier, int... bgr) {
+        byte[] frame = new byte[bgr.length];
+        for (int i = 0; i < bgr.length; i++) {
+            frame[i] = (byte) bgr[i];
+        }
+        byte[] mask = new byte[bgr.length / 3];
+        classifier.classify(frame, 0, mask.length, mask);
+        return mask;
+    }
+
+    @Test
+    public void greenPassesOnlyAroundHue60() {
+        // pure green is hue 60 on OpenCV's 0-180 scale
+        assertArrayEquals(new byte[] {1},
+                classify(new HsvRowClassifier(new double[] {50, 70}, ANY, ANY), 0, 255, 0));
+        assertArrayEquals(new byte[] {0},
+                classify(new HsvRowClassifier(new double[] {0, 40}, ANY, ANY), 0, 255, 0));
+        assertArrayEquals(new byte[] {0},
+                classify(new HsvRowClassifier(new double[] {80, 180}, ANY, ANY), 0, 255, 0));
+    }
+
+    @Test
+    public void redBelowBlueWrapsToTheTopOfTheHueRange() {
+        // b > g with r largest gives hue 360 - 60 * 50 / 255 degrees, about 174
+        assertArrayEquals(new byte[] {1},
+                classify(new HsvRowClassifier(new double[] {170, 180}, ANY, ANY), 50, 0, 255));
+        assertArrayEquals(new byte[] {0},
+                classify(new HsvRowClassifier(new double[] {0, 10}, ANY, ANY), 50, 0, 255));
+    }
+
+    @Test
+    public void grayIsHueZero() {
+        HsvRowClassifier fromZero = new HsvRowClassifier(new double[] {0, 20}, ANY, ANY);
+        HsvRowClassifier green = new HsvRowClassifier(new double[] {50, 70}, ANY, ANY);
+        assertArrayEquals(new byte[] {1, 1, 1}, classify(fromZero, 128, 128, 128, 0, 0, 0, 255, 255, 255));
+        assertArrayEquals(new byte[] {0, 0, 0}, classify(green, 128, 128, 128, 0, 0, 0, 255, 255, 255));
+    }
+
+    @Test
+    public void saturationAndValueBounds() {
+        // value 200, saturation 255 * 100 / 200 = 127.5
+        HsvRowClassifier classifier = new HsvRowClassifier(ANY_HUE, new double[] {120, 135}, new double[] {190, 210});
+        assertArrayEquals(new byte[] {1}, classify(classifier, 100, 200, 100));
+        assertArrayEquals(new byte[] {0}, classify(classifier, 50, 200, 50));
+        assertArrayEquals(new byte[] {0}, classify(classifier, 110, 220, 110));
+    }
+
+    @Test
+    public void classifiesFromTheOffset() {
+        HsvRowClassifier classifier = new HsvRowClassifier(new double[] {50, 70}, new double[] {100, 255}, ANY);
+        byte[] frame = {0, 0, 0, 0, (byte) 255, 0, 0, 0, (byte) 255, 0, (byte) 255, 0};
+        byte[] mask = new byte[3];
+        classifier.classify(frame, 3, 3, mask);
+        assertArrayEquals(new byte[] {1, 0, 1}, mask);
+        assertEquals(3, mask.length);
+    }
+}
@@ -0,0 +1,68 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import com.google.gson.JsonParseException;
+
+import org.junit.Test;
+
+public class PipelineParamsTest {
+    private static PipelineParams complete() {
+        PipelineParams params = new PipelineParams();
+        params.blurType = "Box Blur";
+        params.blurRadius = 2;
+        params.hsvThresholdHue = new double[] {50, 90};
+        params.hsvThresholdSaturation = new double[] {40, 220};
+        params.hsvThresholdValue = new double[] {210, 255};
+        params.filterContoursMinArea = 50;
+        params.filterContoursMaxWidth = 200;
+        params.filterContoursMaxHeight = 1000;
+        params.filterContoursSolidity = new double[] {80, 100};
+        params.filterContoursMaxVertices = 500000;
+        params.filterContoursMaxRatio = 1000;
+        return params;
+    }
+
+    private static File temp() throws IOException {
+        File file = File.createTempFile("params", ".json");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void writtenFileReadsBack() throws IOException {
+        File file = temp();
+        complete().write(file.getPath());
+        PipelineParams read = PipelineParams.read(file.getPath());
+        assertNull(read.pipeline);
+        assertEquals(200, read.filterContoursMaxWidth, 0);
+        assertEquals(90, read.hsvThresholdHue[1], 0);
+    }
+
+    @Test
+    public void missingFieldIsRejected() throws IOException {
+        File file = temp();
+        complete().write(file.getPath());
+        String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)
+                .replaceAll("\\s*\"filterContoursMaxWidth\": [0-9.]+,", "");
+        Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        try {
+            PipelineParams.read(file.getPath());
+            fail("read a file without filterContoursMaxWidth");
+        } catch (JsonParseException ex) {
+            // expected
+        }
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void notAnObjectIsRejected() throws IOException {
+        File file = temp();
+        Files.write(file.toPath(), "[1, 2]".getBytes(StandardCharsets.UTF_8));
+        PipelineParams.read(file.getPath());
+    }
+}
@@ -0,0 +1,117 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResultFuserTest {
+    private static final long T = 1_000_000_000L;
+    private static final long MILLIS = 1_000_000L;
+
+    private final ResultFuser fuser = new ResultFuser();
+    private final ResultPacket out = new ResultPacket();
+
+    private static ResultPacket packet(long session, long sequence, double distance, double offset,
+            double confidence, int ageMillis) {
+        ResultPacket packet = new ResultPacket();
+        packet.flags = ResultPacket.FOUND;
+        packet.session = session;
+        packet.sequence = sequence;
+        packet.distanceInches = distance;
+        packet.offsetInches = offset;
+        packet.confidence = confidence;
+        packet.ageMicros = ageMillis * 1000;
+        packet.targets = 1;
+        return packet;
+    }
+
+    @Before
+    public void timing() {
+        fuser.setTiming(20, 100);
+    }
+
+    @Test
+    public void weightsByConfidenceSquared() {
+        assertTrue(fuser.offer("a", "a", packet(1, 1, 100, 0, 0.8, 0), T, out));
+        assertTrue(fuser.offer("b", "b", packet(1, 1, 130, 0, 0.4, 0), T, out));
+        assertEquals(2, fuser.lastSources());
+        // 0.64 * 100 + 0.16 * 130 over 0.8
+        assertEquals(106, out.distanceInches, 1e-9);
+        assertEquals((0.64 * 0.8 + 0.16 * 0.4) / 0.8, out.confidence, 1e-9);
+        assertEquals(30, fuser.lastSpreadInches(), 1e-9);
+        assertTrue(out.found());
+    }
+
+    @Test
+    public void weightsByFreshness() {
+        fuser.setTiming(100, 100);
+        fuser.offer("a", "a", packet(1, 1, 100, 0, 1, 50), T, out);
+        assertTrue(fuser.offer("b", "b", packet(1, 1, 130, 0, 1, 0), T, out));
+        // half a max age old counts half
+        assertEquals((0.5 * 100 + 130) / 1.5, out.distanceInches, 1e-9);
+        assertEquals(T - 50 * MILLIS / 3, out.captureNanos);
+    }
+
+    @Test
+    public void leavesOutSourcesBeforeTheWindow() {
+        fuser.offer("a", "a", packet(1, 1, 100, 0, 1, 30), T, out);
+        assertTrue(fuser.offer("b", "b", packet(1, 1, 130, 0, 1, 0), T, out));
+        assertEquals(1, fuser.lastSources());
+        assertEquals(130, out.distanceInches, 1e-9);
+    }
+
+    @Test
+    public void fusesNothingOlderThanTheMaxAge() {
+        assertFalse(fuser.offer("a", "a", packet(1, 1, 100, 0, 1, 150), T, out));
+        assertTrue(fuser.offer("a", "a", packet(1, 2, 100, 0, 1, 50), T, out));
+        assertEquals(1, fuser.lastSources());
+    }
+
+    @Test
+    public void movesTargetsToTheRobotsFrame() {
+        fuser.setMount("a", 10, -5);
+        assertTrue(fuser.offer("a:5800", "a", packet(1, 1, 100, 3, 1, 0), T, out));
+        assertEquals(110, out.distanceInches, 1e-9);
+        assertEquals(-2, out.offsetInches, 1e-9);
+        assertEquals(Math.atan2(-2, 110), out.angleRadians, 1e-9);
+
+        fuser.clearMounts();
+        assertTrue(fuser.offer("a:5800", "a", packet(1, 2, 100, 3, 1, 0), T, out));
+        assertEquals(100, out.distanceInches, 1e-9);
+    }
+
+    @Test
+    public void dropsOutOfOrderPacketsUntilTheSessionChanges() {
+        assertTrue(fuser.offer("a", "a", packet(1, 5, 100, 0, 1, 0), T, out));
+        assertFalse(fuser.offer("a", "a", packet(1, 5, 120, 0, 1, 0), T + MILLIS, out));
+        assertFalse(fuser.offer("a", "a", packet(1, 3, 120, 0, 1, 0), T + MILLIS, out));
+        assertEquals(2, fuser.outOfOrder());
+        // a restarted sender counts from 1 again
+        assertTrue(fuser.offer("a", "a", packet(2, 1, 120, 0, 1, 0), T + 2 * MILLIS, out));
+        assertEquals(120, out.distanceInches, 1e-9);
+        assertEquals(2, fuser.outOfOrder());
+    }
+
+    @Test
+    public void forgetsSourcesSilentLongerThanTheMaxAge() {
+        fuser.offer("a", "a", packet(1, 1, 100, 0, 1, 0), T, out);
+        fuser.offer("b", "b", packet(1, 1, 100, 0, 1, 0), T + 50 * MILLIS, out);
+        assertEquals(2, fuser.sources());
+        fuser.offer("b", "b", packet(1, 2, 100, 0, 1, 0), T + 150 * MILLIS, out);
+        assertEquals(1, fuser.sources());
+        assertEquals(1, fuser.lastSources());
+    }
+
+    @Test
+    public void notFoundSourcesCountButDontMove() {
+        ResultPacket none = packet(1, 1, 0, 0, 0, 0);
+        none.flags = ResultPacket.DEGRADED;
+        fuser.offer("a", "a", none, T, out);
+        assertTrue(fuser.offer("b", "b", packet(1, 1, 130, 0, 0.5, 0), T, out));
+        assertEquals(2, fuser.lastSources());
+        assertEquals(130, out.distanceInches, 1e-9);
+        assertTrue(out.found());
+        assertTrue(out.degraded());
+    }
+}
@@ -0,0 +1,157 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class RunLengthBlobExtractorTest {
+    private static final double[] ANY_SOLIDITY = {0, 100};
+
+    /** Rows of '#' and '.' as a mask, one byte per pixel. */
+    private static byte[] mask(String... rows) {
+        byte[] mask = new byte[rows.length * rows[0].length()];
+        for (int y = 0; y < rows.length; y++) {
+            for (int x = 0; x < rows[y].length(); x++) {
+                mask[y * rows[0].length() + x] = (byte) (rows[y].charAt(x) == '#' ? 1 : 0);
+            }
+        }
+        return mask;
+    }
+
+    private static RunLengthBlobExtractor extract(String... rows) {
+        RunLengthBlobExtractor extractor = new RunLengthBlobExtractor();
+        extractor.extract(mask(rows), rows[0].length(), rows.length, rows[0].length(),
+                (frame, offset, width, out) -> System.arraycopy(frame, offset, out, 0, width));
+        return extractor;
+    }
+
+    private static List<RunLengthBlobExtractor.Blob> keepAll(RunLengthBlobExtractor extractor) {
+        extractor.filter(0, 0, 0, 1000, 0, 1000, ANY_SOLIDITY, 1000, 0, 0, 1000);
+        return extractor.blobs();
+    }
+
+    @Test
+    public void separateRectangles() {
+        RunLengthBlobExtractor extractor = extract(
+                "##.....",
+                "##..###",
+                "....###",
+                "....###");
+        assertEquals(2, extractor.blobCount());
+        List<RunLengthBlobExtractor.Blob> blobs = keepAll(extractor);
+        assertEquals(2, blobs.size());
+        RunLengthBlobExtractor.Blob small = blobs.get(0).pixelCount == 4 ? blobs.get(0) : blobs.get(1);
+        RunLengthBlobExtractor.Blob large = small == blobs.get(0) ? blobs.get(1) : blobs.get(0);
+        assertEquals(0, small.x);
+        assertEquals(0, small.y);
+        assertEquals(2, small.width);
+        assertEquals(2, small.height);
+        assertEquals(4, large.x);
+        assertEquals(1, large.y);
+        assertEquals(3, large.width);
+        assertEquals(3, large.height);
+        assertEquals(9, large.pixelCount);
+        assertEquals(4.0, large.area, 1e-9);
+    }
+
+    @Test
+    public void diagonalNeighboursConnect() {
+        RunLengthBlobExtractor extractor = extract(
+                "#...",
+                ".#..",
+                "..#.");
+        assertEquals(1, extractor.blobCount());
+    }
+
+    @Test
+    public void branchesJoinedBelowAreOneBlob() {
+        RunLengthBlobExtractor extractor = extract(
+                "#...#",
+                "#...#",
+                "#####");
+        assertEquals(1, extractor.blobCount());
+        RunLengthBlobExtractor.Blob blob = keepAll(extractor).get(0);
+        assertEquals(5, blob.width);
+        assertEquals(3, blob.height);
+        assertEquals(9, blob.pixelCount);
+        assertEquals(8.0, blob.area, 1e-9);
+    }
+
+    @Test
+    public void interleavedBlobsGetTheirOwnHulls() {
+        RunLengthBlobExtractor extractor = extract(
+                "##.###.#",
+                "##.###.#",
+                "...###.#",
+                "#......#");
+        List<RunLengthBlobExtractor.Blob> blobs = keepAll(extractor);
+        assertEquals(4, blobs.size());
+        for (RunLengthBlobExtractor.Blob blob : blobs) {
+            // each hull only spans its own box: the 2x2 and 3x3 squares, the column, the dot
+            assertEquals(blob.x + "," + blob.y, (blob.width - 1) * (blob.height - 1), blob.area, 1e-9);
+            assertEquals(blob.width * blob.height, blob.pixelCount);
+        }
+    }
+
+    @Test
+    public void filterDropsSmallBlobs() {
+        RunLengthBlobExtractor extractor = extract(
+                "#......",
+                "...####",
+                "...####",
+                "...####");
+        extractor.filter(4, 0, 0, 1000, 0, 1000, ANY_SOLIDITY, 1000, 0, 0, 1000);
+        assertEquals(1, extractor.blobs().size());
+        assertEquals(3, extractor.blobs().get(0).x);
+    }
+
+    @Test
+    public void extractStartsOver() {
+        RunLengthBlobExtractor extractor = extract("#.#", "#.#");
+        assertEquals(2, extractor.blobCount());
+        extractor.extract(mask("###"), 3, 1, 3,
+                (frame, offset, width, out) -> System.arraycopy(frame, offset, out, 0, width));
+        assertEquals(1, extractor.blobCount());
+        assertEquals(3, keepAll(extractor).get(0).pixelCount);
+    }
+
+    @Test
+    public void appendedStripsJoinAcrossTheSeam() {
+        byte[] mask = mask(
+                "#...#",
+                "#...#",
+                "#####",
+                "..#..");
+        RunLengthBlobExtractor top = new RunLengthBlobExtractor();
+        RunLengthBlobExtractor bottom = new RunLengthBlobExtractor();
+        top.begin();
+        bottom.begin();
+        for (int y = 0; y < 4; y++) {
+            (y < 2 ? top : bottom).addRow(y, mask, y * 5, 5);
+        }
+        top.append(bottom);
+        assertEquals(1, top.blobCount());
+        assertEquals(10, keepAll(top).get(0).pixelCount);
+    }
+
+    @Test
+    public void withHsvClassifier() {
+        // a green square on black, as BGR
+        int width = 6;
+        int height = 4;
+        byte[] frame = new byte[width * height * 3];
+        for (int y = 1; y < 3; y++) {
+            for (int x = 2; x < 5; x++) {
+                frame[(y * width + x) * 3 + 1] = (byte) 255;
+            }
+        }
+        RunLengthBlobExtractor extractor = new RunLengthBlobExtractor();
+        extractor.extract(frame, width, height, width * 3,
+                new HsvRowClassifier(new double[] {50, 70}, new double[] {100, 255}, new double[] {100, 255}));
+        List<RunLengthBlobExtractor.Blob> blobs = keepAll(extractor);
+        assertEquals(1, blobs.size());
+        assertEquals(2, blobs.get(0).x);
+        assertEquals(1, blobs.get(0).y);
+        assertEquals(6, blobs.get(0).pixelCount);
+    }
+}
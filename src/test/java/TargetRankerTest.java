@@ -0,0 +1,128 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.Rect;
+
+public class TargetRankerTest {
+    private static final int LEFT = 1;
+    private static final int RIGHT = -1;
+
+    private final TargetRanker ranker = new TargetRanker();
+    private Rect[] boxes;
+    private int[] leans;
+
+    /** Tapes as x and lean pairs, all the same size on the same row. */
+    private void tapes(int... xAndLean) {
+        boxes = new Rect[xAndLean.length / 2];
+        leans = new int[boxes.length];
+        for (int i = 0; i < boxes.length; i++) {
+            boxes[i] = new Rect(xAndLean[i * 2], 400, 40, 100);
+            leans[i] = xAndLean[i * 2 + 1];
+        }
+    }
+
+    private void rank() {
+        ranker.rank(boxes, leans, boxes.length);
+    }
+
+    @Before
+    public void withoutCrossCheck() {
+        ranker.setCrossCheck(false);
+    }
+
+    @Test
+    public void pairsNeighboursLeaningTogether() {
+        // out of order on purpose: sorted they are left, left, right, right, left
+        tapes(700, RIGHT, 100, LEFT, 1500, LEFT, 300, LEFT, 900, RIGHT);
+        rank();
+        // only 300 and 700 lean toward each other; 700 and 900 are both right halves
+        assertEquals(1, ranker.count());
+        assertEquals(300, ranker.candidate(0).left.x);
+        assertEquals(700, ranker.candidate(0).right.x);
+    }
+
+    @Test
+    public void unknownLeanPairsEitherWay() {
+        tapes(100, LEFT, 300, 0, 500, RIGHT);
+        rank();
+        assertEquals(2, ranker.count());
+    }
+
+    @Test
+    public void crossCheckDropsPairsThatDisagree() {
+        tapes(100, LEFT, 300, RIGHT);
+        rank();
+        assertEquals(1, ranker.count());
+        TargetCandidate candidate = ranker.candidate(0);
+        assertTrue(Math.abs(candidate.heightDistanceInches - candidate.distanceInches)
+                >= Main.DISTANCE_CROSS_CHECK * candidate.distanceInches);
+
+        ranker.setCrossCheck(true);
+        rank();
+        assertEquals(0, ranker.count());
+        assertEquals(0, ranker.packed().length);
+    }
+
+    @Test
+    public void ranksByBearingOrDistance() {
+        // a wide pair far left of center, a narrow one just right of it
+        tapes(100, LEFT, 500, RIGHT, 1000, LEFT, 1100, RIGHT);
+        rank();
+        assertEquals(2, ranker.count());
+        assertEquals(1000, ranker.candidate(0).left.x);
+        assertTrue(Math.abs(ranker.candidate(0).angleRadians) < Math.abs(ranker.candidate(1).angleRadians));
+
+        ranker.setRanking(TargetRanker.Ranking.DISTANCE);
+        rank();
+        assertEquals(100, ranker.candidate(0).left.x);
+        assertTrue(ranker.candidate(0).distanceInches < ranker.candidate(1).distanceInches);
+    }
+
+    @Test
+    public void packsBestFirst() {
+        tapes(100, LEFT, 500, RIGHT, 1000, LEFT, 1100, RIGHT);
+        rank();
+        double[] packed = ranker.packed();
+        assertEquals(2 * TargetRanker.FIELDS, packed.length);
+        for (int i = 0; i < ranker.count(); i++) {
+            TargetCandidate candidate = ranker.candidate(i);
+            int base = i * TargetRanker.FIELDS;
+            assertEquals(candidate.distanceInches, packed[base], 0);
+            assertEquals(candidate.offsetInches, packed[base + 1], 0);
+            assertEquals(candidate.angleRadians, packed[base + 2], 0);
+            assertEquals(candidate.confidence, packed[base + 3], 0);
+            assertEquals(Math.abs(candidate.angleRadians), packed[base + 4], 0);
+        }
+        // the array for a count is reused
+        rank();
+        assertSame(packed, ranker.packed());
+    }
+
+    @Test
+    public void keepsTheBestMaxTargets() {
+        int pairs = TargetRanker.MAX_TARGETS + 4;
+        int[] xAndLean = new int[pairs * 4];
+        for (int i = 0; i < pairs; i++) {
+            xAndLean[i * 4] = i * 150;
+            xAndLean[i * 4 + 1] = LEFT;
+            xAndLean[i * 4 + 2] = i * 150 + 60;
+            xAndLean[i * 4 + 3] = RIGHT;
+        }
+        tapes(xAndLean);
+        rank();
+        assertEquals(TargetRanker.MAX_TARGETS, ranker.count());
+        assertEquals(TargetRanker.MAX_TARGETS * TargetRanker.FIELDS, ranker.packed().length);
+        double[] packed = ranker.packed();
+        for (int i = 1; i < ranker.count(); i++) {
+            assertTrue(packed[(i - 1) * TargetRanker.FIELDS + 4] <= packed[i * TargetRanker.FIELDS + 4]);
+        }
+        // the dropped pairs are the ones furthest from the center
+        for (int i = 0; i < ranker.count(); i++) {
+            int center = ranker.candidate(i).left.x + 50;
+            assertTrue(center + " kept", Math.abs(center - Main.WIDTH_OF_CAMERA_PIXELS / 2) < 600);
+        }
+    }
+}
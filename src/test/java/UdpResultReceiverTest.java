@@ -0,0 +1,137 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UdpResultReceiverTest {
+    private final ByteBuffer buffer = ByteBuffer.allocate(ResultPacket.SIZE);
+    private final BlockingQueue<Long> taken = new LinkedBlockingQueue<>();
+    private UdpResultReceiver receiver;
+    private DatagramChannel sender;
+
+    private static ResultPacket packet(long session, long sequence) {
+        ResultPacket packet = new ResultPacket();
+        packet.flags = (short) (ResultPacket.FOUND | ResultPacket.STALE);
+        packet.session = session;
+        packet.sequence = sequence;
+        packet.captureNanos = 123_456_789_012L;
+        packet.ageMicros = 4321;
+        packet.targets = 2;
+        packet.distanceInches = 96.5;
+        packet.offsetInches = -3.25;
+        packet.angleRadians = -0.03;
+        packet.confidence = 0.75;
+        return packet;
+    }
+
+    @Before
+    public void open() throws IOException {
+        receiver = new UdpResultReceiver(0);
+        receiver.setListener(packet -> taken.add(packet.sequence));
+        receiver.start();
+        sender = DatagramChannel.open();
+        sender.connect(new InetSocketAddress("127.0.0.1", receiver.port()));
+    }
+
+    @After
+    public void close() throws IOException {
+        sender.close();
+        receiver.close();
+    }
+
+    private void send(long session, long sequence) throws IOException {
+        packet(session, sequence).write(buffer);
+        sender.write(buffer);
+    }
+
+    /** Waits for the receiver to take a packet, and checks that it was sequence. */
+    private void expect(long sequence) throws InterruptedException {
+        Long next = taken.poll(5, TimeUnit.SECONDS);
+        assertNotNull("nothing received", next);
+        assertEquals(sequence, (long) next);
+    }
+
+    @Test
+    public void packetReadsBack() {
+        ResultPacket read = new ResultPacket();
+        packet(7, 42).write(buffer);
+        assertEquals(ResultPacket.SIZE, buffer.remaining());
+        assertTrue(read.read(buffer));
+        assertEquals(ResultPacket.FOUND | ResultPacket.STALE, read.flags);
+        assertEquals(7, read.session);
+        assertEquals(42, read.sequence);
+        assertEquals(123_456_789_012L, read.captureNanos);
+        assertEquals(4321, read.ageMicros);
+        assertEquals(2, read.targets);
+        assertEquals(96.5, read.distanceInches, 0);
+        assertEquals(-3.25, read.offsetInches, 0);
+        assertEquals(-0.03, read.angleRadians, 0);
+        assertEquals(0.75, read.confidence, 0);
+    }
+
+    @Test
+    public void otherVersionsAreRejected() {
+        packet(7, 42).write(buffer);
+        buffer.putShort(4, (short) (ResultPacket.VERSION - 1));
+        assertFalse(new ResultPacket().read(buffer));
+        buffer.limit(ResultPacket.SIZE - 8);
+        buffer.putShort(4, ResultPacket.VERSION);
+        assertFalse(new ResultPacket().read(buffer));
+    }
+
+    @Test
+    public void roundTrip() throws IOException, InterruptedException {
+        ResultPacket latest = new ResultPacket();
+        assertFalse(receiver.latest(latest));
+        send(1, 1);
+        expect(1);
+        assertTrue(receiver.latest(latest));
+        assertEquals(96.5, latest.distanceInches, 0);
+        assertEquals(1, latest.session);
+        assertEquals(1, receiver.count());
+        assertTrue(receiver.ageMicros() >= 4321);
+    }
+
+    @Test
+    public void dropsOutOfOrderAndCountsGaps() throws IOException, InterruptedException {
+        send(1, 1);
+        expect(1);
+        send(1, 4);
+        expect(4);
+        send(1, 3);
+        send(1, 4);
+        send(1, 5);
+        expect(5);
+        assertEquals(2, receiver.outOfOrder());
+        assertEquals(2, receiver.missed());
+        assertEquals(3, receiver.count());
+    }
+
+    @Test
+    public void newSessionStartsOver() throws IOException, InterruptedException {
+        send(1, 10);
+        expect(10);
+        send(2, 1);
+        expect(1);
+        send(2, 2);
+        expect(2);
+        assertEquals(1, receiver.restarts());
+        assertEquals(0, receiver.outOfOrder());
+        assertEquals(0, receiver.missed());
+        ResultPacket latest = new ResultPacket();
+        receiver.latest(latest);
+        assertEquals(2, latest.session);
+    }
+}